@@ -0,0 +1,97 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import javax.annotation.CheckForNull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Event received by {@link AnalysisListener}. Fields are strings, numbers or booleans. Examples:
+ * <ul>
+ *   <li>{"type":"phase", "name":"download", "cpuTimeNs":20000000, "allocatedBytes":4096}. Phases are "bootstrap", "index",
+ *   "download", "classloader", "logging", "analysis" and "cleaning"</li>
+ *   <li>{"type":"file", "name":"sonar-batch.jar", "cached":false, "bytes":4096, "durationMs":80}</li>
+ *   <li>{"type":"download", "files":3, "bytes":4096, "durationMs":120}</li>
+ *   <li>{"type":"memory", "heapUsed":1024, "heapCommitted":2048, "heapMax":4096, "heapPeak":3072, "gcCount":2, "gcTimeMs":10}</li>
+ *   <li>{"type":"module", "key":"org.foo:bar", "status":"end", "durationMs":12000}</li>
+ *   <li>{"type":"end", "success":true, "durationMs":30000, "cpuTimeNs":900000000, "allocatedBytes":65536}</li>
+ * </ul>
+ * All events have the field "time", the timestamp in milliseconds. The fields "cpuTimeNs" and "allocatedBytes" are
+ * the counters of the thread that executes the analysis, or -1 if not supported by the JVM.
+ *
+ * @since 2.5
+ */
+public class AnalysisEvent {
+
+  public static final String PHASE = "phase";
+  public static final String DOWNLOAD = "download";
+  public static final String MEMORY = "memory";
+  public static final String MODULE = "module";
+  public static final String END = "end";
+  public static final String FILE = "file";
+
+  private final Map<String, Object> fields;
+
+  /**
+   * Events are created by the runner. This constructor is public so that listeners can be tested.
+   */
+  public AnalysisEvent(Map<String, Object> fields) {
+    this.fields = Collections.unmodifiableMap(new LinkedHashMap<String, Object>(fields));
+  }
+
+  public String type() {
+    return getString("type");
+  }
+
+  /**
+   * Timestamp in milliseconds
+   */
+  public long time() {
+    return getLong("time", 0L);
+  }
+
+  @CheckForNull
+  public Object get(String key) {
+    return fields.get(key);
+  }
+
+  @CheckForNull
+  public String getString(String key) {
+    Object value = fields.get(key);
+    return value != null ? value.toString() : null;
+  }
+
+  public long getLong(String key, long defaultValue) {
+    Object value = fields.get(key);
+    return value instanceof Number ? ((Number) value).longValue() : defaultValue;
+  }
+
+  public Map<String, Object> fields() {
+    return fields;
+  }
+
+  @Override
+  public String toString() {
+    return fields.toString();
+  }
+}
@@ -0,0 +1,31 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+/**
+ * Notified of the progress of the analysis: phases, downloads, memory usage and analysis of modules.
+ * See {@link Runner#addAnalysisListener(AnalysisListener)}. Events are not received concurrently, but they
+ * can be received from another thread than the one executing the runner.
+ *
+ * @since 2.5
+ */
+public interface AnalysisListener {
+  void onEvent(AnalysisEvent event);
+}
@@ -0,0 +1,107 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes lines to an {@link OutputStream}, generally {@link System#out} or {@link System#err}. As opposed to
+ * {@link PrintStreamConsumer}, lines are buffered and the stream is flushed at most every 100 ms. A line is never
+ * kept in the buffer for more than 100 ms, even if no line follows, as the flush is then scheduled.
+ *
+ * @since 2.5
+ */
+public class BufferedSink implements ChunkConsumer {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+  final OutputStream output;
+  private final Writer writer;
+  private long lastFlush = System.nanoTime();
+  private boolean pending = false;
+  private boolean flushScheduled = false;
+
+  public BufferedSink(OutputStream output) {
+    this(output, Charset.defaultCharset());
+  }
+
+  public BufferedSink(OutputStream output, Charset charset) {
+    this.output = output;
+    this.writer = new BufferedWriter(new OutputStreamWriter(output, charset), BUFFER_SIZE);
+  }
+
+  @Override
+  public synchronized void consumeLine(CharBuffer line) {
+    try {
+      if (line.hasArray()) {
+        writer.write(line.array(), line.arrayOffset() + line.position(), line.remaining());
+      } else {
+        writer.append(line);
+      }
+      writer.write(LINE_SEPARATOR);
+      pending = true;
+      long elapsed = System.nanoTime() - lastFlush;
+      if (elapsed >= FLUSH_INTERVAL_NANOS) {
+        flush();
+      } else if (!flushScheduled) {
+        flushScheduled = true;
+        CommandExecutor.create().schedule(new Runnable() {
+          @Override
+          public void run() {
+            scheduledFlush();
+          }
+        }, FLUSH_INTERVAL_NANOS - elapsed, TimeUnit.NANOSECONDS);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to write output", e);
+    }
+  }
+
+  @Override
+  public synchronized void flush() {
+    try {
+      writer.flush();
+      lastFlush = System.nanoTime();
+      pending = false;
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to write output", e);
+    }
+  }
+
+  private synchronized void scheduledFlush() {
+    flushScheduled = false;
+    if (pending) {
+      try {
+        flush();
+      } catch (IllegalStateException e) {
+        // the failure is raised by the next line or the next call to flush()
+      }
+    }
+  }
+}
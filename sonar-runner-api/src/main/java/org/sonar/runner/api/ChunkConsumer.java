@@ -0,0 +1,42 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import java.nio.CharBuffer;
+
+/**
+ * Consumer of the output of a forked process that does not require a {@link String} per line,
+ * as opposed to {@link StreamConsumer}. See {@link BufferedSink}, {@link LevelFilter} and {@link StreamConsumerAdapter}.
+ *
+ * @since 2.5
+ */
+public interface ChunkConsumer {
+
+  /**
+   * @param line the characters of the line between its position and its limit, without line terminator. The buffer
+   *             is reused for the next lines, so it must not be modified nor kept after the call.
+   */
+  void consumeLine(CharBuffer line);
+
+  /**
+   * Called when the stream is fully consumed. Buffered lines must be written.
+   */
+  void flush();
+}
@@ -19,30 +19,51 @@
  */
 package org.sonar.runner.api;
 
+import org.sonar.runner.impl.Metrics;
+
 import javax.annotation.Nullable;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Synchronously execute a native command line. It's much more limited than the Apache Commons Exec library.
  * For example it does not allow to run asynchronously or to automatically quote command-line arguments.
+ * <p/>
+ * Threads are shared by all the executions: output streams are consumed by virtual threads when supported by the JDK,
+ * else by a pool of threads, and timeouts are handled by a single scheduler. A {@link StopHandle} kills the process as soon as
+ * it's cancelled, whereas other implementations of {@link ProcessMonitor} are polled by the scheduler.
  *
  * @since 2.7
  */
 class CommandExecutor {
 
   private static final CommandExecutor INSTANCE = new CommandExecutor();
+  private static final long MONITOR_INTERVAL_MILLISECONDS = 100L;
+  private static final Metrics.Counter FORKS_STARTED = Metrics.counter(Metrics.FORKS_STARTED);
+  private static final Metrics.Counter FORKS_ACTIVE = Metrics.counter(Metrics.FORKS_ACTIVE);
+
+  private final ExecutorService streamExecutor;
+  private final ScheduledThreadPoolExecutor scheduler;
 
   private CommandExecutor() {
+    streamExecutor = newStreamExecutor();
+    scheduler = new ScheduledThreadPoolExecutor(1, new DaemonThreadFactory("sonar-runner-command-scheduler"));
+    scheduler.setRemoveOnCancelPolicy(true);
   }
 
   static CommandExecutor create() {
@@ -50,38 +71,59 @@ class CommandExecutor {
     return INSTANCE;
   }
 
+  /**
+   * Schedules a short task on the scheduler of the timeouts, for example a delayed flush of an output
+   */
+  ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+    return scheduler.schedule(task, delay, unit);
+  }
+
   int execute(Command command, StreamConsumer stdOut, StreamConsumer stdErr, long timeoutMilliseconds, @Nullable ProcessMonitor processMonitor) {
-    ExecutorService executorService = null;
+    return execute(command, new StreamConsumerAdapter(stdOut), new StreamConsumerAdapter(stdErr), Charset.defaultCharset(), timeoutMilliseconds, processMonitor);
+  }
+
+  /**
+   * @param charset encoding of the outputs of the command
+   */
+  int execute(Command command, ChunkConsumer stdOut, ChunkConsumer stdErr, Charset charset, long timeoutMilliseconds, @Nullable ProcessMonitor processMonitor) {
     Process process = null;
-    StreamGobbler outputGobbler = null;
-    StreamGobbler errorGobbler = null;
+    Future<Exception> outputGobbler = null;
+    Future<Exception> errorGobbler = null;
+    ScheduledFuture<?> timeout = null;
+    ScheduledFuture<?> monitoring = null;
+    Runnable killer = null;
+    AtomicBoolean timedOut = new AtomicBoolean(false);
     try {
       ProcessBuilder builder = new ProcessBuilder(command.toStrings());
       builder.directory(command.directory());
       builder.environment().putAll(command.envVariables());
       process = builder.start();
+      FORKS_STARTED.increment();
+      FORKS_ACTIVE.increment();
 
-      outputGobbler = new StreamGobbler(process.getInputStream(), stdOut);
-      errorGobbler = new StreamGobbler(process.getErrorStream(), stdErr);
-      outputGobbler.start();
-      errorGobbler.start();
+      outputGobbler = streamExecutor.submit(new StreamGobbler(process.getInputStream(), stdOut, charset));
+      errorGobbler = streamExecutor.submit(new StreamGobbler(process.getErrorStream(), stdErr, charset));
 
-      executorService = Executors.newSingleThreadExecutor();
-      final Future<Integer> futureTask = executeProcess(executorService, process);
-      if (processMonitor != null) {
-        monitorProcess(processMonitor, executorService, process);
+      timeout = scheduler.schedule(new ProcessKiller(process, timedOut), timeoutMilliseconds, TimeUnit.MILLISECONDS);
+      if (processMonitor instanceof StopHandle) {
+        killer = new ProcessKiller(process, null);
+        ((StopHandle) processMonitor).addListener(killer);
+      } else if (processMonitor != null) {
+        monitoring = monitorProcess(processMonitor, process);
       }
 
-      int exitCode = futureTask.get(timeoutMilliseconds, TimeUnit.MILLISECONDS);
-      waitUntilFinish(outputGobbler);
-      waitUntilFinish(errorGobbler);
+      int exitCode = process.waitFor();
+      if (timedOut.get()) {
+        throw new CommandException("Timeout exceeded: " + timeoutMilliseconds + " ms", command, new TimeoutException());
+      }
       verifyGobbler(command, outputGobbler, "stdOut");
       verifyGobbler(command, errorGobbler, "stdErr");
       return exitCode;
 
-    } catch (TimeoutException te) {
+    } catch (InterruptedException e) {
       process.destroy();
-      throw new CommandException("Timeout exceeded: " + timeoutMilliseconds + " ms", command, te);
+      Thread.currentThread().interrupt();
+      throw new CommandException("Interrupted while waiting for command", command, e);
 
     } catch (CommandException e) {
       throw e;
@@ -90,45 +132,41 @@ class CommandExecutor {
       throw new CommandException("Fail to execute command", command, e);
 
     } finally {
+      cancel(timeout);
+      cancel(monitoring);
+      if (killer != null) {
+        ((StopHandle) processMonitor).removeListener(killer);
+      }
       waitUntilFinish(outputGobbler);
       waitUntilFinish(errorGobbler);
       closeStreams(process);
-      if (executorService != null) {
-        executorService.shutdown();
+      if (process != null) {
+        FORKS_ACTIVE.decrement();
       }
     }
   }
 
-  private void monitorProcess(final ProcessMonitor processMonitor, final ExecutorService executor, final Process process) {
-    new Thread() {
+  private ScheduledFuture<?> monitorProcess(final ProcessMonitor processMonitor, final Process process) {
+    return scheduler.scheduleWithFixedDelay(new Runnable() {
       @Override
       public void run() {
-        while (!executor.isTerminated()) {
-          if (processMonitor.stop()) {
-            process.destroy();
-          }
-          try {
-            Thread.sleep(100);
-          } catch (InterruptedException e) {
-            // ignore
-          }
+        if (processMonitor.stop()) {
+          process.destroy();
         }
       }
-    }.start();
+    }, MONITOR_INTERVAL_MILLISECONDS, MONITOR_INTERVAL_MILLISECONDS, TimeUnit.MILLISECONDS);
   }
 
-  private Future<Integer> executeProcess(ExecutorService executorService, Process process) {
-    final Process finalProcess = process;
-    return executorService.submit(new Callable<Integer>() {
-      public Integer call() throws InterruptedException {
-        return finalProcess.waitFor();
-      }
-    });
+  private static void cancel(@Nullable Future<?> future) {
+    if (future != null) {
+      future.cancel(false);
+    }
   }
 
-  private void verifyGobbler(Command command, StreamGobbler gobbler, String type) {
-    if (gobbler.getException() != null) {
-      throw new CommandException("Error inside " + type + " stream", command, gobbler.getException());
+  private void verifyGobbler(Command command, Future<Exception> gobbler, String type) throws InterruptedException, ExecutionException {
+    Exception exception = gobbler.get();
+    if (exception != null) {
+      throw new CommandException("Error inside " + type + " stream", command, exception);
     }
   }
 
@@ -141,43 +179,92 @@ class CommandExecutor {
     }
   }
 
-  private void waitUntilFinish(StreamGobbler thread) {
-    if (thread != null) {
+  private void waitUntilFinish(@Nullable Future<Exception> gobbler) {
+    if (gobbler != null) {
       try {
-        thread.join();
+        gobbler.get();
       } catch (InterruptedException e) {
-        System.err.println("InterruptedException while waiting finish of " + thread.toString());
+        System.err.println("InterruptedException while waiting finish of stream gobbler");
         e.printStackTrace();
+      } catch (ExecutionException e) {
+        // already verified
+      }
+    }
+  }
+
+  /**
+   * Virtual threads are used on Java 21+. The method is called by reflection as sources are compatible with Java 7.
+   */
+  static ExecutorService newStreamExecutor() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) method.invoke(null);
+    } catch (Exception e) {
+      return Executors.newCachedThreadPool(new DaemonThreadFactory("ProcessStreamGobbler"));
+    }
+  }
+
+  private static class ProcessKiller implements Runnable {
+    private final Process process;
+    private final AtomicBoolean killed;
+
+    ProcessKiller(Process process, @Nullable AtomicBoolean killed) {
+      this.process = process;
+      this.killed = killed;
+    }
+
+    @Override
+    public void run() {
+      if (killed != null) {
+        killed.set(true);
       }
+      process.destroy();
+    }
+  }
+
+  private static class DaemonThreadFactory implements ThreadFactory {
+    private final String name;
+
+    DaemonThreadFactory(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, name);
+      thread.setDaemon(true);
+      return thread;
     }
   }
 
-  private static class StreamGobbler extends Thread {
+  private static class StreamGobbler implements Callable<Exception>, ChunkConsumer {
     private final InputStream is;
-    private final StreamConsumer consumer;
-    private volatile Exception exception;
+    private final ChunkConsumer consumer;
+    private final Charset charset;
+    private Exception exception;
 
-    StreamGobbler(InputStream is, StreamConsumer consumer) {
-      super("ProcessStreamGobbler");
+    StreamGobbler(InputStream is, ChunkConsumer consumer, Charset charset) {
       this.is = is;
       this.consumer = consumer;
+      this.charset = charset;
     }
 
+    /**
+     * @return the error raised when reading the stream or by the consumer, else null
+     */
     @Override
-    public void run() {
-      try (InputStreamReader isr = new InputStreamReader(is);
-        BufferedReader br = new BufferedReader(isr)) {
-        String line;
-        while ((line = br.readLine()) != null) {
-          consumeLine(line);
-        }
+    public Exception call() {
+      try (InputStream input = is) {
+        new LineReader(charset).read(input, this);
       } catch (IOException ioe) {
         exception = ioe;
 
       }
+      return exception;
     }
 
-    private void consumeLine(String line) {
+    @Override
+    public void consumeLine(CharBuffer line) {
       if (exception == null) {
         try {
           consumer.consumeLine(line);
@@ -187,8 +274,15 @@ class CommandExecutor {
       }
     }
 
-    public Exception getException() {
-      return exception;
+    @Override
+    public void flush() {
+      if (exception == null) {
+        try {
+          consumer.flush();
+        } catch (Exception e) {
+          exception = e;
+        }
+      }
     }
   }
 }
@@ -19,14 +19,27 @@
  */
 package org.sonar.runner.api;
 
+import org.sonar.runner.impl.InternalProperties;
 import org.sonar.runner.impl.Logs;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 class Dirs {
 
+  static final String TRASH_SUFFIX = ".trash-";
+  private static final int DELETION_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
   void init(Runner<?> runner) {
-    boolean onProject = Utils.taskRequiresProject(runner.properties());
+    boolean onProject = Utils.taskRequiresProject(runner);
     if (onProject) {
       initProjectDirs(runner);
     } else {
@@ -53,7 +66,14 @@ class Dirs {
         workDir = new File(projectDir, path);
       }
     }
-    Utils.deleteQuietly(workDir);
+    if (Boolean.parseBoolean(runner.property(InternalProperties.RUNNER_INCREMENTAL_WORK_DIR, "false"))) {
+      // deleted by the batch launcher if outdated
+      Logs.debug("Incremental work directory");
+    } else if (Boolean.parseBoolean(runner.property(InternalProperties.RUNNER_ASYNC_WORK_DIR_CLEANING, "false"))) {
+      cleanAsync(workDir);
+    } else {
+      Utils.deleteQuietly(workDir);
+    }
     runner.setProperty(RunnerProperties.WORK_DIR, workDir.getAbsolutePath());
     Logs.info("Work directory: " + workDir.getAbsolutePath());
   }
@@ -66,4 +86,84 @@ class Dirs {
     File workDir = new File(path);
     runner.setProperty(RunnerProperties.WORK_DIR, workDir.getAbsolutePath());
   }
+
+  /**
+   * The work directory is renamed to a sibling trash directory, which is deleted in background. Deletion is
+   * interrupted when the JVM exits, so the trash directories left by previous executions are deleted too.
+   */
+  void cleanAsync(File workDir) {
+    final List<File> trashes = staleTrashes(workDir);
+    if (workDir.exists()) {
+      File trash = new File(workDir.getParentFile(), "." + workDir.getName() + TRASH_SUFFIX + System.currentTimeMillis());
+      try {
+        Files.move(workDir.toPath(), trash.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        trashes.add(trash);
+      } catch (IOException e) {
+        Logs.debug("Fail to rename work directory, it's deleted synchronously: {}", e.getMessage());
+        Utils.deleteQuietly(workDir);
+      }
+    }
+    if (trashes.isEmpty()) {
+      return;
+    }
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        deleteInParallel(trashes);
+      }
+    }, "sonar-runner-work-dir-cleaning");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  private static List<File> staleTrashes(File workDir) {
+    List<File> trashes = new ArrayList<File>();
+    File[] siblings = workDir.getAbsoluteFile().getParentFile().listFiles();
+    if (siblings != null) {
+      String prefix = "." + workDir.getName() + TRASH_SUFFIX;
+      for (File sibling : siblings) {
+        if (sibling.getName().startsWith(prefix)) {
+          trashes.add(sibling);
+        }
+      }
+    }
+    return trashes;
+  }
+
+  static void deleteInParallel(List<File> dirs) {
+    ExecutorService executor = Executors.newFixedThreadPool(DELETION_THREADS, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "sonar-runner-work-dir-deletion");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (File dir : dirs) {
+        File[] children = dir.listFiles();
+        if (children != null) {
+          for (final File child : children) {
+            futures.add(executor.submit(new Runnable() {
+              @Override
+              public void run() {
+                Utils.deleteQuietly(child);
+              }
+            }));
+          }
+        }
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      for (File dir : dirs) {
+        Utils.deleteQuietly(dir);
+      }
+    } catch (Exception e) {
+      Logs.debug("Fail to delete old work directories: {}", e.getMessage());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
 }
@@ -20,10 +20,19 @@
 package org.sonar.runner.api;
 
 import org.sonar.runner.impl.BatchLauncher;
+import org.sonar.runner.impl.InternalProperties;
+import org.sonar.runner.impl.Progress;
 
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Implementation of {@link Runner} that is executed in the same JVM. The application can inject
@@ -88,6 +97,51 @@ public class EmbeddedRunner extends Runner<EmbeddedRunner> {
     return this;
   }
 
+  /**
+   * Keep the classloaders of the last executions in this JVM, so that next executions against the same server
+   * do not load the batch classes again. A classloader is reused only if the server URL, the libraries provided by
+   * the server and the mask rules (see {@link #unmask(String)}) are unchanged. Least recently used classloaders
+   * are evicted when more than <code>maxEntries</code> are kept. Disabled by default.
+   *
+   * @param maxEntries maximum number of kept classloaders, 0 to disable the cache
+   * @since 2.5
+   */
+  public EmbeddedRunner setClassloaderCacheSize(int maxEntries) {
+    if (maxEntries < 0) {
+      throw new IllegalArgumentException("Size of classloader cache must be positive or zero: " + maxEntries);
+    }
+    return setProperty(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE, String.valueOf(maxEntries));
+  }
+
+  /**
+   * Executes the analysis in a pool of threads shared by the embedded runners of this JVM. The pool has as many
+   * threads as processors, so at most this number of analyses run concurrently and the next ones are queued.
+   * The runner must not be modified until the returned future is done.
+   *
+   * @see #executeAsync(ExecutorService)
+   * @since 2.5
+   */
+  public Future<Void> executeAsync() {
+    return executeAsync(AsyncExecutorHolder.EXECUTOR);
+  }
+
+  /**
+   * Executes the analysis in the given executor, which bounds the number of concurrent analyses. Concurrent analyses
+   * use distinct classloaders and logging contexts. Enable {@link #setClassloaderCacheSize(int)} so that the
+   * next analyses reuse them.
+   *
+   * @since 2.5
+   */
+  public Future<Void> executeAsync(ExecutorService executor) {
+    return executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() {
+        execute();
+        return null;
+      }
+    });
+  }
+
   public EmbeddedRunner addExtensions(Object... objects) {
     extensions.addAll(Arrays.asList(objects));
     return this;
@@ -99,6 +153,29 @@ public class EmbeddedRunner extends Runner<EmbeddedRunner> {
 
   @Override
   protected void doExecute() {
-    batchLauncher.execute(properties(), extensions);
+    if (analysisListeners().isEmpty()) {
+      batchLauncher.execute(properties(), extensions);
+    } else {
+      Progress progress = new Progress().addListener(new Progress.Listener() {
+        @Override
+        public void onEvent(Map<String, Object> event) {
+          notifyAnalysisListeners(new AnalysisEvent(event));
+        }
+      });
+      batchLauncher.execute(properties(), extensions, progress);
+    }
+  }
+
+  private static class AsyncExecutorHolder {
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+      private final AtomicInteger counter = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "sonar-runner-analysis-" + counter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
   }
 }
@@ -20,18 +20,26 @@
 package org.sonar.runner.api;
 
 import org.sonar.runner.impl.BatchLauncherMain;
+import org.sonar.runner.impl.BatchLauncherWorker;
+import org.sonar.runner.impl.InternalProperties;
 import org.sonar.runner.impl.JarExtractor;
+import org.sonar.runner.impl.TempFiles;
 
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
 /**
  * Runner executed in a new JVM.
@@ -45,7 +53,8 @@ public class ForkedRunner extends Runner<ForkedRunner> {
   private final Map<String, String> jvmEnvVariables = new HashMap<String, String>();
   private final List<String> jvmArguments = new ArrayList<String>();
   private String javaExecutable;
-  private StreamConsumer stdOut = null, stdErr = null;
+  private ChunkConsumer stdOut = null, stdErr = null;
+  private Charset outputCharset = Charset.defaultCharset();
   private final JarExtractor jarExtractor;
   private final CommandExecutor commandExecutor;
 
@@ -123,7 +132,7 @@ public class ForkedRunner extends Runner<ForkedRunner> {
    * Subscribe to the standard output. By default output is {@link System.out}
    */
   public ForkedRunner setStdOut(@Nullable StreamConsumer stream) {
-    this.stdOut = stream;
+    this.stdOut = stream != null ? new StreamConsumerAdapter(stream) : null;
     return this;
   }
 
@@ -131,23 +140,96 @@ public class ForkedRunner extends Runner<ForkedRunner> {
    * Subscribe to the error output. By default output is {@link System.err}
    */
   public ForkedRunner setStdErr(@Nullable StreamConsumer stream) {
-    this.stdErr = stream;
+    this.stdErr = stream != null ? new StreamConsumerAdapter(stream) : null;
     return this;
   }
 
+  /**
+   * Same as {@link #setStdOut(StreamConsumer)} without creating a String per line. By default output is buffered
+   * then written to {@link System.out}. See {@link BufferedSink} and {@link LevelFilter}.
+   *
+   * @since 2.5
+   */
+  public ForkedRunner setStdOutSink(@Nullable ChunkConsumer sink) {
+    this.stdOut = sink;
+    return this;
+  }
+
+  /**
+   * Same as {@link #setStdErr(StreamConsumer)} without creating a String per line. By default output is buffered
+   * then written to {@link System.err}.
+   *
+   * @since 2.5
+   */
+  public ForkedRunner setStdErrSink(@Nullable ChunkConsumer sink) {
+    this.stdErr = sink;
+    return this;
+  }
+
+  /**
+   * Encoding of the outputs of the forked JVM. Default charset is used by default.
+   *
+   * @since 2.5
+   */
+  public ForkedRunner setOutputCharset(Charset charset) {
+    this.outputCharset = charset;
+    return this;
+  }
+
+  /**
+   * Analyses are executed by a pool of warm JVMs instead of a new JVM each. Workers are shared by the runners that
+   * fork the same command (java executable, JVM arguments and environment variables). Disabled by default.
+   *
+   * @param size maximum number of worker JVMs, 0 to fork a new JVM for each analysis
+   * @since 2.5
+   */
+  public ForkedRunner setWorkerPoolSize(int size) {
+    if (size < 0) {
+      throw new IllegalArgumentException("Size of worker pool must be positive or zero: " + size);
+    }
+    return setProperty(InternalProperties.RUNNER_WORKER_POOL_SIZE, String.valueOf(size));
+  }
+
   @Override
   protected void doExecute() {
-    ForkCommand forkCommand = createCommand();
+    ProgressServer progressServer = startProgressServer();
     try {
-      fork(forkCommand);
+      ForkCommand forkCommand = createCommand(progressServer);
+      try {
+        fork(forkCommand);
+      } finally {
+        deleteTempFiles(forkCommand);
+      }
     } finally {
-      deleteTempFiles(forkCommand);
+      if (progressServer != null) {
+        progressServer.close();
+      }
+    }
+  }
+
+  /**
+   * The forked JVM sends its progress to a loopback socket when listeners are registered
+   */
+  @CheckForNull
+  private ProgressServer startProgressServer() {
+    if (analysisListeners().isEmpty()) {
+      return null;
+    }
+    try {
+      return ProgressServer.start(this);
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to listen to progress of forked JVM", e);
     }
   }
 
   ForkCommand createCommand() {
-    File propertiesFile = writeProperties();
-    File jarFile = jarExtractor.extractToTemp("sonar-runner-impl");
+    return createCommand(null);
+  }
+
+  ForkCommand createCommand(@Nullable ProgressServer progressServer) {
+    File propertiesFile = writeProperties(progressServer);
+    // shared by all forks, must not be deleted
+    File jarFile = jarExtractor.extractToCache("sonar-runner-impl");
     if (javaExecutable == null) {
       javaExecutable = new Os().thisJavaExe().getAbsolutePath();
     }
@@ -160,11 +242,16 @@ public class ForkedRunner extends Runner<ForkedRunner> {
     return new ForkCommand(command, jarFile, propertiesFile);
   }
 
-  private File writeProperties() {
+  private File writeProperties(@Nullable ProgressServer progressServer) {
     try {
-      File file = File.createTempFile("sonar-project", ".properties");
+      File file = TempFiles.createTempFile("sonar-project", ".properties");
       try (OutputStream output = new FileOutputStream(file)) {
-        properties().store(output, "Generated by sonar-runner");
+        Properties props = properties();
+        if (progressServer != null) {
+          props.setProperty(InternalProperties.RUNNER_PROGRESS_PORT, String.valueOf(progressServer.port()));
+          props.setProperty(InternalProperties.RUNNER_PROGRESS_TOKEN, progressServer.token());
+        }
+        props.store(output, "Generated by sonar-runner");
         return file;
       }
     } catch (Exception e) {
@@ -173,27 +260,58 @@ public class ForkedRunner extends Runner<ForkedRunner> {
   }
 
   private void deleteTempFiles(ForkCommand forkCommand) {
-    Utils.deleteQuietly(forkCommand.jarFile);
     Utils.deleteQuietly(forkCommand.propertiesFile);
   }
 
   private void fork(ForkCommand forkCommand) {
     if (stdOut == null) {
-      stdOut = new PrintStreamConsumer(System.out);
+      stdOut = new BufferedSink(System.out);
     }
     if (stdErr == null) {
-      stdErr = new PrintStreamConsumer(System.err);
+      stdErr = new BufferedSink(System.err);
+    }
+    int status;
+    int poolSize = intProperty(InternalProperties.RUNNER_WORKER_POOL_SIZE, 0);
+    if (poolSize > 0) {
+      WorkerPool pool = WorkerPool.get(createWorkerCommand(forkCommand), outputCharset, poolSize,
+        intProperty(InternalProperties.RUNNER_WORKER_IDLE_TIMEOUT, 300000));
+      status = pool.execute(forkCommand.propertiesFile, stdOut, stdErr, ONE_DAY_IN_MILLISECONDS, processMonitor);
+    } else {
+      status = commandExecutor.execute(forkCommand.command, stdOut, stdErr, outputCharset, ONE_DAY_IN_MILLISECONDS, processMonitor);
     }
-    int status = commandExecutor.execute(forkCommand.command, stdOut, stdErr, ONE_DAY_IN_MILLISECONDS, processMonitor);
     if (status != 0) {
       if (processMonitor != null && processMonitor.stop()) {
-        stdOut.consumeLine(String.format("SonarQube Runner was stopped [status=%s]", status));
+        stdOut.consumeLine(CharBuffer.wrap(String.format("SonarQube Runner was stopped [status=%s]", status)));
+        stdOut.flush();
       } else {
         throw new IllegalStateException("Error status [command: " + forkCommand.command + "]: " + status);
       }
     }
   }
 
+  Command createWorkerCommand(ForkCommand forkCommand) {
+    return Command.builder()
+      .setExecutable(javaExecutable)
+      .addEnvVariables(jvmEnvVariables)
+      .addArguments(jvmArguments)
+      .addArguments("-cp", forkCommand.jarFile.getAbsolutePath(), BatchLauncherWorker.class.getName(),
+        String.valueOf(intProperty(InternalProperties.RUNNER_WORKER_MAX_JOBS, 20)),
+        String.valueOf(intProperty(InternalProperties.RUNNER_WORKER_MAX_HEAP_PERCENT, 80)))
+      .build();
+  }
+
+  private int intProperty(String key, int defaultValue) {
+    String value = property(key, "");
+    if ("".equals(value.trim())) {
+      return defaultValue;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value of " + key + ": " + value, e);
+    }
+  }
+
   static class ForkCommand {
     Command command;
     File jarFile;
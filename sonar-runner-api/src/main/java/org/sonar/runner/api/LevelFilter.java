@@ -0,0 +1,111 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import java.nio.CharBuffer;
+
+/**
+ * Drops the log lines of the forked process that are below a given level, before they are converted to {@link String}.
+ * The level is searched as a word at the beginning of the line, for example "DEBUG: message" or
+ * "12:00:00.000 DEBUG - message". Lines without level, for example stack traces, have the level of the previous line.
+ *
+ * @since 2.5
+ */
+public class LevelFilter implements ChunkConsumer {
+
+  public enum Level {
+    TRACE, DEBUG, INFO, WARN, ERROR
+  }
+
+  private static final int LEVEL_SEARCH_LENGTH = 40;
+  private static final Level[] LEVELS = Level.values();
+
+  private final Level minLevel;
+  private final ChunkConsumer delegate;
+  private boolean accepted = true;
+
+  public LevelFilter(Level minLevel, ChunkConsumer delegate) {
+    this.minLevel = minLevel;
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void consumeLine(CharBuffer line) {
+    Level level = levelOf(line);
+    if (level != null) {
+      accepted = level.compareTo(minLevel) >= 0;
+    }
+    if (accepted) {
+      delegate.consumeLine(line);
+    }
+  }
+
+  @Override
+  public void flush() {
+    delegate.flush();
+  }
+
+  static Level levelOf(CharBuffer line) {
+    int start = line.position();
+    int end = Math.min(line.limit(), start + LEVEL_SEARCH_LENGTH);
+    int i = start;
+    while (i < end) {
+      if (isUpperCase(line.get(i)) && (i == start || !Character.isLetter(line.get(i - 1)))) {
+        int wordEnd = i;
+        while (wordEnd < line.limit() && isUpperCase(line.get(wordEnd))) {
+          wordEnd++;
+        }
+        if (wordEnd == line.limit() || !Character.isLetter(line.get(wordEnd))) {
+          Level level = match(line, i, wordEnd);
+          if (level != null) {
+            return level;
+          }
+        }
+        i = wordEnd;
+      } else {
+        i++;
+      }
+    }
+    return null;
+  }
+
+  private static boolean isUpperCase(char c) {
+    return c >= 'A' && c <= 'Z';
+  }
+
+  private static Level match(CharBuffer line, int start, int end) {
+    for (Level level : LEVELS) {
+      String name = level.name();
+      if (name.length() == end - start && regionMatches(line, start, name)) {
+        return level;
+      }
+    }
+    return null;
+  }
+
+  private static boolean regionMatches(CharBuffer line, int start, String s) {
+    for (int i = 0; i < s.length(); i++) {
+      if (line.get(start + i) != s.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Decodes a stream and gives its lines to a {@link ChunkConsumer}. Buffers are reused, so no objects are created per line.
+ * Lines are terminated by "\n" or "\r\n".
+ */
+class LineReader {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private final Charset charset;
+  private CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+  private CharBuffer line = chars.duplicate();
+
+  LineReader(Charset charset) {
+    this.charset = charset;
+  }
+
+  void read(InputStream input, ChunkConsumer consumer) throws IOException {
+    CharsetDecoder decoder = charset.newDecoder()
+      .onMalformedInput(CodingErrorAction.REPLACE)
+      .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    ReadableByteChannel channel = Channels.newChannel(input);
+    ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+    boolean endOfInput = false;
+    boolean done = false;
+    while (!done) {
+      if (!endOfInput && channel.read(bytes) < 0) {
+        endOfInput = true;
+      }
+      bytes.flip();
+      CoderResult result = decoder.decode(bytes, chars, endOfInput);
+      bytes.compact();
+      if (endOfInput && !result.isOverflow()) {
+        done = !decoder.flush(chars).isOverflow();
+      }
+      dispatchLines(consumer);
+    }
+    if (chars.position() > 0) {
+      // last line without terminator
+      chars.flip();
+      consume(consumer, 0, chars.limit());
+      chars.clear();
+    }
+    consumer.flush();
+  }
+
+  private void dispatchLines(ChunkConsumer consumer) {
+    chars.flip();
+    int start = 0;
+    int limit = chars.limit();
+    char[] array = chars.array();
+    for (int i = 0; i < limit; i++) {
+      if (array[i] == '\n') {
+        int end = (i > start && array[i - 1] == '\r') ? (i - 1) : i;
+        consume(consumer, start, end);
+        start = i + 1;
+      }
+    }
+    chars.position(start);
+    chars.compact();
+    if (!chars.hasRemaining()) {
+      // line longer than buffer
+      CharBuffer larger = CharBuffer.allocate(chars.capacity() * 2);
+      chars.flip();
+      larger.put(chars);
+      chars = larger;
+      line = chars.duplicate();
+    }
+  }
+
+  private void consume(ChunkConsumer consumer, int start, int end) {
+    line.clear();
+    line.position(start);
+    line.limit(end);
+    consumer.consumeLine(line);
+  }
+}
@@ -20,7 +20,7 @@
 package org.sonar.runner.api;
 
 /**
- * To be used with {@link ForkedRunner}
+ * To be used with {@link ForkedRunner}. See {@link StopHandle} to kill the process without polling.
  * @since 2.3
  */
 public interface ProcessMonitor {
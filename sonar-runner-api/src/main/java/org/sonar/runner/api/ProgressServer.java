@@ -0,0 +1,278 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Receives the progress events of the forked JVM on a loopback socket, one JSON object per line, and
+ * notifies the listeners of {@link ForkedRunner}. Connections must start with the token given to the forked JVM.
+ */
+class ProgressServer implements Closeable {
+
+  private static final long CLOSE_TIMEOUT_MS = 2000L;
+
+  private final ServerSocket serverSocket;
+  private final String token = UUID.randomUUID().toString();
+  private final Runner<?> runner;
+  private final List<Thread> readers = new ArrayList<Thread>();
+
+  private ProgressServer(ServerSocket serverSocket, Runner<?> runner) {
+    this.serverSocket = serverSocket;
+    this.runner = runner;
+  }
+
+  static ProgressServer start(Runner<?> runner) throws IOException {
+    final ProgressServer server = new ProgressServer(new ServerSocket(0, 50, InetAddress.getByName(null)), runner);
+    Thread acceptor = new Thread("sonar-runner-progress-server") {
+      @Override
+      public void run() {
+        server.acceptConnections();
+      }
+    };
+    acceptor.setDaemon(true);
+    acceptor.start();
+    return server;
+  }
+
+  int port() {
+    return serverSocket.getLocalPort();
+  }
+
+  String token() {
+    return token;
+  }
+
+  private void acceptConnections() {
+    while (!serverSocket.isClosed()) {
+      try {
+        final Socket socket = serverSocket.accept();
+        Thread reader = new Thread("sonar-runner-progress-reader") {
+          @Override
+          public void run() {
+            read(socket);
+          }
+        };
+        reader.setDaemon(true);
+        synchronized (readers) {
+          readers.add(reader);
+        }
+        reader.start();
+      } catch (IOException e) {
+        // server is closed
+      }
+    }
+  }
+
+  private void read(Socket socket) {
+    try (BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+      if (!token.equals(reader.readLine())) {
+        return;
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Map<String, Object> fields = parse(line);
+        if (fields != null) {
+          synchronized (this) {
+            runner.notifyAnalysisListeners(new AnalysisEvent(fields));
+          }
+        }
+      }
+    } catch (IOException e) {
+      // forked JVM is stopped
+    } finally {
+      Utils.closeQuietly(socket);
+    }
+  }
+
+  /**
+   * Stops accepting connections and waits for the events sent by the forked JVM to be notified
+   */
+  @Override
+  public void close() {
+    Utils.closeQuietly(serverSocket);
+    List<Thread> toJoin;
+    synchronized (readers) {
+      toJoin = new ArrayList<Thread>(readers);
+    }
+    long deadline = System.currentTimeMillis() + CLOSE_TIMEOUT_MS;
+    for (Thread reader : toJoin) {
+      try {
+        reader.join(Math.max(1L, deadline - System.currentTimeMillis()));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Parses a flat JSON object whose values are strings, numbers, booleans or null.
+   *
+   * @return null if the line is not such an object
+   */
+  static Map<String, Object> parse(String line) {
+    try {
+      Parser parser = new Parser(line);
+      return parser.object();
+    } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+      return null;
+    }
+  }
+
+  private static class Parser {
+    private final String s;
+    private int pos = 0;
+
+    Parser(String s) {
+      this.s = s;
+    }
+
+    Map<String, Object> object() {
+      Map<String, Object> result = new LinkedHashMap<String, Object>();
+      expect('{');
+      if (peek() == '}') {
+        pos++;
+        return result;
+      }
+      while (true) {
+        String key = string();
+        expect(':');
+        result.put(key, value());
+        char c = next();
+        if (c == '}') {
+          return result;
+        }
+        if (c != ',') {
+          throw new IllegalArgumentException("Unexpected character at " + pos);
+        }
+      }
+    }
+
+    private Object value() {
+      char c = peek();
+      if (c == '"') {
+        return string();
+      }
+      if (s.startsWith("true", pos)) {
+        pos += 4;
+        return Boolean.TRUE;
+      }
+      if (s.startsWith("false", pos)) {
+        pos += 5;
+        return Boolean.FALSE;
+      }
+      if (s.startsWith("null", pos)) {
+        pos += 4;
+        return null;
+      }
+      return number();
+    }
+
+    private Number number() {
+      int start = pos;
+      while (pos < s.length() && "+-0123456789.eE".indexOf(s.charAt(pos)) >= 0) {
+        pos++;
+      }
+      String n = s.substring(start, pos);
+      try {
+        if (n.indexOf('.') >= 0 || n.indexOf('e') >= 0 || n.indexOf('E') >= 0) {
+          return Double.parseDouble(n);
+        }
+        return Long.parseLong(n);
+      } catch (NumberFormatException e) {
+        throw new IllegalArgumentException("Invalid number: " + n, e);
+      }
+    }
+
+    private String string() {
+      expect('"');
+      StringBuilder sb = new StringBuilder();
+      while (true) {
+        char c = s.charAt(pos++);
+        if (c == '"') {
+          return sb.toString();
+        }
+        if (c == '\\') {
+          char escaped = s.charAt(pos++);
+          switch (escaped) {
+            case 'n':
+              sb.append('\n');
+              break;
+            case 'r':
+              sb.append('\r');
+              break;
+            case 't':
+              sb.append('\t');
+              break;
+            case 'b':
+              sb.append('\b');
+              break;
+            case 'f':
+              sb.append('\f');
+              break;
+            case 'u':
+              sb.append((char) Integer.parseInt(s.substring(pos, pos + 4), 16));
+              pos += 4;
+              break;
+            default:
+              sb.append(escaped);
+          }
+        } else {
+          sb.append(c);
+        }
+      }
+    }
+
+    private char peek() {
+      skipWhitespaces();
+      return s.charAt(pos);
+    }
+
+    private char next() {
+      skipWhitespaces();
+      return s.charAt(pos++);
+    }
+
+    private void expect(char expected) {
+      if (next() != expected) {
+        throw new IllegalArgumentException("Expected " + expected + " at " + (pos - 1));
+      }
+    }
+
+    private void skipWhitespaces() {
+      while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) {
+        pos++;
+      }
+    }
+  }
+}
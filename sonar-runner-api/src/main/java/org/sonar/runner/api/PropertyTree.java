@@ -0,0 +1,248 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Immutable properties, stored as a tree whose edges are the segments of the keys separated by dots. Segments are
+ * interned, so the keys of the modules of large reactors ("module1.module2.sonar.sources") share their prefixes
+ * and their common names. An update copies only the nodes on the path of its key, so a tree is also a snapshot
+ * that can be shared without copy. {@link #toProperties()} must be called only at the boundaries which require
+ * {@link Properties}, for example the batch.
+ */
+final class PropertyTree {
+
+  private static final String[] NO_NAMES = new String[0];
+  private static final PropertyTree[] NO_CHILDREN = new PropertyTree[0];
+
+  static final PropertyTree EMPTY = new PropertyTree(null, NO_NAMES, NO_CHILDREN, 0);
+
+  private final String value;
+  // sorted
+  private final String[] names;
+  private final PropertyTree[] children;
+  // number of values in the tree
+  private final int size;
+
+  private PropertyTree(@Nullable String value, String[] names, PropertyTree[] children, int size) {
+    this.value = value;
+    this.names = names;
+    this.children = children;
+    this.size = size;
+  }
+
+  static PropertyTree of(Map<?, ?> props) {
+    return EMPTY.withAll(props);
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  @CheckForNull
+  String get(String key) {
+    PropertyTree node = node(key);
+    return node != null ? node.value : null;
+  }
+
+  boolean containsKey(String key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Properties whose keys start with the given prefix followed by a dot, without this prefix. No copy is done.
+   * For example the subtree "module1" of {"module1.sonar.sources":"src"} is {"sonar.sources":"src"}.
+   */
+  PropertyTree subtree(String prefix) {
+    PropertyTree node = node(prefix);
+    return node != null ? new PropertyTree(null, node.names, node.children, node.size - (node.value != null ? 1 : 0)) : EMPTY;
+  }
+
+  /**
+   * Copies only the nodes on the path of the key, and not their children, so that the cost of setting
+   * properties one by one does not depend on the number of siblings of the modified nodes.
+   */
+  PropertyTree with(String key, String value) {
+    if (value == null) {
+      throw new NullPointerException("Value of property " + key + " is null");
+    }
+    return with(key, 0, value);
+  }
+
+  private PropertyTree with(String key, int start, String newValue) {
+    int dot = key.indexOf('.', start);
+    String segment = dot < 0 ? key.substring(start) : key.substring(start, dot);
+    int index = Arrays.binarySearch(names, segment);
+    PropertyTree child = index >= 0 ? children[index] : EMPTY;
+    PropertyTree newChild = dot < 0 ? child.withValue(newValue) : child.with(key, dot + 1, newValue);
+    if (newChild == child) {
+      return this;
+    }
+    if (index >= 0) {
+      PropertyTree[] newChildren = children.clone();
+      newChildren[index] = newChild;
+      return new PropertyTree(value, names, newChildren, size - child.size + newChild.size);
+    }
+    int insert = -index - 1;
+    String[] newNames = new String[names.length + 1];
+    PropertyTree[] newChildren = new PropertyTree[names.length + 1];
+    System.arraycopy(names, 0, newNames, 0, insert);
+    System.arraycopy(children, 0, newChildren, 0, insert);
+    newNames[insert] = segment.intern();
+    newChildren[insert] = newChild;
+    System.arraycopy(names, insert, newNames, insert + 1, names.length - insert);
+    System.arraycopy(children, insert, newChildren, insert + 1, names.length - insert);
+    return new PropertyTree(value, newNames, newChildren, size + newChild.size);
+  }
+
+  private PropertyTree withValue(String newValue) {
+    if (newValue.equals(value)) {
+      return this;
+    }
+    return new PropertyTree(newValue, names, children, size - (value != null ? 1 : 0) + 1);
+  }
+
+  /**
+   * Adds all the properties in one pass, so that shared nodes are copied only once
+   */
+  PropertyTree withAll(Map<?, ?> props) {
+    if (props.isEmpty()) {
+      return this;
+    }
+    Builder builder = new Builder(this);
+    for (Map.Entry<?, ?> entry : props.entrySet()) {
+      builder.set(entry.getKey().toString(), entry.getValue().toString());
+    }
+    return builder.build();
+  }
+
+  /**
+   * Flattens the tree. The result is a copy that can be modified.
+   */
+  Properties toProperties() {
+    Properties props = new Properties();
+    for (int i = 0; i < names.length; i++) {
+      children[i].flatten(new StringBuilder(names[i]), props);
+    }
+    return props;
+  }
+
+  private void flatten(StringBuilder key, Properties props) {
+    if (value != null) {
+      props.setProperty(key.toString(), value);
+    }
+    int length = key.length();
+    for (int i = 0; i < names.length; i++) {
+      key.append('.').append(names[i]);
+      children[i].flatten(key, props);
+      key.setLength(length);
+    }
+  }
+
+  @CheckForNull
+  private PropertyTree node(String key) {
+    PropertyTree node = this;
+    int start = 0;
+    while (node != null) {
+      int dot = key.indexOf('.', start);
+      String segment = dot < 0 ? key.substring(start) : key.substring(start, dot);
+      int index = Arrays.binarySearch(node.names, segment);
+      node = index >= 0 ? node.children[index] : null;
+      if (dot < 0) {
+        return node;
+      }
+      start = dot + 1;
+    }
+    return null;
+  }
+
+  /**
+   * Mutable copy of a tree, for the updates of several properties. Nodes are copied only when one of their
+   * descendants is set.
+   */
+  private static final class Builder {
+    private final PropertyTree original;
+    private String value;
+    private TreeMap<String, Builder> children;
+
+    Builder(PropertyTree original) {
+      this.original = original;
+      this.value = original.value;
+    }
+
+    void set(String key, String value) {
+      Builder node = this;
+      int start = 0;
+      int dot;
+      while ((dot = key.indexOf('.', start)) >= 0) {
+        node = node.child(key.substring(start, dot));
+        start = dot + 1;
+      }
+      node.child(key.substring(start)).value = value;
+    }
+
+    private Builder child(String name) {
+      if (children == null) {
+        children = new TreeMap<String, Builder>();
+        for (int i = 0; i < original.names.length; i++) {
+          children.put(original.names[i], new Builder(original.children[i]));
+        }
+      }
+      Builder child = children.get(name);
+      if (child == null) {
+        child = new Builder(EMPTY);
+        children.put(name.intern(), child);
+      }
+      return child;
+    }
+
+    PropertyTree build() {
+      int ownValue = value != null ? 1 : 0;
+      if (children == null) {
+        if (value == original.value) {
+          return original;
+        }
+        return new PropertyTree(value, original.names, original.children, original.size - (original.value != null ? 1 : 0) + ownValue);
+      }
+      String[] names = new String[children.size()];
+      PropertyTree[] nodes = new PropertyTree[children.size()];
+      int size = ownValue;
+      int i = 0;
+      for (Map.Entry<String, Builder> entry : children.entrySet()) {
+        names[i] = entry.getKey();
+        nodes[i] = entry.getValue().build();
+        size += nodes[i].size;
+        i++;
+      }
+      return new PropertyTree(value, names, nodes, size);
+    }
+  }
+}
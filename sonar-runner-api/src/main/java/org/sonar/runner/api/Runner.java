@@ -20,28 +20,33 @@
 package org.sonar.runner.api;
 
 import org.sonar.runner.impl.InternalProperties;
+import org.sonar.runner.impl.Logs;
 
 import javax.annotation.Nullable;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @since 2.2
  */
 public abstract class Runner<T extends Runner> {
 
-  private final Properties properties = new Properties();
+  private volatile PropertyTree properties = PropertyTree.EMPTY;
+  private final List<AnalysisListener> analysisListeners = new CopyOnWriteArrayList<AnalysisListener>();
 
   protected Runner() {
   }
 
+  /**
+   * Copy of the properties. Prefer {@link #property(String, String)} to read some values.
+   */
   public Properties properties() {
-    Properties clone = new Properties();
-    clone.putAll(properties);
-    return clone;
+    return properties.toProperties();
   }
 
   /**
@@ -49,8 +54,8 @@ public abstract class Runner<T extends Runner> {
    *
    * @see #setProperty(String, String)
    */
-  public T addProperties(Properties p) {
-    properties.putAll(p);
+  public synchronized T addProperties(Properties p) {
+    properties = properties.withAll(p);
     return (T) this;
   }
 
@@ -60,13 +65,14 @@ public abstract class Runner<T extends Runner> {
    * @see RunnerProperties
    * @see ScanProperties
    */
-  public T setProperty(String key, String value) {
-    properties.setProperty(key, value);
+  public synchronized T setProperty(String key, String value) {
+    properties = properties.with(key, value);
     return (T) this;
   }
 
   public String property(String key, @Nullable String defaultValue) {
-    return properties.getProperty(key, defaultValue);
+    String value = properties.get(key);
+    return value != null ? value : defaultValue;
   }
 
   /**
@@ -86,11 +92,36 @@ public abstract class Runner<T extends Runner> {
     return property(InternalProperties.RUNNER_APP_VERSION, null);
   }
 
+  /**
+   * Subscribe to the progress of the analysis: phases, downloads, memory usage and analysis of modules.
+   *
+   * @since 2.5
+   */
+  public T addAnalysisListener(AnalysisListener listener) {
+    analysisListeners.add(listener);
+    return (T) this;
+  }
+
+  List<AnalysisListener> analysisListeners() {
+    return analysisListeners;
+  }
+
+  void notifyAnalysisListeners(AnalysisEvent event) {
+    for (AnalysisListener listener : analysisListeners) {
+      try {
+        listener.onEvent(event);
+      } catch (RuntimeException e) {
+        // a listener must not fail the analysis
+        Logs.debug("Fail to notify analysis listener: {}", e.getMessage());
+      }
+    }
+  }
+
   public void execute() {
     initDefaultValues();
     new SourceEncoding().init(this);
     new Dirs().init(this);
-    String dumpToFile = properties.getProperty(InternalProperties.RUNNER_DUMP_TO_FILE);
+    String dumpToFile = properties.get(InternalProperties.RUNNER_DUMP_TO_FILE);
     if (dumpToFile != null) {
       File dumpFile = new File(dumpToFile);
       writeProperties(dumpFile);
@@ -116,7 +147,7 @@ public abstract class Runner<T extends Runner> {
     setDefaultValue(InternalProperties.RUNNER_APP_VERSION, RunnerVersion.version());
   }
 
-  private void setDefaultValue(String key, String value) {
+  private synchronized void setDefaultValue(String key, String value) {
     if (!properties.containsKey(key)) {
       setProperty(key, value);
     }
@@ -27,7 +27,7 @@ import java.util.Locale;
 class SourceEncoding {
 
   void init(Runner<?> runner) {
-    boolean onProject = Utils.taskRequiresProject(runner.properties());
+    boolean onProject = Utils.taskRequiresProject(runner);
     if (onProject) {
       String sourceEncoding = runner.property(ScanProperties.PROJECT_SOURCE_ENCODING, "");
       boolean platformDependent = false;
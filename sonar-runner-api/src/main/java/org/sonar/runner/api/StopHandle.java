@@ -0,0 +1,90 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link ProcessMonitor} that is notified of the stop request instead of being polled, so that the forked
+ * process is killed as soon as {@link #cancel()} is called.
+ * <p/>
+ * Example:
+ * <pre>
+ * StopHandle handle = new StopHandle();
+ * ForkedRunner runner = ForkedRunner.create(handle);
+ * // from another thread
+ * handle.cancel();
+ * </pre>
+ *
+ * @since 2.5
+ */
+public class StopHandle implements ProcessMonitor {
+
+  private final List<Runnable> listeners = new ArrayList<Runnable>();
+  private boolean cancelled = false;
+
+  /**
+   * Requests the forked process to be killed. It has no effect if already requested.
+   */
+  public void cancel() {
+    List<Runnable> toNotify;
+    synchronized (this) {
+      if (cancelled) {
+        return;
+      }
+      cancelled = true;
+      toNotify = new ArrayList<Runnable>(listeners);
+      listeners.clear();
+    }
+    for (Runnable listener : toNotify) {
+      listener.run();
+    }
+  }
+
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Same as {@link #isCancelled()}
+   */
+  @Override
+  public boolean stop() {
+    return isCancelled();
+  }
+
+  /**
+   * The listener is executed by the thread that cancels, or immediately if already cancelled.
+   */
+  void addListener(Runnable listener) {
+    synchronized (this) {
+      if (!cancelled) {
+        listeners.add(listener);
+        return;
+      }
+    }
+    listener.run();
+  }
+
+  synchronized void removeListener(Runnable listener) {
+    listeners.remove(listener);
+  }
+}
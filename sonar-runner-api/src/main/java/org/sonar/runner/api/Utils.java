@@ -30,7 +30,6 @@ import java.nio.file.Path;
 import java.nio.file.SimpleFileVisitor;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.Properties;
 import java.nio.file.attribute.*;
 
 class Utils {
@@ -54,8 +53,8 @@ class Utils {
     return sb.toString();
   }
 
-  static boolean taskRequiresProject(Properties props) {
-    Object task = props.get(RunnerProperties.TASK);
+  static boolean taskRequiresProject(Runner<?> runner) {
+    String task = runner.property(RunnerProperties.TASK, null);
     return task == null || ScanProperties.SCAN_TASK.equals(task);
   }
 
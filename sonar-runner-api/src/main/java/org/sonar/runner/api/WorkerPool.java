@@ -0,0 +1,418 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import org.sonar.runner.impl.BatchLauncherWorker;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of warm JVMs executing analyses forked by {@link ForkedRunner}, so that JVM startup and loading of batch classes
+ * are not paid by each analysis. Workers run {@link BatchLauncherWorker}. They are started in background when the pool is
+ * created, replaced when they exit after a given number of analyses or above a heap threshold, and stopped when unused
+ * during the idle timeout.
+ * <p/>
+ * Pools are shared by the runners of the JVM that fork the same command with the same size and idle timeout.
+ * <p/>
+ * Lines printed by a worker between two analyses, for example by threads of the previous analysis that are not
+ * stopped yet, are dropped.
+ */
+class WorkerPool {
+
+  private static final Map<String, WorkerPool> POOLS = new HashMap<String, WorkerPool>();
+  private static final String END_OF_STREAM = "";
+  private static final String STOPPED = "stopped";
+  private static final long POLL_INTERVAL_MS = 100L;
+  private static ScheduledExecutorService reaper;
+
+  private final Command command;
+  private final Charset charset;
+  private final int size;
+  private final long idleTimeoutMs;
+  private final Deque<Worker> idle = new ArrayDeque<Worker>();
+  private int started = 0;
+
+  WorkerPool(Command command, Charset charset, int size, long idleTimeoutMs) {
+    this.command = command;
+    this.charset = charset;
+    this.size = size;
+    this.idleTimeoutMs = idleTimeoutMs;
+  }
+
+  /**
+   * @param charset encoding of the outputs of workers
+   */
+  static synchronized WorkerPool get(Command command, Charset charset, int size, long idleTimeoutMs) {
+    String key = command.toString() + command.envVariables() + charset + "|" + size + "|" + idleTimeoutMs;
+    WorkerPool pool = POOLS.get(key);
+    if (pool == null) {
+      pool = new WorkerPool(command, charset, size, idleTimeoutMs);
+      POOLS.put(key, pool);
+      pool.prestart(size);
+      scheduleReaping(pool);
+    }
+    return pool;
+  }
+
+  private static void scheduleReaping(final WorkerPool pool) {
+    if (reaper == null) {
+      reaper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+          Thread thread = new Thread(r, "sonar-runner-worker-reaper");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+    long period = Math.max(1000L, pool.idleTimeoutMs / 2);
+    reaper.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        pool.stopIdleWorkers(System.currentTimeMillis());
+      }
+    }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Executes an analysis on a warm worker, waiting for a worker to be available if all are busy.
+   *
+   * @return the status of the analysis, 0 on success
+   */
+  int execute(File propertiesFile, ChunkConsumer stdOut, ChunkConsumer stdErr, long timeoutMilliseconds, @Nullable ProcessMonitor processMonitor) {
+    Worker worker = acquire();
+    boolean reusable = false;
+    try {
+      Result result = worker.execute(propertiesFile, stdOut, stdErr, timeoutMilliseconds, processMonitor);
+      reusable = result.reusable;
+      return result.status;
+    } finally {
+      release(worker, reusable);
+    }
+  }
+
+  private Worker acquire() {
+    synchronized (this) {
+      while (true) {
+        Worker worker = idle.pollFirst();
+        if (worker != null) {
+          if (worker.isAlive()) {
+            return worker;
+          }
+          started--;
+        } else if (started < size) {
+          started++;
+          break;
+        } else {
+          waitForRelease();
+        }
+      }
+    }
+    try {
+      return Worker.start(command, charset);
+    } catch (IOException e) {
+      workerStopped();
+      throw new CommandException("Fail to start worker", command, e);
+    }
+  }
+
+  private void waitForRelease() {
+    try {
+      wait();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for a worker", e);
+    }
+  }
+
+  private void release(Worker worker, boolean reusable) {
+    if (reusable && worker.isAlive()) {
+      synchronized (this) {
+        worker.lastUsedAt = System.currentTimeMillis();
+        // most recently used workers first, so that the others can be stopped when idle
+        idle.addFirst(worker);
+        notifyAll();
+      }
+    } else {
+      worker.stop();
+      workerStopped();
+      prestart(1);
+    }
+  }
+
+  private synchronized void workerStopped() {
+    started--;
+    notifyAll();
+  }
+
+  /**
+   * Starts workers in background, up to the size of the pool
+   */
+  private void prestart(final int count) {
+    Thread thread = new Thread("sonar-runner-worker-starter") {
+      @Override
+      public void run() {
+        for (int i = 0; i < count; i++) {
+          synchronized (WorkerPool.this) {
+            if (started >= size) {
+              return;
+            }
+            started++;
+          }
+          try {
+            Worker worker = Worker.start(command, charset);
+            release(worker, true);
+          } catch (IOException e) {
+            workerStopped();
+            return;
+          }
+        }
+      }
+    };
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  synchronized void stopIdleWorkers(long now) {
+    Iterator<Worker> it = idle.iterator();
+    while (it.hasNext()) {
+      Worker worker = it.next();
+      if (now - worker.lastUsedAt >= idleTimeoutMs || !worker.isAlive()) {
+        it.remove();
+        worker.stop();
+        started--;
+        notifyAll();
+      }
+    }
+  }
+
+  synchronized int idleWorkers() {
+    return idle.size();
+  }
+
+  static class Result {
+    final int status;
+    final boolean reusable;
+
+    Result(int status, boolean reusable) {
+      this.status = status;
+      this.reusable = reusable;
+    }
+  }
+
+  static class Worker {
+    private final Command command;
+    private final Process process;
+    private final Writer stdIn;
+    private final BlockingQueue<String> results = new LinkedBlockingQueue<String>();
+    private final BlockingQueue<String> errorEnds = new LinkedBlockingQueue<String>();
+    private volatile ChunkConsumer stdOut;
+    private volatile ChunkConsumer stdErr;
+    private volatile Exception consumerException;
+    long lastUsedAt;
+
+    private Worker(Command command, Process process, Charset charset) {
+      this.command = command;
+      this.process = process;
+      this.stdIn = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+      pump(process.getInputStream(), true, charset);
+      pump(process.getErrorStream(), false, charset);
+    }
+
+    static Worker start(Command command, Charset charset) throws IOException {
+      ProcessBuilder builder = new ProcessBuilder(command.toStrings());
+      builder.directory(command.directory());
+      builder.environment().putAll(command.envVariables());
+      return new Worker(command, builder.start(), charset);
+    }
+
+    Result execute(File propertiesFile, ChunkConsumer out, ChunkConsumer err, long timeoutMilliseconds, @Nullable ProcessMonitor processMonitor) {
+      this.errorEnds.clear();
+      this.stdOut = out;
+      this.stdErr = err;
+      this.consumerException = null;
+      Runnable wakeUp = new Runnable() {
+        @Override
+        public void run() {
+          results.add(STOPPED);
+        }
+      };
+      if (processMonitor instanceof StopHandle) {
+        ((StopHandle) processMonitor).addListener(wakeUp);
+      }
+      try {
+        stdIn.write(propertiesFile.getAbsolutePath() + "\n");
+        stdIn.flush();
+        long deadline = System.currentTimeMillis() + timeoutMilliseconds;
+        Result result = waitForResult(deadline, timeoutMilliseconds, processMonitor);
+        // the markers of the two outputs are not read in order
+        errorEnds.poll(Math.max(0L, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        flushOutputs();
+        if (consumerException != null) {
+          throw new CommandException("Error inside output stream", command, consumerException);
+        }
+        return result;
+      } catch (IOException e) {
+        throw new CommandException("Fail to send analysis to worker", command, e);
+      } catch (InterruptedException e) {
+        stop();
+        Thread.currentThread().interrupt();
+        throw new CommandException("Interrupted while waiting for worker", command, e);
+      } finally {
+        this.stdOut = null;
+        this.stdErr = null;
+        if (processMonitor instanceof StopHandle) {
+          ((StopHandle) processMonitor).removeListener(wakeUp);
+        }
+      }
+    }
+
+    private Result waitForResult(long deadline, long timeoutMilliseconds, @Nullable ProcessMonitor processMonitor) throws InterruptedException {
+      while (true) {
+        String line = results.poll(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+        if (line != null && !STOPPED.equals(line)) {
+          return parseResult(line);
+        }
+        if (processMonitor != null && processMonitor.stop()) {
+          process.destroy();
+          return new Result(process.waitFor(), false);
+        }
+        if (System.currentTimeMillis() > deadline) {
+          process.destroy();
+          throw new CommandException("Timeout exceeded: " + timeoutMilliseconds + " ms", command, null);
+        }
+      }
+    }
+
+    private Result parseResult(String line) throws InterruptedException {
+      if (END_OF_STREAM.equals(line)) {
+        // the worker died during the analysis
+        return new Result(process.waitFor(), false);
+      }
+      String[] fields = line.split(" ");
+      return new Result(Integer.parseInt(fields[1]), BatchLauncherWorker.DONE.equals(fields[0]));
+    }
+
+    boolean isAlive() {
+      try {
+        process.exitValue();
+        return false;
+      } catch (IllegalThreadStateException e) {
+        return true;
+      }
+    }
+
+    /**
+     * The worker exits when its standard input is closed
+     */
+    void stop() {
+      Utils.closeQuietly(stdIn);
+      if (isAlive()) {
+        process.destroy();
+      }
+    }
+
+    private void pump(final InputStream stream, final boolean out, final Charset charset) {
+      Thread thread = new Thread(out ? "sonar-runner-worker-stdout" : "sonar-runner-worker-stderr") {
+        @Override
+        public void run() {
+          try (InputStream input = stream) {
+            new LineReader(charset).read(input, new ChunkConsumer() {
+              @Override
+              public void consumeLine(CharBuffer line) {
+                if (startsWith(line, BatchLauncherWorker.MARKER)) {
+                  (out ? results : errorEnds).add(line.toString().substring(BatchLauncherWorker.MARKER.length()).trim());
+                } else {
+                  consume(out ? stdOut : stdErr, line);
+                }
+              }
+
+              @Override
+              public void flush() {
+                flushOutputs();
+              }
+            });
+          } catch (IOException e) {
+            // the worker is stopped
+          } finally {
+            (out ? results : errorEnds).add(END_OF_STREAM);
+          }
+        }
+      };
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    private static boolean startsWith(CharBuffer line, String prefix) {
+      if (line.remaining() < prefix.length()) {
+        return false;
+      }
+      for (int i = 0; i < prefix.length(); i++) {
+        if (line.get(line.position() + i) != prefix.charAt(i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private void consume(@CheckForNull ChunkConsumer consumer, CharBuffer line) {
+      if (consumer != null && consumerException == null) {
+        try {
+          consumer.consumeLine(line);
+        } catch (Exception e) {
+          consumerException = e;
+        }
+      }
+    }
+
+    private void flushOutputs() {
+      for (ChunkConsumer consumer : new ChunkConsumer[] {stdOut, stdErr}) {
+        if (consumer != null && consumerException == null) {
+          try {
+            consumer.flush();
+          } catch (Exception e) {
+            consumerException = e;
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class BufferedSinkTest {
+
+  ByteArrayOutputStream output = new ByteArrayOutputStream();
+  BufferedSink sink = new BufferedSink(output, StandardCharsets.UTF_8);
+
+  @Test
+  public void should_write_lines_on_flush() throws Exception {
+    sink.consumeLine(CharBuffer.wrap("first"));
+    CharBuffer buffer = CharBuffer.wrap("xx\u00e9t\u00e9xx");
+    buffer.position(2).limit(5);
+    sink.consumeLine(buffer);
+    sink.flush();
+
+    assertThat(output.toString("UTF-8")).isEqualTo(String.format("first%n\u00e9t\u00e9%n"));
+  }
+
+  @Test
+  public void should_write_read_only_buffers() throws Exception {
+    sink.consumeLine(CharBuffer.wrap("foo").asReadOnlyBuffer());
+    sink.flush();
+
+    assertThat(output.toString("UTF-8")).isEqualTo(String.format("foo%n"));
+  }
+
+  @Test
+  public void should_flush_periodically() throws Exception {
+    sink.consumeLine(CharBuffer.wrap("first"));
+    Thread.sleep(150L);
+    assertThat(output.toString("UTF-8")).isEqualTo(String.format("first%n"));
+
+    sink.consumeLine(CharBuffer.wrap("second"));
+    Thread.sleep(150L);
+    assertThat(output.toString("UTF-8")).isEqualTo(String.format("first%nsecond%n"));
+  }
+
+  @Test
+  public void should_flush_single_line_without_waiting_for_next_line() throws Exception {
+    sink.consumeLine(CharBuffer.wrap("Sensor X..."));
+
+    long deadline = System.currentTimeMillis() + 5000L;
+    while (output.size() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10L);
+    }
+    assertThat(output.toString("UTF-8")).isEqualTo(String.format("Sensor X...%n"));
+  }
+}
@@ -29,6 +29,8 @@ import org.junit.rules.TestName;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
+import java.util.Timer;
+import java.util.TimerTask;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.junit.Assert.fail;
@@ -163,6 +165,26 @@ public class CommandExecutorTest {
     assertThat(result).isNotEqualTo(0);
   }
 
+  @Test
+  public void should_stop_when_handle_is_cancelled() throws Exception {
+    String executable = getScript("forever");
+    Command command = Command.builder().setExecutable(executable).setDirectory(workDir).build();
+    final StopHandle handle = new StopHandle();
+    new Timer(true).schedule(new TimerTask() {
+      @Override
+      public void run() {
+        handle.cancel();
+      }
+    }, 500L);
+
+    long start = System.currentTimeMillis();
+    int result = CommandExecutor.create().execute(command, stdout, stderr, 10000L, handle);
+
+    assertThat(System.currentTimeMillis() - start).isGreaterThanOrEqualTo(500L).isLessThan(10000L);
+    assertThat(result).isNotEqualTo(0);
+    assertThat(handle.isCancelled()).isTrue();
+  }
+
   @Test
   public void should_fail_if_script_not_found() {
     thrown.expect(CommandException.class);
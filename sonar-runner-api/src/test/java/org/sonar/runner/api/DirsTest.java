@@ -24,6 +24,9 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.util.Arrays;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import static org.fest.assertions.Assertions.assertThat;
 
@@ -92,4 +95,68 @@ public class DirsTest {
     assertThat(workDir).isNotNull();
     assertThat(workDir.getCanonicalPath()).isEqualTo(new File(projectDir, "relative/path").getCanonicalPath());
   }
+
+  @Test
+  public void should_delete_project_work_dir() throws Exception {
+    File projectDir = temp.newFolder();
+    File oldFile = new File(projectDir, ".sonar/report/old.txt");
+    write(oldFile);
+    runner.setProperty("sonar.task", "scan");
+    runner.setProperty("sonar.projectBaseDir", projectDir.getAbsolutePath());
+    dirs.init(runner);
+
+    assertThat(oldFile).doesNotExist();
+  }
+
+  @Test
+  public void should_move_project_work_dir_to_trash_when_async_cleaning() throws Exception {
+    File projectDir = temp.newFolder();
+    File oldFile = new File(projectDir, ".sonar/report/old.txt");
+    write(oldFile);
+    File staleTrash = new File(projectDir, "..sonar" + Dirs.TRASH_SUFFIX + "123");
+    write(new File(staleTrash, "old.txt"));
+    runner.setProperty("sonar.task", "scan");
+    runner.setProperty("sonar.projectBaseDir", projectDir.getAbsolutePath());
+    runner.setProperty("sonarRunner.asyncWorkDirCleaning", "true");
+    dirs.init(runner);
+
+    assertThat(oldFile).doesNotExist();
+    long timeout = System.currentTimeMillis() + 10000;
+    while (projectDir.list().length > 0 && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    assertThat(projectDir.list()).isEmpty();
+  }
+
+  @Test
+  public void should_delete_trash_dirs_in_parallel() throws Exception {
+    File trash1 = temp.newFolder();
+    File trash2 = temp.newFolder();
+    for (int i = 0; i < 10; i++) {
+      write(new File(trash1, "dir" + i + "/file.txt"));
+      write(new File(trash2, "file" + i + ".txt"));
+    }
+    Dirs.deleteInParallel(Arrays.asList(trash1, trash2));
+
+    assertThat(trash1).doesNotExist();
+    assertThat(trash2).doesNotExist();
+  }
+
+  @Test
+  public void should_keep_project_work_dir_when_incremental() throws Exception {
+    File projectDir = temp.newFolder();
+    File oldFile = new File(projectDir, ".sonar/report/old.txt");
+    write(oldFile);
+    runner.setProperty("sonar.task", "scan");
+    runner.setProperty("sonar.projectBaseDir", projectDir.getAbsolutePath());
+    runner.setProperty("sonarRunner.incrementalWorkDir", "true");
+    dirs.init(runner);
+
+    assertThat(oldFile).exists();
+  }
+
+  private static void write(File file) throws Exception {
+    file.getParentFile().mkdirs();
+    Files.write(file.toPath(), "foo".getBytes(StandardCharsets.UTF_8));
+  }
 }
@@ -31,9 +31,17 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
@@ -76,6 +84,20 @@ public class EmbeddedRunnerTest {
     assertThat(runner.property(InternalProperties.RUNNER_MASK_RULES, null)).isEqualTo("UNMASK|org.slf4j.Logger,MASK|org.slf4j.,MASK|ch.qos.logback.,UNMASK|");
   }
 
+  @Test
+  public void should_enable_classloader_cache() {
+    EmbeddedRunner runner = EmbeddedRunner.create();
+    assertThat(runner.property(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE, null)).isNull();
+
+    runner.setClassloaderCacheSize(2);
+    assertThat(runner.property(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE, null)).isEqualTo("2");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void should_fail_on_negative_classloader_cache_size() {
+    EmbeddedRunner.create().setClassloaderCacheSize(-1);
+  }
+
   @Test
   public void should_add_extensions() {
     EmbeddedRunner runner = EmbeddedRunner.create();
@@ -125,6 +147,34 @@ public class EmbeddedRunnerTest {
     }));
   }
 
+  @Test
+  public void should_launch_batch_asynchronously() throws Exception {
+    BatchLauncher batchLauncher = mock(BatchLauncher.class);
+    EmbeddedRunner runner = new EmbeddedRunner(batchLauncher);
+    runner.setProperty("sonar.projectKey", "foo");
+
+    runner.executeAsync().get(10, TimeUnit.SECONDS);
+
+    verify(batchLauncher).execute(any(Properties.class), anyListOf(Object.class));
+  }
+
+  @Test
+  public void should_fail_future_if_batch_fails() throws Exception {
+    BatchLauncher batchLauncher = mock(BatchLauncher.class);
+    IllegalStateException error = new IllegalStateException("boom");
+    doThrow(error).when(batchLauncher).execute(any(Properties.class), anyListOf(Object.class));
+    EmbeddedRunner runner = new EmbeddedRunner(batchLauncher);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      runner.executeAsync(executor).get(10, TimeUnit.SECONDS);
+      fail();
+    } catch (ExecutionException e) {
+      assertThat(e.getCause()).isSameAs(error);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   @Test
   public void should_launch_in_simulation_mode() throws IOException {
     File dump = temp.newFile();
@@ -24,12 +24,14 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.mockito.ArgumentMatcher;
+import org.sonar.runner.impl.InternalProperties;
 import org.sonar.runner.impl.JarExtractor;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.charset.Charset;
 import java.util.Properties;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -78,11 +80,11 @@ public class ForkedRunnerTest {
     ForkedRunner runner = new ForkedRunner(jarExtractor, commandExecutor);
     runner.execute();
 
-    verify(commandExecutor).execute(any(Command.class), argThat(new StdConsumerMatcher(System.out)), argThat(new StdConsumerMatcher(System.err)), anyLong(),
-        any(ProcessMonitor.class));
+    verify(commandExecutor).execute(any(Command.class), argThat(new StdConsumerMatcher(System.out)), argThat(new StdConsumerMatcher(System.err)),
+        eq(Charset.defaultCharset()), anyLong(), any(ProcessMonitor.class));
   }
 
-  static class StdConsumerMatcher extends ArgumentMatcher<StreamConsumer> {
+  static class StdConsumerMatcher extends ArgumentMatcher<ChunkConsumer> {
     PrintStream output;
 
     StdConsumerMatcher(PrintStream output) {
@@ -90,7 +92,19 @@ public class ForkedRunnerTest {
     }
 
     public boolean matches(Object o) {
-      return ((PrintStreamConsumer) o).output == output;
+      return ((BufferedSink) o).output == output;
+    }
+  }
+
+  static class AdapterMatcher extends ArgumentMatcher<ChunkConsumer> {
+    StreamConsumer consumer;
+
+    AdapterMatcher(StreamConsumer consumer) {
+      this.consumer = consumer;
+    }
+
+    public boolean matches(Object o) {
+      return ((StreamConsumerAdapter) o).consumer == consumer;
     }
   }
 
@@ -116,11 +130,30 @@ public class ForkedRunnerTest {
     assertThat(properties.getProperty("SONAR_HOME")).isNull();
   }
 
+  @Test
+  public void progress_port_and_token_should_be_written_in_temp_file() throws Exception {
+    ForkedRunner runner = new ForkedRunner(createMockExtractor(), mock(CommandExecutor.class));
+    runner.setProperty("sonar.login", "admin");
+    ProgressServer progressServer = ProgressServer.start(runner);
+    try {
+      ForkedRunner.ForkCommand forkCommand = runner.createCommand(progressServer);
+
+      Properties properties = new Properties();
+      properties.load(new FileInputStream(forkCommand.propertiesFile));
+      assertThat(properties.getProperty("sonar.login")).isEqualTo("admin");
+      assertThat(properties.getProperty(InternalProperties.RUNNER_PROGRESS_PORT)).isEqualTo(String.valueOf(progressServer.port()));
+      assertThat(properties.getProperty(InternalProperties.RUNNER_PROGRESS_TOKEN)).isEqualTo(progressServer.token());
+      assertThat(runner.properties().getProperty(InternalProperties.RUNNER_PROGRESS_PORT)).isNull();
+    } finally {
+      progressServer.close();
+    }
+  }
+
   @Test
   public void test_java_command() throws IOException {
     JarExtractor jarExtractor = mock(JarExtractor.class);
     final File jar = temp.newFile();
-    when(jarExtractor.extractToTemp("sonar-runner-impl")).thenReturn(jar);
+    when(jarExtractor.extractToCache("sonar-runner-impl")).thenReturn(jar);
 
     CommandExecutor commandExecutor = mock(CommandExecutor.class);
 
@@ -137,6 +170,8 @@ public class ForkedRunnerTest {
     assertThat(runner.jvmArguments()).contains("-Xmx512m");
     runner.execute();
 
+    // shared by forks
+    assertThat(jar).exists();
     verify(commandExecutor).execute(argThat(new ArgumentMatcher<Command>() {
       public boolean matches(Object o) {
         Command command = (Command) o;
@@ -153,10 +188,37 @@ public class ForkedRunnerTest {
         assertThat(command.envVariables().get("SONAR_HOME")).isEqualTo("/path/to/sonar");
         return true;
       }
-    }), any(PrintStreamConsumer.class), any(PrintStreamConsumer.class), anyLong(), any(ProcessMonitor.class));
+    }), any(ChunkConsumer.class), any(ChunkConsumer.class), any(Charset.class), anyLong(), any(ProcessMonitor.class));
 
   }
 
+  @Test
+  public void test_worker_command() throws IOException {
+    JarExtractor jarExtractor = mock(JarExtractor.class);
+    File jar = temp.newFile();
+    when(jarExtractor.extractToCache("sonar-runner-impl")).thenReturn(jar);
+
+    ForkedRunner runner = new ForkedRunner(jarExtractor, mock(CommandExecutor.class));
+    runner.setJavaExecutable("java");
+    runner.addJvmArguments("-Xmx512m");
+    runner.setWorkerPoolSize(2);
+    runner.setProperty("sonarRunner.workerPool.maxJobsPerWorker", "5");
+
+    Command command = runner.createWorkerCommand(runner.createCommand());
+    assertThat(command.toStrings()).containsOnly("java", "-Xmx512m", "-cp", jar.getAbsolutePath(), "org.sonar.runner.impl.BatchLauncherWorker", "5", "80");
+    assertThat(runner.property("sonarRunner.workerPool.size", null)).isEqualTo("2");
+  }
+
+  @Test
+  public void should_fail_if_negative_worker_pool_size() {
+    try {
+      ForkedRunner.create().setWorkerPoolSize(-1);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Size of worker pool must be positive or zero: -1");
+    }
+  }
+
   @Test
   public void test_failure_of_java_command() throws IOException {
     JarExtractor jarExtractor = createMockExtractor();
@@ -176,14 +238,15 @@ public class ForkedRunnerTest {
 
   private CommandExecutor createMockRunnerWithExecutionStatus(int executionStatus) {
     CommandExecutor commandExecutor = mock(CommandExecutor.class);
-    when(commandExecutor.execute(any(Command.class), eq(out), eq(err), anyLong(), eq(processMonitor))).thenReturn(executionStatus);
+    when(commandExecutor.execute(any(Command.class), argThat(new AdapterMatcher(out)), argThat(new AdapterMatcher(err)), any(Charset.class), anyLong(),
+      eq(processMonitor))).thenReturn(executionStatus);
     return commandExecutor;
   }
 
   private JarExtractor createMockExtractor() throws IOException {
     JarExtractor jarExtractor = mock(JarExtractor.class);
     final File jar = temp.newFile();
-    when(jarExtractor.extractToTemp("sonar-runner-impl")).thenReturn(jar);
+    when(jarExtractor.extractToCache("sonar-runner-impl")).thenReturn(jar);
     return jarExtractor;
   }
 
@@ -0,0 +1,79 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import org.junit.Test;
+
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LevelFilterTest {
+
+  @Test
+  public void should_find_level() {
+    assertThat(LevelFilter.levelOf(CharBuffer.wrap("DEBUG: message"))).isEqualTo(LevelFilter.Level.DEBUG);
+    assertThat(LevelFilter.levelOf(CharBuffer.wrap("12:00:00.000 INFO  - message"))).isEqualTo(LevelFilter.Level.INFO);
+    assertThat(LevelFilter.levelOf(CharBuffer.wrap("[WARN] message"))).isEqualTo(LevelFilter.Level.WARN);
+    assertThat(LevelFilter.levelOf(CharBuffer.wrap("ERROR"))).isEqualTo(LevelFilter.Level.ERROR);
+    assertThat(LevelFilter.levelOf(CharBuffer.wrap("\tat org.Foo.bar(Foo.java:12)"))).isNull();
+    assertThat(LevelFilter.levelOf(CharBuffer.wrap("DEBUGGING INFOS"))).isNull();
+    assertThat(LevelFilter.levelOf(CharBuffer.wrap("xDEBUG"))).isNull();
+    assertThat(LevelFilter.levelOf(CharBuffer.wrap("a message that is longer than the searched prefix of lines DEBUG"))).isNull();
+  }
+
+  @Test
+  public void should_find_level_from_buffer_position() {
+    CharBuffer buffer = CharBuffer.wrap("DEBUG: first\nINFO: second");
+    buffer.position(13);
+    assertThat(LevelFilter.levelOf(buffer)).isEqualTo(LevelFilter.Level.INFO);
+  }
+
+  @Test
+  public void should_drop_lines_below_level() {
+    ListConsumer delegate = new ListConsumer();
+    LevelFilter filter = new LevelFilter(LevelFilter.Level.INFO, delegate);
+    for (String line : Arrays.asList("INFO: start", "DEBUG: details", "  continuation of details", "WARN: warning", "  continuation of warning", "done")) {
+      filter.consumeLine(CharBuffer.wrap(line));
+    }
+    filter.flush();
+
+    assertThat(delegate.lines).isEqualTo(Arrays.asList("INFO: start", "WARN: warning", "  continuation of warning", "done"));
+    assertThat(delegate.flushed).isTrue();
+  }
+
+  private static class ListConsumer implements ChunkConsumer {
+    final List<String> lines = new ArrayList<String>();
+    boolean flushed = false;
+
+    @Override
+    public void consumeLine(CharBuffer line) {
+      lines.add(line.toString());
+    }
+
+    @Override
+    public void flush() {
+      flushed = true;
+    }
+  }
+}
@@ -0,0 +1,113 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LineReaderTest {
+
+  ListConsumer consumer = new ListConsumer();
+
+  @Test
+  public void should_split_lines() throws Exception {
+    read("first\nsecond\r\n\nlast", StandardCharsets.UTF_8);
+
+    assertThat(consumer.lines).isEqualTo(Arrays.asList("first", "second", "", "last"));
+    assertThat(consumer.flushes).isEqualTo(1);
+  }
+
+  @Test
+  public void should_not_add_empty_last_line() throws Exception {
+    read("first\n", StandardCharsets.UTF_8);
+
+    assertThat(consumer.lines).isEqualTo(Arrays.asList("first"));
+  }
+
+  @Test
+  public void should_read_empty_stream() throws Exception {
+    read("", StandardCharsets.UTF_8);
+
+    assertThat(consumer.lines).isEmpty();
+    assertThat(consumer.flushes).isEqualTo(1);
+  }
+
+  @Test
+  public void should_decode_with_charset() throws Exception {
+    read("\u00e9t\u00e9\n\u20ac", StandardCharsets.UTF_8);
+    assertThat(consumer.lines).isEqualTo(Arrays.asList("\u00e9t\u00e9", "\u20ac"));
+
+    consumer = new ListConsumer();
+    read("\u00e9t\u00e9", StandardCharsets.ISO_8859_1);
+    assertThat(consumer.lines).isEqualTo(Arrays.asList("\u00e9t\u00e9"));
+  }
+
+  @Test
+  public void should_read_lines_longer_than_buffer() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 50000; i++) {
+      sb.append((char) ('a' + i % 26));
+    }
+    String longLine = sb.toString();
+    read("short\n" + longLine + "\n" + longLine, StandardCharsets.UTF_8);
+
+    assertThat(consumer.lines).isEqualTo(Arrays.asList("short", longLine, longLine));
+  }
+
+  @Test
+  public void should_read_many_lines() throws Exception {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      sb.append("line ").append(i).append('\n');
+    }
+    read(sb.toString(), StandardCharsets.UTF_8);
+
+    assertThat(consumer.lines).hasSize(10000);
+    assertThat(consumer.lines.get(9999)).isEqualTo("line 9999");
+  }
+
+  private void read(String s, Charset charset) throws Exception {
+    new LineReader(charset).read(new ByteArrayInputStream(s.getBytes(charset)), consumer);
+  }
+
+  private static class ListConsumer implements ChunkConsumer {
+    final List<String> lines = new ArrayList<String>();
+    int flushes = 0;
+
+    @Override
+    public void consumeLine(CharBuffer line) {
+      lines.add(line.toString());
+    }
+
+    @Override
+    public void flush() {
+      flushes++;
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ProgressServerTest {
+
+  @Test
+  public void should_parse_flat_json() {
+    Map<String, Object> fields = ProgressServer.parse("{\"type\":\"phase\", \"name\":\"a\\\"b\\n\\u0041\", \"bytes\":42, \"ratio\":0.5, \"ok\":true, \"ko\":false, \"none\":null}");
+
+    assertThat(fields.get("type")).isEqualTo("phase");
+    assertThat(fields.get("name")).isEqualTo("a\"b\nA");
+    assertThat(fields.get("bytes")).isEqualTo(42L);
+    assertThat(fields.get("ratio")).isEqualTo(0.5);
+    assertThat(fields.get("ok")).isEqualTo(true);
+    assertThat(fields.get("ko")).isEqualTo(false);
+    assertThat(fields.containsKey("none")).isTrue();
+    assertThat(ProgressServer.parse("{}")).isEmpty();
+  }
+
+  @Test
+  public void should_return_null_on_invalid_json() {
+    assertThat(ProgressServer.parse("")).isNull();
+    assertThat(ProgressServer.parse("not json")).isNull();
+    assertThat(ProgressServer.parse("{\"type\":")).isNull();
+    assertThat(ProgressServer.parse("{\"type\":\"phase\"")).isNull();
+    assertThat(ProgressServer.parse("{\"bytes\":4-2}")).isNull();
+  }
+
+  @Test
+  public void should_notify_listeners_of_events_sent_with_token() throws Exception {
+    final List<AnalysisEvent> events = new CopyOnWriteArrayList<AnalysisEvent>();
+    SimpleRunner runner = new SimpleRunner().addAnalysisListener(new AnalysisListener() {
+      @Override
+      public void onEvent(AnalysisEvent event) {
+        events.add(event);
+      }
+    });
+    ProgressServer server = ProgressServer.start(runner);
+
+    send(server.port(), "bad-token", "{\"type\":\"phase\"}");
+    send(server.port(), server.token(), "{\"type\":\"phase\",\"name\":\"download\",\"time\":12}\ngarbage\n{\"type\":\"end\",\"success\":true}");
+    waitForEvents(events, 2);
+    server.close();
+
+    assertThat(events).hasSize(2);
+    assertThat(events.get(0).type()).isEqualTo(AnalysisEvent.PHASE);
+    assertThat(events.get(0).getString("name")).isEqualTo("download");
+    assertThat(events.get(0).time()).isEqualTo(12L);
+    assertThat(events.get(1).type()).isEqualTo(AnalysisEvent.END);
+    assertThat(events.get(1).get("success")).isEqualTo(true);
+  }
+
+  private static void send(int port, String token, String lines) throws Exception {
+    try (Socket socket = new Socket(InetAddress.getByName(null), port);
+      Writer writer = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8)) {
+      writer.write(token + "\n" + lines + "\n");
+    }
+  }
+
+  private static void waitForEvents(List<AnalysisEvent> events, int count) throws InterruptedException {
+    for (int i = 0; i < 500 && events.size() < count; i++) {
+      Thread.sleep(10L);
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class PropertyTreeTest {
+
+  @Test
+  public void should_get_values() {
+    PropertyTree tree = PropertyTree.EMPTY
+      .with("sonar.projectKey", "foo")
+      .with("sonar", "root")
+      .with("module1.sonar.sources", "src");
+
+    assertThat(tree.get("sonar.projectKey")).isEqualTo("foo");
+    assertThat(tree.get("sonar")).isEqualTo("root");
+    assertThat(tree.get("module1.sonar.sources")).isEqualTo("src");
+    assertThat(tree.get("module1")).isNull();
+    assertThat(tree.get("module1.sonar")).isNull();
+    assertThat(tree.get("unknown.key")).isNull();
+    assertThat(tree.containsKey("sonar.projectKey")).isTrue();
+    assertThat(tree.containsKey("module1")).isFalse();
+    assertThat(tree.size()).isEqualTo(3);
+  }
+
+  @Test
+  public void should_be_immutable() {
+    PropertyTree tree = PropertyTree.EMPTY.with("sonar.projectKey", "foo");
+    PropertyTree updated = tree.with("sonar.projectKey", "bar").with("sonar.sources", "src");
+
+    assertThat(tree.get("sonar.projectKey")).isEqualTo("foo");
+    assertThat(tree.get("sonar.sources")).isNull();
+    assertThat(tree.size()).isEqualTo(1);
+    assertThat(updated.get("sonar.projectKey")).isEqualTo("bar");
+    assertThat(updated.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_convert_from_and_to_properties() {
+    Properties props = new Properties();
+    props.setProperty("sonar.projectKey", "foo");
+    props.setProperty("module1.sonar.projectKey", "bar");
+    props.setProperty("module1.module11.sonar.sources", "src");
+    props.setProperty("", "empty key");
+    props.setProperty(".leading", "dot");
+    props.setProperty("trailing.", "dot");
+    props.setProperty("double..dot", "dot");
+
+    PropertyTree tree = PropertyTree.of(props);
+
+    assertThat(tree.size()).isEqualTo(props.size());
+    assertThat(tree.get("")).isEqualTo("empty key");
+    assertThat(tree.get("trailing.")).isEqualTo("dot");
+    assertThat(tree.toProperties()).isEqualTo(props);
+  }
+
+  @Test
+  public void should_view_subtree_without_prefix() {
+    PropertyTree tree = PropertyTree.EMPTY
+      .with("module1", "value")
+      .with("module1.sonar.sources", "src")
+      .with("module1.module11.sonar.sources", "src11")
+      .with("module2.sonar.sources", "other");
+
+    PropertyTree module1 = tree.subtree("module1");
+
+    assertThat(module1.size()).isEqualTo(2);
+    assertThat(module1.get("sonar.sources")).isEqualTo("src");
+    assertThat(module1.get("module11.sonar.sources")).isEqualTo("src11");
+    assertThat(module1.toProperties().containsKey("")).isFalse();
+    assertThat(tree.subtree("module3").isEmpty()).isTrue();
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void should_fail_on_null_value() {
+    PropertyTree.EMPTY.with("sonar.projectKey", null);
+  }
+
+  @Test
+  public void should_add_nothing() {
+    PropertyTree tree = PropertyTree.EMPTY.with("sonar.projectKey", "foo");
+    assertThat(tree.withAll(new Properties())).isSameAs(tree);
+  }
+
+  @Test
+  public void should_set_properties_one_by_one_as_when_added_at_once() {
+    Properties props = new Properties();
+    PropertyTree tree = PropertyTree.EMPTY;
+    // keys are not sorted
+    for (int i = 0; i < 200; i++) {
+      String key = "module" + ((i * 37) % 50) + ".sonar.property" + ((i * 71) % 200);
+      props.setProperty(key, "value" + i);
+      tree = tree.with(key, "value" + i);
+    }
+
+    assertThat(tree.size()).isEqualTo(props.size());
+    assertThat(tree.toProperties()).isEqualTo(props);
+    assertThat(tree.toProperties()).isEqualTo(PropertyTree.of(props).toProperties());
+  }
+
+  @Test
+  public void should_not_copy_tree_when_value_is_unchanged() {
+    PropertyTree tree = PropertyTree.EMPTY.with("module1.sonar.sources", "src");
+    assertThat(tree.with("module1.sonar.sources", "src")).isSameAs(tree);
+  }
+}
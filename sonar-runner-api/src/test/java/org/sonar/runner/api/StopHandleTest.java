@@ -0,0 +1,66 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class StopHandleTest {
+
+  StopHandle handle = new StopHandle();
+
+  @Test
+  public void should_notify_listeners_once() {
+    Runnable listener = mock(Runnable.class);
+    handle.addListener(listener);
+    assertThat(handle.stop()).isFalse();
+
+    handle.cancel();
+    handle.cancel();
+
+    verify(listener, times(1)).run();
+    assertThat(handle.isCancelled()).isTrue();
+    assertThat(handle.stop()).isTrue();
+  }
+
+  @Test
+  public void should_notify_listener_added_after_cancel() {
+    handle.cancel();
+    Runnable listener = mock(Runnable.class);
+    handle.addListener(listener);
+
+    verify(listener).run();
+  }
+
+  @Test
+  public void should_not_notify_removed_listener() {
+    Runnable listener = mock(Runnable.class);
+    handle.addListener(listener);
+    handle.removeListener(listener);
+    handle.cancel();
+
+    verify(listener, never()).run();
+  }
+}
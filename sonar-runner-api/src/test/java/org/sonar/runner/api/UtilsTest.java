@@ -25,7 +25,6 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Properties;
 
 import static org.mockito.Mockito.verify;
 
@@ -43,18 +42,18 @@ public class UtilsTest {
 
   @Test
   public void task_should_require_project() {
-    Properties props = new Properties();
-    assertThat(Utils.taskRequiresProject(props)).isTrue();
+    SimpleRunner runner = new SimpleRunner();
+    assertThat(Utils.taskRequiresProject(runner)).isTrue();
 
-    props.setProperty("sonar.task", "scan");
-    assertThat(Utils.taskRequiresProject(props)).isTrue();
+    runner.setProperty("sonar.task", "scan");
+    assertThat(Utils.taskRequiresProject(runner)).isTrue();
   }
 
   @Test
   public void task_should_not_require_project() {
-    Properties props = new Properties();
-    props.setProperty("sonar.task", "views");
-    assertThat(Utils.taskRequiresProject(props)).isFalse();
+    SimpleRunner runner = new SimpleRunner();
+    runner.setProperty("sonar.task", "views");
+    assertThat(Utils.taskRequiresProject(runner)).isFalse();
   }
 
   @Test
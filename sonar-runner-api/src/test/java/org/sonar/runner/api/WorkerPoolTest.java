@@ -0,0 +1,180 @@
+/*
+ * SonarQube Runner - API
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class WorkerPoolTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void should_reuse_worker() throws Exception {
+    WorkerPool pool = new WorkerPool(fakeWorkerCommand(10), Charset.defaultCharset(), 1, 60000);
+    ListConsumer out = new ListConsumer();
+
+    assertThat(pool.execute(temp.newFile(), out, new ListConsumer(), 10000, null)).isEqualTo(0);
+    assertThat(pool.execute(temp.newFile(), out, new ListConsumer(), 10000, null)).isEqualTo(0);
+
+    assertThat(out.lines).hasSize(2);
+    // same JVM
+    assertThat(out.lines.get(0)).isEqualTo(out.lines.get(1));
+    assertThat(pool.idleWorkers()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_replace_worker_after_max_jobs() throws Exception {
+    WorkerPool pool = new WorkerPool(fakeWorkerCommand(1), Charset.defaultCharset(), 1, 60000);
+    ListConsumer out = new ListConsumer();
+
+    pool.execute(temp.newFile(), out, new ListConsumer(), 10000, null);
+    pool.execute(temp.newFile(), out, new ListConsumer(), 10000, null);
+
+    assertThat(out.lines).hasSize(2);
+    assertThat(out.lines.get(0)).isNotEqualTo(out.lines.get(1));
+  }
+
+  @Test
+  public void should_return_status_of_failed_analysis() throws Exception {
+    WorkerPool pool = new WorkerPool(fakeWorkerCommand(10), Charset.defaultCharset(), 1, 60000);
+    File propertiesFile = new File(temp.getRoot(), "fail.properties");
+
+    assertThat(pool.execute(propertiesFile, new ListConsumer(), new ListConsumer(), 10000, null)).isEqualTo(1);
+    assertThat(pool.idleWorkers()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_read_all_error_lines_of_analysis() throws Exception {
+    WorkerPool pool = new WorkerPool(fakeWorkerCommand(10), Charset.defaultCharset(), 1, 60000);
+    ListConsumer err1 = new ListConsumer();
+    ListConsumer err2 = new ListConsumer();
+
+    pool.execute(temp.newFile(), new ListConsumer(), err1, 10000, null);
+    pool.execute(temp.newFile(), new ListConsumer(), err2, 10000, null);
+
+    // error lines are printed after the end of analysis on the standard output
+    assertThat(err1.lines).containsExactly("warning of analysis 1");
+    assertThat(err2.lines).containsExactly("warning of analysis 2");
+  }
+
+  @Test
+  public void should_share_pools_with_same_settings() {
+    Command command = fakeWorkerCommand(10);
+    WorkerPool pool = WorkerPool.get(command, Charset.defaultCharset(), 1, 60000);
+
+    assertThat(WorkerPool.get(command, Charset.defaultCharset(), 1, 60000)).isSameAs(pool);
+    assertThat(WorkerPool.get(command, Charset.defaultCharset(), 2, 60000)).isNotSameAs(pool);
+    assertThat(WorkerPool.get(command, Charset.defaultCharset(), 1, 30000)).isNotSameAs(pool);
+  }
+
+  @Test
+  public void should_stop_idle_workers() throws Exception {
+    WorkerPool pool = new WorkerPool(fakeWorkerCommand(10), Charset.defaultCharset(), 1, 60000);
+    pool.execute(temp.newFile(), new ListConsumer(), new ListConsumer(), 10000, null);
+    assertThat(pool.idleWorkers()).isEqualTo(1);
+
+    pool.stopIdleWorkers(System.currentTimeMillis());
+    assertThat(pool.idleWorkers()).isEqualTo(1);
+
+    pool.stopIdleWorkers(System.currentTimeMillis() + 60000);
+    assertThat(pool.idleWorkers()).isEqualTo(0);
+  }
+
+  @Test
+  public void should_stop_analysis_when_requested() throws Exception {
+    WorkerPool pool = new WorkerPool(fakeWorkerCommand(10), Charset.defaultCharset(), 1, 60000);
+    File propertiesFile = new File(temp.getRoot(), "block.properties");
+    ProcessMonitor monitor = new ProcessMonitor() {
+      @Override
+      public boolean stop() {
+        return true;
+      }
+    };
+
+    assertThat(pool.execute(propertiesFile, new ListConsumer(), new ListConsumer(), 10000, monitor)).isNotEqualTo(0);
+    assertThat(pool.idleWorkers()).isEqualTo(0);
+  }
+
+  private static Command fakeWorkerCommand(int maxJobs) {
+    return Command.builder()
+      .setExecutable(new Os().thisJavaExe().getAbsolutePath())
+      .addArguments("-cp", System.getProperty("java.class.path"), FakeWorker.class.getName(), String.valueOf(maxJobs))
+      .build();
+  }
+
+  private static class ListConsumer implements ChunkConsumer {
+    final List<String> lines = new ArrayList<String>();
+
+    @Override
+    public synchronized void consumeLine(CharBuffer line) {
+      lines.add(line.toString());
+    }
+
+    @Override
+    public void flush() {
+      // nothing to do
+    }
+  }
+
+  /**
+   * Implements the protocol of {@link org.sonar.runner.impl.BatchLauncherWorker} without executing analyses.
+   * Each analysis logs the identifier of the JVM, and a warning on the error output after the end of the analysis
+   * on the standard output.
+   */
+  public static class FakeWorker {
+    public static void main(String[] args) throws Exception {
+      String id = UUID.randomUUID().toString();
+      int maxJobs = Integer.parseInt(args[0]);
+      BufferedReader input = new BufferedReader(new InputStreamReader(System.in));
+      int jobs = 0;
+      String line;
+      while ((line = input.readLine()) != null) {
+        if (line.endsWith("block.properties")) {
+          Thread.sleep(60000L);
+        }
+        System.out.println(id);
+        jobs++;
+        boolean exit = jobs >= maxJobs;
+        System.out.println("##sonar-runner-worker## " + (exit ? "exit" : "done") + " " + (line.endsWith("fail.properties") ? 1 : 0));
+        System.out.flush();
+        Thread.sleep(50L);
+        System.err.println("warning of analysis " + jobs);
+        System.err.println("##sonar-runner-worker## end");
+        if (exit) {
+          break;
+        }
+      }
+    }
+  }
+}
@@ -26,6 +26,9 @@ import com.google.common.annotations.VisibleForTesting;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
@@ -49,6 +52,26 @@ public class IsolatedLauncher {
     createBatch(properties, extensions).execute();
   }
 
+  /**
+   * Same as {@link #execute(Properties, List)}, but reports the initialization of logging and the start and end
+   * of each module analysis into the given collection. Called by the runner only when somebody listens to the progress.
+   */
+  public void execute(Properties properties, List<Object> extensions, Collection<Map<String, Object>> events) {
+    List<Object> components = new ArrayList<Object>(extensions);
+    components.add(new ModuleProgress(events));
+    events.add(phase("logging"));
+    Batch batch = createBatch(properties, components);
+    events.add(phase("analysis"));
+    batch.execute();
+  }
+
+  private static Map<String, Object> phase(String name) {
+    Map<String, Object> fields = new HashMap<String, Object>();
+    fields.put("type", "phase");
+    fields.put("name", name);
+    return fields;
+  }
+
   Batch createBatch(Properties properties, List<Object> extensions) {
     initLogging(properties);
     EnvironmentInformation env = new EnvironmentInformation(properties.getProperty("sonarRunner.app"), properties.getProperty("sonarRunner.appVersion"));
@@ -65,7 +88,8 @@ public class IsolatedLauncher {
     jc.setContext(context);
     context.reset();
     try (InputStream input = Batch.class.getResourceAsStream("/org/sonar/batch/logback.xml")) {
-      System.setProperty("ROOT_LOGGER_LEVEL", isDebug(props) ? DEBUG : "INFO");
+      // context properties take precedence over system properties, which are shared by all the analyses of the JVM
+      context.putProperty("ROOT_LOGGER_LEVEL", isDebug(props) ? DEBUG : "INFO");
       context.putProperty("SQL_LOGGER_LEVEL", getSqlLevel(props));
       context.putProperty("SQL_RESULTS_LOGGER_LEVEL", getSqlResultsLevel(props));
       jc.doConfigure(input);
@@ -0,0 +1,60 @@
+/*
+ * SonarQube Runner - Batch
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.batch;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.sonar.api.batch.events.ProjectAnalysisHandler;
+
+/**
+ * Reports the start and end of module analyses to the runner. Events are plain maps so that
+ * they can cross the classloader boundary.
+ */
+public class ModuleProgress implements ProjectAnalysisHandler {
+
+  private final Collection<Map<String, Object>> events;
+  private final Map<String, Long> startTimes = new ConcurrentHashMap<String, Long>();
+
+  public ModuleProgress(Collection<Map<String, Object>> events) {
+    this.events = events;
+  }
+
+  @Override
+  public void onProjectAnalysis(ProjectAnalysisEvent event) {
+    String key = event.getProject().getKey();
+    long now = System.currentTimeMillis();
+    Map<String, Object> fields = new HashMap<String, Object>();
+    fields.put("type", "module");
+    fields.put("key", key);
+    if (event.isStart()) {
+      startTimes.put(key, now);
+      fields.put("status", "start");
+    } else {
+      fields.put("status", "end");
+      Long start = startTimes.remove(key);
+      if (start != null) {
+        fields.put("durationMs", now - start);
+      }
+    }
+    events.add(fields);
+  }
+}
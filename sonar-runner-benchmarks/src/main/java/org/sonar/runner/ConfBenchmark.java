@@ -0,0 +1,104 @@
+/*
+ * SonarQube Runner - Benchmarks
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading of the configuration of a multi-module project, where each module declares
+ * its own sonar-project.properties.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ConfBenchmark {
+
+  @Param({"10", "100", "500"})
+  public int modules;
+
+  private File projectDir;
+  private Cli cli;
+  private Properties rootProps;
+  private PrintStream stdOut;
+
+  @Setup
+  public void setUp() throws IOException {
+    projectDir = Files.createTempDirectory("sonar-runner-bench").toFile();
+    StringBuilder moduleList = new StringBuilder();
+    StringBuilder root = new StringBuilder();
+    root.append("sonar.projectKey=bench\nsonar.projectName=Bench\nsonar.projectVersion=1.0\nsonar.sources=src\n");
+    for (int i = 0; i < modules; i++) {
+      String module = "module" + i;
+      moduleList.append(i > 0 ? "," : "").append(module);
+      root.append(module).append(".sonar.projectName=Module ").append(i).append('\n');
+      File moduleDir = new File(projectDir, module);
+      FileUtils.write(new File(moduleDir, "sonar-project.properties"), "sonar.sources=src\nsonar.tests=test\nsonar.java.binaries=target/classes\n");
+    }
+    root.append("sonar.modules=").append(moduleList).append('\n');
+    FileUtils.write(new File(projectDir, "sonar-project.properties"), root.toString());
+
+    cli = new Cli();
+    cli.properties().setProperty("project.home", projectDir.getAbsolutePath());
+    rootProps = new Conf(cli).properties();
+
+    // Conf logs the configuration files being loaded
+    stdOut = System.out;
+    System.setOut(new PrintStream(new NullOutputStream()));
+  }
+
+  @TearDown
+  public void tearDown() {
+    System.setOut(stdOut);
+    FileUtils.deleteQuietly(projectDir);
+  }
+
+  @Benchmark
+  public Properties properties() throws IOException {
+    return new Conf(cli).properties();
+  }
+
+  @Benchmark
+  public Properties extractModuleProperties() {
+    return Conf.extractModuleProperties("module" + (modules / 2), rootProps);
+  }
+}
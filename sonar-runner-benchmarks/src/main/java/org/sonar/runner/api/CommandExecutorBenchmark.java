@@ -0,0 +1,94 @@
+/*
+ * SonarQube Runner - Benchmarks
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Execution of a forked JVM printing many lines, consumed the same way {@link ForkedRunner} does.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class CommandExecutorBenchmark {
+
+  @Param({"1000", "100000"})
+  public int lines;
+
+  private Command command;
+  private StreamConsumer consumer;
+  private ChunkConsumer sink;
+
+  @Setup
+  public void setUp() {
+    command = Command.builder()
+      .setExecutable(new File(System.getProperty("java.home"), "bin/java").getAbsolutePath())
+      .addArguments("-cp", System.getProperty("java.class.path"), OutputGenerator.class.getName(), String.valueOf(lines))
+      .build();
+    consumer = new PrintStreamConsumer(new PrintStream(new NullOutputStream()));
+    sink = new BufferedSink(new NullOutputStream());
+  }
+
+  @Benchmark
+  public int execute() {
+    return CommandExecutor.create().execute(command, consumer, consumer, 60000L, null);
+  }
+
+  @Benchmark
+  public int executeWithSink() {
+    return CommandExecutor.create().execute(command, sink, sink, Charset.defaultCharset(), 60000L, null);
+  }
+
+  /**
+   * Main class of the forked process. Prints log-like lines on stdout.
+   */
+  public static class OutputGenerator {
+    private OutputGenerator() {
+    }
+
+    public static void main(String[] args) {
+      int count = Integer.parseInt(args[0]);
+      PrintStream out = System.out;
+      for (int i = 0; i < count; i++) {
+        out.println("INFO  - Sensor JavaSquidSensor... analyzing file src/main/java/org/foo/Bar" + i + ".java");
+      }
+      out.flush();
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * SonarQube Runner - Benchmarks
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.api;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Access to the properties of a {@link Runner}, as done by the build tool plugins
+ * when configuring an analysis.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RunnerPropertiesBenchmark {
+
+  @Param({"100", "5000"})
+  public int size;
+
+  private EmbeddedRunner runner;
+  private Properties reactor;
+
+  @Setup
+  public void setUp() {
+    runner = EmbeddedRunner.create();
+    reactor = new Properties();
+    for (int i = 0; i < size; i++) {
+      runner.setProperty("module" + (i % 50) + ".sonar.property" + i, "value" + i);
+      reactor.setProperty("module" + (i % 50) + ".sonar.property" + i, "value" + i);
+    }
+  }
+
+  /**
+   * Configuration of a reactor loaded by the command-line runner
+   */
+  @Benchmark
+  public EmbeddedRunner addProperties() {
+    return EmbeddedRunner.create().addProperties(reactor);
+  }
+
+  /**
+   * Configuration set property by property, as done by the embedders
+   */
+  @Benchmark
+  public EmbeddedRunner setProperties() {
+    EmbeddedRunner result = EmbeddedRunner.create();
+    for (Map.Entry<Object, Object> entry : reactor.entrySet()) {
+      result.setProperty((String) entry.getKey(), (String) entry.getValue());
+    }
+    return result;
+  }
+
+  @Benchmark
+  public Properties properties() {
+    return runner.properties();
+  }
+
+  @Benchmark
+  public String property() {
+    return runner.property("module25.sonar.property" + (size / 2), null);
+  }
+}
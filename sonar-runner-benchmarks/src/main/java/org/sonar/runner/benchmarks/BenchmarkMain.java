@@ -0,0 +1,52 @@
+/*
+ * SonarQube Runner - Benchmarks
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Entry point of benchmarks.jar. Accepts the usual JMH command-line options, but writes results
+ * as JSON into target/jmh-result.json unless option -rf is set, so that runs can be compared.
+ */
+public class BenchmarkMain {
+
+  static final String DEFAULT_RESULT_FILE = "target/jmh-result.json";
+
+  private BenchmarkMain() {
+    // only static methods
+  }
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions cli = new CommandLineOptions(args);
+    ChainedOptionsBuilder options = new OptionsBuilder().parent(cli);
+    if (!cli.getResultFormat().hasValue()) {
+      File result = new File(DEFAULT_RESULT_FILE);
+      result.getAbsoluteFile().getParentFile().mkdirs();
+      options.resultFormat(ResultFormatType.JSON).result(result.getPath());
+    }
+    new Runner(options.build()).run();
+  }
+}
@@ -0,0 +1,157 @@
+/*
+ * SonarQube Runner - Benchmarks
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class loading through {@link IsolatedClassloader}: evaluation of mask rules, loading of classes
+ * already defined (warm) and definition of classes read from jar files (cold).
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IsolatedClassloaderBenchmark {
+
+  /**
+   * Rules similar to the ones declared by the Maven and Gradle plugins
+   */
+  static final String[][] MASK_RULES = {
+    {"UNMASK", "org.sonar.runner.batch.IsolatedLauncher"},
+    {"UNMASK", "org.sonar.runner.api."},
+    {"MASK", "org.sonar.runner."},
+    {"UNMASK", "org.apache.maven.project.MavenProject"},
+    {"UNMASK", "org.apache.maven.execution."},
+    {"UNMASK", "org.apache.maven.artifact."},
+    {"UNMASK", "org.codehaus.plexus.util."},
+    {"MASK", "org.apache.maven."},
+    {"MASK", "org.codehaus.plexus."},
+    {"UNMASK", "org.gradle.api."},
+    {"UNMASK", "groovy.lang."},
+    {"MASK", "org.slf4j."},
+    {"MASK", "ch.qos.logback."}
+  };
+
+  static final String[] CLASS_NAMES = {
+    "org.sonar.runner.batch.IsolatedLauncher",
+    "org.sonar.runner.api.EmbeddedRunner",
+    "org.sonar.runner.impl.BatchLauncher",
+    "org.apache.maven.project.MavenProject",
+    "org.apache.maven.model.Model",
+    "org.gradle.api.Project",
+    "ch.qos.logback.classic.Logger",
+    "com.google.common.collect.Lists",
+    "java.lang.String",
+    "java.util.concurrent.ConcurrentHashMap"
+  };
+
+  static final String[] WARM_CLASSES = {
+    "java.lang.String",
+    "java.util.ArrayList",
+    "java.util.concurrent.ConcurrentHashMap",
+    "org.apache.commons.io.FileUtils",
+    "org.apache.commons.io.IOUtils"
+  };
+
+  static final String[] COLD_CLASSES = {
+    "org.apache.commons.io.FileUtils",
+    "org.apache.commons.io.IOUtils",
+    "org.apache.commons.io.FilenameUtils",
+    "org.apache.commons.io.LineIterator",
+    "org.apache.commons.io.output.ByteArrayOutputStream",
+    "org.apache.commons.io.input.BOMInputStream",
+    "org.apache.commons.io.filefilter.FileFilterUtils",
+    "org.apache.commons.io.comparator.NameFileComparator"
+  };
+
+  private File jar;
+  private IsolatedClassloader warmClassloader;
+
+  @Setup
+  public void setUp() throws Exception {
+    jar = jarOf(FileUtils.class);
+    warmClassloader = newClassloader();
+    for (String name : WARM_CLASSES) {
+      warmClassloader.loadClass(name);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    warmClassloader.close();
+  }
+
+  @Benchmark
+  public void canLoadFromParent(Blackhole bh) {
+    for (String name : CLASS_NAMES) {
+      bh.consume(warmClassloader.canLoadFromParent(name));
+    }
+  }
+
+  @Benchmark
+  public void loadClass_warm(Blackhole bh) throws ClassNotFoundException {
+    for (String name : WARM_CLASSES) {
+      bh.consume(warmClassloader.loadClass(name));
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public void loadClass_cold(Blackhole bh) throws Exception {
+    IsolatedClassloader classloader = newClassloader();
+    try {
+      for (String name : COLD_CLASSES) {
+        bh.consume(classloader.loadClass(name));
+      }
+    } finally {
+      classloader.close();
+    }
+  }
+
+  private IsolatedClassloader newClassloader() {
+    IsolatedClassloader classloader = new IsolatedClassloader(getClass().getClassLoader(), MASK_RULES);
+    classloader.addFiles(Arrays.asList(jar));
+    return classloader;
+  }
+
+  static File jarOf(Class<?> clazz) throws Exception {
+    return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+  }
+}
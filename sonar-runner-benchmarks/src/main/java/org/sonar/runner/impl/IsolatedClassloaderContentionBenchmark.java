@@ -0,0 +1,104 @@
+/*
+ * SonarQube Runner - Benchmarks
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many threads loading classes through the same classloader, as the batch does during its warm-up.
+ * Compares the current {@link IsolatedClassloader} with {@link LegacyIsolatedClassloader}.
+ * Run with "-t" to change the number of threads.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Threads(16)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class IsolatedClassloaderContentionBenchmark {
+
+  @Param({"legacy", "parallel"})
+  public String implementation;
+
+  private ClassLoader classloader;
+
+  @Setup
+  public void setUp() throws Exception {
+    File jar = IsolatedClassloaderBenchmark.jarOf(FileUtils.class);
+    ClassLoader parent = getClass().getClassLoader();
+    if ("legacy".equals(implementation)) {
+      classloader = new LegacyIsolatedClassloader(new URL[] {jar.toURI().toURL()}, parent, IsolatedClassloaderBenchmark.MASK_RULES);
+    } else {
+      IsolatedClassloader isolated = new IsolatedClassloader(parent, IsolatedClassloaderBenchmark.MASK_RULES);
+      isolated.addFiles(Arrays.asList(jar));
+      classloader = isolated;
+    }
+    // classes are defined once, then threads compete on lookups
+    for (String name : IsolatedClassloaderBenchmark.COLD_CLASSES) {
+      classloader.loadClass(name);
+    }
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    ((Closeable) classloader).close();
+  }
+
+  @Benchmark
+  public void loadClass(Blackhole bh) throws ClassNotFoundException {
+    for (String name : IsolatedClassloaderBenchmark.COLD_CLASSES) {
+      bh.consume(classloader.loadClass(name));
+    }
+    for (String name : IsolatedClassloaderBenchmark.WARM_CLASSES) {
+      bh.consume(classloader.loadClass(name));
+    }
+  }
+
+  @Benchmark
+  public void loadMissingClass(Blackhole bh) {
+    try {
+      bh.consume(classloader.loadClass("org.sonar.runner.impl.Missing" + Thread.currentThread().getId()));
+    } catch (ClassNotFoundException e) {
+      bh.consume(e);
+    }
+  }
+}
@@ -0,0 +1,70 @@
+/*
+ * SonarQube Runner - Benchmarks
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+
+/**
+ * Copy of {@link IsolatedClassloader} as of version 2.4: not parallel capable and with a
+ * sequential scan of mask rules. Reference of {@link IsolatedClassloaderContentionBenchmark}.
+ */
+class LegacyIsolatedClassloader extends URLClassLoader {
+
+  private final String[][] maskRules;
+
+  LegacyIsolatedClassloader(URL[] urls, ClassLoader parent, String[][] maskRules) {
+    super(urls, parent);
+    this.maskRules = maskRules;
+  }
+
+  boolean canLoadFromParent(String name) {
+    for (String[] maskRule : maskRules) {
+      if (name.startsWith(maskRule[1])) {
+        return "UNMASK".equals(maskRule[0]);
+      }
+    }
+    return false;
+  }
+
+  @Override
+  protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    Class<?> c = findLoadedClass(name);
+    if (c == null) {
+      try {
+        if (getParent() != null && canLoadFromParent(name)) {
+          c = getParent().loadClass(name);
+        } else {
+          ClassLoader systemClassLoader = getSystemClassLoader();
+          if (systemClassLoader.getParent() != null) {
+            systemClassLoader = systemClassLoader.getParent();
+          }
+          c = systemClassLoader.loadClass(name);
+        }
+      } catch (ClassNotFoundException e) {
+        c = findClass(name);
+      }
+    }
+    if (resolve) {
+      resolveClass(c);
+    }
+    return c;
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * SonarQube Runner - Benchmarks
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.sonar.home.cache.PersistentCache;
+import org.sonar.home.cache.PersistentCacheBuilder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round-trips of {@link ServerConnection} to a local HTTP server, with and without the preview cache.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ServerConnectionBenchmark {
+
+  @Param({"preview", "analysis"})
+  public String analysisMode;
+
+  private MockHttpServer server;
+  private File home;
+  private ServerConnection connection;
+  private File target;
+
+  @Setup
+  public void setUp() throws Exception {
+    server = new MockHttpServer();
+    server.start();
+    server.setMockResponseData(index());
+
+    home = Files.createTempDirectory("sonar-runner-bench").toFile();
+    target = new File(home, "download");
+    PersistentCache cache = new PersistentCacheBuilder().setSonarHome(home.toPath()).build();
+
+    Properties props = new Properties();
+    props.setProperty("sonar.host.url", server.getUrl());
+    props.setProperty("sonar.analysis.mode", analysisMode);
+    props.setProperty(InternalProperties.RUNNER_APP, "Benchmark");
+    props.setProperty(InternalProperties.RUNNER_APP_VERSION, "1.0");
+    connection = ServerConnection.create(props, cache);
+  }
+
+  @TearDown
+  public void tearDown() {
+    server.stop();
+    FileUtils.deleteQuietly(home);
+  }
+
+  @Benchmark
+  public String downloadStringCache() throws Exception {
+    return connection.downloadStringCache("/batch_bootstrap/index");
+  }
+
+  @Benchmark
+  public long download() {
+    // otherwise the download would be resumed
+    FileUtils.deleteQuietly(target);
+    connection.download("/batch/sonar-batch.jar", target);
+    return target.length();
+  }
+
+  /**
+   * Same size as the index returned by a SonarQube 5.x server
+   */
+  private static String index() {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 60; i++) {
+      sb.append("library-").append(i).append("-1.0.jar|0123456789abcdef0123456789abcdef\n");
+    }
+    return sb.toString();
+  }
+}
@@ -22,6 +22,8 @@ package org.sonar.runner;
 import org.sonar.runner.api.RunnerProperties;
 import org.sonar.runner.impl.Logs;
 
+import javax.annotation.CheckForNull;
+
 import java.util.Properties;
 
 class Cli {
@@ -29,7 +31,19 @@ class Cli {
   private boolean debugMode = false;
   private boolean displayVersionOnly = false;
   private boolean displayStackTrace = false;
+  private boolean daemonMode = false;
+  private boolean stopDaemon = false;
+  private String manifest = null;
   private Properties props = new Properties();
+  private final Exit exit;
+
+  Cli() {
+    this(new Exit());
+  }
+
+  Cli(Exit exit) {
+    this.exit = exit;
+  }
 
   boolean isDebugMode() {
     return debugMode;
@@ -43,6 +57,22 @@ class Cli {
     return displayStackTrace;
   }
 
+  boolean isDaemonMode() {
+    return daemonMode;
+  }
+
+  boolean isStopDaemon() {
+    return stopDaemon;
+  }
+
+  /**
+   * @return path of the manifest of projects to analyse, see {@link Manifest}
+   */
+  @CheckForNull
+  String manifest() {
+    return manifest;
+  }
+
   Properties properties() {
     return props;
   }
@@ -70,6 +100,19 @@ class Cli {
         debugMode = true;
         Logs.setDebugEnabled(true);
 
+      } else if ("--daemon".equals(arg)) {
+        daemonMode = true;
+
+      } else if ("--stop-daemon".equals(arg)) {
+        stopDaemon = true;
+
+      } else if ("--manifest".equals(arg)) {
+        i++;
+        if (i >= args.length) {
+          printError("Missing argument for option --manifest");
+        }
+        manifest = args[i];
+
       } else if ("-D".equals(arg) || "--define".equals(arg)) {
         i++;
         if (i >= args.length) {
@@ -94,6 +137,9 @@ class Cli {
     debugMode = false;
     displayStackTrace = false;
     displayVersionOnly = false;
+    daemonMode = false;
+    stopDaemon = false;
+    manifest = null;
   }
 
   private void appendPropertyTo(String arg, Properties props) {
@@ -120,10 +166,13 @@ class Cli {
     Logs.info("");
     Logs.info("Options:");
     Logs.info(" -D,--define <arg>     Define property");
+    Logs.info(" --daemon              Start a daemon executing the analyses of clients (see sonarRunner.daemon.port)");
+    Logs.info(" --stop-daemon         Stop the daemon");
     Logs.info(" -e,--errors           Produce execution error messages");
     Logs.info(" -h,--help             Display help information");
+    Logs.info(" --manifest <arg>      Analyse the projects listed in file (see sonarRunner.manifest.parallelism)");
     Logs.info(" -v,--version          Display version information");
     Logs.info(" -X,--debug            Produce execution debug output");
-    System.exit(Exit.SUCCESS);
+    exit.exit(Exit.SUCCESS);
   }
 }
@@ -21,14 +21,27 @@ package org.sonar.runner;
 
 import org.sonar.runner.impl.Logs;
 
+import javax.annotation.Nullable;
+
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 class Conf {
   private static final String RUNNER_HOME = "runner.home";
@@ -40,6 +53,11 @@ class Conf {
   private static final String PROPERTY_PROJECT_CONFIG_FILE = "sonar.projectConfigFile";
   private static final String SONAR_PROJECT_PROPERTIES_FILENAME = "sonar-project.properties";
 
+  /**
+   * Files of sibling modules are loaded concurrently, which mainly helps on network file systems
+   */
+  private static final int MAX_LOADING_THREADS = 8;
+
   private final Cli cli;
 
   Conf(Cli cli) {
@@ -47,17 +65,30 @@ class Conf {
   }
 
   Properties properties() throws IOException {
+    return properties(cli.properties());
+  }
+
+  /**
+   * @param cliProps properties defined on command-line, or by the manifest of projects (see {@link Manifest})
+   */
+  Properties properties(Properties cliProps) throws IOException {
+    Properties globalProps = loadGlobalProperties(cliProps);
+    Properties settings = new Properties();
+    settings.putAll(globalProps);
+    settings.putAll(System.getProperties());
+    settings.putAll(cliProps);
+
     Properties result = new Properties();
-    result.putAll(loadGlobalProperties());
-    result.putAll(loadProjectProperties());
+    result.putAll(globalProps);
+    result.putAll(loadProjectProperties(cliProps, ConfCache.isEnabled(settings) ? ConfCache.create(settings) : null));
     result.putAll(System.getProperties());
-    result.putAll(cli.properties());
+    result.putAll(cliProps);
     result.remove(PROJECT_HOME);
     return result;
   }
 
-  private Properties loadGlobalProperties() throws IOException {
-    File settingsFile = locatePropertiesFile(cli.properties(), RUNNER_HOME, "conf/sonar-runner.properties", RUNNER_SETTINGS);
+  private Properties loadGlobalProperties(Properties cliProps) throws IOException {
+    File settingsFile = locatePropertiesFile(cliProps, RUNNER_HOME, "conf/sonar-runner.properties", RUNNER_SETTINGS);
     if (settingsFile != null && settingsFile.isFile() && settingsFile.exists()) {
       Logs.info("Runner configuration file: " + settingsFile.getAbsolutePath());
       return toProperties(settingsFile);
@@ -66,98 +97,237 @@ class Conf {
     return new Properties();
   }
 
-  private Properties loadProjectProperties() throws IOException {
-    Properties cliProps = cli.properties();
+  private Properties loadProjectProperties(Properties cliProps, @Nullable ConfCache cache) throws IOException {
     File rootSettingsFile = locatePropertiesFile(cliProps, cliProps.containsKey(PROPERTY_PROJECT_BASEDIR) ? PROPERTY_PROJECT_BASEDIR : PROJECT_HOME,
       SONAR_PROJECT_PROPERTIES_FILENAME,
       PROJECT_SETTINGS);
     if (rootSettingsFile != null && rootSettingsFile.isFile() && rootSettingsFile.exists()) {
       Logs.info("Project configuration file: " + rootSettingsFile.getAbsolutePath());
-      Properties projectProps = new Properties();
-      Properties rootProps = toProperties(rootSettingsFile);
-      projectProps.putAll(rootProps);
-      initRootProjectBaseDir(cliProps, rootProps);
-      loadModulesProperties(rootProps, projectProps, "");
-      return projectProps;
+      String rootBaseDir = rootProjectBaseDir(cliProps);
+      String cacheId = rootSettingsFile.getAbsolutePath() + "|" + rootBaseDir;
+      if (cache != null) {
+        Properties cached = cache.get(cacheId);
+        if (cached != null) {
+          Logs.debug("Project configuration loaded from cache");
+          return cached;
+        }
+      }
+      Resolution resolution = new Resolution();
+      try {
+        Properties projectProps = resolution.resolve(rootSettingsFile, rootBaseDir);
+        if (cache != null) {
+          cache.put(cacheId, projectProps, resolution.stats.stamps());
+        }
+        return projectProps;
+      } finally {
+        resolution.close();
+      }
     }
     Logs.info("Project configuration file: NONE");
     return new Properties();
   }
 
-  private void initRootProjectBaseDir(Properties cliProps, Properties rootProps) {
+  private static String rootProjectBaseDir(Properties cliProps) {
     if (!cliProps.containsKey(PROPERTY_PROJECT_BASEDIR)) {
-      String baseDir = cliProps.getProperty(PROJECT_HOME);
-      rootProps.put(PROPERTY_PROJECT_BASEDIR, baseDir);
-    } else {
-      rootProps.put(PROPERTY_PROJECT_BASEDIR, cliProps.getProperty(PROPERTY_PROJECT_BASEDIR));
+      return cliProps.getProperty(PROJECT_HOME);
     }
+    return cliProps.getProperty(PROPERTY_PROJECT_BASEDIR);
   }
 
-  private void loadModulesProperties(Properties parentProps, Properties projectProps, String prefix) {
-    File parentBaseDir = new File(parentProps.getProperty(PROPERTY_PROJECT_BASEDIR));
-    if (parentProps.containsKey(PROPERTY_MODULES)) {
-      for (String module : getListFromProperty(parentProps, PROPERTY_MODULES)) {
-        Properties moduleProps = extractModuleProperties(module, parentProps);
-        moduleProps = loadChildConfigFile(parentBaseDir, moduleProps, module);
-
-        // the child project may have children as well
-        loadModulesProperties(moduleProps, projectProps, prefix + module + ".");
-        // and finally add this child properties to global props
-        merge(projectProps, prefix, module, moduleProps);
+  /**
+   * Loading of the tree of modules of a project. File system checks are memoized by {@link FileStats}.
+   */
+  private static class Resolution {
+    private final FileStats stats = new FileStats();
+    private ExecutorService executor;
+
+    Properties resolve(File rootSettingsFile, String rootBaseDir) {
+      Properties projectProps = new Properties();
+      Properties rootProps = toProperties(rootSettingsFile);
+      stats.stampOf(rootSettingsFile);
+      projectProps.putAll(rootProps);
+      rootProps.put(PROPERTY_PROJECT_BASEDIR, rootBaseDir);
+      loadModulesProperties(rootProps, projectProps, "");
+      return projectProps;
+    }
+
+    private void loadModulesProperties(Properties parentProps, Properties projectProps, String prefix) {
+      if (parentProps.containsKey(PROPERTY_MODULES)) {
+        File parentBaseDir = new File(parentProps.getProperty(PROPERTY_PROJECT_BASEDIR));
+        String[] modules = getListFromProperty(parentProps, PROPERTY_MODULES);
+        List<Properties> modulesProps = loadChildConfigFiles(parentBaseDir, modules, extractModulesProperties(modules, parentProps));
+        for (int i = 0; i < modules.length; i++) {
+          Properties moduleProps = modulesProps.get(i);
+          // the child project may have children as well
+          loadModulesProperties(moduleProps, projectProps, prefix + modules[i] + ".");
+          // and finally add this child properties to global props
+          merge(projectProps, prefix, modules[i], moduleProps);
+        }
       }
     }
 
-  }
+    /**
+     * Tasks only read files, so the current thread is the only one to wait for them
+     */
+    private List<Properties> loadChildConfigFiles(final File parentBaseDir, String[] modules, Map<String, Properties> extracted) {
+      List<Properties> result = new ArrayList<Properties>(modules.length);
+      if (modules.length == 1) {
+        result.add(loadChildConfigFile(parentBaseDir, copy(extracted.get(modules[0])), modules[0]));
+        return result;
+      }
+      List<Future<Properties>> futures = new ArrayList<Future<Properties>>(modules.length);
+      for (final String module : modules) {
+        final Properties moduleProps = copy(extracted.get(module));
+        futures.add(executor().submit(new Callable<Properties>() {
+          @Override
+          public Properties call() {
+            return loadChildConfigFile(parentBaseDir, moduleProps, module);
+          }
+        }));
+      }
+      try {
+        for (Future<Properties> future : futures) {
+          result.add(future.get());
+        }
+        return result;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("Interrupted while loading configuration of modules", e);
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        throw new IllegalStateException("Fail to load configuration of modules", e.getCause());
+      }
+    }
 
-  private void merge(Properties projectProps, String prefix, String module, Properties moduleProps) {
-    for (Map.Entry<Object, Object> entry : moduleProps.entrySet()) {
-      projectProps.put(prefix + module + "." + entry.getKey(), entry.getValue());
+    private ExecutorService executor() {
+      if (executor == null) {
+        executor = Executors.newFixedThreadPool(MAX_LOADING_THREADS, new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "sonar-runner-conf");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+      }
+      return executor;
     }
-  }
 
-  private Properties loadChildConfigFile(File parentBaseDir, Properties moduleProps, String moduleId) {
-    final File baseDir;
-    if (moduleProps.containsKey(PROPERTY_PROJECT_BASEDIR)) {
-      baseDir = getFileFromPath(moduleProps.getProperty(PROPERTY_PROJECT_BASEDIR), parentBaseDir);
-      setProjectBaseDir(baseDir, moduleProps, moduleId);
-      try {
-        if (!parentBaseDir.getCanonicalFile().equals(baseDir.getCanonicalFile())) {
-          tryToFindAndLoadPropsFile(baseDir, moduleProps, moduleId);
+    void close() {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+
+    private Properties loadChildConfigFile(File parentBaseDir, Properties moduleProps, String moduleId) {
+      final File baseDir;
+      if (moduleProps.containsKey(PROPERTY_PROJECT_BASEDIR)) {
+        baseDir = getFileFromPath(moduleProps.getProperty(PROPERTY_PROJECT_BASEDIR), parentBaseDir);
+        setProjectBaseDir(baseDir, moduleProps, moduleId);
+        try {
+          if (!stats.canonical(parentBaseDir).equals(stats.canonical(baseDir))) {
+            tryToFindAndLoadPropsFile(baseDir, moduleProps, moduleId);
+          }
+        } catch (IOException e) {
+          throw new IllegalStateException("Error when resolving baseDir", e);
         }
-      } catch (IOException e) {
-        throw new IllegalStateException("Error when resolving baseDir", e);
+      } else if (moduleProps.containsKey(PROPERTY_PROJECT_CONFIG_FILE)) {
+        baseDir = loadPropsFile(parentBaseDir, moduleProps, moduleId);
+        setProjectBaseDir(baseDir, moduleProps, moduleId);
+        moduleProps.remove(PROPERTY_PROJECT_CONFIG_FILE);
+      } else {
+        baseDir = new File(parentBaseDir, moduleId);
+        setProjectBaseDir(baseDir, moduleProps, moduleId);
+        tryToFindAndLoadPropsFile(baseDir, moduleProps, moduleId);
+      }
+
+      return moduleProps;
+    }
+
+    private void setProjectBaseDir(File baseDir, Properties childProps, String moduleId) {
+      if (!stats.isDirectory(baseDir)) {
+        throw new IllegalStateException(MessageFormat.format("The base directory of the module ''{0}'' does not exist: {1}", moduleId, baseDir.getAbsolutePath()));
       }
-    } else if (moduleProps.containsKey(PROPERTY_PROJECT_CONFIG_FILE)) {
-      baseDir = loadPropsFile(parentBaseDir, moduleProps, moduleId);
-      setProjectBaseDir(baseDir, moduleProps, moduleId);
-      moduleProps.remove(PROPERTY_PROJECT_CONFIG_FILE);
-    } else {
-      baseDir = new File(parentBaseDir, moduleId);
-      setProjectBaseDir(baseDir, moduleProps, moduleId);
-      tryToFindAndLoadPropsFile(baseDir, moduleProps, moduleId);
+      childProps.put(PROPERTY_PROJECT_BASEDIR, baseDir.getAbsolutePath());
     }
 
-    return moduleProps;
+    /**
+     * @return baseDir
+     */
+    private File loadPropsFile(File parentBaseDir, Properties moduleProps, String moduleId) {
+      File propertyFile = getFileFromPath(moduleProps.getProperty(PROPERTY_PROJECT_CONFIG_FILE), parentBaseDir);
+      if (stats.isFile(propertyFile)) {
+        Properties propsFromFile = toProperties(propertyFile);
+        for (Entry<Object, Object> entry : propsFromFile.entrySet()) {
+          moduleProps.put(entry.getKey(), entry.getValue());
+        }
+        File baseDir = null;
+        if (moduleProps.containsKey(PROPERTY_PROJECT_BASEDIR)) {
+          baseDir = getFileFromPath(moduleProps.getProperty(PROPERTY_PROJECT_BASEDIR), propertyFile.getParentFile());
+        } else {
+          baseDir = propertyFile.getParentFile();
+        }
+        setProjectBaseDir(baseDir, moduleProps, moduleId);
+        return baseDir;
+      } else {
+        throw new IllegalStateException("The properties file of the module '" + moduleId + "' does not exist: " + propertyFile.getAbsolutePath());
+      }
+    }
+
+    private void tryToFindAndLoadPropsFile(File baseDir, Properties moduleProps, String moduleId) {
+      File propertyFile = new File(baseDir, SONAR_PROJECT_PROPERTIES_FILENAME);
+      if (stats.isFile(propertyFile)) {
+        Properties propsFromFile = toProperties(propertyFile);
+        for (Entry<Object, Object> entry : propsFromFile.entrySet()) {
+          moduleProps.put(entry.getKey(), entry.getValue());
+        }
+        if (moduleProps.containsKey(PROPERTY_PROJECT_BASEDIR)) {
+          File overwrittenBaseDir = getFileFromPath(moduleProps.getProperty(PROPERTY_PROJECT_BASEDIR), propertyFile.getParentFile());
+          setProjectBaseDir(overwrittenBaseDir, moduleProps, moduleId);
+        }
+      }
+    }
   }
 
-  private static void setProjectBaseDir(File baseDir, Properties childProps, String moduleId) {
-    if (!baseDir.isDirectory()) {
-      throw new IllegalStateException(MessageFormat.format("The base directory of the module ''{0}'' does not exist: {1}", moduleId, baseDir.getAbsolutePath()));
+  private static void merge(Properties projectProps, String prefix, String module, Properties moduleProps) {
+    for (Map.Entry<Object, Object> entry : moduleProps.entrySet()) {
+      projectProps.put(prefix + module + "." + entry.getKey(), entry.getValue());
     }
-    childProps.put(PROPERTY_PROJECT_BASEDIR, baseDir.getAbsolutePath());
+  }
+
+  private static Properties copy(Properties props) {
+    Properties copy = new Properties();
+    copy.putAll(props);
+    return copy;
   }
 
   protected static Properties extractModuleProperties(String module, Properties properties) {
-    Properties moduleProps = new Properties();
-    String propertyPrefix = module + ".";
-    int prefixLength = propertyPrefix.length();
+    return extractModulesProperties(new String[] {module}, properties).get(module);
+  }
+
+  /**
+   * Properties of the given modules, in a single pass over the parent properties. A key is given to all
+   * the modules whose id, followed by a dot, is a prefix of the key.
+   */
+  static Map<String, Properties> extractModulesProperties(String[] modules, Properties properties) {
+    Map<String, Properties> result = new HashMap<String, Properties>();
+    Set<String> ids = new HashSet<String>();
+    for (String module : modules) {
+      ids.add(module);
+      result.put(module, new Properties());
+    }
     for (Map.Entry<Object, Object> entry : properties.entrySet()) {
       String key = (String) entry.getKey();
-      if (key.startsWith(propertyPrefix)) {
-        moduleProps.put(key.substring(prefixLength), entry.getValue());
+      for (int dot = key.indexOf('.'); dot >= 0; dot = key.indexOf('.', dot + 1)) {
+        String prefix = key.substring(0, dot);
+        if (ids.contains(prefix)) {
+          result.get(prefix).put(key.substring(dot + 1), entry.getValue());
+        }
       }
     }
-    return moduleProps;
+    return result;
   }
 
   private File locatePropertiesFile(Properties props, String homeKey, String relativePathFromHome, String settingsKey) {
@@ -202,43 +372,6 @@ class Conf {
     }
   }
 
-  /**
-   * @return baseDir
-   */
-  protected File loadPropsFile(File parentBaseDir, Properties moduleProps, String moduleId) {
-    File propertyFile = getFileFromPath(moduleProps.getProperty(PROPERTY_PROJECT_CONFIG_FILE), parentBaseDir);
-    if (propertyFile.isFile()) {
-      Properties propsFromFile = toProperties(propertyFile);
-      for (Entry<Object, Object> entry : propsFromFile.entrySet()) {
-        moduleProps.put(entry.getKey(), entry.getValue());
-      }
-      File baseDir = null;
-      if (moduleProps.containsKey(PROPERTY_PROJECT_BASEDIR)) {
-        baseDir = getFileFromPath(moduleProps.getProperty(PROPERTY_PROJECT_BASEDIR), propertyFile.getParentFile());
-      } else {
-        baseDir = propertyFile.getParentFile();
-      }
-      setProjectBaseDir(baseDir, moduleProps, moduleId);
-      return baseDir;
-    } else {
-      throw new IllegalStateException("The properties file of the module '" + moduleId + "' does not exist: " + propertyFile.getAbsolutePath());
-    }
-  }
-
-  private void tryToFindAndLoadPropsFile(File baseDir, Properties moduleProps, String moduleId) {
-    File propertyFile = new File(baseDir, SONAR_PROJECT_PROPERTIES_FILENAME);
-    if (propertyFile.isFile()) {
-      Properties propsFromFile = toProperties(propertyFile);
-      for (Entry<Object, Object> entry : propsFromFile.entrySet()) {
-        moduleProps.put(entry.getKey(), entry.getValue());
-      }
-      if (moduleProps.containsKey(PROPERTY_PROJECT_BASEDIR)) {
-        File overwrittenBaseDir = getFileFromPath(moduleProps.getProperty(PROPERTY_PROJECT_BASEDIR), propertyFile.getParentFile());
-        setProjectBaseDir(overwrittenBaseDir, moduleProps, moduleId);
-      }
-    }
-  }
-
   /**
    * Returns the file denoted by the given path, may this path be relative to "baseDir" or absolute.
    */
@@ -0,0 +1,176 @@
+/*
+ * SonarQube Runner - Distribution
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import org.sonar.runner.impl.Logs;
+
+import javax.annotation.CheckForNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Project configurations resolved by {@link Conf}, stored in the directory "conf_cache" of the SonarQube user home,
+ * one file per project. An entry is valid as long as the state (type, size and last modification date) of all the files
+ * and directories checked during the resolution is unchanged, so loading an unchanged tree of modules does not read
+ * any properties file. Failures to read or write the cache are ignored.
+ *
+ * @since 2.5
+ */
+class ConfCache {
+
+  /**
+   * Boolean property, false by default
+   */
+  static final String ENABLED = "sonarRunner.confCache";
+
+  private static final String VERSION = "1";
+  private static final String VERSION_KEY = "version";
+  private static final String ID_KEY = "id";
+  private static final String STAMP_PREFIX = "stamp.";
+  private static final String PROPERTY_PREFIX = "prop.";
+
+  private final File dir;
+
+  ConfCache(File dir) {
+    this.dir = dir;
+  }
+
+  static boolean isEnabled(Properties settings) {
+    return "true".equals(settings.getProperty(ENABLED, "false").trim());
+  }
+
+  static ConfCache create(Properties settings) {
+    return new ConfCache(new File(userHome(settings), "conf_cache"));
+  }
+
+  static File userHome(Properties settings) {
+    String path = settings.getProperty("sonar.userHome");
+    if (path == null || "".equals(path.trim())) {
+      path = System.getenv("SONAR_USER_HOME");
+    }
+    if (path == null || "".equals(path.trim())) {
+      return new File(System.getProperty("user.home"), ".sonar");
+    }
+    return new File(path.trim());
+  }
+
+  /**
+   * @param id identifies the configuration, for example the path of the root settings file and the base directory
+   * @return null if the configuration is not cached or if one of its files changed
+   */
+  @CheckForNull
+  Properties get(String id) {
+    File file = file(id);
+    if (!file.isFile()) {
+      return null;
+    }
+    Properties entry = new Properties();
+    try (InputStream input = new FileInputStream(file)) {
+      entry.load(input);
+    } catch (IOException | IllegalArgumentException e) {
+      Logs.debug("Ignore corrupted configuration cache {}: {}", file, e.getMessage());
+      return null;
+    }
+    if (!VERSION.equals(entry.getProperty(VERSION_KEY)) || !id.equals(entry.getProperty(ID_KEY))) {
+      return null;
+    }
+    Properties result = new Properties();
+    for (String key : entry.stringPropertyNames()) {
+      if (key.startsWith(STAMP_PREFIX)) {
+        String path = key.substring(STAMP_PREFIX.length());
+        if (!entry.getProperty(key).equals(FileStats.stamp(new File(path)))) {
+          Logs.debug("Configuration cache is outdated: {} changed", path);
+          return null;
+        }
+      } else if (key.startsWith(PROPERTY_PREFIX)) {
+        result.setProperty(key.substring(PROPERTY_PREFIX.length()), entry.getProperty(key));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @param stamps states of the files checked during the resolution, see {@link FileStats#stamps()}
+   */
+  void put(String id, Properties resolved, Map<String, String> stamps) {
+    Properties entry = new Properties();
+    entry.setProperty(VERSION_KEY, VERSION);
+    entry.setProperty(ID_KEY, id);
+    for (Map.Entry<String, String> stamp : stamps.entrySet()) {
+      entry.setProperty(STAMP_PREFIX + stamp.getKey(), stamp.getValue());
+    }
+    for (String key : resolved.stringPropertyNames()) {
+      entry.setProperty(PROPERTY_PREFIX + key, resolved.getProperty(key));
+    }
+    File tmp = null;
+    try {
+      Files.createDirectories(dir.toPath());
+      tmp = File.createTempFile("conf", ".tmp", dir);
+      try (OutputStream output = new FileOutputStream(tmp)) {
+        entry.store(output, null);
+      }
+      move(tmp, file(id));
+    } catch (IOException e) {
+      Logs.debug("Fail to cache configuration: {}", e.getMessage());
+      if (tmp != null) {
+        tmp.delete();
+      }
+    }
+  }
+
+  private static void move(File from, File to) throws IOException {
+    // concurrent executions must never read a partially written file
+    try {
+      Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private File file(String id) {
+    return new File(dir, md5(id) + ".properties");
+  }
+
+  private static String md5(String s) {
+    try {
+      byte[] digest = MessageDigest.getInstance("MD5").digest(s.getBytes("UTF-8"));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest) {
+        sb.append(String.format("%02x", b & 0xff));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+      throw new IllegalStateException("Fail to compute hash", e);
+    }
+  }
+}
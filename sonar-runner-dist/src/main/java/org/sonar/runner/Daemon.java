@@ -0,0 +1,193 @@
+/*
+ * SonarQube Runner - Distribution
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import org.sonar.runner.impl.InternalProperties;
+import org.sonar.runner.impl.Logs;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * Long-lived runner that executes the analyses requested by {@link DaemonClient}. It listens on the loopback
+ * interface only and handles only the connections that send the token of {@link DaemonProtocol#tokenFile(Properties)}.
+ * Jobs are executed one after another in this JVM, so the batch classloader, the loaded classes
+ * and the JIT-compiled code are kept between analyses as long as the bootstrap index of the server is unchanged.
+ *
+ * @since 2.5
+ */
+class Daemon {
+
+  /**
+   * Several servers, or several versions of a server, can be used by the clients
+   */
+  static final String DEFAULT_CLASSLOADER_CACHE_SIZE = "3";
+
+  /**
+   * Maximum time to receive the token, the command and the properties. Connections are handled one at a time,
+   * so a client that does not send them must not block the others.
+   */
+  static final int DEFAULT_READ_TIMEOUT_MILLISECONDS = 10000;
+
+  private final int port;
+  private final File tokenFile;
+  private final RunnerFactory runnerFactory;
+  private final int readTimeoutMilliseconds;
+  private ServerSocket serverSocket;
+  private String token;
+  private volatile boolean stopped = false;
+
+  Daemon(int port, File tokenFile, RunnerFactory runnerFactory) {
+    this(port, tokenFile, runnerFactory, DEFAULT_READ_TIMEOUT_MILLISECONDS);
+  }
+
+  Daemon(int port, File tokenFile, RunnerFactory runnerFactory, int readTimeoutMilliseconds) {
+    this.port = port;
+    this.tokenFile = tokenFile;
+    this.runnerFactory = runnerFactory;
+    this.readTimeoutMilliseconds = readTimeoutMilliseconds;
+  }
+
+  /**
+   * Binds the socket and writes a new token. Port 0 means any available port, see {@link #port()}.
+   */
+  Daemon bind() throws IOException {
+    serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+    token = DaemonProtocol.createToken(tokenFile);
+    return this;
+  }
+
+  int port() {
+    return serverSocket.getLocalPort();
+  }
+
+  /**
+   * Blocks until a client sends the command {@link DaemonProtocol#STOP}
+   */
+  void run() throws IOException {
+    Logs.info("SonarQube Runner daemon listening on port " + port());
+    try {
+      while (!stopped) {
+        try (Socket socket = serverSocket.accept()) {
+          handle(socket);
+        } catch (IOException e) {
+          if (!stopped) {
+            Logs.error("Fail to handle request", e);
+          }
+        }
+      }
+    } finally {
+      serverSocket.close();
+      if (!tokenFile.delete()) {
+        Logs.debug("Fail to delete {}", tokenFile);
+      }
+    }
+    Logs.info("SonarQube Runner daemon stopped");
+  }
+
+  private void handle(Socket socket) throws IOException {
+    socket.setSoTimeout(readTimeoutMilliseconds);
+    DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    if (!DaemonProtocol.isValidToken(token, in.readUTF())) {
+      Logs.warn("Connection refused, invalid token");
+      reply(out, DaemonProtocol.STDERR, "ERROR: Invalid token of the runner daemon");
+      reply(out, Exit.ERROR);
+      return;
+    }
+    String command = in.readUTF();
+    int status;
+    if (DaemonProtocol.STOP.equals(command)) {
+      stopped = true;
+      status = Exit.SUCCESS;
+    } else if (DaemonProtocol.EXECUTE.equals(command)) {
+      Properties props = DaemonProtocol.readProperties(in);
+      // nothing else is read, the analysis can be longer than the timeout
+      socket.setSoTimeout(0);
+      status = execute(props, out);
+    } else {
+      Logs.error("Unknown daemon command: " + command);
+      status = Exit.ERROR;
+    }
+    reply(out, status);
+  }
+
+  private static void reply(DataOutputStream out, byte type, String line) throws IOException {
+    byte[] bytes = line.getBytes();
+    synchronized (out) {
+      out.writeByte(type);
+      DaemonProtocol.writeBytes(out, bytes, 0, bytes.length);
+    }
+  }
+
+  private static void reply(DataOutputStream out, int status) throws IOException {
+    synchronized (out) {
+      out.writeByte(DaemonProtocol.EXIT);
+      out.writeInt(status);
+      out.flush();
+    }
+  }
+
+  private int execute(Properties props, DataOutputStream out) {
+    PrintStream initialOut = System.out;
+    PrintStream initialErr = System.err;
+    boolean initialDebug = Logs.isDebugEnabled();
+    PrintStream jobOut = new PrintStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDOUT), true);
+    PrintStream jobErr = new PrintStream(new DaemonProtocol.FrameOutputStream(out, DaemonProtocol.STDERR), true);
+    System.setOut(jobOut);
+    System.setErr(jobErr);
+    try {
+      Logs.setDebugEnabled("true".equals(props.getProperty("sonar.verbose")));
+      if (!props.containsKey(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE)) {
+        props.setProperty(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE, DEFAULT_CLASSLOADER_CACHE_SIZE);
+      }
+      runnerFactory.create(props).execute();
+      return Exit.SUCCESS;
+    } catch (Exception e) {
+      if (Logs.isDebugEnabled()) {
+        Logs.error("Error during Sonar runner execution", e);
+      } else {
+        Logs.error("Error during Sonar runner execution");
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+          if (cause.getMessage() != null) {
+            Logs.error(cause == e ? cause.getMessage() : ("Caused by: " + cause.getMessage()));
+          }
+        }
+      }
+      return Exit.ERROR;
+    } finally {
+      Logs.flush();
+      jobOut.close();
+      jobErr.close();
+      System.setOut(initialOut);
+      System.setErr(initialErr);
+      Logs.setDebugEnabled(initialDebug);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * SonarQube Runner - Distribution
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import javax.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Properties;
+
+/**
+ * Sends the analysis to a {@link Daemon} running on the same host and replays its outputs.
+ *
+ * @since 2.5
+ */
+class DaemonClient {
+
+  private final int port;
+  private final File tokenFile;
+  private final PrintStream stdOut;
+  private final PrintStream stdErr;
+
+  DaemonClient(int port, File tokenFile) {
+    this(port, tokenFile, System.out, System.err);
+  }
+
+  DaemonClient(int port, File tokenFile, PrintStream stdOut, PrintStream stdErr) {
+    this.port = port;
+    this.tokenFile = tokenFile;
+    this.stdOut = stdOut;
+    this.stdErr = stdErr;
+  }
+
+  /**
+   * @return the exit status of the analysis
+   * @throws java.net.ConnectException if no daemon is listening or if the token file does not exist
+   */
+  int execute(Properties props) throws IOException {
+    return send(DaemonProtocol.EXECUTE, props);
+  }
+
+  int stop() throws IOException {
+    return send(DaemonProtocol.STOP, null);
+  }
+
+  private int send(String command, @Nullable Properties props) throws IOException {
+    String token = DaemonProtocol.readToken(tokenFile);
+    try (Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port)) {
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+      out.writeUTF(token);
+      out.writeUTF(command);
+      if (props != null) {
+        DaemonProtocol.writeProperties(out, props);
+      }
+      out.flush();
+      return replay(new DataInputStream(new BufferedInputStream(socket.getInputStream())));
+    }
+  }
+
+  private int replay(DataInputStream in) throws IOException {
+    try {
+      while (true) {
+        byte type = in.readByte();
+        if (type == DaemonProtocol.EXIT) {
+          return in.readInt();
+        }
+        byte[] line = DaemonProtocol.readBytes(in);
+        PrintStream output = type == DaemonProtocol.STDERR ? stdErr : stdOut;
+        output.write(line);
+        output.println();
+      }
+    } catch (EOFException e) {
+      throw new IllegalStateException("Connection to the runner daemon was closed before the end of the analysis", e);
+    }
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * SonarQube Runner - Distribution
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * Messages exchanged between {@link DaemonClient} and {@link Daemon}. The client sends the token of the daemon,
+ * a command and, for {@link #EXECUTE}, the resolved properties. The token is a secret written by the daemon in
+ * a file of the SonarQube user home that only its owner can read, so that other users of the host can't submit
+ * analyses or stop the daemon. The daemon answers with a sequence of frames: lines of
+ * the standard and error outputs, then the exit status.
+ */
+final class DaemonProtocol {
+
+  static final String DAEMON_PORT = "sonarRunner.daemon.port";
+  static final int DEFAULT_PORT = 19090;
+  static final String TOKEN_FILE_PREFIX = "runner-daemon-";
+
+  static final String EXECUTE = "execute";
+  static final String STOP = "stop";
+
+  static final byte STDOUT = 'O';
+  static final byte STDERR = 'E';
+  static final byte EXIT = 'X';
+
+  private DaemonProtocol() {
+    // only static methods
+  }
+
+  static int port(Properties props) {
+    String port = props.getProperty(DAEMON_PORT, "");
+    if ("".equals(port.trim())) {
+      return DEFAULT_PORT;
+    }
+    try {
+      return Integer.parseInt(port.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value of " + DAEMON_PORT + ": " + port, e);
+    }
+  }
+
+  /**
+   * One token file per port, so that several daemons of the same user can be started
+   */
+  static File tokenFile(Properties props) {
+    return new File(ConfCache.userHome(props), TOKEN_FILE_PREFIX + port(props) + ".token");
+  }
+
+  /**
+   * Writes a new token in a file readable only by the current user
+   */
+  static String createToken(File tokenFile) throws IOException {
+    String token = UUID.randomUUID().toString();
+    Path path = tokenFile.toPath();
+    Files.createDirectories(path.getParent());
+    Files.deleteIfExists(path);
+    if (path.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+      Files.createFile(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+    } else {
+      Files.createFile(path);
+    }
+    Files.write(path, token.getBytes(StandardCharsets.UTF_8));
+    return token;
+  }
+
+  /**
+   * @throws ConnectException if the file does not exist, which means that no daemon of the current user was started
+   */
+  static String readToken(File tokenFile) throws IOException {
+    try {
+      return new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8).trim();
+    } catch (NoSuchFileException e) {
+      throw new ConnectException("Token of the runner daemon not found: " + tokenFile.getAbsolutePath());
+    }
+  }
+
+  /**
+   * Comparison in constant time, which does not tell how many characters of the token were guessed
+   */
+  static boolean isValidToken(String expected, String actual) {
+    return MessageDigest.isEqual(expected.getBytes(StandardCharsets.UTF_8), actual.getBytes(StandardCharsets.UTF_8));
+  }
+
+  static void writeProperties(DataOutputStream out, Properties props) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    props.store(bytes, null);
+    writeBytes(out, bytes.toByteArray(), 0, bytes.size());
+  }
+
+  static Properties readProperties(DataInputStream in) throws IOException {
+    Properties props = new Properties();
+    props.load(new ByteArrayInputStream(readBytes(in)));
+    return props;
+  }
+
+  static void writeBytes(DataOutputStream out, byte[] bytes, int offset, int length) throws IOException {
+    out.writeInt(length);
+    out.write(bytes, offset, length);
+  }
+
+  static byte[] readBytes(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return bytes;
+  }
+
+  /**
+   * Sends each line written to this stream as a frame of the given type. Lines are sent as raw bytes,
+   * so the client prints them with the encoding used by the daemon.
+   */
+  static class FrameOutputStream extends OutputStream {
+    private final DataOutputStream out;
+    private final byte type;
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+    FrameOutputStream(DataOutputStream out, byte type) {
+      this.out = out;
+      this.type = type;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+      if (b == '\n') {
+        sendLine();
+      } else {
+        line.write(b);
+      }
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+      // partial lines are sent only when complete
+      synchronized (out) {
+        out.flush();
+      }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+      if (line.size() > 0) {
+        sendLine();
+      }
+      flush();
+    }
+
+    private void sendLine() throws IOException {
+      byte[] bytes = line.toByteArray();
+      int length = bytes.length;
+      if (length > 0 && bytes[length - 1] == '\r') {
+        length--;
+      }
+      synchronized (out) {
+        out.writeByte(type);
+        writeBytes(out, bytes, 0, length);
+      }
+      line.reset();
+    }
+  }
+}
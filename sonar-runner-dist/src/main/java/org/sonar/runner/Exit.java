@@ -19,11 +19,14 @@
  */
 package org.sonar.runner;
 
+import org.sonar.runner.impl.Logs;
+
 class Exit {
   static final int SUCCESS = 0;
   static final int ERROR = 1;
 
   void exit(int status) {
+    Logs.flush();
     System.exit(status);
   }
 }
@@ -0,0 +1,97 @@
+/*
+ * SonarQube Runner - Distribution
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Memoizes the file system checks of a resolution of configuration, which are slow on network file systems.
+ * The state of every checked path is kept so that {@link ConfCache} can detect changes.
+ * Must not be kept between resolutions. Thread-safe.
+ */
+class FileStats {
+
+  static final String MISSING = "-";
+  static final String DIRECTORY = "d";
+  private static final String FILE_PREFIX = "f:";
+
+  private final ConcurrentMap<String, String> stamps = new ConcurrentHashMap<String, String>();
+  private final ConcurrentMap<String, File> canonicalFiles = new ConcurrentHashMap<String, File>();
+
+  boolean isFile(File file) {
+    return stampOf(file).startsWith(FILE_PREFIX);
+  }
+
+  boolean isDirectory(File file) {
+    return DIRECTORY.equals(stampOf(file));
+  }
+
+  File canonical(File file) throws IOException {
+    String path = file.getAbsolutePath();
+    File canonical = canonicalFiles.get(path);
+    if (canonical == null) {
+      canonical = file.getCanonicalFile();
+      canonicalFiles.put(path, canonical);
+    }
+    return canonical;
+  }
+
+  String stampOf(File file) {
+    String path = file.getAbsolutePath();
+    String stamp = stamps.get(path);
+    if (stamp == null) {
+      stamp = stamp(file);
+      stamps.put(path, stamp);
+    }
+    return stamp;
+  }
+
+  /**
+   * @return checked paths and their states, sorted by path
+   */
+  Map<String, String> stamps() {
+    return new TreeMap<String, String>(stamps);
+  }
+
+  /**
+   * Type, size and last modification date, read with a single system call
+   */
+  static String stamp(File file) {
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+      if (attributes.isDirectory()) {
+        return DIRECTORY;
+      }
+      if (attributes.isRegularFile()) {
+        return FILE_PREFIX + attributes.size() + ":" + attributes.lastModifiedTime().toMillis();
+      }
+      return MISSING;
+    } catch (IOException e) {
+      return MISSING;
+    }
+  }
+}
@@ -19,8 +19,17 @@
  */
 package org.sonar.runner;
 
+import org.sonar.runner.api.Runner;
+import org.sonar.runner.api.RunnerProperties;
+import org.sonar.runner.api.ScanProperties;
 import org.sonar.runner.impl.Logs;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.Properties;
+
 /**
  * Arguments :
  * <ul>
@@ -29,6 +38,11 @@ import org.sonar.runner.impl.Logs;
  * This property is used only if ${runner.home} is not defined</li>
  * <li>project.home: path to project root directory. If not set, then it's supposed to be the directory where the runner is executed</li>
  * <li>project.settings: optional path to project settings. Default value is ${project.home}/sonar-project.properties.</li>
+ * <li>sonarRunner.daemon.port: optional port of the local daemon (see option --daemon). When set, the analysis is
+ * delegated to the daemon if it's running.</li>
+ * <li>sonarRunner.manifest.parallelism: optional number of projects analysed concurrently when the option --manifest
+ * is set. Default value is 1.</li>
+ * <li>sonarRunner.statsFile: optional path of the JSON file the statistics of the execution are written to.</li>
  * </ul>
  *
  * @since 1.0
@@ -39,49 +53,143 @@ public class Main {
   private final Cli cli;
   private final Conf conf;
   private final RunnerFactory runnerFactory;
+  private final Stats stats;
 
   Main(Exit exit, Cli cli, Conf conf, RunnerFactory runnerFactory) {
+    this(exit, cli, conf, runnerFactory, new Stats().start());
+  }
+
+  Main(Exit exit, Cli cli, Conf conf, RunnerFactory runnerFactory, Stats stats) {
     this.exit = exit;
     this.cli = cli;
     this.conf = conf;
     this.runnerFactory = runnerFactory;
+    this.stats = stats;
   }
 
   public static void main(String[] args) {
+    Stats stats = new Stats().start().phase(Stats.PHASE_CLI);
     Cli cli = new Cli().parse(args);
-    Main main = new Main(new Exit(), cli, new Conf(cli), new RunnerFactory());
+    Main main = new Main(new Exit(), cli, new Conf(cli), new RunnerFactory(), stats);
     main.execute();
   }
 
   void execute() {
     SystemInfo.print();
-    if (!cli.isDisplayVersionOnly()) {
+    if (cli.isDaemonMode()) {
+      exit.exit(runDaemon());
+    } else if (cli.isStopDaemon()) {
+      exit.exit(stopDaemon());
+    } else if (cli.manifest() != null) {
+      exit.exit(executeManifest());
+    } else if (!cli.isDisplayVersionOnly()) {
       int status = executeTask();
       exit.exit(status);
     }
   }
 
+  private int runDaemon() {
+    try {
+      Properties props = cli.properties();
+      new Daemon(DaemonProtocol.port(props), DaemonProtocol.tokenFile(props), runnerFactory).bind().run();
+      return Exit.SUCCESS;
+    } catch (Exception e) {
+      showError("Error during execution of the daemon", e, cli.isDisplayStackTrace());
+      return Exit.ERROR;
+    }
+  }
+
+  private int stopDaemon() {
+    try {
+      Properties props = cli.properties();
+      return new DaemonClient(DaemonProtocol.port(props), DaemonProtocol.tokenFile(props)).stop();
+    } catch (Exception e) {
+      showError("Fail to stop the daemon", e, cli.isDisplayStackTrace());
+      return Exit.ERROR;
+    }
+  }
+
   private int executeTask() {
-    Stats stats = new Stats().start();
     try {
       if (cli.isDisplayStackTrace()) {
         Logs.info("Error stacktraces are turned on.");
       }
-      runnerFactory.create(conf.properties()).execute();
+      stats.phase(Stats.PHASE_CONF);
+      Properties props = conf.properties();
+      stats.setStatsFile(props.getProperty(Stats.STATS_FILE));
+      if (props.containsKey(DaemonProtocol.DAEMON_PORT)) {
+        Integer status = executeOnDaemon(props);
+        if (status != null) {
+          displayExecutionResult(status == Exit.SUCCESS ? "SUCCESS" : "FAILURE");
+          return status;
+        }
+      }
+      stats.phase(Stats.PHASE_LAUNCH);
+      Runner<?> runner = runnerFactory.create(props);
+      runner.addAnalysisListener(stats);
+      runner.execute();
 
     } catch (Exception e) {
-      displayExecutionResult(stats, "FAILURE");
+      displayExecutionResult("FAILURE");
       showError("Error during Sonar runner execution", e, cli.isDisplayStackTrace());
       return Exit.ERROR;
     }
-    displayExecutionResult(stats, "SUCCESS");
+    displayExecutionResult("SUCCESS");
     return Exit.SUCCESS;
   }
 
-  private void displayExecutionResult(Stats stats, String resultMsg) {
+  private int executeManifest() {
+    stats.phase(Stats.PHASE_MANIFEST).setStatsFile(cli.properties().getProperty(Stats.STATS_FILE));
+    List<ManifestExecution.Result> results;
+    try {
+      Manifest manifest = Manifest.load(new File(cli.manifest()));
+      int parallelism = Integer.parseInt(cli.properties().getProperty(Manifest.PARALLELISM, "1").trim());
+      Logs.info("Analyse " + manifest.projects().size() + " projects, " + parallelism + " at a time");
+      results = new ManifestExecution(conf, runnerFactory, cli.properties(), parallelism).execute(manifest);
+    } catch (Exception e) {
+      displayExecutionResult("FAILURE");
+      showError("Error during Sonar runner execution", e, cli.isDisplayStackTrace());
+      return Exit.ERROR;
+    }
+    ManifestExecution.printReport(results);
+    int status = ManifestExecution.exitStatus(results);
+    displayExecutionResult(status == Exit.SUCCESS ? "SUCCESS" : "FAILURE");
+    return status;
+  }
+
+  /**
+   * @return the exit status, or null if the daemon is not running
+   */
+  private static Integer executeOnDaemon(Properties props) throws IOException {
+    int port = DaemonProtocol.port(props);
+    // the daemon does not run in the directory of the project
+    String currentDir = new File("").getAbsolutePath();
+    String task = props.getProperty(RunnerProperties.TASK);
+    if (task == null || ScanProperties.SCAN_TASK.equals(task)) {
+      setDefault(props, ScanProperties.PROJECT_BASEDIR, currentDir);
+    } else {
+      setDefault(props, RunnerProperties.WORK_DIR, currentDir);
+    }
+    try {
+      return new DaemonClient(port, DaemonProtocol.tokenFile(props)).execute(props);
+    } catch (ConnectException e) {
+      Logs.info("No daemon is listening on port " + port + ", analysis is executed in this process");
+      return null;
+    }
+  }
+
+  private static void setDefault(Properties props, String key, String value) {
+    if (!props.containsKey(key)) {
+      props.setProperty(key, value);
+    }
+  }
+
+  private void displayExecutionResult(String resultMsg) {
     Logs.info("------------------------------------------------------------------------");
     Logs.info("EXECUTION " + resultMsg);
     Logs.info("------------------------------------------------------------------------");
+    // stats are written directly to the standard output
+    Logs.flush();
     stats.stop();
     Logs.info("------------------------------------------------------------------------");
   }
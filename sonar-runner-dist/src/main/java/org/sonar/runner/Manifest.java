@@ -0,0 +1,171 @@
+/*
+ * SonarQube Runner - Distribution
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Projects analysed by a single execution of the runner, see option --manifest. One project per line:
+ * <pre>
+ * # comment
+ * path/to/project1
+ * path/to/project2 -Dsonar.branch=release "-Dsonar.projectName=Project 2" -DsonarRunner.manifest.priority=10
+ * </pre>
+ * Relative paths are resolved from the directory of the manifest. Projects with the highest priority are
+ * started first, then projects are started in the order of the manifest.
+ *
+ * @since 2.5
+ */
+class Manifest {
+
+  /**
+   * Optional priority of a project, 0 by default
+   */
+  static final String PRIORITY = "sonarRunner.manifest.priority";
+
+  /**
+   * Number of projects analysed concurrently, 1 by default
+   */
+  static final String PARALLELISM = "sonarRunner.manifest.parallelism";
+
+  static class Project {
+    final File baseDir;
+    final Properties properties;
+    final int priority;
+
+    Project(File baseDir, Properties properties, int priority) {
+      this.baseDir = baseDir;
+      this.properties = properties;
+      this.priority = priority;
+    }
+  }
+
+  private final List<Project> projects;
+
+  private Manifest(List<Project> projects) {
+    this.projects = projects;
+  }
+
+  /**
+   * Projects in the order of their execution
+   */
+  List<Project> projects() {
+    return projects;
+  }
+
+  static Manifest load(File file) throws IOException {
+    try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+      return parse(reader, file.getAbsoluteFile().getParentFile());
+    }
+  }
+
+  static Manifest parse(Reader reader, File dir) throws IOException {
+    List<Project> projects = new ArrayList<Project>();
+    BufferedReader lines = new BufferedReader(reader);
+    String line;
+    int lineNumber = 0;
+    while ((line = lines.readLine()) != null) {
+      lineNumber++;
+      line = line.trim();
+      if (!line.isEmpty() && !line.startsWith("#")) {
+        projects.add(parseLine(line, lineNumber, dir));
+      }
+    }
+    // stable sort, so the order of the manifest is kept for the same priority
+    Collections.sort(projects, new Comparator<Project>() {
+      @Override
+      public int compare(Project p1, Project p2) {
+        return Integer.compare(p2.priority, p1.priority);
+      }
+    });
+    return new Manifest(projects);
+  }
+
+  private static Project parseLine(String line, int lineNumber, File dir) {
+    List<String> tokens = tokenize(line, lineNumber);
+    File baseDir = Conf.getFileFromPath(tokens.get(0), dir);
+    Properties props = new Properties();
+    for (String token : tokens.subList(1, tokens.size())) {
+      if (!token.startsWith("-D") || token.length() == 2) {
+        throw new IllegalStateException("Invalid option on line " + lineNumber + " of manifest: " + token);
+      }
+      int eq = token.indexOf('=');
+      if (eq == -1) {
+        props.setProperty(token.substring(2), "true");
+      } else {
+        props.setProperty(token.substring(2, eq), token.substring(eq + 1));
+      }
+    }
+    return new Project(baseDir, props, priority(props, lineNumber));
+  }
+
+  private static int priority(Properties props, int lineNumber) {
+    String value = props.getProperty(PRIORITY, "0").trim();
+    try {
+      return Integer.parseInt(value);
+    } catch (NumberFormatException e) {
+      throw new IllegalStateException("Invalid priority on line " + lineNumber + " of manifest: " + value, e);
+    }
+  }
+
+  /**
+   * Splits on whitespaces. Double quotes group words.
+   */
+  private static List<String> tokenize(String line, int lineNumber) {
+    List<String> tokens = new ArrayList<String>();
+    StringBuilder token = new StringBuilder();
+    boolean quoted = false;
+    boolean inToken = false;
+    for (int i = 0; i < line.length(); i++) {
+      char c = line.charAt(i);
+      if (c == '"') {
+        quoted = !quoted;
+        inToken = true;
+      } else if (Character.isWhitespace(c) && !quoted) {
+        if (inToken) {
+          tokens.add(token.toString());
+          token.setLength(0);
+          inToken = false;
+        }
+      } else {
+        token.append(c);
+        inToken = true;
+      }
+    }
+    if (quoted) {
+      throw new IllegalStateException("Unclosed quote on line " + lineNumber + " of manifest");
+    }
+    if (inToken) {
+      tokens.add(token.toString());
+    }
+    return tokens;
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * SonarQube Runner - Distribution
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import org.sonar.runner.impl.InternalProperties;
+import org.sonar.runner.impl.Logs;
+
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Executes the analyses of the projects listed in a {@link Manifest} in this JVM. Each project gets its own
+ * configuration, as if the runner was executed in its base directory. The analyses share the classloaders
+ * of the batch (one per concurrent analysis), the libraries downloaded from the server and the HTTP connections.
+ *
+ * @since 2.5
+ */
+class ManifestExecution {
+
+  static final String DEFAULT_CLASSLOADER_CACHE_SIZE = "1";
+  private static final String PROJECT_HOME = "project.home";
+  private static final String PROJECT_BASEDIR = "sonar.projectBaseDir";
+
+  static class Result {
+    final Manifest.Project project;
+    final boolean success;
+    final long durationMs;
+    final String error;
+
+    Result(Manifest.Project project, boolean success, long durationMs, @Nullable String error) {
+      this.project = project;
+      this.success = success;
+      this.durationMs = durationMs;
+      this.error = error;
+    }
+  }
+
+  private final Conf conf;
+  private final RunnerFactory runnerFactory;
+  private final Properties cliProps;
+  private final int parallelism;
+
+  ManifestExecution(Conf conf, RunnerFactory runnerFactory, Properties cliProps, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Invalid value of " + Manifest.PARALLELISM + ": " + parallelism);
+    }
+    this.conf = conf;
+    this.runnerFactory = runnerFactory;
+    this.cliProps = cliProps;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * @return results in the order of execution of projects
+   */
+  List<Result> execute(Manifest manifest) {
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+    try {
+      // the queue of the executor is FIFO, so projects are started in the order of the manifest
+      List<Future<Result>> futures = new ArrayList<Future<Result>>();
+      for (final Manifest.Project project : manifest.projects()) {
+        futures.add(executor.submit(new Callable<Result>() {
+          @Override
+          public Result call() {
+            return execute(project);
+          }
+        }));
+      }
+      List<Result> results = new ArrayList<Result>();
+      for (Future<Result> future : futures) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while analysing projects", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Fail to analyse projects", e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  Result execute(Manifest.Project project) {
+    long start = System.currentTimeMillis();
+    // lines of concurrent analyses are prefixed by the name of the project directory
+    String initialContext = parallelism > 1 ? Logs.setContextForCurrentThread(project.baseDir.getName()) : null;
+    try {
+      Properties props = conf.properties(projectCliProperties(project));
+      if (!props.containsKey(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE)) {
+        props.setProperty(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE, DEFAULT_CLASSLOADER_CACHE_SIZE);
+      }
+      runnerFactory.create(props).execute();
+      return new Result(project, true, System.currentTimeMillis() - start, null);
+    } catch (Exception e) {
+      Logs.error("Analysis of " + project.baseDir.getPath() + " failed", e);
+      return new Result(project, false, System.currentTimeMillis() - start, e.getMessage());
+    } finally {
+      if (parallelism > 1) {
+        Logs.setContextForCurrentThread(initialContext);
+      }
+    }
+  }
+
+  /**
+   * Properties of the command-line, overridden by the properties of the project
+   */
+  Properties projectCliProperties(Manifest.Project project) {
+    Properties props = new Properties();
+    props.putAll(cliProps);
+    props.remove(PROJECT_BASEDIR);
+    props.putAll(project.properties);
+    props.remove(Manifest.PRIORITY);
+    props.setProperty(PROJECT_HOME, project.baseDir.getAbsolutePath());
+    return props;
+  }
+
+  static int exitStatus(List<Result> results) {
+    for (Result result : results) {
+      if (!result.success) {
+        return Exit.ERROR;
+      }
+    }
+    return Exit.SUCCESS;
+  }
+
+  static void printReport(List<Result> results) {
+    int width = "PROJECT".length();
+    for (Result result : results) {
+      width = Math.max(width, result.project.baseDir.getPath().length());
+    }
+    String format = "%-" + width + "s  %-7s  %s";
+    Logs.info("------------------------------------------------------------------------");
+    Logs.info(String.format(format, "PROJECT", "STATUS", "TIME"));
+    for (Result result : results) {
+      String line = String.format(format, result.project.baseDir.getPath(), result.success ? "SUCCESS" : "FAILURE", Stats.formatTime(result.durationMs));
+      Logs.info(result.error != null ? (line + "  " + result.error) : line);
+    }
+  }
+}
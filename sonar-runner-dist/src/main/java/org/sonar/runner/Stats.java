@@ -19,27 +19,203 @@
  */
 package org.sonar.runner;
 
-class Stats {
+import org.sonar.runner.api.AnalysisEvent;
+import org.sonar.runner.api.AnalysisListener;
+import org.sonar.runner.impl.Logs;
+import org.sonar.runner.impl.Progress;
+import org.sonar.runner.impl.ThreadMetrics;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Wall time, CPU time, allocated bytes and bytes downloaded from the server of each phase of the execution.
+ * Phases of the command line are measured in this process. Phases of the runner are received as
+ * {@link AnalysisEvent}s, so they are also measured in fork mode. CPU time and allocations are those of the
+ * thread that executes the phase, or -1 if not supported by the JVM.
+ */
+class Stats implements AnalysisListener {
+
+  /**
+   * Optional path of the JSON file the report is written to
+   */
+  static final String STATS_FILE = "sonarRunner.statsFile";
+
+  static final String PHASE_CLI = "cli";
+  static final String PHASE_CONF = "conf";
+  static final String PHASE_LAUNCH = "launch";
+  static final String PHASE_MANIFEST = "manifest";
+
+  private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+  private final List<Map<String, Object>> files = new ArrayList<Map<String, Object>>();
   private long startTime;
+  private long threadId;
+  private String currentPhase;
+  private Sample currentStart;
+  private long analysisHeapPeak;
+  private File statsFile;
 
   Stats() {
   }
 
   Stats start() {
     startTime = System.currentTimeMillis();
+    threadId = Thread.currentThread().getId();
     return this;
   }
 
+  /**
+   * Starts a phase executed by the thread that started the stats. The current phase is stopped.
+   */
+  synchronized Stats phase(String name) {
+    switchTo(name, localSample());
+    return this;
+  }
+
+  Stats setStatsFile(@Nullable String path) {
+    statsFile = path == null || "".equals(path.trim()) ? null : new File(path.trim());
+    return this;
+  }
+
+  @Override
+  public synchronized void onEvent(AnalysisEvent event) {
+    String type = event.type();
+    if (AnalysisEvent.PHASE.equals(type)) {
+      switchTo(event.getString("name"), remoteSample(event));
+    } else if (AnalysisEvent.END.equals(type)) {
+      switchTo(null, remoteSample(event));
+    } else if (AnalysisEvent.FILE.equals(type)) {
+      files.add(event.fields());
+      if (currentPhase != null && !Boolean.TRUE.equals(event.get("cached"))) {
+        phases.get(currentPhase).transferredBytes += Math.max(0L, event.getLong("bytes", 0L));
+      }
+    } else if (AnalysisEvent.MEMORY.equals(type)) {
+      analysisHeapPeak = Math.max(analysisHeapPeak, event.getLong("heapPeak", 0L));
+    }
+  }
+
   Stats stop() {
+    synchronized (this) {
+      switchTo(null, localSample());
+    }
     long stopTime = System.currentTimeMillis() - startTime;
     System.out.println("Total time: " + formatTime(stopTime));
+    System.out.println("Peak Memory: " + heapPeak() / (1024L * 1024) + "M");
+    for (String line : report()) {
+      System.out.println(line);
+    }
+    if (statsFile != null) {
+      writeJson(statsFile, stopTime);
+    }
+    return this;
+  }
 
-    System.gc();
-    Runtime r = Runtime.getRuntime();
-    long mb = 1024L * 1024;
-    System.out.println("Final Memory: " + (r.totalMemory() - r.freeMemory()) / mb + "M/" + r.totalMemory() / mb + "M");
+  /**
+   * Peak heap of this JVM or, in fork mode, of the forked one. Peaks are read from memory pools,
+   * so no garbage collection is needed.
+   */
+  long heapPeak() {
+    return Math.max(ThreadMetrics.heapPeakBytes(), analysisHeapPeak);
+  }
 
-    return this;
+  synchronized List<String> report() {
+    List<String> lines = new ArrayList<String>();
+    if (phases.isEmpty()) {
+      return lines;
+    }
+    String format = "%-12s %10s %10s %10s %12s";
+    lines.add(String.format(format, "Phase", "Time", "CPU", "Allocated", "Downloaded"));
+    for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+      Phase phase = entry.getValue();
+      lines.add(String.format(format, entry.getKey(), formatTime(phase.wallMs), phase.cpuNs < 0 ? "-" : formatTime(phase.cpuNs / 1000000L),
+        formatBytes(phase.allocatedBytes), formatBytes(phase.transferredBytes)));
+    }
+    if (Logs.isDebugEnabled()) {
+      for (Map<String, Object> file : files) {
+        boolean cached = Boolean.TRUE.equals(file.get("cached"));
+        lines.add("  " + file.get("name") + ": " + (cached ? "cache hit" : ("downloaded " + formatBytes(toLong(file.get("bytes")))))
+          + " in " + formatTime(toLong(file.get("durationMs"))));
+      }
+    }
+    return lines;
+  }
+
+  synchronized String toJson(long totalTimeMs) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("{\"totalTimeMs\":").append(totalTimeMs).append(",\"heapPeakBytes\":").append(heapPeak()).append(",\"phases\":[");
+    boolean first = true;
+    for (Map.Entry<String, Phase> entry : phases.entrySet()) {
+      if (!first) {
+        sb.append(',');
+      }
+      first = false;
+      sb.append(Progress.toJson(entry.getValue().toMap(entry.getKey())));
+    }
+    sb.append("],\"files\":[");
+    first = true;
+    for (Map<String, Object> file : files) {
+      if (!first) {
+        sb.append(',');
+      }
+      first = false;
+      Map<String, Object> fields = new LinkedHashMap<String, Object>(file);
+      fields.remove("type");
+      sb.append(Progress.toJson(fields));
+    }
+    return sb.append("]}").toString();
+  }
+
+  private void writeJson(File file, long totalTimeMs) {
+    try {
+      Files.write(file.toPath(), toJson(totalTimeMs).getBytes(StandardCharsets.UTF_8));
+    } catch (IOException e) {
+      Logs.warn("Fail to write statistics to " + file + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Counters of a phase can only be compared to counters of the same thread. When the execution moves from
+   * this process to the events of the runner, or the reverse, the phase is stopped with a sample of the
+   * thread that started it, or with wall time only.
+   */
+  private void switchTo(@Nullable String name, Sample sample) {
+    if (currentPhase != null) {
+      Sample end;
+      if (sample.remote == currentStart.remote) {
+        end = sample;
+      } else if (currentStart.remote) {
+        end = new Sample(sample.time, ThreadMetrics.UNSUPPORTED, ThreadMetrics.UNSUPPORTED, true);
+      } else {
+        end = localSample();
+      }
+      phases.get(currentPhase).add(currentStart, end);
+    }
+    currentPhase = name;
+    currentStart = sample;
+    if (name != null && !phases.containsKey(name)) {
+      phases.put(name, new Phase());
+    }
+  }
+
+  private Sample localSample() {
+    return new Sample(System.currentTimeMillis(), ThreadMetrics.cpuTimeNanos(threadId), ThreadMetrics.allocatedBytes(threadId), false);
+  }
+
+  private static Sample remoteSample(AnalysisEvent event) {
+    return new Sample(event.time(), event.getLong(Progress.CPU_TIME, ThreadMetrics.UNSUPPORTED), event.getLong(Progress.ALLOCATED_BYTES, ThreadMetrics.UNSUPPORTED), true);
+  }
+
+  private static long toLong(@CheckForNull Object value) {
+    return value instanceof Number ? ((Number) value).longValue() : -1L;
   }
 
   static String formatTime(long time) {
@@ -57,4 +233,67 @@ class Stats {
     }
     return String.format(format, h, m, s, ms);
   }
+
+  static String formatBytes(long bytes) {
+    if (bytes < 0) {
+      return "-";
+    }
+    if (bytes < 1024L) {
+      return bytes + " B";
+    }
+    if (bytes < 1024L * 1024) {
+      return bytes / 1024L + " KB";
+    }
+    return bytes / (1024L * 1024) + " MB";
+  }
+
+  /**
+   * Wall time and counters of a thread at the start or end of a phase
+   */
+  private static final class Sample {
+    private final long time;
+    private final long cpuNs;
+    private final long allocatedBytes;
+    private final boolean remote;
+
+    Sample(long time, long cpuNs, long allocatedBytes, boolean remote) {
+      this.time = time;
+      this.cpuNs = cpuNs;
+      this.allocatedBytes = allocatedBytes;
+      this.remote = remote;
+    }
+  }
+
+  /**
+   * Totals of the executions of a phase
+   */
+  private static final class Phase {
+    private long wallMs;
+    private long cpuNs;
+    private long allocatedBytes;
+    private long transferredBytes;
+
+    void add(Sample start, Sample end) {
+      wallMs += Math.max(0L, end.time - start.time);
+      cpuNs = add(cpuNs, start.cpuNs, end.cpuNs);
+      allocatedBytes = add(allocatedBytes, start.allocatedBytes, end.allocatedBytes);
+    }
+
+    private static long add(long total, long start, long end) {
+      if (total < 0 || start < 0 || end < 0) {
+        return ThreadMetrics.UNSUPPORTED;
+      }
+      return total + Math.max(0L, end - start);
+    }
+
+    Map<String, Object> toMap(String name) {
+      Map<String, Object> map = new LinkedHashMap<String, Object>();
+      map.put("name", name);
+      map.put("wallMs", wallMs);
+      map.put("cpuTimeNs", cpuNs);
+      map.put("allocatedBytes", allocatedBytes);
+      map.put("transferredBytes", transferredBytes);
+      return map;
+    }
+  }
 }
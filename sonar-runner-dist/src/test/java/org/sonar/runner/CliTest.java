@@ -22,10 +22,13 @@ package org.sonar.runner;
 import org.junit.Test;
 
 import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 
 public class CliTest {
 
-  Cli cli = new Cli();
+  Exit exit = mock(Exit.class);
+  Cli cli = new Cli(exit);
 
   @Test
   public void should_parse_empty_arguments() {
@@ -53,6 +56,15 @@ public class CliTest {
     assertThat(cli.properties().get("sonar.task")).isEqualTo("views");
   }
 
+  @Test
+  public void should_parse_manifest() {
+    cli.parse(new String[]{"--manifest", "projects.txt"});
+    assertThat(cli.manifest()).isEqualTo("projects.txt");
+
+    cli.parse(new String[0]);
+    assertThat(cli.manifest()).isNull();
+  }
+
   @Test
   public void should_enable_debug_mode() {
     cli.parse(new String[]{"-X"});
@@ -69,6 +81,17 @@ public class CliTest {
     assertThat(cli.properties().get("sonar.verbose")).isNull();
   }
 
+  @Test
+  public void should_enable_daemon_mode() {
+    cli.parse(new String[]{"--daemon"});
+    assertThat(cli.isDaemonMode()).isTrue();
+    assertThat(cli.isStopDaemon()).isFalse();
+
+    cli.parse(new String[]{"--stop-daemon"});
+    assertThat(cli.isDaemonMode()).isFalse();
+    assertThat(cli.isStopDaemon()).isTrue();
+  }
+
   @Test
   public void should_disable_debug_mode_and_stacktrace_log_by_default() {
     cli.parse(new String[0]);
@@ -76,4 +99,10 @@ public class CliTest {
     assertThat(cli.isDisplayStackTrace()).isFalse();
     assertThat(cli.properties().get("sonar.verbose")).isNull();
   }
+
+  @Test
+  public void should_exit_after_usage_through_exit_which_flushes_logs() {
+    cli.parse(new String[]{"--help"});
+    verify(exit).exit(Exit.SUCCESS);
+  }
 }
@@ -0,0 +1,85 @@
+/*
+ * SonarQube Runner - Distribution
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ConfCacheTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void should_be_disabled_by_default() {
+    Properties settings = new Properties();
+    assertThat(ConfCache.isEnabled(settings)).isFalse();
+
+    settings.setProperty(ConfCache.ENABLED, "true");
+    assertThat(ConfCache.isEnabled(settings)).isTrue();
+  }
+
+  @Test
+  public void should_locate_user_home() {
+    Properties settings = new Properties();
+    settings.setProperty("sonar.userHome", "/path/to/home");
+
+    assertThat(ConfCache.userHome(settings)).isEqualTo(new File("/path/to/home"));
+  }
+
+  @Test
+  public void should_store_and_validate_configuration() throws Exception {
+    ConfCache cache = new ConfCache(temp.newFolder());
+    File settingsFile = temp.newFile();
+    Properties resolved = new Properties();
+    resolved.setProperty("sonar.projectKey", "foo");
+    Map<String, String> stamps = Collections.singletonMap(settingsFile.getAbsolutePath(), FileStats.stamp(settingsFile));
+
+    assertThat(cache.get("project")).isNull();
+    cache.put("project", resolved, stamps);
+
+    assertThat(cache.get("project")).isEqualTo(resolved);
+    assertThat(cache.get("other")).isNull();
+
+    Files.write(settingsFile.toPath(), new byte[] {1});
+    assertThat(cache.get("project")).isNull();
+  }
+
+  @Test
+  public void should_ignore_corrupted_cache() throws Exception {
+    File dir = temp.newFolder();
+    ConfCache cache = new ConfCache(dir);
+    cache.put("project", new Properties(), Collections.<String, String>emptyMap());
+    for (File file : dir.listFiles()) {
+      Files.write(file.toPath(), "\\u12".getBytes("UTF-8"));
+    }
+
+    assertThat(cache.get("project")).isNull();
+  }
+}
@@ -25,6 +25,10 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
 import java.util.Properties;
 
 import static org.fest.assertions.Assertions.assertThat;
@@ -53,6 +57,16 @@ public class ConfTest {
     assertThat(conf.properties().get("sonar.prop")).isEqualTo("value");
   }
 
+  @Test
+  public void should_load_configuration_of_given_command_line() throws Exception {
+    File projectHome = new File(getClass().getResource("/org/sonar/runner/ConfTest/shouldLoadCompleteConfiguration/project").toURI());
+    Properties projectArgs = new Properties();
+    projectArgs.setProperty("project.home", projectHome.getCanonicalPath());
+
+    assertThat(conf.properties(projectArgs).getProperty("project.prop")).isEqualTo("foo");
+    assertThat(conf.properties().getProperty("project.prop")).isNull();
+  }
+
   @Test
   public void should_not_fail_if_no_home() throws Exception {
     assertThat(conf.properties()).isNotEmpty();
@@ -132,4 +146,56 @@ public class ConfTest {
     assertThat(properties.getProperty("module2.sonar.projectName")).isEqualTo("Module 2");
   }
 
+  @Test
+  public void should_extract_properties_of_modules_in_one_pass() {
+    Properties props = new Properties();
+    props.setProperty("module1.sonar.projectName", "Module 1");
+    props.setProperty("module1.sub.sonar.projectName", "Sub");
+    props.setProperty("module2.sonar.sources", "src");
+    props.setProperty("module10.sonar.sources", "other");
+    props.setProperty("sonar.projectKey", "root");
+
+    Map<String, Properties> modules = Conf.extractModulesProperties(new String[] {"module1", "module1.sub", "module2"}, props);
+
+    assertThat(modules.get("module1").getProperty("sonar.projectName")).isEqualTo("Module 1");
+    assertThat(modules.get("module1").getProperty("sub.sonar.projectName")).isEqualTo("Sub");
+    assertThat(modules.get("module1")).hasSize(2);
+    assertThat(modules.get("module1.sub").getProperty("sonar.projectName")).isEqualTo("Sub");
+    assertThat(modules.get("module2").getProperty("sonar.sources")).isEqualTo("src");
+    assertThat(modules.get("module2")).hasSize(1);
+  }
+
+  @Test
+  public void should_cache_configuration_until_a_file_changes() throws Exception {
+    File projectHome = temp.newFolder();
+    File module1 = new File(projectHome, "module1");
+    File module2 = new File(projectHome, "module2");
+    module1.mkdir();
+    module2.mkdir();
+    write(new File(projectHome, "sonar-project.properties"), "sonar.modules=module1,module2");
+    write(new File(module1, "sonar-project.properties"), "sonar.projectName=Module 1");
+    File userHome = temp.newFolder();
+    args.setProperty("project.home", projectHome.getCanonicalPath());
+    args.setProperty("sonar.userHome", userHome.getCanonicalPath());
+    args.setProperty(ConfCache.ENABLED, "true");
+
+    assertThat(conf.properties().getProperty("module1.sonar.projectName")).isEqualTo("Module 1");
+    assertThat(new File(userHome, "conf_cache").list()).hasSize(1);
+    assertThat(conf.properties().getProperty("module1.sonar.projectName")).isEqualTo("Module 1");
+
+    // changed file
+    write(new File(module1, "sonar-project.properties"), "sonar.projectName=First module");
+    assertThat(conf.properties().getProperty("module1.sonar.projectName")).isEqualTo("First module");
+
+    // new file in a module which did not have one
+    write(new File(module2, "sonar-project.properties"), "sonar.projectName=Module 2");
+    assertThat(conf.properties().getProperty("module2.sonar.projectName")).isEqualTo("Module 2");
+  }
+
+  private static void write(File file, String content) throws IOException {
+    // the cache relies on size and last modification date
+    long lastModified = file.exists() ? file.lastModified() : 0L;
+    Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    file.setLastModified(Math.max(System.currentTimeMillis(), lastModified + 2000L));
+  }
 }
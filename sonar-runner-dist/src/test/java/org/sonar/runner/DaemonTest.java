@@ -0,0 +1,216 @@
+/*
+ * SonarQube Runner - Distribution
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.sonar.runner.api.Runner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Properties;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+import static org.junit.Assume.assumeTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DaemonTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  RunnerFactory runnerFactory = mock(RunnerFactory.class);
+  Runner runner = mock(Runner.class);
+  ByteArrayOutputStream stdOut = new ByteArrayOutputStream();
+  ByteArrayOutputStream stdErr = new ByteArrayOutputStream();
+  File tokenFile;
+  Daemon daemon;
+  Thread daemonThread;
+
+  @Before
+  public void startDaemon() throws Exception {
+    when(runnerFactory.create(any(Properties.class))).thenReturn(runner);
+    tokenFile = new File(temp.newFolder(), "daemon.token");
+    daemon = new Daemon(0, tokenFile, runnerFactory, 500).bind();
+    daemonThread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          daemon.run();
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+    daemonThread.start();
+  }
+
+  @After
+  public void stopDaemon() throws Exception {
+    assertThat(client().stop()).isEqualTo(0);
+    daemonThread.join(10000L);
+    assertThat(daemonThread.isAlive()).isFalse();
+    assertThat(tokenFile).doesNotExist();
+  }
+
+  @Test
+  public void should_execute_analysis_and_replay_outputs() throws Exception {
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        System.out.println("analysis");
+        System.err.println("warning");
+        return null;
+      }
+    }).when(runner).execute();
+    Properties props = new Properties();
+    props.setProperty("sonar.projectKey", "foo");
+
+    int status = client().execute(props);
+
+    assertThat(status).isEqualTo(0);
+    assertThat(stdOut.toString()).contains("analysis");
+    assertThat(stdErr.toString()).contains("warning");
+    ArgumentCaptor<Properties> sentProps = ArgumentCaptor.forClass(Properties.class);
+    verify(runnerFactory).create(sentProps.capture());
+    assertThat(sentProps.getValue().getProperty("sonar.projectKey")).isEqualTo("foo");
+    assertThat(sentProps.getValue().getProperty("sonarRunner.classloaderCacheSize")).isEqualTo("3");
+  }
+
+  @Test
+  public void should_return_error_status_on_failure() throws Exception {
+    doThrow(new IllegalStateException("Server is down")).when(runner).execute();
+
+    int status = client().execute(new Properties());
+
+    assertThat(status).isEqualTo(1);
+    assertThat(stdErr.toString()).contains("Server is down");
+  }
+
+  @Test
+  public void should_execute_consecutive_analyses() throws Exception {
+    assertThat(client().execute(new Properties())).isEqualTo(0);
+    assertThat(client().execute(new Properties())).isEqualTo(0);
+    verify(runner, times(2)).execute();
+  }
+
+  @Test
+  public void should_not_be_blocked_by_idle_connection() throws Exception {
+    try (Socket idle = new Socket("localhost", daemon.port())) {
+      assertThat(client().execute(new Properties())).isEqualTo(0);
+    }
+    verify(runner).execute();
+  }
+
+  @Test
+  public void should_not_time_out_during_analysis() throws Exception {
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws InterruptedException {
+        Thread.sleep(1000L);
+        return null;
+      }
+    }).when(runner).execute();
+
+    assertThat(client().execute(new Properties())).isEqualTo(0);
+  }
+
+  @Test
+  public void should_fail_to_connect_when_daemon_is_down() throws Exception {
+    ServerSocket socket = new ServerSocket(0);
+    int freePort = socket.getLocalPort();
+    socket.close();
+    try {
+      new DaemonClient(freePort, tokenFile).execute(new Properties());
+      fail();
+    } catch (ConnectException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void should_refuse_connection_with_invalid_token() throws Exception {
+    File otherTokenFile = temp.newFile();
+    Files.write(otherTokenFile.toPath(), "guessed".getBytes(StandardCharsets.UTF_8));
+
+    int status = new DaemonClient(daemon.port(), otherTokenFile, new PrintStream(stdOut, true), new PrintStream(stdErr, true)).execute(new Properties());
+
+    assertThat(status).isEqualTo(1);
+    assertThat(stdErr.toString()).contains("Invalid token");
+    verify(runnerFactory, never()).create(any(Properties.class));
+  }
+
+  @Test
+  public void should_not_connect_without_token_file() throws Exception {
+    try {
+      new DaemonClient(daemon.port(), new File(temp.getRoot(), "unknown.token")).stop();
+      fail();
+    } catch (ConnectException e) {
+      assertThat(e.getMessage()).contains("unknown.token");
+    }
+  }
+
+  @Test
+  public void token_file_should_be_readable_only_by_owner() throws Exception {
+    assumeTrue(tokenFile.toPath().getFileSystem().supportedFileAttributeViews().contains("posix"));
+    assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath()))).isEqualTo("rw-------");
+  }
+
+  @Test
+  public void should_store_token_in_sonar_user_home() {
+    Properties props = new Properties();
+    props.setProperty("sonar.userHome", "/home/foo/.sonar");
+    props.setProperty("sonarRunner.daemon.port", "12345");
+    assertThat(DaemonProtocol.tokenFile(props)).isEqualTo(new File("/home/foo/.sonar", "runner-daemon-12345.token"));
+  }
+
+  @Test
+  public void should_use_default_port() {
+    Properties props = new Properties();
+    assertThat(DaemonProtocol.port(props)).isEqualTo(DaemonProtocol.DEFAULT_PORT);
+    props.setProperty("sonarRunner.daemon.port", "12345");
+    assertThat(DaemonProtocol.port(props)).isEqualTo(12345);
+  }
+
+  private DaemonClient client() {
+    return new DaemonClient(daemon.port(), tokenFile, new PrintStream(stdOut, true), new PrintStream(stdErr, true));
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * SonarQube Runner - Distribution
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class FileStatsTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  FileStats stats = new FileStats();
+
+  @Test
+  public void should_check_type_of_files() throws Exception {
+    File dir = temp.newFolder();
+    File file = temp.newFile();
+    File missing = new File(dir, "missing");
+
+    assertThat(stats.isDirectory(dir)).isTrue();
+    assertThat(stats.isFile(dir)).isFalse();
+    assertThat(stats.isFile(file)).isTrue();
+    assertThat(stats.isDirectory(file)).isFalse();
+    assertThat(stats.isFile(missing)).isFalse();
+    assertThat(stats.isDirectory(missing)).isFalse();
+    assertThat(stats.stamps()).hasSize(3);
+    assertThat(stats.stamps().get(missing.getAbsolutePath())).isEqualTo(FileStats.MISSING);
+  }
+
+  @Test
+  public void should_memoize_checks() throws Exception {
+    File file = temp.newFile();
+    assertThat(stats.isFile(file)).isTrue();
+
+    file.delete();
+
+    assertThat(stats.isFile(file)).isTrue();
+    assertThat(FileStats.stamp(file)).isEqualTo(FileStats.MISSING);
+  }
+
+  @Test
+  public void stamp_should_change_with_size() throws Exception {
+    File file = temp.newFile();
+    String empty = FileStats.stamp(file);
+
+    Files.write(file.toPath(), new byte[] {1, 2, 3});
+
+    assertThat(FileStats.stamp(file)).isNotEqualTo(empty);
+  }
+
+  @Test
+  public void should_memoize_canonical_files() throws Exception {
+    File dir = temp.newFolder();
+    File relative = new File(dir, "sub/..");
+
+    assertThat(stats.canonical(relative)).isEqualTo(dir.getCanonicalFile());
+    assertThat(stats.canonical(relative)).isSameAs(stats.canonical(relative));
+  }
+}
@@ -19,28 +19,40 @@
  */
 package org.sonar.runner;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.sonar.runner.api.Runner;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.Properties;
 
+import static org.fest.assertions.Assertions.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 public class MainTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   Exit exit = mock(Exit.class);
   Cli cli = mock(Cli.class);
   Conf conf = mock(Conf.class);
   RunnerFactory runnerFactory = mock(RunnerFactory.class, RETURNS_MOCKS);
 
   @Test
-  public void should_execute_runner() {
+  public void should_execute_runner() throws Exception {
+    when(conf.properties()).thenReturn(new Properties());
     Main main = new Main(exit, cli, conf, runnerFactory);
     main.execute();
 
@@ -48,14 +60,69 @@ public class MainTest {
   }
 
   @Test
-  public void should_fail_on_error() {
+  public void should_fail_on_error() throws Exception {
     Runner runner = mock(Runner.class);
     doThrow(new IllegalStateException("Error")).when(runner).execute();
     when(runnerFactory.create(any(Properties.class))).thenReturn(runner);
+    when(conf.properties()).thenReturn(new Properties());
+
+    Main main = new Main(exit, cli, conf, runnerFactory);
+    main.execute();
+
+    verify(exit).exit(1);
+  }
+
+  @Test
+  public void should_write_stats_file() throws Exception {
+    File statsFile = new File(temp.newFolder(), "stats.json");
+    Properties props = new Properties();
+    props.setProperty(Stats.STATS_FILE, statsFile.getAbsolutePath());
+    when(conf.properties()).thenReturn(props);
+    Runner runner = mock(Runner.class);
+    when(runnerFactory.create(any(Properties.class))).thenReturn(runner);
+
+    Main main = new Main(exit, cli, conf, runnerFactory);
+    main.execute();
+
+    verify(runner).addAnalysisListener(any(Stats.class));
+    verify(exit).exit(0);
+    String json = new String(Files.readAllBytes(statsFile.toPath()), StandardCharsets.UTF_8);
+    assertThat(json).contains("{\"name\":\"conf\"");
+    assertThat(json).contains("{\"name\":\"launch\"");
+  }
+
+  @Test
+  public void should_execute_projects_of_manifest() throws Exception {
+    File manifest = temp.newFile();
+    Files.write(manifest.toPath(), "project1\nproject2\n".getBytes(StandardCharsets.UTF_8));
+    when(cli.manifest()).thenReturn(manifest.getAbsolutePath());
+    when(cli.properties()).thenReturn(new Properties());
+    when(conf.properties(any(Properties.class))).thenReturn(new Properties());
+    Runner runner = mock(Runner.class);
+    when(runnerFactory.create(any(Properties.class))).thenReturn(runner);
+
+    Main main = new Main(exit, cli, conf, runnerFactory);
+    main.execute();
+
+    verify(runner, times(2)).execute();
+    verify(exit).exit(0);
+  }
+
+  @Test
+  public void should_fail_if_a_project_of_manifest_fails() throws Exception {
+    File manifest = temp.newFile();
+    Files.write(manifest.toPath(), "project1\nproject2\n".getBytes(StandardCharsets.UTF_8));
+    when(cli.manifest()).thenReturn(manifest.getAbsolutePath());
+    when(cli.properties()).thenReturn(new Properties());
+    when(conf.properties(any(Properties.class))).thenReturn(new Properties());
+    Runner runner = mock(Runner.class);
+    doNothing().doThrow(new IllegalStateException("Error")).when(runner).execute();
+    when(runnerFactory.create(any(Properties.class))).thenReturn(runner);
 
     Main main = new Main(exit, cli, conf, runnerFactory);
     main.execute();
 
+    verify(runner, times(2)).execute();
     verify(exit).exit(1);
   }
 
@@ -0,0 +1,92 @@
+/*
+ * SonarQube Runner - Distribution
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import org.junit.Test;
+import org.sonar.runner.api.Runner;
+import org.sonar.runner.impl.InternalProperties;
+
+import java.io.File;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Properties;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ManifestExecutionTest {
+
+  Conf conf = mock(Conf.class);
+  RunnerFactory runnerFactory = mock(RunnerFactory.class);
+  Properties cliProps = new Properties();
+  File dir = new File("/manifest/dir");
+
+  @Test
+  public void should_override_command_line_by_project_properties() throws Exception {
+    cliProps.setProperty("sonar.host.url", "http://localhost:9000");
+    cliProps.setProperty("sonar.branch", "master");
+    cliProps.setProperty("sonar.projectBaseDir", "/current/dir");
+    Manifest manifest = Manifest.parse(new StringReader("project1 -Dsonar.branch=release -DsonarRunner.manifest.priority=2"), dir);
+
+    Properties props = new ManifestExecution(conf, runnerFactory, cliProps, 1).projectCliProperties(manifest.projects().get(0));
+
+    assertThat(props.getProperty("sonar.host.url")).isEqualTo("http://localhost:9000");
+    assertThat(props.getProperty("sonar.branch")).isEqualTo("release");
+    assertThat(props.getProperty("project.home")).isEqualTo(new File(dir, "project1").getAbsolutePath());
+    assertThat(props.getProperty("sonar.projectBaseDir")).isNull();
+    assertThat(props.getProperty(Manifest.PRIORITY)).isNull();
+  }
+
+  @Test
+  public void should_execute_all_projects_and_report_failures() throws Exception {
+    Properties props1 = new Properties();
+    Properties props2 = new Properties();
+    props2.setProperty(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE, "3");
+    when(conf.properties(any(Properties.class))).thenReturn(props1, props2);
+    Runner runner1 = mock(Runner.class);
+    Runner runner2 = mock(Runner.class);
+    doThrow(new IllegalStateException("Boom")).when(runner2).execute();
+    when(runnerFactory.create(props1)).thenReturn(runner1);
+    when(runnerFactory.create(props2)).thenReturn(runner2);
+    Manifest manifest = Manifest.parse(new StringReader("project1\nproject2"), dir);
+
+    List<ManifestExecution.Result> results = new ManifestExecution(conf, runnerFactory, cliProps, 1).execute(manifest);
+
+    assertThat(results).hasSize(2);
+    assertThat(results.get(0).success).isTrue();
+    assertThat(results.get(0).project.baseDir.getName()).isEqualTo("project1");
+    assertThat(results.get(1).success).isFalse();
+    assertThat(results.get(1).error).isEqualTo("Boom");
+    assertThat(ManifestExecution.exitStatus(results)).isEqualTo(Exit.ERROR);
+    assertThat(ManifestExecution.exitStatus(results.subList(0, 1))).isEqualTo(Exit.SUCCESS);
+    // classloaders are shared between projects
+    assertThat(props1.getProperty(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE)).isEqualTo(ManifestExecution.DEFAULT_CLASSLOADER_CACHE_SIZE);
+    assertThat(props2.getProperty(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE)).isEqualTo("3");
+    ManifestExecution.printReport(results);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void should_fail_on_invalid_parallelism() {
+    new ManifestExecution(conf, runnerFactory, cliProps, 0);
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * SonarQube Runner - Distribution
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class ManifestTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  File dir = new File("/manifest/dir");
+
+  @Test
+  public void should_parse_projects_and_overrides() throws Exception {
+    Manifest manifest = Manifest.parse(new StringReader("# comment\n\n  project1  \nproject2 -Dsonar.branch=release \"-Dsonar.projectName=Project 2\" -Dflag\n"), dir);
+
+    List<Manifest.Project> projects = manifest.projects();
+    assertThat(projects).hasSize(2);
+    assertThat(projects.get(0).baseDir).isEqualTo(new File(dir, "project1"));
+    assertThat(projects.get(0).properties).isEmpty();
+    assertThat(projects.get(1).baseDir).isEqualTo(new File(dir, "project2"));
+    assertThat(projects.get(1).properties.getProperty("sonar.branch")).isEqualTo("release");
+    assertThat(projects.get(1).properties.getProperty("sonar.projectName")).isEqualTo("Project 2");
+    assertThat(projects.get(1).properties.getProperty("flag")).isEqualTo("true");
+  }
+
+  @Test
+  public void should_keep_absolute_paths() throws Exception {
+    File absolute = temp.newFolder();
+    Manifest manifest = Manifest.parse(new StringReader(absolute.getAbsolutePath()), dir);
+
+    assertThat(manifest.projects().get(0).baseDir).isEqualTo(absolute);
+  }
+
+  @Test
+  public void should_sort_by_priority_then_by_order() throws Exception {
+    Manifest manifest = Manifest.parse(new StringReader("a\nb -DsonarRunner.manifest.priority=-1\nc -DsonarRunner.manifest.priority=5\nd\n"), dir);
+
+    List<Manifest.Project> projects = manifest.projects();
+    assertThat(projects.get(0).baseDir.getName()).isEqualTo("c");
+    assertThat(projects.get(1).baseDir.getName()).isEqualTo("a");
+    assertThat(projects.get(2).baseDir.getName()).isEqualTo("d");
+    assertThat(projects.get(3).baseDir.getName()).isEqualTo("b");
+    assertThat(projects.get(0).priority).isEqualTo(5);
+  }
+
+  @Test
+  public void should_fail_on_invalid_option() throws Exception {
+    try {
+      Manifest.parse(new StringReader("a\nb --foo"), dir);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Invalid option on line 2 of manifest: --foo");
+    }
+  }
+
+  @Test
+  public void should_fail_on_invalid_priority() throws Exception {
+    try {
+      Manifest.parse(new StringReader("a -DsonarRunner.manifest.priority=high"), dir);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Invalid priority on line 1 of manifest: high");
+    }
+  }
+
+  @Test
+  public void should_fail_on_unclosed_quote() throws Exception {
+    try {
+      Manifest.parse(new StringReader("a \"-Dfoo=bar"), dir);
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Unclosed quote on line 1 of manifest");
+    }
+  }
+
+  @Test
+  public void should_resolve_paths_from_directory_of_manifest() throws Exception {
+    File file = temp.newFile();
+    Files.write(file.toPath(), "project1".getBytes(StandardCharsets.UTF_8));
+
+    Manifest manifest = Manifest.load(file);
+
+    assertThat(manifest.projects().get(0).baseDir).isEqualTo(new File(file.getParentFile(), "project1"));
+  }
+}
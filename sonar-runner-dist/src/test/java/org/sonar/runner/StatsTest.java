@@ -19,13 +19,26 @@
  */
 package org.sonar.runner;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.runner.api.AnalysisEvent;
 
-import static org.fest.assertions.Assertions.assertThat;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
+import static org.fest.assertions.Assertions.assertThat;
 
 public class StatsTest {
 
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   @Test
   public void shouldPrintStats() {
     new Stats().start().stop();
@@ -39,4 +52,69 @@ public class StatsTest {
     assertThat(Stats.formatTime(3 * 1000 + 400)).isEqualTo("3.400s");
     assertThat(Stats.formatTime(400)).isEqualTo("0.400s");
   }
+
+  @Test
+  public void should_format_bytes() {
+    assertThat(Stats.formatBytes(-1L)).isEqualTo("-");
+    assertThat(Stats.formatBytes(512L)).isEqualTo("512 B");
+    assertThat(Stats.formatBytes(3 * 1024L)).isEqualTo("3 KB");
+    assertThat(Stats.formatBytes(5 * 1024L * 1024)).isEqualTo("5 MB");
+  }
+
+  @Test
+  public void should_report_local_and_runner_phases() {
+    Stats stats = new Stats().start().phase(Stats.PHASE_CLI).phase(Stats.PHASE_CONF);
+    stats.onEvent(event("phase", "name", "download", "cpuTimeNs", 1000000L, "allocatedBytes", 100L, "time", 1000L));
+    stats.onEvent(event("file", "name", "a.jar", "cached", false, "bytes", 2048L, "durationMs", 5L));
+    stats.onEvent(event("file", "name", "b.jar", "cached", true, "bytes", 0L, "durationMs", 1L));
+    stats.onEvent(event("phase", "name", "analysis", "cpuTimeNs", 3000000L, "allocatedBytes", 400L, "time", 1500L));
+    stats.onEvent(event("memory", "heapPeak", Long.MAX_VALUE));
+    stats.onEvent(event("end", "cpuTimeNs", 4000000L, "allocatedBytes", 500L, "time", 3500L));
+    stats.stop();
+
+    List<String> report = stats.report();
+    assertThat(report).hasSize(7);
+    assertThat(report.get(1)).startsWith("cli");
+    assertThat(report.get(2)).startsWith("conf");
+    assertThat(Arrays.asList(report.get(3).split(" +"))).containsExactly("download", "0.500s", "0.002s", "300", "B", "2", "KB");
+    assertThat(Arrays.asList(report.get(4).split(" +"))).containsExactly("analysis", "2.000s", "0.001s", "100", "B", "0", "B");
+    assertThat(report.get(5)).isEqualTo("  a.jar: downloaded 2 KB in 0.005s");
+    assertThat(report.get(6)).isEqualTo("  b.jar: cache hit in 0.001s");
+    assertThat(stats.heapPeak()).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void should_aggregate_phases_with_same_name() {
+    Stats stats = new Stats().start();
+    stats.onEvent(event("phase", "name", "analysis", "cpuTimeNs", 0L, "allocatedBytes", 0L, "time", 1000L));
+    stats.onEvent(event("phase", "name", "logging", "cpuTimeNs", 0L, "allocatedBytes", 0L, "time", 1100L));
+    stats.onEvent(event("phase", "name", "analysis", "cpuTimeNs", 0L, "allocatedBytes", 0L, "time", 1200L));
+    stats.onEvent(event("end", "cpuTimeNs", -1L, "allocatedBytes", 0L, "time", 1400L));
+
+    List<String> report = stats.report();
+    assertThat(report).hasSize(3);
+    assertThat(Arrays.asList(report.get(1).split(" +"))).containsExactly("analysis", "0.300s", "-", "0", "B", "0", "B");
+  }
+
+  @Test
+  public void should_write_json() throws Exception {
+    File json = new File(temp.newFolder(), "stats.json");
+    Stats stats = new Stats().start().setStatsFile(json.getAbsolutePath()).phase(Stats.PHASE_CONF);
+    stats.onEvent(event("file", "name", "a.jar", "cached", true, "bytes", 0L, "durationMs", 1L));
+    stats.stop();
+
+    String content = new String(Files.readAllBytes(json.toPath()), StandardCharsets.UTF_8);
+    assertThat(content).startsWith("{\"totalTimeMs\":");
+    assertThat(content).contains("\"phases\":[{\"name\":\"conf\",\"wallMs\":");
+    assertThat(content).endsWith("\"files\":[{\"name\":\"a.jar\",\"cached\":true,\"bytes\":0,\"durationMs\":1}]}");
+  }
+
+  private static AnalysisEvent event(String type, Object... fields) {
+    Map<String, Object> map = new LinkedHashMap<String, Object>();
+    map.put("type", type);
+    for (int i = 0; i + 1 < fields.length; i += 2) {
+      map.put((String) fields[i], fields[i + 1]);
+    }
+    return new AnalysisEvent(map);
+  }
 }
@@ -28,10 +28,19 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.Collection;
 import java.util.List;
 import java.util.Properties;
+import javax.annotation.CheckForNull;
 
 public class BatchLauncher {
+  private static final ClassloaderCache CLASSLOADER_CACHE = new ClassloaderCache();
+  private static final long DEFAULT_MEMORY_INTERVAL_MS = 5000L;
+  private static final Metrics.Counter ACTIVE = Metrics.counter(Metrics.EXECUTIONS_ACTIVE);
+  private static final Metrics.Counter COMPLETED = Metrics.counter(Metrics.EXECUTIONS_COMPLETED);
+  private static final Metrics.Counter FAILED = Metrics.counter(Metrics.EXECUTIONS_FAILED);
+  private static final Metrics.Histogram DURATION = Metrics.histogram(Metrics.EXECUTION_DURATION_MS);
+
   final String isolatedLauncherClass;
   private final TempCleaning tempCleaning;
 
@@ -48,9 +57,42 @@ public class BatchLauncher {
   }
 
   public void execute(Properties props, List<Object> extensions) {
-    ServerConnection serverConnection = ServerConnection.create(props, getCache(props));
-    JarDownloader jarDownloader = new JarDownloader(serverConnection);
-    doExecute(jarDownloader, props, extensions);
+    execute(props, extensions, new Progress());
+  }
+
+  /**
+   * @param progress notified of the phases of the execution
+   */
+  public void execute(Properties props, List<Object> extensions, Progress progress) {
+    Metrics.registerMBean();
+    long start = System.currentTimeMillis();
+    ACTIVE.increment();
+    boolean success = false;
+    Boolean initialDebug = Logs.setDebugEnabledForCurrentThread(debugOf(props));
+    try {
+      progress.phase(Progress.PHASE_BOOTSTRAP);
+      ServerConnection serverConnection = ServerConnection.create(props, getCache(props));
+      JarDownloader jarDownloader = new JarDownloader(serverConnection, props, progress);
+      doExecute(jarDownloader, props, extensions, progress);
+      success = true;
+    } finally {
+      ACTIVE.decrement();
+      (success ? COMPLETED : FAILED).increment();
+      DURATION.record(System.currentTimeMillis() - start);
+      progress.end(success);
+      Logs.setDebugEnabledForCurrentThread(initialDebug);
+      Logs.flush();
+    }
+  }
+
+  /**
+   * Several analyses can be executed concurrently in the same JVM, so the verbosity of each one
+   * does not change the global verbosity
+   */
+  @CheckForNull
+  private static Boolean debugOf(Properties props) {
+    String verbose = props.getProperty("sonar.verbose");
+    return verbose != null ? Boolean.valueOf(verbose) : null;
   }
 
   private static PersistentCache getCache(Properties props) {
@@ -75,20 +117,78 @@ public class BatchLauncher {
     return maskRules;
   }
 
+  static int getClassloaderCacheSize(Properties props) {
+    String value = props.getProperty(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE, "");
+    if ("".equals(value.trim())) {
+      return 0;
+    }
+    try {
+      int size = Integer.parseInt(value.trim());
+      if (size < 0) {
+        throw new IllegalArgumentException("Invalid value of " + InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE + ": " + value);
+      }
+      return size;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value of " + InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE + ": " + value, e);
+    }
+  }
+
+  /**
+   * For unit tests
+   */
+  static ClassloaderCache classloaderCache() {
+    return CLASSLOADER_CACHE;
+  }
+
   /**
    * @return the {@link org.sonar.runner.batch.IsolatedLauncher} instance for unit tests
    */
-  Object doExecute(final JarDownloader jarDownloader, final Properties props, final List<Object> extensions) {
+  Object doExecute(JarDownloader jarDownloader, Properties props, List<Object> extensions) {
+    return doExecute(jarDownloader, props, extensions, new Progress());
+  }
+
+  Object doExecute(final JarDownloader jarDownloader, final Properties props, final List<Object> extensions, final Progress progress) {
     return AccessController.doPrivileged(new PrivilegedAction<Object>() {
       public Object run() {
+        progress.phase(Progress.PHASE_INDEX);
         List<File> jarFiles = jarDownloader.download();
-        Logs.debug("Create isolated classloader...");
+        if (WorkDirFingerprint.isEnabled(props)) {
+          WorkDirFingerprint.check(props, jarFiles);
+        }
         String[][] maskRules = getMaskRules(props);
+        int cacheSize = getClassloaderCacheSize(props);
+        progress.phase(Progress.PHASE_CLASSLOADER);
+        IsolatedClassloader classloader = cacheSize > 0 ? acquireCachedClassloader(jarFiles, maskRules, cacheSize) : createClassloader(jarFiles, maskRules);
+        try {
+          progress.phase(Progress.PHASE_ANALYSIS);
+          progress.startMemorySampling(getLong(props, InternalProperties.RUNNER_PROGRESS_MEMORY_INTERVAL, DEFAULT_MEMORY_INTERVAL_MS));
+          Object launcher = delegateExecution(classloader, props, extensions);
+          progress.phase(Progress.PHASE_CLEANING);
+          tempCleaning.cleanAsync();
+          return launcher;
+        } finally {
+          if (cacheSize > 0) {
+            CLASSLOADER_CACHE.release(classloader);
+          }
+        }
+      }
+
+      private IsolatedClassloader acquireCachedClassloader(final List<File> jarFiles, final String[][] maskRules, int cacheSize) {
+        String key = ClassloaderCache.key(props.getProperty("sonar.host.url"), jarFiles, maskRules);
+        CLASSLOADER_CACHE.setMaxEntries(cacheSize);
+        return CLASSLOADER_CACHE.acquire(key, new ClassloaderCache.ClassloaderFactory() {
+          @Override
+          public IsolatedClassloader create() {
+            return createClassloader(jarFiles, maskRules);
+          }
+        });
+      }
+
+      private IsolatedClassloader createClassloader(List<File> jarFiles, String[][] maskRules) {
+        Logs.debug("Create isolated classloader...");
         IsolatedClassloader classloader = new IsolatedClassloader(getClass().getClassLoader(), maskRules);
         classloader.addFiles(jarFiles);
-        Object launcher = delegateExecution(classloader, props, extensions);
-        tempCleaning.clean();
-        return launcher;
+        return classloader;
       }
 
       private Object delegateExecution(IsolatedClassloader classloader, Properties properties, List<Object> extensions) {
@@ -96,10 +196,17 @@ public class BatchLauncher {
         try {
           Thread.currentThread().setContextClassLoader(classloader);
           Class<?> launcherClass = classloader.loadClass(isolatedLauncherClass);
-          Method executeMethod = launcherClass.getMethod("execute", Properties.class, List.class);
           Object launcher = launcherClass.newInstance();
           Logs.debug("Start IsolatedLauncher");
-          executeMethod.invoke(launcher, properties, extensions);
+          // the batch writes directly to the standard outputs
+          Logs.flush();
+          Method executeMethod = progressMethod(launcherClass);
+          if (executeMethod != null && progress.hasListeners()) {
+            executeMethod.invoke(launcher, properties, extensions, progress.asCollection());
+          } else {
+            executeMethod = launcherClass.getMethod("execute", Properties.class, List.class);
+            executeMethod.invoke(launcher, properties, extensions);
+          }
           return launcher;
         } catch (InvocationTargetException e) {
           // Unwrap original exception
@@ -114,4 +221,27 @@ public class BatchLauncher {
     });
   }
 
+  /**
+   * Versions of sonar-runner-batch that report the analysis of modules accept a collection of events
+   */
+  @CheckForNull
+  private static Method progressMethod(Class<?> launcherClass) {
+    try {
+      return launcherClass.getMethod("execute", Properties.class, List.class, Collection.class);
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static long getLong(Properties props, String key, long defaultValue) {
+    String value = props.getProperty(key, "");
+    if ("".equals(value.trim())) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value of " + key + ": " + value, e);
+    }
+  }
 }
@@ -36,10 +36,28 @@ public class BatchLauncherMain {
       throw new IllegalArgumentException("Missing path to properties file");
     }
     Properties props = loadProperties(args[0]);
-    launcher.execute(props, Collections.emptyList());
+    execute(launcher, props);
   }
 
-  private Properties loadProperties(String arg) throws IOException {
+  /**
+   * Progress is sent to the parent process if it listens to it
+   */
+  static void execute(BatchLauncher launcher, Properties props) {
+    Progress progress = new Progress();
+    ProgressChannel channel = ProgressChannel.connect(props);
+    if (channel != null) {
+      progress.addListener(channel);
+    }
+    try {
+      launcher.execute(props, Collections.emptyList(), progress);
+    } finally {
+      if (channel != null) {
+        channel.close();
+      }
+    }
+  }
+
+  static Properties loadProperties(String arg) throws IOException {
     Properties props = new Properties();
     try (FileInputStream input = new FileInputStream(arg)) {
       props.load(input);
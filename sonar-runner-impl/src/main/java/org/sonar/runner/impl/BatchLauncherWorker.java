@@ -0,0 +1,123 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * Entry point of the JVMs kept warm by the pool of workers of org.sonar.runner.api.ForkedRunner.
+ * <p/>
+ * Each line of the standard input is the path to the properties file of an analysis, as given to {@link BatchLauncherMain}.
+ * The end of an analysis is notified by a line of the standard output: <code>##sonar-runner-worker## done|exit status</code>,
+ * and by the line <code>##sonar-runner-worker## end</code> of the error output, so that the pool knows when all the
+ * error lines of the analysis are read.
+ * The worker exits ("exit") after the maximum number of analyses, when the heap used after the last garbage collection
+ * exceeds the threshold, or when the standard input is closed.
+ */
+public class BatchLauncherWorker {
+
+  public static final String MARKER = "##sonar-runner-worker##";
+  public static final String DONE = "done";
+  public static final String EXIT = "exit";
+  public static final String END = "end";
+
+  private final BatchLauncher launcher;
+  private final int maxJobs;
+  private final int maxHeapPercent;
+
+  BatchLauncherWorker(BatchLauncher launcher, int maxJobs, int maxHeapPercent) {
+    this.launcher = launcher;
+    this.maxJobs = maxJobs;
+    this.maxHeapPercent = maxHeapPercent;
+  }
+
+  /**
+   * @return the number of executed analyses
+   */
+  int run(BufferedReader input, PrintStream output, PrintStream errors) throws IOException {
+    int jobs = 0;
+    String line;
+    while ((line = input.readLine()) != null) {
+      if ("".equals(line.trim())) {
+        continue;
+      }
+      int status = execute(line.trim());
+      jobs++;
+      boolean exit = jobs >= maxJobs || heapUsagePercent() >= maxHeapPercent;
+      Logs.flush();
+      System.err.flush();
+      errors.println(MARKER + " " + END);
+      errors.flush();
+      output.println(MARKER + " " + (exit ? EXIT : DONE) + " " + status);
+      output.flush();
+      if (exit) {
+        break;
+      }
+    }
+    return jobs;
+  }
+
+  private int execute(String propertiesPath) {
+    try {
+      Properties props = BatchLauncherMain.loadProperties(propertiesPath);
+      if (!props.containsKey(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE)) {
+        // the classloader of batch is reused by the next analyses of the worker
+        props.setProperty(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE, "1");
+      }
+      BatchLauncherMain.execute(launcher, props);
+      return 0;
+    } catch (Throwable e) {
+      Logs.error("Analysis failed", e);
+      return 1;
+    }
+  }
+
+  static int heapUsagePercent() {
+    long used = 0L;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      MemoryUsage usage = pool.getCollectionUsage();
+      if (pool.getType() == MemoryType.HEAP && usage != null) {
+        used += usage.getUsed();
+      }
+    }
+    long max = Runtime.getRuntime().maxMemory();
+    return max == Long.MAX_VALUE ? 0 : (int) (used * 100 / max);
+  }
+
+  /**
+   * Arguments are the maximum number of analyses and the percentage of heap above which the worker exits
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length < 2) {
+      throw new IllegalArgumentException("Usage: BatchLauncherWorker <max jobs> <max heap percent>");
+    }
+    BatchLauncherWorker worker = new BatchLauncherWorker(new BatchLauncher(), Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+    worker.run(new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8)), System.out, System.err);
+  }
+}
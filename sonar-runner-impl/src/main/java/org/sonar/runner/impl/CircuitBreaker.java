@@ -0,0 +1,169 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Stops sending requests to a server after consecutive failures, so that the executions of the JVM fail fast
+ * instead of waiting for a server that is down. Requests are allowed again once the breaker has been open for
+ * the configured duration: a single trial request is sent, and its success closes the breaker. The other requests
+ * wait for the result of the trial, as they would fail only because the breaker is half open.
+ * <p/>
+ * Breakers are shared by all the executions of the JVM, one per server.
+ */
+class CircuitBreaker {
+
+  private static final ConcurrentMap<String, CircuitBreaker> BREAKERS = new ConcurrentHashMap<String, CircuitBreaker>();
+
+  private enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private final String host;
+  private final int failureThreshold;
+  private final long openMilliseconds;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures = 0;
+  private long openUntil = 0L;
+  // thread of the trial request when half open
+  private Thread trial = null;
+
+  /**
+   * @param failureThreshold number of consecutive failures that open the breaker. Zero disables the breaker.
+   */
+  CircuitBreaker(String host, int failureThreshold, long openMilliseconds) {
+    this.host = host;
+    this.failureThreshold = failureThreshold;
+    this.openMilliseconds = openMilliseconds;
+  }
+
+  /**
+   * The settings of the first execution that contacts the server are kept.
+   */
+  static CircuitBreaker forHost(String host, int failureThreshold, long openMilliseconds) {
+    CircuitBreaker breaker = BREAKERS.get(host);
+    if (breaker == null) {
+      breaker = new CircuitBreaker(host, failureThreshold, openMilliseconds);
+      CircuitBreaker existing = BREAKERS.putIfAbsent(host, breaker);
+      if (existing != null) {
+        breaker = existing;
+      }
+    }
+    return breaker;
+  }
+
+  /**
+   * @throws OpenException if requests to the server are not allowed
+   */
+  void beforeRequest() throws IOException {
+    beforeRequest(0L);
+  }
+
+  /**
+   * @param maxWaitMilliseconds maximum time to wait for the result of the trial request in progress
+   * @throws OpenException if requests to the server are not allowed
+   */
+  synchronized void beforeRequest(long maxWaitMilliseconds) throws IOException {
+    if (failureThreshold <= 0) {
+      return;
+    }
+    long deadline = System.currentTimeMillis() + maxWaitMilliseconds;
+    while (true) {
+      if (state == State.OPEN) {
+        if (System.currentTimeMillis() < openUntil) {
+          throw new OpenException(host);
+        }
+        state = State.HALF_OPEN;
+      }
+      if (state != State.HALF_OPEN) {
+        return;
+      }
+      if (trial == null) {
+        trial = Thread.currentThread();
+        return;
+      }
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0L) {
+        throw new OpenException(host);
+      }
+      waitForTrial(remaining);
+    }
+  }
+
+  private void waitForTrial(long milliseconds) throws InterruptedIOException {
+    try {
+      wait(milliseconds);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for server " + host);
+    }
+  }
+
+  synchronized void onSuccess() {
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+    endTrial();
+  }
+
+  synchronized void onFailure() {
+    if (failureThreshold <= 0) {
+      return;
+    }
+    consecutiveFailures++;
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      if (state != State.OPEN) {
+        Logs.warn("Server " + host + " is unavailable, requests are suspended for " + openMilliseconds + " ms");
+      }
+      state = State.OPEN;
+      openUntil = System.currentTimeMillis() + openMilliseconds;
+      endTrial();
+    }
+  }
+
+  /**
+   * The request failed for a reason that does not relate to the availability of server. If it was the trial,
+   * another request becomes the trial.
+   */
+  synchronized void onIgnoredFailure() {
+    if (trial == Thread.currentThread()) {
+      endTrial();
+    }
+  }
+
+  private void endTrial() {
+    trial = null;
+    notifyAll();
+  }
+
+  synchronized boolean isOpen() {
+    return state == State.OPEN && System.currentTimeMillis() < openUntil;
+  }
+
+  static class OpenException extends IOException {
+    OpenException(String host) {
+      super("Server " + host + " is unavailable after consecutive failures, requests are suspended");
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the {@link IsolatedClassloader}s of the last executions alive, so that consecutive executions against
+ * the same server do not load and JIT-compile the batch classes again. Entries are evicted in least-recently-used
+ * order. An evicted classloader is closed as soon as no execution uses it anymore.
+ * <p/>
+ * A classloader is leased to a single execution at a time: the batch keeps static state, for example the logback
+ * context, in the classes it loads. Concurrent executions with the same key get distinct classloaders, which
+ * are all kept for the next executions.
+ */
+class ClassloaderCache {
+
+  interface ClassloaderFactory {
+    IsolatedClassloader create();
+  }
+
+  private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+  private final Map<IsolatedClassloader, Entry> leases = new IdentityHashMap<IsolatedClassloader, Entry>();
+  private int maxEntries = 1;
+
+  /**
+   * Returns an idle classloader registered for the key, or creates and registers a new one. The classloader
+   * must be given back with {@link #release(IsolatedClassloader)} at the end of the execution.
+   */
+  synchronized IsolatedClassloader acquire(String key, ClassloaderFactory factory) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      entry = new Entry();
+      entries.put(key, entry);
+      evict();
+    }
+    IsolatedClassloader classloader;
+    if (entry.idle.isEmpty()) {
+      classloader = factory.create();
+    } else {
+      Logs.debug("Reuse isolated classloader");
+      classloader = entry.idle.removeLast();
+    }
+    leases.put(classloader, entry);
+    return classloader;
+  }
+
+  synchronized void release(IsolatedClassloader classloader) {
+    Entry entry = leases.remove(classloader);
+    if (entry != null) {
+      if (entry.evicted) {
+        close(classloader);
+      } else {
+        entry.idle.add(classloader);
+      }
+    }
+  }
+
+  synchronized void setMaxEntries(int i) {
+    if (i < 1) {
+      throw new IllegalArgumentException("Size of classloader cache must be positive: " + i);
+    }
+    this.maxEntries = i;
+    evict();
+  }
+
+  synchronized int size() {
+    return entries.size();
+  }
+
+  synchronized void clear() {
+    for (Entry entry : entries.values()) {
+      markEvicted(entry);
+    }
+    entries.clear();
+  }
+
+  private void evict() {
+    Iterator<Entry> it = entries.values().iterator();
+    while (entries.size() > maxEntries && it.hasNext()) {
+      // iteration order is from the least recently used
+      Entry eldest = it.next();
+      it.remove();
+      markEvicted(eldest);
+    }
+  }
+
+  /**
+   * Idle classloaders are closed immediately, leased ones when released
+   */
+  private void markEvicted(Entry entry) {
+    entry.evicted = true;
+    for (IsolatedClassloader classloader : entry.idle) {
+      close(classloader);
+    }
+    entry.idle.clear();
+  }
+
+  /**
+   * The libraries are stored in the user cache in a directory named after their hash, so the digest of
+   * their paths changes as soon as the content of the bootstrap index of the server changes.
+   */
+  static String key(String serverUrl, List<File> libraries, String[][] maskRules) {
+    StringBuilder sb = new StringBuilder();
+    for (File library : libraries) {
+      sb.append(library.getAbsolutePath()).append('|');
+    }
+    StringBuilder key = new StringBuilder();
+    key.append(serverUrl).append('|').append(md5(sb.toString()));
+    for (String[] maskRule : maskRules) {
+      key.append('|').append(maskRule[0]).append(':').append(maskRule[1]);
+    }
+    return key.toString();
+  }
+
+  private static String md5(String s) {
+    try {
+      byte[] digest = MessageDigest.getInstance("MD5").digest(s.getBytes("UTF-8"));
+      StringBuilder sb = new StringBuilder();
+      for (byte b : digest) {
+        sb.append(String.format("%02x", b & 0xff));
+      }
+      return sb.toString();
+    } catch (NoSuchAlgorithmException | UnsupportedEncodingException e) {
+      throw new IllegalStateException("Fail to compute hash", e);
+    }
+  }
+
+  private static void close(IsolatedClassloader classloader) {
+    Logs.debug("Close evicted classloader");
+    try {
+      classloader.close();
+    } catch (IOException e) {
+      Logs.debug("Fail to close classloader: {}", e.getMessage());
+    }
+  }
+
+  private static class Entry {
+    private final LinkedList<IsolatedClassloader> idle = new LinkedList<IsolatedClassloader>();
+    private boolean evicted = false;
+  }
+}
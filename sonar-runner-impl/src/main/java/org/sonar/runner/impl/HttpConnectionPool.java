@@ -0,0 +1,235 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import com.github.kevinsawicki.http.HttpRequest;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Connections to SonarQube servers, shared by all the executions of the JVM.
+ * <p/>
+ * Connections are not closed after responses are consumed, so they are kept alive by the JDK
+ * and reused by the next requests to the same server. The number of concurrent requests to a server is bounded
+ * by the size of the JDK keep-alive cache (system property http.maxConnections), so that every
+ * connection can be kept alive. HTTPS connections share the same socket factory, which is required
+ * by the JDK to reuse them.
+ */
+class HttpConnectionPool {
+
+  private static final HttpConnectionPool INSTANCE = new HttpConnectionPool(Integer.getInteger("http.maxConnections", 5));
+
+  private final int maxConnectionsPerHost;
+  private final ConcurrentMap<String, Semaphore> permitsByHost = new ConcurrentHashMap<String, Semaphore>();
+  private final AtomicLong requests = new AtomicLong();
+  private final AtomicLong tlsConnections = new AtomicLong();
+  private volatile SSLSocketFactory sslSocketFactory;
+
+  HttpConnectionPool(int maxConnectionsPerHost) {
+    this.maxConnectionsPerHost = Math.max(1, maxConnectionsPerHost);
+  }
+
+  static HttpConnectionPool shared() {
+    return INSTANCE;
+  }
+
+  /**
+   * Waits until a connection to the host is available, then creates a GET request. The caller
+   * must call {@link #release(HttpRequest)} once the response is consumed.
+   */
+  HttpRequest get(URL url) throws IOException {
+    Semaphore permits = permits(url);
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a connection to " + hostKey(url));
+    }
+    try {
+      HttpRequest request = HttpRequest.get(url);
+      HttpURLConnection connection = request.getConnection();
+      if (connection instanceof HttpsURLConnection) {
+        ((HttpsURLConnection) connection).setSSLSocketFactory(sslSocketFactory());
+        request.trustAllHosts();
+      }
+      requests.incrementAndGet();
+      return request;
+    } catch (RuntimeException e) {
+      permits.release();
+      throw e;
+    }
+  }
+
+  /**
+   * Must be called once the response is fully consumed and its stream is closed, which lets the JDK keep the
+   * connection alive. The request must not be disconnected.
+   */
+  void release(HttpRequest request) {
+    permits(request.url()).release();
+  }
+
+  long requests() {
+    return requests.get();
+  }
+
+  long tlsConnections() {
+    return tlsConnections.get();
+  }
+
+  void logStatistics() {
+    long count = requests.get();
+    long tls = tlsConnections.get();
+    Logs.debug(String.format("HTTP requests: %d, new TLS connections: %d", count, tls));
+  }
+
+  private Semaphore permits(URL url) {
+    String key = hostKey(url);
+    Semaphore permits = permitsByHost.get(key);
+    if (permits == null) {
+      permits = new Semaphore(maxConnectionsPerHost, true);
+      Semaphore existing = permitsByHost.putIfAbsent(key, permits);
+      if (existing != null) {
+        permits = existing;
+      }
+    }
+    return permits;
+  }
+
+  private static String hostKey(URL url) {
+    int port = url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    return url.getProtocol() + "://" + url.getHost() + ":" + port;
+  }
+
+  private SSLSocketFactory sslSocketFactory() throws IOException {
+    if (sslSocketFactory == null) {
+      synchronized (this) {
+        if (sslSocketFactory == null) {
+          sslSocketFactory = new CountingSSLSocketFactory(trustAllSocketFactory(), tlsConnections);
+        }
+      }
+    }
+    return sslSocketFactory;
+  }
+
+  /**
+   * Same trust policy as {@link HttpRequest#trustAllCerts()}
+   */
+  private static SSLSocketFactory trustAllSocketFactory() throws IOException {
+    TrustManager[] trustAll = new TrustManager[] {new X509TrustManager() {
+      @Override
+      public X509Certificate[] getAcceptedIssuers() {
+        return new X509Certificate[0];
+      }
+
+      @Override
+      public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        // trust all
+      }
+
+      @Override
+      public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        // trust all
+      }
+    }};
+    try {
+      SSLContext context = SSLContext.getInstance("TLS");
+      context.init(null, trustAll, null);
+      return context.getSocketFactory();
+    } catch (GeneralSecurityException e) {
+      throw new IOException("Fail to initialize TLS", e);
+    }
+  }
+
+  /**
+   * Counts the sockets created by the JDK, which are the connections that could not be reused
+   */
+  private static class CountingSSLSocketFactory extends SSLSocketFactory {
+    private final SSLSocketFactory delegate;
+    private final AtomicLong counter;
+
+    CountingSSLSocketFactory(SSLSocketFactory delegate, AtomicLong counter) {
+      this.delegate = delegate;
+      this.counter = counter;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+      return delegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+      return delegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket(Socket s, String host, int port, boolean autoClose) throws IOException {
+      counter.incrementAndGet();
+      return delegate.createSocket(s, host, port, autoClose);
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+      counter.incrementAndGet();
+      return delegate.createSocket();
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+      counter.incrementAndGet();
+      return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort) throws IOException {
+      counter.incrementAndGet();
+      return delegate.createSocket(host, port, localHost, localPort);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+      counter.incrementAndGet();
+      return delegate.createSocket(host, port);
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) throws IOException {
+      counter.incrementAndGet();
+      return delegate.createSocket(address, port, localAddress, localPort);
+    }
+  }
+}
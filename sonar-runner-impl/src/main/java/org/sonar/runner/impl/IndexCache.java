@@ -0,0 +1,215 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLEncoder;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Last responses of the server to the requests of bootstrap index, with their HTTP validators (ETag and
+ * Last-Modified). They are stored in the directory "bootstrap_index" of the SonarQube user home, one file per URL.
+ * <p/>
+ * A response is used without contacting the server during the TTL defined by {@link InternalProperties#RUNNER_INDEX_TTL}.
+ * Then it is revalidated with a conditional request. Failures to read or write the cache are ignored.
+ */
+class IndexCache {
+
+  private static final String BODY = "body";
+  private static final String ETAG = "etag";
+  private static final String LAST_MODIFIED = "lastModified";
+  private static final String FETCHED_AT = "fetchedAt";
+
+  private final File dir;
+  private final long ttlMilliseconds;
+
+  IndexCache(File dir, long ttlMilliseconds) {
+    this.dir = dir;
+    this.ttlMilliseconds = ttlMilliseconds;
+  }
+
+  static IndexCache create(Properties props) {
+    return new IndexCache(new File(userHome(props), "bootstrap_index"), getTtlSeconds(props) * 1000L);
+  }
+
+  static File userHome(Properties props) {
+    String path = props.getProperty("sonar.userHome");
+    if (path == null || "".equals(path.trim())) {
+      path = System.getenv("SONAR_USER_HOME");
+    }
+    if (path == null || "".equals(path.trim())) {
+      return new File(System.getProperty("user.home"), ".sonar");
+    }
+    return new File(path.trim());
+  }
+
+  static long getTtlSeconds(Properties props) {
+    String value = props.getProperty(InternalProperties.RUNNER_INDEX_TTL, "");
+    if ("".equals(value.trim())) {
+      return 0L;
+    }
+    try {
+      long ttl = Long.parseLong(value.trim());
+      if (ttl < 0) {
+        throw new IllegalArgumentException("Invalid value of " + InternalProperties.RUNNER_INDEX_TTL + ": " + value);
+      }
+      return ttl;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value of " + InternalProperties.RUNNER_INDEX_TTL + ": " + value, e);
+    }
+  }
+
+  boolean isFresh(Entry entry, long now) {
+    return now >= entry.fetchedAt && now - entry.fetchedAt < ttlMilliseconds;
+  }
+
+  @CheckForNull
+  Entry get(String url) {
+    File file = file(url);
+    if (!file.isFile()) {
+      return null;
+    }
+    InputStream input = null;
+    try {
+      input = new FileInputStream(file);
+      Properties props = new Properties();
+      props.load(input);
+      String body = props.getProperty(BODY);
+      String fetchedAt = props.getProperty(FETCHED_AT);
+      if (body == null || fetchedAt == null) {
+        return null;
+      }
+      return new Entry(body, props.getProperty(ETAG), props.getProperty(LAST_MODIFIED), Long.parseLong(fetchedAt));
+    } catch (IOException | NumberFormatException e) {
+      Logs.debug("Ignore corrupted cache of {}: {}", url, e.getMessage());
+      return null;
+    } finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  /**
+   * Responses without validators are kept only if a TTL is defined, as they can't be revalidated.
+   */
+  void put(String url, Entry entry) {
+    if (!entry.hasValidators() && ttlMilliseconds <= 0) {
+      return;
+    }
+    Properties props = new Properties();
+    props.setProperty(BODY, entry.body);
+    props.setProperty(FETCHED_AT, String.valueOf(entry.fetchedAt));
+    if (entry.etag != null) {
+      props.setProperty(ETAG, entry.etag);
+    }
+    if (entry.lastModified != null) {
+      props.setProperty(LAST_MODIFIED, entry.lastModified);
+    }
+    File tmp = null;
+    try {
+      FileUtils.forceMkdir(dir);
+      tmp = File.createTempFile("index", ".tmp", dir);
+      OutputStream output = new FileOutputStream(tmp);
+      try {
+        props.store(output, null);
+      } finally {
+        output.close();
+      }
+      move(tmp, file(url));
+    } catch (IOException e) {
+      Logs.debug("Fail to cache {}: {}", url, e.getMessage());
+      FileUtils.deleteQuietly(tmp);
+    }
+  }
+
+  private static void move(File from, File to) throws IOException {
+    // concurrent executions must never read a partially written file
+    try {
+      Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private File file(String url) {
+    try {
+      return new File(dir, URLEncoder.encode(url, "UTF-8") + ".properties");
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to encode " + url, e);
+    }
+  }
+
+  static class Entry {
+    private final String body;
+    private final String etag;
+    private final String lastModified;
+    private final long fetchedAt;
+
+    Entry(String body, @Nullable String etag, @Nullable String lastModified, long fetchedAt) {
+      this.body = body;
+      this.etag = emptyToNull(etag);
+      this.lastModified = emptyToNull(lastModified);
+      this.fetchedAt = fetchedAt;
+    }
+
+    String body() {
+      return body;
+    }
+
+    @CheckForNull
+    String etag() {
+      return etag;
+    }
+
+    @CheckForNull
+    String lastModified() {
+      return lastModified;
+    }
+
+    boolean hasValidators() {
+      return etag != null || lastModified != null;
+    }
+
+    /**
+     * Same response, confirmed by the server at the given date
+     */
+    Entry revalidated(long now) {
+      return new Entry(body, etag, lastModified, now);
+    }
+
+    @CheckForNull
+    private static String emptyToNull(@Nullable String s) {
+      return s == null || "".equals(s) ? null : s;
+    }
+  }
+}
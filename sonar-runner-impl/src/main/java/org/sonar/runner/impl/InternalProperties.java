@@ -24,4 +24,106 @@ public interface InternalProperties {
   String RUNNER_APP_VERSION = "sonarRunner.appVersion";
   String RUNNER_MASK_RULES = "sonarRunner.maskRules";
   String RUNNER_DUMP_TO_FILE = "sonarRunner.dumpToFile";
+
+  /**
+   * Maximum number of batch libraries downloaded concurrently from server
+   */
+  String RUNNER_DOWNLOAD_THREADS = "sonarRunner.downloadThreads";
+
+  /**
+   * Maximum number of batch classloaders kept between executions in the same JVM. Caching is disabled by default (0).
+   */
+  String RUNNER_CLASSLOADER_CACHE_SIZE = "sonarRunner.classloaderCacheSize";
+
+  /**
+   * Number of seconds during which the bootstrap index downloaded from server is used without
+   * being revalidated. By default (0) it is revalidated on each execution.
+   */
+  String RUNNER_INDEX_TTL = "sonarRunner.bootstrapIndexTtl";
+
+  /**
+   * Maximum number of attempts of a request to server that fails because of a transient error. Default is 3.
+   */
+  String RUNNER_RETRY_MAX_ATTEMPTS = "sonarRunner.retry.maxAttempts";
+
+  /**
+   * Delay in milliseconds before the second attempt of a request. It doubles on each attempt. Default is 500.
+   */
+  String RUNNER_RETRY_INITIAL_BACKOFF = "sonarRunner.retry.initialBackoffMs";
+
+  /**
+   * Maximum delay in milliseconds between two attempts of a request. Default is 10000.
+   */
+  String RUNNER_RETRY_MAX_BACKOFF = "sonarRunner.retry.maxBackoffMs";
+
+  /**
+   * Duration in milliseconds after which a failed request is no longer retried. Default is 120000.
+   */
+  String RUNNER_RETRY_DEADLINE = "sonarRunner.retry.deadlineMs";
+
+  /**
+   * Number of consecutive failures after which requests to the server are suspended for all the executions
+   * of the JVM. Default is 5. Zero disables suspension.
+   */
+  String RUNNER_CIRCUIT_BREAKER_THRESHOLD = "sonarRunner.circuitBreaker.failureThreshold";
+
+  /**
+   * Duration in milliseconds of the suspension of requests to the server. Default is 30000.
+   */
+  String RUNNER_CIRCUIT_BREAKER_OPEN_TIME = "sonarRunner.circuitBreaker.openMs";
+
+  /**
+   * When true, the work directory of the previous analysis is renamed and deleted in background instead of
+   * being deleted before the analysis starts. Default is false.
+   */
+  String RUNNER_ASYNC_WORK_DIR_CLEANING = "sonarRunner.asyncWorkDirCleaning";
+
+  /**
+   * When true, the work directory is kept between analyses of a project. It's deleted only when the project,
+   * the server version or one of the properties listed by {@link #RUNNER_INCREMENTAL_WORK_DIR_PROPERTIES} change.
+   * Default is false.
+   */
+  String RUNNER_INCREMENTAL_WORK_DIR = "sonarRunner.incrementalWorkDir";
+
+  /**
+   * Comma-separated list of the properties that invalidate the incremental work directory when their value changes.
+   */
+  String RUNNER_INCREMENTAL_WORK_DIR_PROPERTIES = "sonarRunner.incrementalWorkDir.properties";
+
+  /**
+   * Number of warm JVMs kept by ForkedRunner to execute analyses. Disabled by default (0): a new JVM
+   * is forked for each analysis.
+   */
+  String RUNNER_WORKER_POOL_SIZE = "sonarRunner.workerPool.size";
+
+  /**
+   * Number of analyses executed by a worker JVM before it's replaced. Default is 20.
+   */
+  String RUNNER_WORKER_MAX_JOBS = "sonarRunner.workerPool.maxJobsPerWorker";
+
+  /**
+   * Percentage of the maximum heap, used after garbage collection, above which a worker JVM is replaced. Default is 80.
+   */
+  String RUNNER_WORKER_MAX_HEAP_PERCENT = "sonarRunner.workerPool.maxHeapPercent";
+
+  /**
+   * Duration in milliseconds after which an unused worker JVM is stopped. Default is 300000.
+   */
+  String RUNNER_WORKER_IDLE_TIMEOUT = "sonarRunner.workerPool.idleTimeoutMs";
+
+  /**
+   * Loopback port on which the forked process sends its progress events. Set by ForkedRunner when listeners are registered.
+   */
+  String RUNNER_PROGRESS_PORT = "sonarRunner.progress.port";
+
+  /**
+   * Token sent by the forked process when connecting to {@link #RUNNER_PROGRESS_PORT}
+   */
+  String RUNNER_PROGRESS_TOKEN = "sonarRunner.progress.token";
+
+  /**
+   * Period in milliseconds of the memory events reported to progress listeners during analysis. Default is 5000.
+   * Zero disables periodic events.
+   */
+  String RUNNER_PROGRESS_MEMORY_INTERVAL = "sonarRunner.progress.memoryIntervalMs";
 }
@@ -29,17 +29,39 @@ import java.util.List;
 
 /**
  * Special {@link java.net.URLClassLoader} to execute batch, which restricts loading from parent.
+ * Classes are loaded in parallel, with a lock per class name.
  */
 class IsolatedClassloader extends URLClassLoader {
 
-  private final String[][] maskRules;
+  private static final Metrics.Histogram LOAD_TIME = Metrics.histogram(Metrics.CLASS_LOAD_TIME_US);
+
+  static {
+    ClassLoader.registerAsParallelCapable();
+  }
+
+  private final MaskRules maskRules;
+  private final ClassLoader systemClassloader;
 
   /**
    * The parent classloader is used only for loading classes and resources in unmasked packages
    */
   IsolatedClassloader(ClassLoader parent, String[][] maskRules) {
     super(new URL[0], parent);
-    this.maskRules = maskRules;
+    this.maskRules = new MaskRules(maskRules);
+    this.systemClassloader = coreClassloader();
+  }
+
+  /**
+   * I don't know for other vendors, but for Oracle JVM :
+   * - ClassLoader.getSystemClassLoader() is sun.misc.Launcher$AppClassLoader. It contains app classpath.
+   * - ClassLoader.getSystemClassLoader().getParent() is sun.misc.Launcher$ExtClassLoader. It contains core JVM
+   */
+  private static ClassLoader coreClassloader() {
+    ClassLoader systemClassLoader = getSystemClassLoader();
+    if (systemClassLoader.getParent() != null) {
+      systemClassLoader = systemClassLoader.getParent();
+    }
+    return systemClassLoader;
   }
 
   void addFiles(List<File> files) {
@@ -56,48 +78,53 @@ class IsolatedClassloader extends URLClassLoader {
    * @return true, if class can be loaded from parent ClassLoader
    */
   boolean canLoadFromParent(String name) {
-    for (String[] maskRule : maskRules) {
-      if (name.startsWith(maskRule[1])) {
-        return "UNMASK".equals(maskRule[0]);
+    return maskRules.isUnmasked(name);
+  }
+
+  /**
+   * Same behavior as in {@link java.net.URLClassLoader#loadClass(String, boolean)}, except loading from parent.
+   */
+  @Override
+  protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+    synchronized (getClassLoadingLock(name)) {
+      // First, check if the class has already been loaded
+      Class<?> c = findLoadedClass(name);
+      if (c == null) {
+        c = loadFromParentOrSystem(name);
       }
+      if (resolve) {
+        resolveClass(c);
+      }
+      return c;
     }
-    return false;
   }
 
   /**
-   * Same behavior as in {@link java.net.URLClassLoader#loadClass(String, boolean)}, except loading from parent.
+   * Classes defined by this classloader, which excludes classes of parent classloaders
    */
   @Override
-  protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
-    // First, check if the class has already been loaded
-    Class<?> c = findLoadedClass(name);
-    if (c == null) {
-      try {
-        // Load from parent
-        if (getParent() != null && canLoadFromParent(name)) {
-          c = getParent().loadClass(name);
-        } else {
-          // Load from system
+  protected Class<?> findClass(String name) throws ClassNotFoundException {
+    long start = System.nanoTime();
+    Class<?> c = super.findClass(name);
+    LOAD_TIME.record((System.nanoTime() - start) / 1000L);
+    return c;
+  }
 
-          // I don't know for other vendors, but for Oracle JVM :
-          // - ClassLoader.getSystemClassLoader() is sun.misc.Launcher$AppClassLoader. It contains app classpath.
-          // - ClassLoader.getSystemClassLoader().getParent() is sun.misc.Launcher$ExtClassLoader. It contains core JVM
-          ClassLoader systemClassLoader = getSystemClassLoader();
-          if (systemClassLoader.getParent() != null) {
-            systemClassLoader = systemClassLoader.getParent();
-          }
-          c = systemClassLoader.loadClass(name);
-        }
-      } catch (ClassNotFoundException e) {
-        // If still not found, then invoke findClass in order
-        // to find the class.
-        c = findClass(name);
+  private Class<?> loadFromParentOrSystem(String name) throws ClassNotFoundException {
+    try {
+      // Classes of package java can only be defined by the core JVM, whatever the mask rules
+      if (name.startsWith("java.")) {
+        return systemClassloader.loadClass(name);
       }
+      if (getParent() != null && canLoadFromParent(name)) {
+        return getParent().loadClass(name);
+      }
+      return systemClassloader.loadClass(name);
+    } catch (ClassNotFoundException e) {
+      // If still not found, then invoke findClass in order
+      // to find the class.
+      return findClass(name);
     }
-    if (resolve) {
-      resolveClass(c);
-    }
-    return c;
   }
 
   /**
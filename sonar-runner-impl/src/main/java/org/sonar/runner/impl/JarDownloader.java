@@ -21,15 +21,38 @@ package org.sonar.runner.impl;
 
 import java.io.File;
 import java.util.List;
+import java.util.Properties;
 
 class JarDownloader {
   private final ServerConnection serverConnection;
+  private final int downloadThreads;
+  private final Progress progress;
 
-  JarDownloader(ServerConnection conn) {
+  JarDownloader(ServerConnection conn, Properties props) {
+    this(conn, props, new Progress());
+  }
+
+  JarDownloader(ServerConnection conn, Properties props, Progress progress) {
     this.serverConnection = conn;
+    this.downloadThreads = getDownloadThreads(props);
+    this.progress = progress;
   }
 
   List<File> download() {
-    return new Jars(serverConnection, new JarExtractor()).download();
+    List<File> files = new Jars(serverConnection, new JarExtractor(), downloadThreads, progress).download();
+    serverConnection.logConnectionStatistics();
+    return files;
+  }
+
+  static int getDownloadThreads(Properties props) {
+    String value = props.getProperty(InternalProperties.RUNNER_DOWNLOAD_THREADS);
+    if (value == null || "".equals(value.trim())) {
+      return Jars.DEFAULT_DOWNLOAD_THREADS;
+    }
+    try {
+      return Integer.parseInt(value.trim());
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value of " + InternalProperties.RUNNER_DOWNLOAD_THREADS + ": " + value, e);
+    }
   }
 }
@@ -20,9 +20,22 @@
 package org.sonar.runner.impl;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
+import org.sonar.home.cache.FileCache;
+import org.sonar.home.cache.FileCacheBuilder;
+import org.sonar.home.log.StandardLog;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
 import java.net.URL;
+import java.net.URLConnection;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.jar.JarEntry;
 
 public class JarExtractor {
 
@@ -30,12 +43,69 @@ public class JarExtractor {
     String filename = filenameWithoutSuffix + ".jar";
     URL url = getClass().getResource("/" + filename);
     try {
-      File copy = File.createTempFile(filenameWithoutSuffix, ".jar");
+      File copy = TempFiles.createTempFile(filenameWithoutSuffix, ".jar");
       FileUtils.copyURLToFile(url, copy);
       return copy;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to extract " + filename, e);
     }
   }
-}
 
+  /**
+   * Extracts the embedded jar into the user cache, in a directory named by the hash of its content. The jar is
+   * extracted only once, then shared by all executions as long as its content does not change. It must not be deleted.
+   */
+  public File extractToCache(String filenameWithoutSuffix) {
+    return extractToCache(filenameWithoutSuffix, new FileCacheBuilder().setLog(new StandardLog()).build());
+  }
+
+  File extractToCache(String filenameWithoutSuffix, FileCache fileCache) {
+    String filename = filenameWithoutSuffix + ".jar";
+    URL url = getClass().getResource("/" + filename);
+    try {
+      if (url == null) {
+        throw new IOException("Resource not found");
+      }
+      String hash = hash(url);
+      File cached = fileCache.get(filename, hash);
+      if (cached != null) {
+        return cached;
+      }
+      File tmpDir = new File(fileCache.getDir(), "_tmp");
+      FileUtils.forceMkdir(tmpDir);
+      File tmp = File.createTempFile(filenameWithoutSuffix, ".jar", tmpDir);
+      try {
+        FileUtils.copyURLToFile(url, tmp);
+        File target = new File(new File(fileCache.getDir(), hash), filename);
+        FileUtils.forceMkdir(target.getParentFile());
+        Jars.moveToCache(tmp, target);
+        return target;
+      } finally {
+        FileUtils.deleteQuietly(tmp);
+      }
+    } catch (Exception e) {
+      throw new IllegalStateException("Fail to extract " + filename, e);
+    }
+  }
+
+  /**
+   * When the resource is packaged in a jar, the CRC and size of its entry are used, so that the content is not read.
+   */
+  static String hash(URL url) throws IOException, NoSuchAlgorithmException {
+    URLConnection connection = url.openConnection();
+    if (connection instanceof JarURLConnection) {
+      JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+      if (entry != null && entry.getCrc() != -1L && entry.getSize() != -1L) {
+        return String.format("crc%08x-%d", entry.getCrc(), entry.getSize());
+      }
+    }
+    MessageDigest digest = MessageDigest.getInstance("MD5");
+    InputStream input = new DigestInputStream(connection.getInputStream(), digest);
+    try {
+      IOUtils.copy(input, new NullOutputStream());
+    } finally {
+      input.close();
+    }
+    return ServerConnection.toHex(digest.digest());
+  }
+}
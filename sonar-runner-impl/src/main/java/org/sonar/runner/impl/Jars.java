@@ -19,78 +19,308 @@
  */
 package org.sonar.runner.impl;
 
+import org.apache.commons.io.FileUtils;
 import org.sonar.home.cache.FileCache;
 import org.sonar.home.cache.FileCacheBuilder;
 import org.sonar.home.log.StandardLog;
 
+import javax.annotation.CheckForNull;
+
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 class Jars {
   private static final String BOOTSTRAP_INDEX_PATH = "/batch_bootstrap/index";
   static final String BATCH_PATH = "/batch/";
+  static final int DEFAULT_DOWNLOAD_THREADS = 4;
+  private static final Metrics.Counter CACHE_HITS = Metrics.counter(Metrics.CACHE_HITS);
+  private static final Metrics.Counter CACHE_MISSES = Metrics.counter(Metrics.CACHE_MISSES);
 
   private final FileCache fileCache;
   private final ServerConnection connection;
   private final JarExtractor jarExtractor;
+  private final int downloadThreads;
+  private final Progress progress;
 
-  Jars(ServerConnection conn, JarExtractor jarExtractor) {
-    this.fileCache = new FileCacheBuilder().setLog(new StandardLog()).build();
-    this.connection = conn;
-    this.jarExtractor = jarExtractor;
+  Jars(ServerConnection conn, JarExtractor jarExtractor, int downloadThreads, Progress progress) {
+    this(new FileCacheBuilder().setLog(new StandardLog()).build(), conn, jarExtractor, downloadThreads, progress);
   }
 
   /**
    * For unit tests
    */
   Jars(FileCache fileCache, ServerConnection conn, JarExtractor jarExtractor) {
+    this(fileCache, conn, jarExtractor, DEFAULT_DOWNLOAD_THREADS);
+  }
+
+  Jars(FileCache fileCache, ServerConnection conn, JarExtractor jarExtractor, int downloadThreads) {
+    this(fileCache, conn, jarExtractor, downloadThreads, new Progress());
+  }
+
+  Jars(FileCache fileCache, ServerConnection conn, JarExtractor jarExtractor, int downloadThreads, Progress progress) {
     this.fileCache = fileCache;
     this.connection = conn;
     this.jarExtractor = jarExtractor;
+    this.downloadThreads = Math.max(1, downloadThreads);
+    this.progress = progress;
   }
 
   List<File> download() {
     List<File> files = new ArrayList<File>();
-    Logs.debug("Extract sonar-runner-batch in temp...");
-    files.add(jarExtractor.extractToTemp("sonar-runner-batch"));
+    Logs.debug("Extract sonar-runner-batch in cache...");
+    files.add(jarExtractor.extractToCache("sonar-runner-batch", fileCache));
     files.addAll(dowloadFiles());
     return files;
   }
 
   private List<File> dowloadFiles() {
     try {
-      List<File> files = new ArrayList<File>();
       Logs.debug("Get bootstrap index...");
       String libs = connection.downloadStringCache(BOOTSTRAP_INDEX_PATH);
       Logs.debug("Get bootstrap completed");
-      String[] lines = libs.split("[\r\n]+");
+      progress.phase(Progress.PHASE_DOWNLOAD);
+      List<String[]> libsAndHashes = parseIndex(libs);
       BatchFileDownloader batchFileDownloader = new BatchFileDownloader(connection);
-      for (String line : lines) {
-        line = line.trim();
-        if (!"".equals(line)) {
-          String[] libAndHash = line.split("\\|");
-          String filename = libAndHash[0];
-          String hash = libAndHash.length > 0 ? libAndHash[1] : "";
-          files.add(fileCache.get(filename, hash, batchFileDownloader));
-        }
-      }
+      long start = System.currentTimeMillis();
+      List<File> files = downloadInParallel(libsAndHashes, batchFileDownloader);
+      logThroughput(batchFileDownloader, System.currentTimeMillis() - start);
       return files;
     } catch (Exception e) {
       throw new IllegalStateException("Fail to download libraries from server", e);
     }
   }
 
-  static class BatchFileDownloader implements FileCache.Downloader {
+  private static List<String[]> parseIndex(String libs) {
+    List<String[]> result = new ArrayList<String[]>();
+    for (String line : libs.split("[\r\n]+")) {
+      line = line.trim();
+      if (!"".equals(line)) {
+        String[] libAndHash = line.split("\\|");
+        String filename = libAndHash[0];
+        String hash = libAndHash.length > 1 ? libAndHash[1] : "";
+        result.add(new String[] {filename, hash});
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Files are resolved concurrently, but returned in the order of the bootstrap index. Downloads are awaited in
+   * order of completion, so that the first failure cancels the pending downloads without waiting for the others.
+   */
+  private List<File> downloadInParallel(List<String[]> libsAndHashes, final BatchFileDownloader downloader) throws Exception {
+    int poolSize = Math.min(downloadThreads, libsAndHashes.size());
+    if (poolSize <= 1) {
+      List<File> files = new ArrayList<File>();
+      for (String[] libAndHash : libsAndHashes) {
+        files.add(get(libAndHash[0], libAndHash[1], downloader));
+      }
+      return files;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(poolSize, new DownloadThreadFactory());
+    try {
+      CompletionService<File> completion = new ExecutorCompletionService<File>(executor);
+      List<Future<File>> futures = new ArrayList<Future<File>>();
+      for (final String[] libAndHash : libsAndHashes) {
+        futures.add(completion.submit(new Callable<File>() {
+          @Override
+          public File call() throws IOException {
+            return get(libAndHash[0], libAndHash[1], downloader);
+          }
+        }));
+      }
+      for (int i = 0; i < futures.size(); i++) {
+        getOrAbort(completion.take(), futures, downloader);
+      }
+      List<File> files = new ArrayList<File>();
+      for (Future<File> future : futures) {
+        // all done
+        files.add(future.get());
+      }
+      return files;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Unlike {@link FileCache#get(String, String, FileCache.Downloader)}, the hash of a new file is computed while
+   * it is downloaded, so the file is not read again before being moved into the cache.
+   */
+  private File get(String filename, String hash, BatchFileDownloader downloader) throws IOException {
+    long start = System.currentTimeMillis();
+    File cached = fileCache.get(filename, hash);
+    if (cached != null) {
+      CACHE_HITS.increment();
+      progress.file(filename, true, 0L, System.currentTimeMillis() - start);
+      return cached;
+    }
+    CACHE_MISSES.increment();
+    File downloaded = downloader.downloadToCache(fileCache.getDir(), filename, hash);
+    progress.file(filename, false, downloaded.length(), System.currentTimeMillis() - start);
+    return downloaded;
+  }
+
+  /**
+   * Moves a complete file to its location in the cache. Executions read the cache without locking, so the file
+   * must appear atomically.
+   */
+  static void moveToCache(File tmp, File target) throws IOException {
+    if (target.exists()) {
+      // created concurrently by another execution
+      return;
+    }
+    try {
+      Files.move(tmp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(tmp.toPath(), target.toPath());
+    } catch (FileAlreadyExistsException e) {
+      // created concurrently by another execution
+    }
+  }
+
+  private static File getOrAbort(Future<File> future, List<Future<File>> all, BatchFileDownloader downloader) throws Exception {
+    try {
+      return future.get();
+    } catch (ExecutionException e) {
+      downloader.abort();
+      for (Future<File> f : all) {
+        f.cancel(true);
+      }
+      Throwable cause = e.getCause();
+      throw cause instanceof Exception ? (Exception) cause : e;
+    }
+  }
+
+  private void logThroughput(BatchFileDownloader downloader, long durationMs) {
+    int count = downloader.downloadedFiles.get();
+    long bytes = downloader.downloadedBytes.get();
+    progress.downloaded(count, bytes, durationMs);
+    if (count > 0) {
+      long kbPerSecond = durationMs > 0 ? (bytes * 1000L / durationMs) / 1024L : 0L;
+      Logs.info(String.format("Downloaded %d file(s), %d KB in %d ms (%d KB/s)", count, bytes / 1024L, durationMs, kbPerSecond));
+    }
+  }
+
+  private static class DownloadThreadFactory implements ThreadFactory {
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable r) {
+      Thread thread = new Thread(r, "sonar-runner-download-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+
+  static class BatchFileDownloader {
     private final ServerConnection connection;
+    private final AtomicBoolean aborted = new AtomicBoolean(false);
+    final AtomicInteger downloadedFiles = new AtomicInteger();
+    final AtomicLong downloadedBytes = new AtomicLong();
 
     BatchFileDownloader(ServerConnection conn) {
       this.connection = conn;
     }
 
-    public void download(String filename, File toFile) throws IOException {
-      connection.download(BATCH_PATH + filename, toFile);
+    /**
+     * Downloads into the side file "_tmp/HASH_FILENAME.part" of the cache, then moves it to the location expected by
+     * {@link FileCache}, unless its content does not match the hash declared in the bootstrap index. The side file is
+     * kept when the download fails, so that the next execution resumes it. It is locked during download. If it's
+     * already locked by another execution, a new temp file is downloaded from the start.
+     */
+    File downloadToCache(File cacheDir, String filename, String hash) throws IOException {
+      File tmpDir = new File(cacheDir, "_tmp");
+      FileUtils.forceMkdir(tmpDir);
+      File part = new File(tmpDir, hash + "_" + filename + ".part");
+      // lock files are never deleted, as another execution could be locking them
+      RandomAccessFile lockFile = new RandomAccessFile(new File(tmpDir, part.getName() + ".lock"), "rw");
+      try {
+        FileLock lock = tryLock(lockFile.getChannel());
+        if (lock == null) {
+          Logs.debug("Download of {} is already in progress, ignore partial file", filename);
+          part = File.createTempFile("fileCache", null, tmpDir);
+        }
+        boolean keepPart = lock != null;
+        try {
+          String downloadedHash = download(filename, part);
+          if (!hash.equalsIgnoreCase(downloadedHash)) {
+            keepPart = false;
+            throw new IllegalStateException("INVALID HASH: File " + filename + " was expected to have hash " + hash
+              + " but was downloaded with hash " + downloadedHash);
+          }
+          File target = new File(new File(cacheDir, hash), filename);
+          FileUtils.forceMkdir(target.getParentFile());
+          // deleted if not moved
+          keepPart = false;
+          moveToCache(part, target);
+          return target;
+        } finally {
+          if (!keepPart) {
+            FileUtils.deleteQuietly(part);
+          }
+        }
+      } finally {
+        // also releases the lock
+        lockFile.close();
+      }
+    }
+
+    @CheckForNull
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+      try {
+        return channel.tryLock();
+      } catch (OverlappingFileLockException e) {
+        // locked by another execution in the same JVM
+        return null;
+      }
+    }
+
+    /**
+     * @return the MD5 hash of the downloaded file
+     */
+    String download(String filename, File toFile) throws IOException {
+      if (aborted.get()) {
+        throw new IOException("Download of " + filename + " aborted");
+      }
+      long initialLength = toFile.length();
+      String hash = connection.download(BATCH_PATH + filename, toFile);
+      if (aborted.get()) {
+        // the complete file is kept, but must not be used after the failure of another download
+        throw new IOException("Download of " + filename + " aborted");
+      }
+      downloadedFiles.incrementAndGet();
+      downloadedBytes.addAndGet(toFile.length() - initialLength);
+      return hash;
+    }
+
+    /**
+     * Stops the downloads that are not started yet. Partial files are kept to be resumed.
+     */
+    void abort() {
+      aborted.set(true);
     }
   }
 }
@@ -0,0 +1,207 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.Nullable;
+
+/**
+ * Writes the lines of {@link Logs} from a daemon thread, so that callers don't wait for the terminal. Lines are
+ * queued in a bounded lock-free queue, then written by batches with one flush per batch.
+ * <p/>
+ * When the queue is full, debug lines are dropped and the number of dropped lines is logged once the queue
+ * is drained. Other lines wait for free space, so they are never lost.
+ * <p/>
+ * The stream of each line is the one of {@link System#out} or {@link System#err} when the line is logged,
+ * as the daemon redirects them during executions.
+ */
+class LogWriter {
+
+  static final int DEFAULT_CAPACITY = 8192;
+  private static final int MAX_BATCH_CHARS = 16 * 1024;
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+  private static final long WAIT_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100L);
+  private static final long FLUSH_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10L);
+
+  static final class Entry {
+    private final PrintStream stream;
+    private final String prefix;
+    private final String context;
+    private final String message;
+    private final Throwable throwable;
+
+    Entry(PrintStream stream, String prefix, @Nullable String context, String message, @Nullable Throwable throwable) {
+      this.stream = stream;
+      this.prefix = prefix;
+      this.context = context;
+      this.message = message;
+      this.throwable = throwable;
+    }
+
+    void appendTo(StringBuilder sb) {
+      if (context != null) {
+        sb.append('[').append(context).append("] ");
+      }
+      sb.append(prefix).append(message).append(System.lineSeparator());
+      if (throwable != null) {
+        StringWriter trace = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(trace));
+        sb.append(trace);
+      }
+    }
+  }
+
+  private final Queue<Entry> queue = new ConcurrentLinkedQueue<Entry>();
+  private final int capacity;
+  private final AtomicInteger size = new AtomicInteger();
+  private final AtomicLong enqueued = new AtomicLong();
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+  private final Thread thread;
+  private volatile boolean idle = false;
+
+  LogWriter(int capacity) {
+    this.capacity = capacity;
+    this.thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drainForever();
+      }
+    }, "sonar-runner-logs");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * @param droppable true if the line can be dropped when the queue is full
+   */
+  void write(Entry entry, boolean droppable) {
+    if (!reserve()) {
+      if (droppable) {
+        dropped.incrementAndGet();
+        return;
+      }
+      do {
+        LockSupport.unpark(thread);
+        LockSupport.parkNanos(WAIT_PARK_NANOS);
+      } while (!reserve());
+    }
+    // counted before being queued, so that flush() never waits for fewer lines than the queued ones
+    enqueued.incrementAndGet();
+    queue.offer(entry);
+    if (idle) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  /**
+   * Waits until the lines logged before this call are written, at most 10 seconds
+   */
+  void flush() {
+    long target = enqueued.get();
+    long deadline = System.nanoTime() + FLUSH_TIMEOUT_NANOS;
+    while (written.get() < target && System.nanoTime() < deadline && Thread.currentThread() != thread) {
+      LockSupport.unpark(thread);
+      LockSupport.parkNanos(WAIT_PARK_NANOS);
+    }
+  }
+
+  long dropped() {
+    return dropped.get();
+  }
+
+  private boolean reserve() {
+    int current = size.get();
+    while (current < capacity) {
+      if (size.compareAndSet(current, current + 1)) {
+        return true;
+      }
+      current = size.get();
+    }
+    return false;
+  }
+
+  private void drainForever() {
+    StringBuilder batch = new StringBuilder();
+    PrintStream batchStream = null;
+    long batchCount = 0L;
+    long reportedDrops = 0L;
+    while (true) {
+      Entry entry = queue.poll();
+      if (entry == null) {
+        write(batchStream, batch, batchCount);
+        batch.setLength(0);
+        batchCount = 0L;
+        reportedDrops = reportDrops(reportedDrops);
+        park();
+        continue;
+      }
+      size.decrementAndGet();
+      if (entry.stream != batchStream || batch.length() > MAX_BATCH_CHARS) {
+        write(batchStream, batch, batchCount);
+        batch.setLength(0);
+        batchCount = 0L;
+        batchStream = entry.stream;
+      }
+      try {
+        entry.appendTo(batch);
+      } catch (RuntimeException e) {
+        // for example failure of toString() of an argument, the line is ignored
+      }
+      batchCount++;
+    }
+  }
+
+  private void write(@Nullable PrintStream stream, StringBuilder batch, long count) {
+    if (stream != null && batch.length() > 0) {
+      // PrintStream never throws IOException
+      stream.print(batch);
+      stream.flush();
+    }
+    written.addAndGet(count);
+  }
+
+  private long reportDrops(long reported) {
+    long total = dropped.get();
+    if (total > reported) {
+      PrintStream out = System.out;
+      out.println("WARN: " + (total - reported) + " debug messages are not logged because they are produced faster than they can be written");
+      out.flush();
+    }
+    return total;
+  }
+
+  private void park() {
+    idle = true;
+    if (queue.isEmpty()) {
+      LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+    }
+    idle = false;
+  }
+}
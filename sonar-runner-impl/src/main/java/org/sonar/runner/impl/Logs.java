@@ -19,42 +19,140 @@
  */
 package org.sonar.runner.impl;
 
+import java.io.PrintStream;
+
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Lines are written asynchronously by {@link LogWriter}. Call {@link #flush()} before exiting the JVM or before
+ * writing directly to {@link System#out}. Messages can be patterns with the placeholders "{}", which are
+ * replaced by the arguments only if the level is enabled.
+ */
 public class Logs {
   private Logs() {
   }
 
-  private static boolean debugEnabled = false;
+  private static volatile boolean debugEnabled = false;
+
+  /**
+   * Overrides {@link #debugEnabled} for the analysis executed by the current thread and the threads it starts
+   */
+  private static final ThreadLocal<Boolean> THREAD_DEBUG_ENABLED = new InheritableThreadLocal<Boolean>();
+
+  /**
+   * Prefix of the lines of the analysis executed by the current thread and the threads it starts
+   */
+  private static final ThreadLocal<String> THREAD_CONTEXT = new InheritableThreadLocal<String>();
+
+  private static final LogWriter WRITER = new LogWriter(LogWriter.DEFAULT_CAPACITY);
 
   public static void setDebugEnabled(boolean debugEnabled) {
     Logs.debugEnabled = debugEnabled;
   }
 
+  /**
+   * @param enabled null to use the global value set by {@link #setDebugEnabled(boolean)}
+   * @return the previous value for the current thread, to be restored at the end of the analysis
+   */
+  @CheckForNull
+  public static Boolean setDebugEnabledForCurrentThread(@Nullable Boolean enabled) {
+    Boolean previous = THREAD_DEBUG_ENABLED.get();
+    if (enabled == null) {
+      THREAD_DEBUG_ENABLED.remove();
+    } else {
+      THREAD_DEBUG_ENABLED.set(enabled);
+    }
+    return previous;
+  }
+
+  /**
+   * Lines logged by the current thread are prefixed by "[context] ", so that the lines of concurrent analyses
+   * can be distinguished.
+   *
+   * @param context null to remove the prefix
+   * @return the previous context of the current thread, to be restored at the end of the analysis
+   */
+  @CheckForNull
+  public static String setContextForCurrentThread(@Nullable String context) {
+    String previous = THREAD_CONTEXT.get();
+    if (context == null) {
+      THREAD_CONTEXT.remove();
+    } else {
+      THREAD_CONTEXT.set(context);
+    }
+    return previous;
+  }
+
   public static boolean isDebugEnabled() {
-    return debugEnabled;
+    Boolean threadValue = THREAD_DEBUG_ENABLED.get();
+    return threadValue != null ? threadValue : debugEnabled;
   }
 
   public static void debug(String message) {
     if (isDebugEnabled()) {
-      System.out.println("DEBUG: " + message);
+      log(System.out, "DEBUG: ", message, null, true);
+    }
+  }
+
+  public static void debug(String pattern, Object... args) {
+    if (isDebugEnabled()) {
+      log(System.out, "DEBUG: ", format(pattern, args), null, true);
     }
   }
 
   public static void info(String message) {
-    System.out.println("INFO: " + message);
+    log(System.out, "INFO: ", message, null, false);
+  }
+
+  public static void info(String pattern, Object... args) {
+    log(System.out, "INFO: ", format(pattern, args), null, false);
   }
 
   public static void warn(String message) {
-    System.out.println("WARN: " + message);
+    log(System.out, "WARN: ", message, null, false);
+  }
+
+  public static void warn(String pattern, Object... args) {
+    log(System.out, "WARN: ", format(pattern, args), null, false);
   }
 
   public static void error(String message) {
-    System.err.println("ERROR: " + message);
+    log(System.err, "ERROR: ", message, null, false);
   }
 
   public static void error(String message, Throwable t) {
-    System.err.println("ERROR: " + message);
-    if (t != null) {
-      t.printStackTrace(System.err);
+    log(System.err, "ERROR: ", message, t, false);
+  }
+
+  /**
+   * Waits until the lines logged before are written
+   */
+  public static void flush() {
+    WRITER.flush();
+  }
+
+  private static void log(PrintStream stream, String prefix, String message, @Nullable Throwable t, boolean droppable) {
+    WRITER.write(new LogWriter.Entry(stream, prefix, THREAD_CONTEXT.get(), message, t), droppable);
+  }
+
+  /**
+   * Replaces the placeholders "{}" by the arguments, in order. Placeholders without arguments are kept.
+   */
+  static String format(String pattern, Object... args) {
+    if (args.length == 0) {
+      return pattern;
+    }
+    StringBuilder sb = new StringBuilder(pattern.length() + 16 * args.length);
+    int argIndex = 0;
+    int from = 0;
+    int placeholder = pattern.indexOf("{}");
+    while (placeholder >= 0 && argIndex < args.length) {
+      sb.append(pattern, from, placeholder).append(args[argIndex]);
+      argIndex++;
+      from = placeholder + 2;
+      placeholder = pattern.indexOf("{}", from);
     }
+    return sb.append(pattern, from, pattern.length()).toString();
   }
 }
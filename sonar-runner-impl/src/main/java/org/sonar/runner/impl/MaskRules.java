@@ -0,0 +1,86 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Mask rules of {@link IsolatedClassloader}, compiled into a prefix tree. A class name is matched
+ * in a single pass over its characters, whatever the number of rules. As with a sequential scan,
+ * the first declared rule whose prefix matches the name wins.
+ */
+class MaskRules {
+
+  private static final int NO_RULE = Integer.MAX_VALUE;
+
+  private final Node root = new Node();
+  private final boolean[] unmask;
+
+  /**
+   * @param rules pairs of {"MASK" or "UNMASK", prefix of class names}
+   */
+  MaskRules(String[][] rules) {
+    unmask = new boolean[rules.length];
+    for (int i = 0; i < rules.length; i++) {
+      unmask[i] = "UNMASK".equals(rules[i][0]);
+      Node node = root;
+      String prefix = rules[i][1];
+      for (int c = 0; c < prefix.length(); c++) {
+        node = node.child(prefix.charAt(c), true);
+      }
+      // a rule declared later with the same prefix is never applied
+      node.rule = Math.min(node.rule, i);
+    }
+  }
+
+  /**
+   * @return true if the first rule matching the class name is "UNMASK", false if it is "MASK" or if no rule matches
+   */
+  boolean isUnmasked(String name) {
+    int firstRule = root.rule;
+    Node node = root;
+    for (int c = 0; c < name.length(); c++) {
+      node = node.child(name.charAt(c), false);
+      if (node == null) {
+        break;
+      }
+      firstRule = Math.min(firstRule, node.rule);
+    }
+    return firstRule != NO_RULE && unmask[firstRule];
+  }
+
+  private static class Node {
+    private Map<Character, Node> children;
+    private int rule = NO_RULE;
+
+    Node child(char c, boolean create) {
+      Node child = children != null ? children.get(c) : null;
+      if (child == null && create) {
+        if (children == null) {
+          children = new HashMap<Character, Node>();
+        }
+        child = new Node();
+        children.put(c, child);
+      }
+      return child;
+    }
+  }
+}
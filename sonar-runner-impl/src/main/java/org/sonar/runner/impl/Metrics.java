@@ -0,0 +1,230 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and histograms of the runner internals, shared by all the executions of the JVM. They are updated
+ * without locks, so they are always enabled. Values are read by {@link #snapshot()} or through the MXBean
+ * {@link #OBJECT_NAME}, registered by {@link #registerMBean()}.
+ * <p/>
+ * Metrics are created on first use. Names of metrics per HTTP endpoint are suffixed by the first segment
+ * of the path, for example "http.latencyMs{/batch}".
+ */
+public final class Metrics {
+
+  public static final String OBJECT_NAME = "org.sonar.runner:type=Metrics";
+
+  public static final String HTTP_LATENCY_MS = "http.latencyMs";
+  public static final String HTTP_BYTES = "http.bytes";
+  public static final String CACHE_HITS = "cache.hits";
+  public static final String CACHE_MISSES = "cache.misses";
+  public static final String CLASS_LOAD_TIME_US = "classloader.loadTimeUs";
+  public static final String EXECUTIONS_ACTIVE = "executions.active";
+  public static final String EXECUTIONS_COMPLETED = "executions.completed";
+  public static final String EXECUTIONS_FAILED = "executions.failed";
+  public static final String EXECUTION_DURATION_MS = "executions.durationMs";
+  public static final String FORKS_STARTED = "forks.started";
+  public static final String FORKS_ACTIVE = "forks.active";
+
+  private static final ConcurrentMap<String, Counter> COUNTERS = new ConcurrentHashMap<String, Counter>();
+  private static final ConcurrentMap<String, Histogram> HISTOGRAMS = new ConcurrentHashMap<String, Histogram>();
+  private static final AtomicBoolean REGISTERED = new AtomicBoolean(false);
+
+  private Metrics() {
+    // only static methods
+  }
+
+  public static Counter counter(String name) {
+    Counter counter = COUNTERS.get(name);
+    if (counter == null) {
+      Counter created = new Counter();
+      counter = COUNTERS.putIfAbsent(name, created);
+      if (counter == null) {
+        counter = created;
+      }
+    }
+    return counter;
+  }
+
+  public static Histogram histogram(String name) {
+    Histogram histogram = HISTOGRAMS.get(name);
+    if (histogram == null) {
+      Histogram created = new Histogram();
+      histogram = HISTOGRAMS.putIfAbsent(name, created);
+      if (histogram == null) {
+        histogram = created;
+      }
+    }
+    return histogram;
+  }
+
+  /**
+   * @return the name of a metric of an HTTP endpoint, for example "http.bytes{/batch}" for the path "/batch/sonar-batch.jar"
+   */
+  static String ofEndpoint(String name, String path) {
+    int end = path.length();
+    for (int i = 1; i < path.length(); i++) {
+      char c = path.charAt(i);
+      if (c == '/' || c == '?') {
+        end = i;
+        break;
+      }
+    }
+    return name + "{" + path.substring(0, end) + "}";
+  }
+
+  /**
+   * Values sorted by name. Histograms are flattened to the entries "name.count", "name.sum", "name.max",
+   * "name.p50", "name.p95" and "name.p99".
+   */
+  public static SortedMap<String, Long> snapshot() {
+    SortedMap<String, Long> values = new TreeMap<String, Long>();
+    for (Map.Entry<String, Counter> entry : COUNTERS.entrySet()) {
+      values.put(entry.getKey(), entry.getValue().get());
+    }
+    for (Map.Entry<String, Histogram> entry : HISTOGRAMS.entrySet()) {
+      String name = entry.getKey();
+      Histogram histogram = entry.getValue();
+      values.put(name + ".count", histogram.count());
+      values.put(name + ".sum", histogram.sum());
+      values.put(name + ".max", histogram.max());
+      values.put(name + ".p50", histogram.percentile(50));
+      values.put(name + ".p95", histogram.percentile(95));
+      values.put(name + ".p99", histogram.percentile(99));
+    }
+    return values;
+  }
+
+  /**
+   * Registers the MXBean in the platform MBean server, once per JVM. Failures are ignored, for example when
+   * another copy of the runner, loaded by another classloader, already registered it.
+   */
+  public static void registerMBean() {
+    if (REGISTERED.compareAndSet(false, true)) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBeanImpl(), new ObjectName(OBJECT_NAME));
+      } catch (JMException | SecurityException e) {
+        Logs.debug("Fail to register MBean {}: {}", OBJECT_NAME, e.getMessage());
+      }
+    }
+  }
+
+  public interface MetricsMXBean {
+    Map<String, Long> getMetrics();
+  }
+
+  private static class MXBeanImpl implements MetricsMXBean {
+    @Override
+    public Map<String, Long> getMetrics() {
+      return snapshot();
+    }
+  }
+
+  public static final class Counter {
+    private final AtomicLong value = new AtomicLong();
+
+    public void increment() {
+      value.incrementAndGet();
+    }
+
+    public void decrement() {
+      value.decrementAndGet();
+    }
+
+    public void add(long delta) {
+      value.addAndGet(delta);
+    }
+
+    public long get() {
+      return value.get();
+    }
+  }
+
+  /**
+   * Distribution of positive values in buckets of powers of two, so percentiles are upper bounds with
+   * a precision of a factor 2. Recording a value does not allocate.
+   */
+  public static final class Histogram {
+    // bucket 0 is for value 0, bucket i for values in [2^(i-1), 2^i - 1]
+    private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long value) {
+      long v = Math.max(0L, value);
+      buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(v));
+      count.incrementAndGet();
+      sum.addAndGet(v);
+      long current = max.get();
+      while (v > current && !max.compareAndSet(current, v)) {
+        current = max.get();
+      }
+    }
+
+    public long count() {
+      return count.get();
+    }
+
+    public long sum() {
+      return sum.get();
+    }
+
+    public long max() {
+      return max.get();
+    }
+
+    /**
+     * @param percent between 0 and 100
+     * @return an upper bound of the percentile, or 0 if no values are recorded
+     */
+    public long percentile(double percent) {
+      long total = 0L;
+      long[] counts = new long[buckets.length()];
+      for (int i = 0; i < counts.length; i++) {
+        counts[i] = buckets.get(i);
+        total += counts[i];
+      }
+      long rank = (long) Math.ceil(total * percent / 100.0);
+      long seen = 0L;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank && seen > 0) {
+          // (1L << 63) - 1 is Long.MAX_VALUE
+          return Math.min(i == 0 ? 0L : (1L << i) - 1, max());
+        }
+      }
+      return 0L;
+    }
+  }
+}
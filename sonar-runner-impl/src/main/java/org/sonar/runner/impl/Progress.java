@@ -0,0 +1,219 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Events reported during the execution of {@link BatchLauncher}: phases, downloads, memory and analysis of modules.
+ * An event is a map of simple values (strings, numbers, booleans) with at least the fields {@link #TYPE} and {@link #TIME}.
+ * In fork mode, events are sent to the parent process by {@link ProgressChannel}.
+ */
+public class Progress {
+
+  public interface Listener {
+    void onEvent(Map<String, Object> event);
+  }
+
+  public static final String TYPE = "type";
+  public static final String TIME = "time";
+
+  public static final String PHASE = "phase";
+  public static final String DOWNLOAD = "download";
+  public static final String MEMORY = "memory";
+  public static final String MODULE = "module";
+  public static final String END = "end";
+  public static final String FILE = "file";
+
+  public static final String PHASE_BOOTSTRAP = "bootstrap";
+  public static final String PHASE_INDEX = "index";
+  public static final String PHASE_DOWNLOAD = "download";
+  public static final String PHASE_CLASSLOADER = "classloader";
+  public static final String PHASE_LOGGING = "logging";
+  public static final String PHASE_ANALYSIS = "analysis";
+  public static final String PHASE_CLEANING = "cleaning";
+
+  /**
+   * Fields of the events {@link #PHASE} and {@link #END}: counters of the thread that emits the event, since its start.
+   * Durations of phases are the differences between consecutive events. Values are -1 if not supported by the JVM.
+   */
+  public static final String CPU_TIME = "cpuTimeNs";
+  public static final String ALLOCATED_BYTES = "allocatedBytes";
+
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+  private final long startedAt = System.currentTimeMillis();
+  private Timer memorySampler;
+
+  public Progress addListener(Listener listener) {
+    listeners.add(listener);
+    return this;
+  }
+
+  boolean hasListeners() {
+    return !listeners.isEmpty();
+  }
+
+  void phase(String name) {
+    if (!hasListeners()) {
+      return;
+    }
+    long threadId = Thread.currentThread().getId();
+    emit(PHASE, "name", name, CPU_TIME, ThreadMetrics.cpuTimeNanos(threadId), ALLOCATED_BYTES, ThreadMetrics.allocatedBytes(threadId));
+    memory();
+  }
+
+  void downloaded(int files, long bytes, long durationMs) {
+    emit(DOWNLOAD, "files", files, "bytes", bytes, "durationMs", durationMs);
+  }
+
+  /**
+   * A file of the bootstrap index, either found in cache or downloaded
+   */
+  void file(String name, boolean cached, long bytes, long durationMs) {
+    emit(FILE, "name", name, "cached", cached, "bytes", bytes, "durationMs", durationMs);
+  }
+
+  void memory() {
+    if (!hasListeners()) {
+      return;
+    }
+    MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+    long gcCount = 0L;
+    long gcTime = 0L;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      gcCount += Math.max(0L, gc.getCollectionCount());
+      gcTime += Math.max(0L, gc.getCollectionTime());
+    }
+    emit(MEMORY, "heapUsed", heap.getUsed(), "heapCommitted", heap.getCommitted(), "heapMax", heap.getMax(), "heapPeak", ThreadMetrics.heapPeakBytes(),
+      "gcCount", gcCount, "gcTimeMs", gcTime);
+  }
+
+  void end(boolean success) {
+    stopMemorySampling();
+    memory();
+    long threadId = Thread.currentThread().getId();
+    emit(END, "success", success, "durationMs", System.currentTimeMillis() - startedAt,
+      CPU_TIME, ThreadMetrics.cpuTimeNanos(threadId), ALLOCATED_BYTES, ThreadMetrics.allocatedBytes(threadId));
+  }
+
+  /**
+   * Reports memory periodically until {@link #end(boolean)}
+   */
+  synchronized void startMemorySampling(long periodMs) {
+    if (memorySampler == null && periodMs > 0 && hasListeners()) {
+      memorySampler = new Timer("sonar-runner-memory-sampler", true);
+      memorySampler.schedule(new TimerTask() {
+        @Override
+        public void run() {
+          memory();
+        }
+      }, periodMs, periodMs);
+    }
+  }
+
+  private synchronized void stopMemorySampling() {
+    if (memorySampler != null) {
+      memorySampler.cancel();
+      memorySampler = null;
+    }
+  }
+
+  /**
+   * @param fields pairs of keys and values
+   */
+  void emit(String type, Object... fields) {
+    if (listeners.isEmpty()) {
+      return;
+    }
+    Map<String, Object> event = new LinkedHashMap<String, Object>();
+    event.put(TYPE, type);
+    event.put(TIME, System.currentTimeMillis());
+    for (int i = 0; i + 1 < fields.length; i += 2) {
+      event.put((String) fields[i], fields[i + 1]);
+    }
+    dispatch(event);
+  }
+
+  /**
+   * Serializes an event, or any map of simple values, to a JSON object
+   */
+  public static String toJson(Map<String, Object> event) {
+    return ProgressChannel.toJson(event);
+  }
+
+  private synchronized void dispatch(Map<String, Object> event) {
+    Map<String, Object> unmodifiable = Collections.unmodifiableMap(event);
+    for (Listener listener : listeners) {
+      try {
+        listener.onEvent(unmodifiable);
+      } catch (RuntimeException e) {
+        Logs.debug("Fail to notify progress listener: {}", e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Collection given to org.sonar.runner.batch.IsolatedLauncher, which is loaded by another classloader and
+   * can only share JDK types. Adding an event dispatches it to listeners. Counters of the current thread
+   * are added to phases.
+   */
+  Collection<Map<String, Object>> asCollection() {
+    return new AbstractCollection<Map<String, Object>>() {
+      @Override
+      public boolean add(Map<String, Object> event) {
+        if (!listeners.isEmpty()) {
+          Map<String, Object> copy = new LinkedHashMap<String, Object>(event);
+          if (!copy.containsKey(TIME)) {
+            copy.put(TIME, System.currentTimeMillis());
+          }
+          if (PHASE.equals(copy.get(TYPE)) && !copy.containsKey(CPU_TIME)) {
+            long threadId = Thread.currentThread().getId();
+            copy.put(CPU_TIME, ThreadMetrics.cpuTimeNanos(threadId));
+            copy.put(ALLOCATED_BYTES, ThreadMetrics.allocatedBytes(threadId));
+          }
+          dispatch(copy);
+        }
+        return true;
+      }
+
+      @Override
+      public Iterator<Map<String, Object>> iterator() {
+        return Collections.<Map<String, Object>>emptyList().iterator();
+      }
+
+      @Override
+      public int size() {
+        return 0;
+      }
+    };
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Properties;
+import javax.annotation.CheckForNull;
+
+/**
+ * Sends the progress events of the forked process to the parent process, as JSON lines on a loopback socket.
+ * The first line is the token given by the parent.
+ */
+class ProgressChannel implements Progress.Listener, Closeable {
+
+  private final Socket socket;
+  private final Writer writer;
+  private boolean broken = false;
+
+  ProgressChannel(Socket socket, String token) throws IOException {
+    this.socket = socket;
+    this.writer = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    writer.write(token);
+    writer.write('\n');
+    writer.flush();
+  }
+
+  /**
+   * @return null if the parent process does not listen to progress
+   */
+  @CheckForNull
+  static ProgressChannel connect(Properties props) {
+    String port = props.getProperty(InternalProperties.RUNNER_PROGRESS_PORT);
+    if (port == null) {
+      return null;
+    }
+    try {
+      Socket socket = new Socket(InetAddress.getByName(null), Integer.parseInt(port));
+      socket.setTcpNoDelay(true);
+      return new ProgressChannel(socket, props.getProperty(InternalProperties.RUNNER_PROGRESS_TOKEN, ""));
+    } catch (IOException | NumberFormatException e) {
+      Logs.warn("Fail to connect to progress listener on port " + port + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public synchronized void onEvent(Map<String, Object> event) {
+    if (broken) {
+      return;
+    }
+    try {
+      writer.write(toJson(event));
+      writer.write('\n');
+      writer.flush();
+    } catch (IOException e) {
+      // parent does not listen anymore, analysis must not fail
+      broken = true;
+      Logs.debug("Fail to send progress: {}", e.getMessage());
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    try {
+      writer.flush();
+      socket.close();
+    } catch (IOException e) {
+      // ignore
+    }
+  }
+
+  static String toJson(Map<String, Object> event) {
+    StringBuilder sb = new StringBuilder("{");
+    boolean first = true;
+    for (Map.Entry<String, Object> entry : event.entrySet()) {
+      if (!first) {
+        sb.append(',');
+      }
+      first = false;
+      appendString(sb, entry.getKey());
+      sb.append(':');
+      Object value = entry.getValue();
+      if (value == null || value instanceof Number || value instanceof Boolean) {
+        sb.append(value);
+      } else {
+        appendString(sb, value.toString());
+      }
+    }
+    return sb.append('}').toString();
+  }
+
+  private static void appendString(StringBuilder sb, String s) {
+    sb.append('"');
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      switch (c) {
+        case '"':
+          sb.append("\\\"");
+          break;
+        case '\\':
+          sb.append("\\\\");
+          break;
+        case '\n':
+          sb.append("\\n");
+          break;
+        case '\r':
+          sb.append("\\r");
+          break;
+        case '\t':
+          sb.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            sb.append(String.format("\\u%04x", (int) c));
+          } else {
+            sb.append(c);
+          }
+      }
+    }
+    sb.append('"');
+  }
+}
@@ -0,0 +1,172 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.EOFException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * Retries the requests that failed because of a transient error (connection refused or reset, timeout,
+ * HTTP status 408, 429, 502, 503 or 504). Attempts are spaced by an exponential backoff with jitter and
+ * are stopped when the deadline is reached.
+ */
+class RetryPolicy {
+
+  static final int DEFAULT_MAX_ATTEMPTS = 3;
+  static final long DEFAULT_INITIAL_BACKOFF_MILLISECONDS = 500L;
+  static final long DEFAULT_MAX_BACKOFF_MILLISECONDS = 10000L;
+  static final long DEFAULT_DEADLINE_MILLISECONDS = 120000L;
+  static final int DEFAULT_CIRCUIT_BREAKER_THRESHOLD = 5;
+  static final long DEFAULT_CIRCUIT_BREAKER_OPEN_MILLISECONDS = 30000L;
+
+  private final int maxAttempts;
+  private final long initialBackoffMilliseconds;
+  private final long maxBackoffMilliseconds;
+  private final long deadlineMilliseconds;
+  private final Random random = new Random();
+
+  RetryPolicy(int maxAttempts, long initialBackoffMilliseconds, long maxBackoffMilliseconds, long deadlineMilliseconds) {
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.initialBackoffMilliseconds = initialBackoffMilliseconds;
+    this.maxBackoffMilliseconds = Math.max(initialBackoffMilliseconds, maxBackoffMilliseconds);
+    this.deadlineMilliseconds = deadlineMilliseconds;
+  }
+
+  static RetryPolicy create(Properties props) {
+    return new RetryPolicy(
+      (int) getLong(props, InternalProperties.RUNNER_RETRY_MAX_ATTEMPTS, DEFAULT_MAX_ATTEMPTS),
+      getLong(props, InternalProperties.RUNNER_RETRY_INITIAL_BACKOFF, DEFAULT_INITIAL_BACKOFF_MILLISECONDS),
+      getLong(props, InternalProperties.RUNNER_RETRY_MAX_BACKOFF, DEFAULT_MAX_BACKOFF_MILLISECONDS),
+      getLong(props, InternalProperties.RUNNER_RETRY_DEADLINE, DEFAULT_DEADLINE_MILLISECONDS));
+  }
+
+  static CircuitBreaker circuitBreaker(String host, Properties props) {
+    return CircuitBreaker.forHost(host,
+      (int) getLong(props, InternalProperties.RUNNER_CIRCUIT_BREAKER_THRESHOLD, DEFAULT_CIRCUIT_BREAKER_THRESHOLD),
+      getLong(props, InternalProperties.RUNNER_CIRCUIT_BREAKER_OPEN_TIME, DEFAULT_CIRCUIT_BREAKER_OPEN_MILLISECONDS));
+  }
+
+  static long getLong(Properties props, String key, long defaultValue) {
+    String value = props.getProperty(key, "");
+    if ("".equals(value.trim())) {
+      return defaultValue;
+    }
+    try {
+      long l = Long.parseLong(value.trim());
+      if (l < 0) {
+        throw new IllegalArgumentException("Invalid value of " + key + ": " + value);
+      }
+      return l;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("Invalid value of " + key + ": " + value, e);
+    }
+  }
+
+  <T> T execute(String url, CircuitBreaker breaker, Callable<T> call) throws Exception {
+    long start = System.currentTimeMillis();
+    for (int attempt = 1;; attempt++) {
+      // waits for the trial request of a half-open breaker, up to the deadline
+      breaker.beforeRequest(Math.max(0L, deadlineMilliseconds - (System.currentTimeMillis() - start)));
+      boolean notified = false;
+      try {
+        T result = call.call();
+        notified = true;
+        breaker.onSuccess();
+        return result;
+      } catch (Exception e) {
+        notified = true;
+        if (!isRetryable(e)) {
+          breaker.onIgnoredFailure();
+          throw e;
+        }
+        breaker.onFailure();
+        long backoff = backoff(attempt);
+        if (attempt >= maxAttempts || System.currentTimeMillis() - start + backoff > deadlineMilliseconds) {
+          throw e;
+        }
+        Logs.warn("Fail to request " + url + " (" + rootMessage(e) + "), retry in " + backoff + " ms");
+        sleep(backoff);
+      } finally {
+        if (!notified) {
+          // for example an Error, which must not leave the breaker waiting for the end of a trial
+          breaker.onIgnoredFailure();
+        }
+      }
+    }
+  }
+
+  /**
+   * Exponential backoff, of which only the first half is guaranteed ("equal jitter"), so that concurrent
+   * executions do not retry at the same time.
+   */
+  long backoff(int attempt) {
+    long exponential = initialBackoffMilliseconds << Math.min(attempt - 1, 30);
+    if (exponential <= 0 || exponential > maxBackoffMilliseconds) {
+      exponential = maxBackoffMilliseconds;
+    }
+    long half = exponential / 2;
+    return half + (long) (random.nextDouble() * (exponential - half));
+  }
+
+  static boolean isRetryable(Throwable t) {
+    Throwable e = t;
+    while (e != null) {
+      if (e instanceof HttpStatusException) {
+        int code = ((HttpStatusException) e).code();
+        return code == 408 || code == 429 || code == 502 || code == 503 || code == 504;
+      }
+      if (e instanceof CircuitBreaker.OpenException) {
+        return false;
+      }
+      if (e instanceof ConnectException || e instanceof SocketTimeoutException || e instanceof SocketException) {
+        return true;
+      }
+      if (e instanceof EOFException) {
+        // response truncated
+        return true;
+      }
+      e = e.getCause();
+    }
+    return false;
+  }
+
+  private static String rootMessage(Throwable t) {
+    Throwable e = t;
+    while (e.getCause() != null) {
+      e = e.getCause();
+    }
+    return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+  }
+
+  private static void sleep(long milliseconds) throws InterruptedIOException {
+    try {
+      Thread.sleep(milliseconds);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for next attempt");
+    }
+  }
+}
@@ -23,11 +23,24 @@ import org.sonar.home.cache.PersistentCache;
 import com.github.kevinsawicki.http.HttpRequest;
 import org.apache.commons.io.FileUtils;
 
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.ConnectException;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.UnknownHostException;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
 import java.util.Properties;
 import java.util.concurrent.Callable;
@@ -41,17 +54,28 @@ class ServerConnection {
   static final int CONNECT_TIMEOUT_MILLISECONDS = 30000;
   static final int READ_TIMEOUT_MILLISECONDS = 60000;
   private static final Pattern CHARSET_PATTERN = Pattern.compile("(?i)\\bcharset=\\s*\"?([^\\s;\"]*)");
+  private static final Pattern CONTENT_RANGE_LENGTH_PATTERN = Pattern.compile("/\\s*(\\d+)\\s*$");
+  private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
 
   private final String serverUrl;
   private final String userAgent;
 
   private final PersistentCache wsCache;
+  private final IndexCache indexCache;
+  private final HttpConnectionPool connections;
+  private final RetryPolicy retryPolicy;
+  private final CircuitBreaker circuitBreaker;
   private final boolean isModePreview;
 
-  private ServerConnection(String serverUrl, String app, String appVersion, boolean preview, PersistentCache cache) {
+  private ServerConnection(String serverUrl, String app, String appVersion, boolean preview, PersistentCache cache, IndexCache indexCache,
+    HttpConnectionPool connections, RetryPolicy retryPolicy, Properties props) {
     this.serverUrl = removeEndSlash(serverUrl);
     this.userAgent = app + "/" + appVersion;
     this.wsCache = cache;
+    this.indexCache = indexCache;
+    this.connections = connections;
+    this.retryPolicy = retryPolicy;
+    this.circuitBreaker = RetryPolicy.circuitBreaker(String.valueOf(this.serverUrl), props);
     this.isModePreview = preview;
   }
 
@@ -69,7 +93,8 @@ class ServerConnection {
     String analysisMode = properties.getProperty("sonar.analysis.mode");
     boolean preview = "preview".equalsIgnoreCase(analysisMode);
 
-    return new ServerConnection(serverUrl, app, appVersion, preview, cache);
+    return new ServerConnection(serverUrl, app, appVersion, preview, cache, IndexCache.create(properties), HttpConnectionPool.shared(),
+      RetryPolicy.create(properties), properties);
   }
 
   private class StringDownloader implements Callable<String> {
@@ -81,51 +106,252 @@ class ServerConnection {
 
     @Override
     public String call() throws Exception {
+      long start = System.nanoTime();
+      long received = 0L;
+      HttpRequest httpRequest = null;
+      try {
+        httpRequest = newHttpRequest(new URL(url));
+        byte[] body = body(httpRequest, url);
+        received = body.length;
+        return new String(body, charset(httpRequest));
+      } finally {
+        if (httpRequest != null) {
+          connections.release(httpRequest);
+        }
+        recordRequest(url, start, received);
+      }
+    }
+  }
+
+  private class RetryingCallable<T> implements Callable<T> {
+    private final String url;
+    private final Callable<T> delegate;
+
+    RetryingCallable(String url, Callable<T> delegate) {
+      this.url = url;
+      this.delegate = delegate;
+    }
+
+    @Override
+    public T call() throws Exception {
+      return retryPolicy.execute(url, circuitBreaker, delegate);
+    }
+  }
+
+  /**
+   * Downloads the response unless the copy stored in {@link IndexCache} is still fresh or is confirmed
+   * as not modified by the server.
+   */
+  private class RevalidatingDownloader implements Callable<String> {
+    private String url;
+
+    RevalidatingDownloader(String url) {
+      this.url = url;
+    }
+
+    @Override
+    public String call() throws Exception {
+      final long now = System.currentTimeMillis();
+      final IndexCache.Entry cached = indexCache.get(url);
+      if (cached != null && indexCache.isFresh(cached, now)) {
+        Logs.debug("Use cached {}", url);
+        return cached.body();
+      }
+      return retryPolicy.execute(url, circuitBreaker, new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          return revalidate(cached, now);
+        }
+      });
+    }
+
+    private String revalidate(@Nullable IndexCache.Entry cached, long now) throws IOException {
+      long start = System.nanoTime();
+      long received = 0L;
       HttpRequest httpRequest = null;
       try {
         httpRequest = newHttpRequest(new URL(url));
-        String charset = getCharsetFromContentType(httpRequest.contentType());
-        if (charset == null || "".equals(charset)) {
-          charset = "UTF-8";
+        if (cached != null && cached.etag() != null) {
+          httpRequest.header("If-None-Match", cached.etag());
+        }
+        if (cached != null && cached.lastModified() != null) {
+          httpRequest.header("If-Modified-Since", cached.lastModified());
         }
-        if (!httpRequest.ok()) {
-          throw new IOException(MessageFormat.format(STATUS_RETURNED_BY_URL_IS_INVALID, url, httpRequest.code()));
+        if (cached != null && cached.hasValidators() && httpRequest.notModified()) {
+          Logs.debug("Not modified: {}", url);
+          indexCache.put(url, cached.revalidated(now));
+          return cached.body();
         }
-        return httpRequest.body(charset);
+        byte[] bytes = body(httpRequest, url);
+        received = bytes.length;
+        String body = new String(bytes, charset(httpRequest));
+        indexCache.put(url, new IndexCache.Entry(body, httpRequest.eTag(), httpRequest.header("Last-Modified"), now));
+        return body;
       } finally {
         if (httpRequest != null) {
-          httpRequest.disconnect();
+          connections.release(httpRequest);
         }
+        recordRequest(url, start, received);
       }
     }
   }
 
-  void download(String path, File toFile) {
-    String fullUrl = serverUrl + path;
+  /**
+   * @return the bytes received, so that {@link Metrics#HTTP_BYTES} are counted as for the downloads of files
+   */
+  private static byte[] body(HttpRequest httpRequest, String url) throws IOException {
+    if (!httpRequest.ok()) {
+      throw new HttpStatusException(MessageFormat.format(STATUS_RETURNED_BY_URL_IS_INVALID, url, httpRequest.code()), httpRequest.code());
+    }
+    return httpRequest.bytes();
+  }
+
+  private static String charset(HttpRequest httpRequest) {
+    String charset = getCharsetFromContentType(httpRequest.contentType());
+    if (charset == null || "".equals(charset)) {
+      charset = "UTF-8";
+    }
+    return charset;
+  }
+
+  /**
+   * Downloads to the given file. If the file is not empty, it's considered as the beginning of the content, which
+   * is requested from the following byte when the server supports ranges. The file is not deleted on failure, so
+   * that the next attempt can resume the download.
+   *
+   * @return the MD5 hash of the complete file, computed while writing it
+   */
+  String download(String path, final File toFile) {
+    final String fullUrl = serverUrl + path;
     try {
-      Logs.debug("Download " + fullUrl + " to " + toFile.getAbsolutePath());
-      HttpRequest httpRequest = newHttpRequest(new URL(fullUrl));
-      if (!httpRequest.ok()) {
-        throw new IOException(MessageFormat.format(STATUS_RETURNED_BY_URL_IS_INVALID, fullUrl, httpRequest.code()));
-      }
-      httpRequest.receive(toFile);
+      Logs.debug("Download {} to {}", fullUrl, toFile.getAbsolutePath());
+      // a retry resumes the download
+      return retryPolicy.execute(fullUrl, circuitBreaker, new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          String hash = tryDownload(fullUrl, toFile);
+          if (hash == null) {
+            Logs.debug("Range of partial file is not satisfiable, restart download of {}", fullUrl);
+            FileUtils.forceDelete(toFile);
+            hash = tryDownload(fullUrl, toFile);
+          }
+          return hash;
+        }
+      });
 
     } catch (Exception e) {
       if (e.getCause() instanceof ConnectException || e.getCause() instanceof UnknownHostException) {
         Logs.error(MessageFormat.format(SONAR_SERVER_CAN_NOT_BE_REACHED, serverUrl));
       }
-      FileUtils.deleteQuietly(toFile);
       throw new IllegalStateException("Fail to download: " + fullUrl, e);
     }
   }
 
+  /**
+   * @return the MD5 hash of the complete file, or null if the partial file must be downloaded again from the start
+   */
+  @CheckForNull
+  private String tryDownload(String fullUrl, File toFile) throws IOException, NoSuchAlgorithmException {
+    long start = System.nanoTime();
+    long received = 0L;
+    long offset = toFile.isFile() ? toFile.length() : 0L;
+    MessageDigest digest = MessageDigest.getInstance("MD5");
+    HttpRequest httpRequest = newHttpRequest(new URL(fullUrl), offset == 0L);
+    try {
+      if (offset > 0L) {
+        httpRequest.header("Range", "bytes=" + offset + "-");
+      }
+      int code = httpRequest.code();
+      if (offset > 0L && code == HttpURLConnection.HTTP_PARTIAL) {
+        Logs.debug("Resume download from byte {}", offset);
+        digest(toFile, digest);
+        receive(httpRequest, toFile, true, digest);
+        received = toFile.length() - offset;
+      } else if (offset > 0L && code == HTTP_RANGE_NOT_SATISFIABLE) {
+        if (offset != completeLength(httpRequest)) {
+          return null;
+        }
+        // already complete
+        digest(toFile, digest);
+      } else if (code == HttpURLConnection.HTTP_OK) {
+        receive(httpRequest, toFile, false, digest);
+        received = toFile.length();
+      } else {
+        throw new HttpStatusException(MessageFormat.format(STATUS_RETURNED_BY_URL_IS_INVALID, fullUrl, code), code);
+      }
+      return toHex(digest.digest());
+    } finally {
+      connections.release(httpRequest);
+      recordRequest(fullUrl, start, received);
+    }
+  }
+
+  /**
+   * Latency and received bytes per endpoint, including failed requests
+   */
+  private void recordRequest(String fullUrl, long startNanos, long receivedBytes) {
+    String path = fullUrl.startsWith(serverUrl) ? fullUrl.substring(serverUrl.length()) : fullUrl;
+    Metrics.histogram(Metrics.ofEndpoint(Metrics.HTTP_LATENCY_MS, path)).record((System.nanoTime() - startNanos) / 1000000L);
+    Metrics.counter(Metrics.ofEndpoint(Metrics.HTTP_BYTES, path)).add(receivedBytes);
+  }
+
+  private static void receive(HttpRequest httpRequest, File toFile, boolean append, MessageDigest digest) throws IOException {
+    OutputStream output = new DigestOutputStream(new BufferedOutputStream(new FileOutputStream(toFile, append)), digest);
+    try {
+      httpRequest.receive(output);
+    } finally {
+      output.close();
+    }
+  }
+
+  private static void digest(File file, MessageDigest digest) throws IOException {
+    InputStream input = new DigestInputStream(new FileInputStream(file), digest);
+    try {
+      byte[] buffer = new byte[8192];
+      while (input.read(buffer) != -1) {
+        // only digest
+      }
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * @return the length declared by the header "Content-Range: bytes *&#47;LENGTH", or -1 if unknown
+   */
+  private static long completeLength(HttpRequest httpRequest) {
+    String contentRange = httpRequest.header("Content-Range");
+    if (contentRange != null) {
+      Matcher m = CONTENT_RANGE_LENGTH_PATTERN.matcher(contentRange);
+      if (m.find()) {
+        return Long.parseLong(m.group(1));
+      }
+    }
+    return -1L;
+  }
+
+  void logConnectionStatistics() {
+    connections.logStatistics();
+  }
+
+  /**
+   * Same format as hashes of the bootstrap index
+   */
+  static String toHex(byte[] bytes) {
+    StringBuilder sb = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      sb.append(String.format("%02x", b & 0xff));
+    }
+    return sb.toString();
+  }
+
   String downloadStringCache(String path) throws Exception {
     String fullUrl = serverUrl + path;
     try {
       if (isModePreview) {
-        return wsCache.getString(serverUrl, new StringDownloader(fullUrl));
+        return wsCache.getString(serverUrl, new RetryingCallable<String>(fullUrl, new StringDownloader(fullUrl)));
       } else {
-        return new StringDownloader(fullUrl).call();
+        return new RevalidatingDownloader(fullUrl).call();
       }
     } catch (HttpRequest.HttpRequestException e) {
       if (e.getCause() instanceof ConnectException || e.getCause() instanceof UnknownHostException) {
@@ -135,10 +361,19 @@ class ServerConnection {
     }
   }
 
-  private HttpRequest newHttpRequest(URL url) {
-    HttpRequest request = HttpRequest.get(url);
-    request.trustAllCerts().trustAllHosts();
-    request.acceptGzipEncoding().uncompress(true);
+  private HttpRequest newHttpRequest(URL url) throws IOException {
+    return newHttpRequest(url, true);
+  }
+
+  /**
+   * Requests are never disconnected, so that connections are reused through {@link HttpConnectionPool}.
+   * Compression must not be accepted on range requests, as offsets apply to the uncompressed content.
+   */
+  private HttpRequest newHttpRequest(URL url, boolean acceptGzip) throws IOException {
+    HttpRequest request = connections.get(url);
+    if (acceptGzip) {
+      request.acceptGzipEncoding().uncompress(true);
+    }
     request.connectTimeout(CONNECT_TIMEOUT_MILLISECONDS).readTimeout(READ_TIMEOUT_MILLISECONDS);
     request.userAgent(userAgent);
     return request;
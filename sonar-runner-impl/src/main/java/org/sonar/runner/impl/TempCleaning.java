@@ -20,6 +20,7 @@
 package org.sonar.runner.impl;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.Collection;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.AgeFileFilter;
@@ -27,11 +28,16 @@ import org.apache.commons.io.filefilter.AndFileFilter;
 import org.apache.commons.io.filefilter.PrefixFileFilter;
 
 /**
- * The file sonar-runner-batch.jar is locked by the classloader on Windows and can't be dropped at the end of the execution.
- * See {@link BatchLauncher}
+ * Temp files of the runner can't always be dropped at the end of the execution. For example the file sonar-runner-batch.jar
+ * is locked by the classloader on Windows. See {@link BatchLauncher}
+ * <p/>
+ * Files are created in the directory owned by the runner (see {@link TempFiles}), so only this directory is listed.
+ * Its content is the index of files to be deleted. Copies of sonar-runner-batch.jar left in the system temp directory
+ * by previous versions are searched only once.
  */
 class TempCleaning {
   static final int ONE_DAY_IN_MILLISECONDS = 24 * 60 * 60 * 1000;
+  static final String LEGACY_CLEANING_MARKER = ".legacy-cleaned";
 
   final File tempDir;
 
@@ -46,9 +52,50 @@ class TempCleaning {
     this.tempDir = tempDir;
   }
 
+  /**
+   * Cleans on a background thread of low priority, which does not prevent the JVM from exiting.
+   * Files not deleted are deleted by the next execution.
+   */
+  void cleanAsync() {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        clean();
+      }
+    }, "sonar-runner-temp-cleaning");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.MIN_PRIORITY);
+    thread.start();
+  }
+
   void clean() {
     Logs.debug("Start temp cleaning...");
+    File runnerTempDir;
+    try {
+      runnerTempDir = TempFiles.secureDir(tempDir);
+    } catch (IOException e) {
+      Logs.debug("Fail to clean temp files: {}", e.getMessage());
+      return;
+    }
     long cutoff = System.currentTimeMillis() - ONE_DAY_IN_MILLISECONDS;
+    File[] files = runnerTempDir.listFiles();
+    if (files != null) {
+      AgeFileFilter oldFiles = new AgeFileFilter(cutoff);
+      for (File file : files) {
+        if (oldFiles.accept(file) && !LEGACY_CLEANING_MARKER.equals(file.getName())) {
+          FileUtils.deleteQuietly(file);
+        }
+      }
+    }
+    cleanLegacyFiles(runnerTempDir, cutoff);
+    Logs.debug("Temp cleaning done");
+  }
+
+  private void cleanLegacyFiles(File runnerTempDir, long cutoff) {
+    File marker = new File(runnerTempDir, LEGACY_CLEANING_MARKER);
+    if (marker.exists()) {
+      return;
+    }
     Collection<File> files = FileUtils.listFiles(tempDir, new AndFileFilter(
       new PrefixFileFilter("sonar-runner-batch"),
       new AgeFileFilter(cutoff)
@@ -57,6 +104,11 @@ class TempCleaning {
     for (File file : files) {
       FileUtils.deleteQuietly(file);
     }
-    Logs.debug("Temp cleaning done");
+    try {
+      // files younger than one day are not deleted, they will be removed by OS
+      FileUtils.touch(marker);
+    } catch (IOException e) {
+      Logs.debug("Fail to create {}: {}", marker.getAbsolutePath(), e.getMessage());
+    }
   }
 }
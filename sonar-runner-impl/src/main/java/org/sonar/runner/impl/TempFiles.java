@@ -0,0 +1,135 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Temp files of the runner are created in a directory of java.io.tmpdir that is owned by the runner, one per
+ * user, so that they can be cleaned without scanning the whole system temp directory. See {@link TempCleaning}
+ * <p/>
+ * The path of this directory is predictable, so it's used only if it's a real directory owned by the current user
+ * and, on POSIX file systems, not accessible to other users. Otherwise another user could create it, or a symbolic link,
+ * to read the files of the runner, which contain credentials, or to redirect the deletions of {@link TempCleaning}.
+ * In this case a new private temp directory is used.
+ */
+public class TempFiles {
+
+  static final String DIRNAME_PREFIX = "sonar-runner-";
+  private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+  /**
+   * Directories returned by {@link #secureDir(File)} per system temp directory, so that a new private directory
+   * is not created by each call
+   */
+  private static final Map<File, File> SECURE_DIRS = new HashMap<File, File>();
+
+  private TempFiles() {
+    // only static methods
+  }
+
+  public static File createTempFile(String prefix, String suffix) throws IOException {
+    return File.createTempFile(prefix, suffix, dir());
+  }
+
+  static File dir() throws IOException {
+    return secureDir(new File(System.getProperty("java.io.tmpdir")));
+  }
+
+  /**
+   * @return the predictable path of the directory of the current user, which must be verified before being used
+   */
+  static File dir(File systemTempDir) {
+    String user = System.getProperty("user.name", "");
+    return new File(systemTempDir, DIRNAME_PREFIX + user.replaceAll("[^A-Za-z0-9._-]", "_"));
+  }
+
+  /**
+   * @return the directory {@link #dir(File)}, created if needed, if it's private to the current user. Otherwise a new
+   * private directory.
+   */
+  static synchronized File secureDir(File systemTempDir) throws IOException {
+    File dir = SECURE_DIRS.get(systemTempDir);
+    if (dir == null || !dir.isDirectory()) {
+      dir = createSecureDir(systemTempDir.toPath());
+      SECURE_DIRS.put(systemTempDir, dir);
+    }
+    return dir;
+  }
+
+  private static File createSecureDir(Path systemTempDir) throws IOException {
+    Path dir = dir(systemTempDir.toFile()).toPath();
+    boolean posix = dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+    try {
+      if (posix) {
+        Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+      } else {
+        Files.createDirectory(dir);
+      }
+    } catch (FileAlreadyExistsException e) {
+      // verified below
+    }
+    if (isPrivate(systemTempDir, dir, posix)) {
+      return dir.toFile();
+    }
+    Path newDir = Files.createTempDirectory(systemTempDir, DIRNAME_PREFIX);
+    Logs.warn("Directory {} is not private to the current user, temp files are created in {}", dir, newDir);
+    return newDir.toFile();
+  }
+
+  private static boolean isPrivate(Path systemTempDir, Path dir, boolean posix) {
+    try {
+      // symbolic links are refused
+      if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS) || !currentUser(systemTempDir).equals(Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS))) {
+        return false;
+      }
+      if (posix && !OWNER_ONLY.equals(Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS))) {
+        // created by a previous version, with the default permissions
+        Files.setPosixFilePermissions(dir, OWNER_ONLY);
+      }
+      return true;
+    } catch (IOException | UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  /**
+   * The owner of a new file, as the name of the user is not always known by the file system
+   */
+  private static UserPrincipal currentUser(Path systemTempDir) throws IOException {
+    Path probe = Files.createTempFile(systemTempDir, DIRNAME_PREFIX, ".tmp");
+    try {
+      return Files.getOwner(probe);
+    } finally {
+      Files.deleteIfExists(probe);
+    }
+  }
+}
@@ -0,0 +1,94 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+import javax.annotation.CheckForNull;
+
+/**
+ * CPU time and allocated bytes of threads, and peak usage of the heap. Values that are not supported by
+ * the JVM are {@link #UNSUPPORTED}. Allocations are read from com.sun.management.ThreadMXBean, which is
+ * not available on all the JVMs, so it's accessed by reflection.
+ */
+public final class ThreadMetrics {
+
+  public static final long UNSUPPORTED = -1L;
+
+  private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+  private static final Method ALLOCATED_BYTES = allocatedBytesMethod();
+
+  private ThreadMetrics() {
+    // only static methods
+  }
+
+  public static long cpuTimeNanos(long threadId) {
+    try {
+      if (THREADS.isThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled()) {
+        return Math.max(UNSUPPORTED, THREADS.getThreadCpuTime(threadId));
+      }
+    } catch (UnsupportedOperationException e) {
+      // not supported by the JVM
+    }
+    return UNSUPPORTED;
+  }
+
+  public static long allocatedBytes(long threadId) {
+    if (ALLOCATED_BYTES == null) {
+      return UNSUPPORTED;
+    }
+    try {
+      return Math.max(UNSUPPORTED, (Long) ALLOCATED_BYTES.invoke(THREADS, threadId));
+    } catch (Exception e) {
+      return UNSUPPORTED;
+    }
+  }
+
+  /**
+   * Sum of the peak usages of the heap memory pools since the start of the JVM. Unlike the current usage,
+   * it does not require a garbage collection to be meaningful.
+   */
+  public static long heapPeakBytes() {
+    long peak = 0L;
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        peak += pool.getPeakUsage().getUsed();
+      }
+    }
+    return peak;
+  }
+
+  @CheckForNull
+  private static Method allocatedBytesMethod() {
+    try {
+      Class<?> sunThreads = Class.forName("com.sun.management.ThreadMXBean");
+      if (!sunThreads.isInstance(THREADS) || !(Boolean) sunThreads.getMethod("isThreadAllocatedMemorySupported").invoke(THREADS)) {
+        return null;
+      }
+      return sunThreads.getMethod("getThreadAllocatedBytes", long.class);
+    } catch (Exception e) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Properties;
+import org.apache.commons.io.FileUtils;
+
+/**
+ * In incremental mode the work directory is not deleted before analysis (see org.sonar.runner.api.Dirs), so that
+ * the data written by the batch are available to the next analysis. It's deleted only when its fingerprint changes.
+ * The fingerprint is computed from the project key, the batch libraries, which are identified by the hashes
+ * of the bootstrap index, and a list of analysis properties.
+ */
+class WorkDirFingerprint {
+
+  static final String FILENAME = ".sonar-runner-fingerprint";
+  static final String DEFAULT_PROPERTIES = "sonar.host.url,sonar.branch,sonar.profile,sonar.language,sonar.sourceEncoding,"
+    + "sonar.sources,sonar.tests,sonar.binaries,sonar.libraries,sonar.exclusions,sonar.inclusions";
+
+  private WorkDirFingerprint() {
+    // only static methods
+  }
+
+  static boolean isEnabled(Properties props) {
+    String task = props.getProperty("sonar.task");
+    return (task == null || "scan".equals(task))
+      && props.getProperty("sonar.working.directory") != null
+      && Boolean.parseBoolean(props.getProperty(InternalProperties.RUNNER_INCREMENTAL_WORK_DIR));
+  }
+
+  /**
+   * Deletes the content of the work directory if it was generated with another fingerprint.
+   */
+  static void check(Properties props, List<File> jarFiles) {
+    File workDir = new File(props.getProperty("sonar.working.directory"));
+    File file = new File(workDir, FILENAME);
+    String fingerprint = compute(props, jarFiles);
+    try {
+      if (file.isFile() && fingerprint.equals(FileUtils.readFileToString(file, StandardCharsets.UTF_8.name()))) {
+        Logs.debug("Reuse work directory: {}", workDir.getAbsolutePath());
+        return;
+      }
+      String[] children = workDir.list();
+      if (children != null && children.length > 0) {
+        Logs.info("Work directory is outdated, it's deleted");
+        FileUtils.cleanDirectory(workDir);
+      }
+      FileUtils.write(file, fingerprint, StandardCharsets.UTF_8.name());
+    } catch (IOException e) {
+      throw new IllegalStateException("Fail to reset work directory: " + workDir.getAbsolutePath(), e);
+    }
+  }
+
+  static String compute(Properties props, List<File> jarFiles) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("sonar.projectKey=").append(props.getProperty("sonar.projectKey", "")).append('\n');
+    for (File jarFile : jarFiles) {
+      // batch libraries are stored in the cache directory named by their hash
+      sb.append(jarFile.getParentFile().getName()).append('/').append(jarFile.getName()).append('\n');
+    }
+    String keys = props.getProperty(InternalProperties.RUNNER_INCREMENTAL_WORK_DIR_PROPERTIES, DEFAULT_PROPERTIES);
+    for (String key : keys.split(",")) {
+      key = key.trim();
+      if (!"".equals(key)) {
+        sb.append(key).append('=').append(props.getProperty(key, "")).append('\n');
+      }
+    }
+    try {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      return ServerConnection.toHex(digest.digest(sb.toString().getBytes(StandardCharsets.UTF_8)));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("MD5 is not supported", e);
+    }
+  }
+}
@@ -28,6 +28,7 @@ import java.util.List;
 import java.util.Properties;
 
 import static org.fest.assertions.Fail.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
@@ -52,7 +53,7 @@ public class BatchLauncherMainTest {
       public boolean matches(Object o) {
         return ((List<?>) o).isEmpty();
       }
-    }));
+    }), any(Progress.class));
   }
 
   @Test
@@ -20,8 +20,11 @@
 package org.sonar.runner.impl;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import org.junit.Test;
 import org.sonar.runner.batch.IsolatedLauncher;
@@ -54,7 +57,40 @@ public class BatchLauncherTest {
     assertThat(isolatedLauncher.props.get("foo")).isEqualTo("bar");
     assertThat(isolatedLauncher.extensions).isSameAs(extensions);
     verify(jarDownloader).download();
-    verify(tempCleaning).clean();
+    verify(tempCleaning).cleanAsync();
+  }
+
+  @Test
+  public void should_report_phases_and_module_events() {
+    BatchLauncher launcher = new BatchLauncher(FakeIsolatedLauncher.class.getName(), mock(TempCleaning.class));
+    Properties props = new Properties();
+    props.put(InternalProperties.RUNNER_MASK_RULES, "UNMASK|org.sonar.runner.impl.");
+    props.put(InternalProperties.RUNNER_PROGRESS_MEMORY_INTERVAL, "0");
+    final List<Map<String, Object>> events = new ArrayList<Map<String, Object>>();
+    Progress progress = new Progress().addListener(new Progress.Listener() {
+      @Override
+      public void onEvent(Map<String, Object> event) {
+        events.add(event);
+      }
+    });
+
+    launcher.doExecute(jarDownloader, props, Collections.emptyList(), progress);
+
+    List<Object> phases = new ArrayList<Object>();
+    Map<String, Object> module = null;
+    for (Map<String, Object> event : events) {
+      if (Progress.PHASE.equals(event.get(Progress.TYPE))) {
+        phases.add(event.get("name"));
+        assertThat(event.get(Progress.CPU_TIME)).isNotNull();
+        assertThat(event.get(Progress.ALLOCATED_BYTES)).isNotNull();
+      } else if (Progress.MODULE.equals(event.get(Progress.TYPE))) {
+        module = event;
+      }
+    }
+    assertThat(phases).containsExactly(Progress.PHASE_INDEX, Progress.PHASE_CLASSLOADER, Progress.PHASE_ANALYSIS, Progress.PHASE_CLEANING);
+    assertThat(module.get(Progress.TYPE)).isEqualTo(Progress.MODULE);
+    assertThat(module.get("key")).isEqualTo("foo");
+    assertThat(module.get(Progress.TIME)).isNotNull();
   }
 
   @Test
@@ -72,6 +108,40 @@ public class BatchLauncherTest {
     }
   }
 
+  @Test
+  public void should_reuse_classloader_when_cache_is_enabled() {
+    BatchLauncher launcher = new BatchLauncher(FakeIsolatedLauncher.class.getName(), mock(TempCleaning.class));
+    Properties props = new Properties();
+    props.put(InternalProperties.RUNNER_MASK_RULES, "UNMASK|org.sonar.runner.impl.");
+    props.put(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE, "1");
+    BatchLauncher.classloaderCache().clear();
+
+    launcher.doExecute(jarDownloader, props, Collections.emptyList());
+    launcher.doExecute(jarDownloader, props, Collections.emptyList());
+    assertThat(BatchLauncher.classloaderCache().size()).isEqualTo(1);
+
+    props.put(InternalProperties.RUNNER_MASK_RULES, "UNMASK|org.sonar.runner.");
+    launcher.doExecute(jarDownloader, props, Collections.emptyList());
+    assertThat(BatchLauncher.classloaderCache().size()).isEqualTo(1);
+    BatchLauncher.classloaderCache().clear();
+  }
+
+  @Test
+  public void should_read_classloader_cache_size() {
+    Properties props = new Properties();
+    assertThat(BatchLauncher.getClassloaderCacheSize(props)).isEqualTo(0);
+
+    props.put(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE, "5");
+    assertThat(BatchLauncher.getClassloaderCacheSize(props)).isEqualTo(5);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void should_fail_on_invalid_classloader_cache_size() {
+    Properties props = new Properties();
+    props.put(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE, "-1");
+    BatchLauncher.getClassloaderCacheSize(props);
+  }
+
   @Test
   public void verify_isolated_classloader_name() {
     // the class IsolatedLauncher should not be loaded in the classloader of BatchLauncher,
@@ -85,7 +155,7 @@ public class BatchLauncherTest {
     Properties props = new Properties();
     List<Object> extensions = Collections.emptyList();
     BatchLauncher launcher = spy(new BatchLauncher());
-    doReturn(new Object()).when(launcher).doExecute(any(JarDownloader.class), eq(props), eq(extensions));
+    doReturn(new Object()).when(launcher).doExecute(any(JarDownloader.class), eq(props), eq(extensions), any(Progress.class));
 
     launcher.execute(props, extensions);
 
@@ -100,5 +170,13 @@ public class BatchLauncherTest {
       this.props = props;
       this.extensions = extensions;
     }
+
+    public void execute(Properties props, List<Object> extensions, Collection<Map<String, Object>> events) {
+      execute(props, extensions);
+      Map<String, Object> event = new HashMap<String, Object>();
+      event.put("type", "module");
+      event.put("key", "foo");
+      events.add(event);
+    }
   }
 }
@@ -0,0 +1,107 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import org.junit.Test;
+import org.mockito.ArgumentMatcher;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.net.URL;
+import java.util.List;
+import java.util.Properties;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.argThat;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class BatchLauncherWorkerTest {
+
+  BatchLauncher launcher = mock(BatchLauncher.class);
+  ByteArrayOutputStream output = new ByteArrayOutputStream();
+  ByteArrayOutputStream errors = new ByteArrayOutputStream();
+
+  @Test
+  public void should_execute_analyses_until_end_of_input() throws Exception {
+    String path = propertiesPath();
+    BatchLauncherWorker worker = new BatchLauncherWorker(launcher, 10, 100);
+
+    int jobs = worker.run(new BufferedReader(new StringReader(path + "\n\n" + path + "\n")), new PrintStream(output), new PrintStream(errors));
+
+    assertThat(jobs).isEqualTo(2);
+    verify(launcher, times(2)).execute(any(Properties.class), any(List.class), any(Progress.class));
+    assertThat(output.toString()).isEqualTo(String.format("##sonar-runner-worker## done 0%n##sonar-runner-worker## done 0%n"));
+    assertThat(errors.toString()).isEqualTo(String.format("##sonar-runner-worker## end%n##sonar-runner-worker## end%n"));
+  }
+
+  @Test
+  public void should_exit_after_max_jobs() throws Exception {
+    String path = propertiesPath();
+    BatchLauncherWorker worker = new BatchLauncherWorker(launcher, 1, 100);
+
+    int jobs = worker.run(new BufferedReader(new StringReader(path + "\n" + path + "\n")), new PrintStream(output), new PrintStream(errors));
+
+    assertThat(jobs).isEqualTo(1);
+    assertThat(output.toString()).isEqualTo(String.format("##sonar-runner-worker## exit 0%n"));
+  }
+
+  @Test
+  public void should_notify_failure_and_continue() throws Exception {
+    doThrow(new IllegalStateException("Fail")).when(launcher).execute(any(Properties.class), any(List.class), any(Progress.class));
+    BatchLauncherWorker worker = new BatchLauncherWorker(launcher, 10, 100);
+
+    int jobs = worker.run(new BufferedReader(new StringReader("unknown/file.properties\n" + propertiesPath() + "\n")), new PrintStream(output), new PrintStream(errors));
+
+    assertThat(jobs).isEqualTo(2);
+    assertThat(output.toString()).isEqualTo(String.format("##sonar-runner-worker## done 1%n##sonar-runner-worker## done 1%n"));
+  }
+
+  @Test
+  public void should_reuse_classloader_by_default() throws Exception {
+    Properties props = BatchLauncherMain.loadProperties(propertiesPath());
+    assertThat(props.getProperty(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE)).isNull();
+
+    new BatchLauncherWorker(launcher, 10, 100).run(new BufferedReader(new StringReader(propertiesPath())), new PrintStream(output), new PrintStream(errors));
+
+    verify(launcher).execute(argThat(new ArgumentMatcher<Properties>() {
+      @Override
+      public boolean matches(Object o) {
+        return "1".equals(((Properties) o).getProperty(InternalProperties.RUNNER_CLASSLOADER_CACHE_SIZE));
+      }
+    }), any(List.class), any(Progress.class));
+  }
+
+  @Test
+  public void should_compute_heap_usage() {
+    assertThat(BatchLauncherWorker.heapUsagePercent()).isGreaterThanOrEqualTo(0).isLessThanOrEqualTo(100);
+  }
+
+  private String propertiesPath() throws Exception {
+    URL url = getClass().getResource("/org/sonar/runner/impl/BatchLauncherMainTest/props.properties");
+    return new File(url.toURI()).getAbsolutePath();
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class CircuitBreakerTest {
+
+  @Test
+  public void should_open_after_consecutive_failures() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("localhost:9000", 3, 60000L);
+    breaker.onFailure();
+    breaker.onFailure();
+    breaker.onSuccess();
+    breaker.onFailure();
+    breaker.onFailure();
+    assertThat(breaker.isOpen()).isFalse();
+    breaker.beforeRequest();
+
+    breaker.onFailure();
+    assertThat(breaker.isOpen()).isTrue();
+    try {
+      breaker.beforeRequest();
+      fail();
+    } catch (CircuitBreaker.OpenException e) {
+      assertThat(e).hasMessage("Server localhost:9000 is unavailable after consecutive failures, requests are suspended");
+    }
+  }
+
+  @Test
+  public void should_allow_a_single_trial_after_open_time() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("localhost:9000", 1, 10L);
+    breaker.onFailure();
+    Thread.sleep(20L);
+
+    breaker.beforeRequest();
+    try {
+      breaker.beforeRequest();
+      fail();
+    } catch (CircuitBreaker.OpenException e) {
+      // trial in progress
+    }
+
+    // failure of trial opens again
+    breaker.onFailure();
+    assertThat(breaker.isOpen()).isTrue();
+    Thread.sleep(20L);
+
+    breaker.beforeRequest();
+    breaker.onSuccess();
+    breaker.beforeRequest();
+    breaker.beforeRequest();
+  }
+
+  @Test
+  public void should_wait_for_success_of_trial() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("localhost:9000", 1, 10L);
+    breaker.onFailure();
+    Thread.sleep(20L);
+    breaker.beforeRequest();
+
+    Waiter waiter = new Waiter(breaker, 10000L);
+    waiter.start();
+    Thread.sleep(50L);
+    assertThat(waiter.isAlive()).isTrue();
+
+    breaker.onSuccess();
+    waiter.join(10000L);
+    assertThat(waiter.isAlive()).isFalse();
+    assertThat(waiter.error.get()).isNull();
+  }
+
+  @Test
+  public void should_fail_when_trial_fails_while_waiting() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("localhost:9000", 1, 500L);
+    breaker.onFailure();
+    Thread.sleep(600L);
+    breaker.beforeRequest();
+
+    Waiter waiter = new Waiter(breaker, 10000L);
+    waiter.start();
+    Thread.sleep(50L);
+    breaker.onFailure();
+    waiter.join(10000L);
+
+    assertThat(waiter.error.get()).isInstanceOf(CircuitBreaker.OpenException.class);
+  }
+
+  @Test
+  public void should_stop_waiting_for_trial_after_timeout() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("localhost:9000", 1, 10L);
+    breaker.onFailure();
+    Thread.sleep(20L);
+    breaker.beforeRequest();
+
+    Waiter waiter = new Waiter(breaker, 50L);
+    waiter.start();
+    waiter.join(10000L);
+
+    assertThat(waiter.error.get()).isInstanceOf(CircuitBreaker.OpenException.class);
+  }
+
+  @Test
+  public void should_elect_another_trial_when_trial_fails_for_other_reason() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("localhost:9000", 1, 10L);
+    breaker.onFailure();
+    Thread.sleep(20L);
+    breaker.beforeRequest();
+
+    Waiter waiter = new Waiter(breaker, 10000L);
+    waiter.start();
+    Thread.sleep(50L);
+    breaker.onIgnoredFailure();
+    waiter.join(10000L);
+
+    assertThat(waiter.error.get()).isNull();
+    // the waiter is the trial
+    try {
+      breaker.beforeRequest();
+      fail();
+    } catch (CircuitBreaker.OpenException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void should_be_disabled_when_threshold_is_zero() throws Exception {
+    CircuitBreaker breaker = new CircuitBreaker("localhost:9000", 0, 60000L);
+    for (int i = 0; i < 10; i++) {
+      breaker.onFailure();
+    }
+    assertThat(breaker.isOpen()).isFalse();
+    breaker.beforeRequest();
+  }
+
+  @Test
+  public void should_share_breaker_of_host() {
+    assertThat(CircuitBreaker.forHost("http://foo:9000", 5, 1000L)).isSameAs(CircuitBreaker.forHost("http://foo:9000", 5, 1000L));
+    assertThat(CircuitBreaker.forHost("http://foo:9000", 5, 1000L)).isNotSameAs(CircuitBreaker.forHost("http://bar:9000", 5, 1000L));
+  }
+
+  private static class Waiter extends Thread {
+    private final CircuitBreaker breaker;
+    private final long maxWait;
+    final AtomicReference<Exception> error = new AtomicReference<Exception>();
+
+    Waiter(CircuitBreaker breaker, long maxWait) {
+      this.breaker = breaker;
+      this.maxWait = maxWait;
+    }
+
+    @Override
+    public void run() {
+      try {
+        breaker.beforeRequest(maxWait);
+      } catch (Exception e) {
+        error.set(e);
+      }
+    }
+  }
+}
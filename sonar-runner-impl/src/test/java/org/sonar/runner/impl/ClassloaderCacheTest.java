@@ -0,0 +1,149 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ClassloaderCacheTest {
+
+  ClassloaderCache cache = new ClassloaderCache();
+
+  @After
+  public void tearDown() {
+    cache.clear();
+  }
+
+  @Test
+  public void should_reuse_classloader_with_same_key() {
+    IsolatedClassloader first = cache.acquire("key", newFactory());
+    cache.release(first);
+    IsolatedClassloader second = cache.acquire("key", newFactory());
+    cache.release(second);
+
+    assertThat(second).isSameAs(first);
+    assertThat(cache.size()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_lease_distinct_classloaders_to_concurrent_executions() {
+    IsolatedClassloader first = cache.acquire("key", newFactory());
+    IsolatedClassloader second = cache.acquire("key", newFactory());
+    assertThat(second).isNotSameAs(first);
+    cache.release(first);
+    cache.release(second);
+
+    // both are kept for the next executions
+    IsolatedClassloader third = cache.acquire("key", newFactory());
+    IsolatedClassloader fourth = cache.acquire("key", newFactory());
+    assertThat(third == first || third == second).isTrue();
+    assertThat(fourth == first || fourth == second).isTrue();
+    assertThat(fourth).isNotSameAs(third);
+    assertThat(cache.size()).isEqualTo(1);
+    cache.release(third);
+    cache.release(fourth);
+  }
+
+  @Test
+  public void should_evict_least_recently_used_classloader() throws Exception {
+    cache.setMaxEntries(2);
+    IsolatedClassloader key1 = mock(IsolatedClassloader.class);
+    IsolatedClassloader key2 = mock(IsolatedClassloader.class);
+    IsolatedClassloader key3 = mock(IsolatedClassloader.class);
+
+    cache.release(cache.acquire("key1", factory(key1)));
+    cache.release(cache.acquire("key2", factory(key2)));
+    // key1 becomes the most recently used
+    cache.release(cache.acquire("key1", newFactory()));
+    cache.release(cache.acquire("key3", factory(key3)));
+
+    assertThat(cache.size()).isEqualTo(2);
+    verify(key2).close();
+    verify(key1, never()).close();
+    verify(key3, never()).close();
+    assertThat(cache.acquire("key1", newFactory())).isSameAs(key1);
+    cache.release(key1);
+  }
+
+  @Test
+  public void should_close_evicted_classloader_when_released() throws Exception {
+    IsolatedClassloader inUse = mock(IsolatedClassloader.class);
+    cache.acquire("key1", factory(inUse));
+    cache.release(cache.acquire("key2", newFactory()));
+
+    verify(inUse, never()).close();
+    cache.release(inUse);
+    verify(inUse).close();
+  }
+
+  @Test
+  public void should_shrink_cache() throws Exception {
+    cache.setMaxEntries(3);
+    IsolatedClassloader key1 = mock(IsolatedClassloader.class);
+    cache.release(cache.acquire("key1", factory(key1)));
+    cache.release(cache.acquire("key2", newFactory()));
+
+    cache.setMaxEntries(1);
+
+    assertThat(cache.size()).isEqualTo(1);
+    verify(key1).close();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void should_fail_if_max_entries_is_not_positive() {
+    cache.setMaxEntries(0);
+  }
+
+  @Test
+  public void key_should_depend_on_server_libraries_and_mask_rules() {
+    List<File> libs = Arrays.asList(new File("cache/ABC/squid.jar"));
+    String[][] rules = new String[][] {new String[] {"UNMASK", "org.apache.ant."}};
+    String key = ClassloaderCache.key("http://localhost:9000", libs, rules);
+
+    assertThat(ClassloaderCache.key("http://localhost:9000", libs, rules)).isEqualTo(key);
+    assertThat(ClassloaderCache.key("http://other:9000", libs, rules)).isNotEqualTo(key);
+    assertThat(ClassloaderCache.key("http://localhost:9000", Arrays.asList(new File("cache/DEF/squid.jar")), rules)).isNotEqualTo(key);
+    assertThat(ClassloaderCache.key("http://localhost:9000", libs, new String[0][])).isNotEqualTo(key);
+    assertThat(ClassloaderCache.key("http://localhost:9000", Collections.<File>emptyList(), rules)).isNotEqualTo(key);
+  }
+
+  private ClassloaderCache.ClassloaderFactory newFactory() {
+    return factory(new IsolatedClassloader(getClass().getClassLoader(), new String[0][]));
+  }
+
+  private static ClassloaderCache.ClassloaderFactory factory(final IsolatedClassloader classloader) {
+    return new ClassloaderCache.ClassloaderFactory() {
+      @Override
+      public IsolatedClassloader create() {
+        return classloader;
+      }
+    };
+  }
+}
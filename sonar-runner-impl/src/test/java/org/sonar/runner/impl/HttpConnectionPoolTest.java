@@ -0,0 +1,94 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import com.github.kevinsawicki.http.HttpRequest;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class HttpConnectionPoolTest {
+
+  @Rule
+  public MockHttpServerInterceptor httpServer = new MockHttpServerInterceptor();
+
+  @Test
+  public void should_reuse_pool_between_connections() {
+    assertThat(HttpConnectionPool.shared()).isSameAs(HttpConnectionPool.shared());
+  }
+
+  @Test
+  public void should_count_requests() throws Exception {
+    httpServer.setMockResponseData("abcde");
+    HttpConnectionPool pool = new HttpConnectionPool(2);
+    URL url = new URL(httpServer.url() + "/batch/index.txt");
+
+    for (int i = 0; i < 3; i++) {
+      HttpRequest request = pool.get(url);
+      assertThat(request.body()).isEqualTo("abcde");
+      pool.release(request);
+    }
+
+    assertThat(pool.requests()).isEqualTo(3);
+    assertThat(pool.tlsConnections()).isEqualTo(0);
+    assertThat(httpServer.requestCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void should_bound_concurrent_requests_to_same_host() throws Exception {
+    final HttpConnectionPool pool = new HttpConnectionPool(1);
+    final URL url = new URL(httpServer.url() + "/batch/index.txt");
+    HttpRequest first = pool.get(url);
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      Future<HttpRequest> second = executor.submit(new Callable<HttpRequest>() {
+        @Override
+        public HttpRequest call() throws Exception {
+          return pool.get(url);
+        }
+      });
+      try {
+        second.get(200, TimeUnit.MILLISECONDS);
+        fail();
+      } catch (TimeoutException e) {
+        // waiting for the first request to be released
+      }
+
+      // other hosts are not blocked
+      pool.release(pool.get(new URL("http://other.host:9000/batch/index.txt")));
+
+      pool.release(first);
+      pool.release(second.get(5, TimeUnit.SECONDS));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Properties;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class IndexCacheTest {
+
+  private static final String URL = "http://localhost:9000/batch_bootstrap/index";
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void should_store_entries_with_validators() throws Exception {
+    IndexCache cache = new IndexCache(temp.newFolder(), 0L);
+    assertThat(cache.get(URL)).isNull();
+
+    cache.put(URL, new IndexCache.Entry("sonar-batch.jar|abc\n", "\"v1\"", "Wed, 21 Oct 2015 07:28:00 GMT", 1000L));
+
+    IndexCache.Entry entry = cache.get(URL);
+    assertThat(entry.body()).isEqualTo("sonar-batch.jar|abc\n");
+    assertThat(entry.etag()).isEqualTo("\"v1\"");
+    assertThat(entry.lastModified()).isEqualTo("Wed, 21 Oct 2015 07:28:00 GMT");
+    assertThat(cache.isFresh(entry, 1000L)).isFalse();
+  }
+
+  @Test
+  public void should_not_store_entries_without_validators_if_no_ttl() throws Exception {
+    File dir = temp.newFolder();
+    IndexCache cache = new IndexCache(dir, 0L);
+
+    cache.put(URL, new IndexCache.Entry("abc", null, "", 1000L));
+
+    assertThat(cache.get(URL)).isNull();
+    assertThat(dir.list()).isEmpty();
+  }
+
+  @Test
+  public void should_be_fresh_during_ttl() throws Exception {
+    IndexCache cache = new IndexCache(temp.newFolder(), 60000L);
+    cache.put(URL, new IndexCache.Entry("abc", null, null, 1000L));
+
+    IndexCache.Entry entry = cache.get(URL);
+    assertThat(cache.isFresh(entry, 1000L)).isTrue();
+    assertThat(cache.isFresh(entry, 60999L)).isTrue();
+    assertThat(cache.isFresh(entry, 61000L)).isFalse();
+    // clock moved backward
+    assertThat(cache.isFresh(entry, 999L)).isFalse();
+    assertThat(cache.isFresh(entry.revalidated(61000L), 61000L)).isTrue();
+  }
+
+  @Test
+  public void should_ignore_corrupted_files() throws Exception {
+    File dir = temp.newFolder();
+    IndexCache cache = new IndexCache(dir, 60000L);
+    cache.put(URL, new IndexCache.Entry("abc", null, null, 1000L));
+    File[] files = dir.listFiles();
+    assertThat(files).hasSize(1);
+
+    FileUtils.write(files[0], "fetchedAt=notANumber\nbody=abc\n");
+    assertThat(cache.get(URL)).isNull();
+  }
+
+  @Test
+  public void should_locate_user_home() {
+    Properties props = new Properties();
+    props.setProperty("sonar.userHome", "/path/to/home");
+
+    assertThat(IndexCache.userHome(props)).isEqualTo(new File("/path/to/home"));
+  }
+
+  @Test
+  public void should_parse_ttl() {
+    Properties props = new Properties();
+    assertThat(IndexCache.getTtlSeconds(props)).isEqualTo(0L);
+
+    props.setProperty(InternalProperties.RUNNER_INDEX_TTL, "300");
+    assertThat(IndexCache.getTtlSeconds(props)).isEqualTo(300L);
+
+    props.setProperty(InternalProperties.RUNNER_INDEX_TTL, "-1");
+    try {
+      IndexCache.getTtlSeconds(props);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Invalid value of sonarRunner.bootstrapIndexTtl: -1");
+    }
+  }
+}
@@ -20,6 +20,12 @@
 package org.sonar.runner.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Rule;
 import org.junit.Test;
@@ -66,4 +72,42 @@ public class IsolatedClassloaderTest {
     assertThat(classLoader.loadClass("org.junit.Test", false)).isNotNull();
     classLoader.close();
   }
+
+  @Test
+  public void should_load_classes_from_concurrent_threads() throws Exception {
+    ClassLoader parent = getClass().getClassLoader();
+    final IsolatedClassloader classLoader = new IsolatedClassloader(parent, new String[][] {new String[] {"UNMASK", "org.junit."}});
+    final String[] names = {"java.lang.String", "java.util.ArrayList", "org.junit.Test", "org.junit.Rule", "org.junit.Assert"};
+
+    List<Callable<List<Class<?>>>> tasks = new ArrayList<Callable<List<Class<?>>>>();
+    for (int i = 0; i < 8; i++) {
+      tasks.add(new Callable<List<Class<?>>>() {
+        @Override
+        public List<Class<?>> call() throws Exception {
+          List<Class<?>> classes = new ArrayList<Class<?>>();
+          for (String name : names) {
+            classes.add(classLoader.loadClass(name));
+          }
+          return classes;
+        }
+      });
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      for (Future<List<Class<?>>> future : executor.invokeAll(tasks)) {
+        assertThat(future.get()).containsExactly(String.class, ArrayList.class, Test.class, Rule.class, org.junit.Assert.class);
+      }
+    } finally {
+      executor.shutdown();
+      classLoader.close();
+    }
+  }
+
+  @Test
+  public void should_load_java_classes_from_core_jvm_even_if_masked() throws Exception {
+    IsolatedClassloader classLoader = new IsolatedClassloader(getClass().getClassLoader(), new String[][] {new String[] {"MASK", "java."}});
+
+    assertThat(classLoader.loadClass("java.lang.String", false)).isSameAs(String.class);
+    classLoader.close();
+  }
 }
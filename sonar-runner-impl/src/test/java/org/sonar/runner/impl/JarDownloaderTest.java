@@ -34,7 +34,7 @@ public class JarDownloaderTest {
 
   ServerConnection serverConnection = mock(ServerConnection.class);
   Properties props = new Properties();
-  JarDownloader downloader = spy(new JarDownloader(serverConnection));
+  JarDownloader downloader = spy(new JarDownloader(serverConnection, props));
 
   @Test
   public void should_download_jar_files() {
@@ -42,4 +42,18 @@ public class JarDownloaderTest {
     List<File> jarFiles = downloader.download();
     assertThat(jarFiles).isNotNull();
   }
+
+  @Test
+  public void should_read_number_of_download_threads() {
+    assertThat(JarDownloader.getDownloadThreads(props)).isEqualTo(Jars.DEFAULT_DOWNLOAD_THREADS);
+
+    props.setProperty("sonarRunner.downloadThreads", "8");
+    assertThat(JarDownloader.getDownloadThreads(props)).isEqualTo(8);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void should_fail_on_invalid_number_of_download_threads() {
+    props.setProperty("sonarRunner.downloadThreads", "many");
+    JarDownloader.getDownloadThreads(props);
+  }
 }
@@ -20,14 +20,24 @@
 package org.sonar.runner.impl;
 
 import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonar.home.cache.FileCache;
 
 import java.io.File;
+import java.security.MessageDigest;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.fest.assertions.Fail.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class JarExtractorTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
   @Test
   public void test_extract() throws Exception {
     File jarFile = new JarExtractor().extractToTemp("fake");
@@ -45,4 +55,40 @@ public class JarExtractorTest {
       assertThat(e).hasMessage("Fail to extract unknown.jar");
     }
   }
+
+  @Test
+  public void should_extract_to_cache_once() throws Exception {
+    File cacheDir = temp.newFolder();
+    FileCache fileCache = mock(FileCache.class);
+    when(fileCache.getDir()).thenReturn(cacheDir);
+    String hash = JarExtractor.hash(getClass().getResource("/fake.jar"));
+
+    File jarFile = new JarExtractor().extractToCache("fake", fileCache);
+
+    assertThat(jarFile).isEqualTo(new File(cacheDir, hash + "/fake.jar"));
+    assertThat(FileUtils.readFileToString(jarFile, "UTF-8")).isEqualTo("Fake jar for unit tests");
+    assertThat(new File(cacheDir, "_tmp").list()).isEmpty();
+
+    // already in cache
+    File cached = temp.newFile();
+    when(fileCache.get("fake.jar", hash)).thenReturn(cached);
+    assertThat(new JarExtractor().extractToCache("fake", fileCache)).isSameAs(cached);
+  }
+
+  @Test
+  public void should_hash_content() throws Exception {
+    // MD5 of "Fake jar for unit tests"
+    assertThat(JarExtractor.hash(getClass().getResource("/fake.jar"))).isEqualTo(ServerConnection.toHex(
+      MessageDigest.getInstance("MD5").digest("Fake jar for unit tests".getBytes("UTF-8"))));
+  }
+
+  @Test
+  public void should_fail_to_extract_to_cache() throws Exception {
+    try {
+      new JarExtractor().extractToCache("unknown", mock(FileCache.class));
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Fail to extract unknown.jar");
+    }
+  }
 }
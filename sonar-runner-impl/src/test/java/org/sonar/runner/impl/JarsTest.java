@@ -19,18 +19,28 @@
  */
 package org.sonar.runner.impl;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 import org.sonar.home.cache.FileCache;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.fest.assertions.Assertions.assertThat;
 import static org.fest.assertions.Fail.fail;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -49,28 +59,60 @@ public class JarsTest {
   @Test
   public void should_download_jar_files() throws Exception {
     File batchJar = temp.newFile("sonar-runner-batch.jar");
-    when(jarExtractor.extractToTemp("sonar-runner-batch")).thenReturn(batchJar);
+    when(jarExtractor.extractToCache("sonar-runner-batch", fileCache)).thenReturn(batchJar);
     // index of the files to download
     when(connection.downloadStringCache("/batch_bootstrap/index")).thenReturn(
         "cpd.jar|CA124VADFSDS\n" +
             "squid.jar|34535FSFSDF\n"
     );
 
+    when(fileCache.get(anyString(), anyString())).thenReturn(temp.newFile());
+
     Jars jars35 = new Jars(fileCache, connection, jarExtractor);
     List<File> files = jars35.download();
 
-    assertThat(files).isNotNull();
+    assertThat(files).hasSize(3);
     verify(connection, times(1)).downloadStringCache("/batch_bootstrap/index");
     verifyNoMoreInteractions(connection);
-    verify(fileCache, times(1)).get(eq("cpd.jar"), eq("CA124VADFSDS"), any(FileCache.Downloader.class));
-    verify(fileCache, times(1)).get(eq("squid.jar"), eq("34535FSFSDF"), any(FileCache.Downloader.class));
+    verify(fileCache, times(1)).get("cpd.jar", "CA124VADFSDS");
+    verify(fileCache, times(1)).get("squid.jar", "34535FSFSDF");
     verifyNoMoreInteractions(fileCache);
   }
 
+  @Test
+  public void should_report_cached_files() throws Exception {
+    File batchJar = temp.newFile("sonar-runner-batch.jar");
+    when(jarExtractor.extractToCache("sonar-runner-batch", fileCache)).thenReturn(batchJar);
+    when(connection.downloadStringCache("/batch_bootstrap/index")).thenReturn("cpd.jar|CA124VADFSDS\n");
+    when(fileCache.get(anyString(), anyString())).thenReturn(temp.newFile());
+    final List<Map<String, Object>> events = new ArrayList<Map<String, Object>>();
+    Progress progress = new Progress().addListener(new Progress.Listener() {
+      @Override
+      public void onEvent(Map<String, Object> event) {
+        if (!Progress.MEMORY.equals(event.get(Progress.TYPE))) {
+          events.add(event);
+        }
+      }
+    });
+
+    long hits = Metrics.counter(Metrics.CACHE_HITS).get();
+
+    new Jars(fileCache, connection, jarExtractor, 1, progress).download();
+
+    assertThat(Metrics.counter(Metrics.CACHE_HITS).get()).isEqualTo(hits + 1);
+    assertThat(events).hasSize(3);
+    assertThat(events.get(0).get("name")).isEqualTo(Progress.PHASE_DOWNLOAD);
+    assertThat(events.get(1).get(Progress.TYPE)).isEqualTo(Progress.FILE);
+    assertThat(events.get(1).get("name")).isEqualTo("cpd.jar");
+    assertThat(events.get(1).get("cached")).isEqualTo(true);
+    assertThat(events.get(1).get("bytes")).isEqualTo(0L);
+    assertThat(events.get(2).get(Progress.TYPE)).isEqualTo(Progress.DOWNLOAD);
+  }
+
   @Test
   public void should_fail_to_download_files() throws Exception {
     File batchJar = temp.newFile("sonar-runner-batch.jar");
-    when(jarExtractor.extractToTemp("sonar-runner-batch")).thenReturn(batchJar);
+    when(jarExtractor.extractToCache("sonar-runner-batch", fileCache)).thenReturn(batchJar);
     // index of the files to download
     when(connection.downloadStringCache("/batch_bootstrap/index")).thenThrow(new IllegalStateException());
 
@@ -83,6 +125,185 @@ public class JarsTest {
     }
   }
 
+  @Test
+  public void should_keep_index_order_when_downloading_in_parallel() throws Exception {
+    File batchJar = temp.newFile("sonar-runner-batch.jar");
+    when(jarExtractor.extractToCache("sonar-runner-batch", fileCache)).thenReturn(batchJar);
+    StringBuilder index = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      index.append("lib").append(i).append(".jar|HASH").append(i).append("\n");
+    }
+    when(connection.downloadStringCache("/batch_bootstrap/index")).thenReturn(index.toString());
+    when(fileCache.get(anyString(), anyString())).thenAnswer(new Answer<File>() {
+      @Override
+      public File answer(InvocationOnMock invocation) throws Throwable {
+        // the first files of the index are the slowest ones
+        String hash = (String) invocation.getArguments()[1];
+        Thread.sleep(20 - Integer.parseInt(hash.substring(4)));
+        return new File((String) invocation.getArguments()[0]);
+      }
+    });
+
+    List<File> files = new Jars(fileCache, connection, jarExtractor, 5).download();
+
+    assertThat(files).hasSize(21);
+    assertThat(files.get(0)).isSameAs(batchJar);
+    for (int i = 0; i < 20; i++) {
+      assertThat(files.get(i + 1).getName()).isEqualTo("lib" + i + ".jar");
+    }
+  }
+
+  @Test
+  public void should_fail_fast_when_a_download_fails() throws Exception {
+    File batchJar = temp.newFile("sonar-runner-batch.jar");
+    when(jarExtractor.extractToCache("sonar-runner-batch", fileCache)).thenReturn(batchJar);
+    when(connection.downloadStringCache("/batch_bootstrap/index")).thenReturn("cpd.jar|CA124VADFSDS\nsquid.jar|34535FSFSDF\n");
+    when(fileCache.get(anyString(), anyString())).thenReturn(temp.newFile());
+    when(fileCache.get(eq("squid.jar"), anyString())).thenThrow(new IllegalStateException("Fail to download squid.jar"));
+
+    try {
+      new Jars(fileCache, connection, jarExtractor, 2).download();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("Fail to download libraries from server");
+      assertThat(e.getCause()).hasMessage("Fail to download squid.jar");
+    }
+  }
+
+  @Test
+  public void should_cancel_slow_download_when_a_fast_download_fails() throws Exception {
+    File batchJar = temp.newFile("sonar-runner-batch.jar");
+    when(jarExtractor.extractToCache("sonar-runner-batch", fileCache)).thenReturn(batchJar);
+    when(connection.downloadStringCache("/batch_bootstrap/index")).thenReturn("big.jar|CA124VADFSDS\nsquid.jar|34535FSFSDF\n");
+    final CountDownLatch cancelled = new CountDownLatch(1);
+    when(fileCache.get(eq("big.jar"), anyString())).thenAnswer(new Answer<File>() {
+      @Override
+      public File answer(InvocationOnMock invocation) throws Throwable {
+        try {
+          Thread.sleep(60000L);
+        } catch (InterruptedException e) {
+          cancelled.countDown();
+        }
+        return null;
+      }
+    });
+    when(fileCache.get(eq("squid.jar"), anyString())).thenThrow(new IllegalStateException("Fail to download squid.jar"));
+
+    long start = System.currentTimeMillis();
+    try {
+      new Jars(fileCache, connection, jarExtractor, 2).download();
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e.getCause()).hasMessage("Fail to download squid.jar");
+    }
+
+    assertThat(System.currentTimeMillis() - start).isLessThan(30000L);
+    assertThat(cancelled.await(10, TimeUnit.SECONDS)).isTrue();
+  }
+
+  @Test
+  public void should_download_missing_files_into_cache() throws Exception {
+    File batchJar = temp.newFile("sonar-runner-batch.jar");
+    final File cacheDir = temp.newFolder();
+    when(jarExtractor.extractToCache("sonar-runner-batch", fileCache)).thenReturn(batchJar);
+    when(connection.downloadStringCache("/batch_bootstrap/index")).thenReturn("cpd.jar|CA124VADFSDS\n");
+    when(fileCache.getDir()).thenReturn(cacheDir);
+    when(connection.download(eq("/batch/cpd.jar"), any(File.class))).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) throws Throwable {
+        FileUtils.write((File) invocation.getArguments()[1], "content of cpd.jar");
+        return "ca124vadfsds";
+      }
+    });
+
+    List<File> files = new Jars(fileCache, connection, jarExtractor).download();
+
+    File cached = new File(cacheDir, "CA124VADFSDS/cpd.jar");
+    assertThat(files).containsExactly(batchJar, cached);
+    assertThat(FileUtils.readFileToString(cached)).isEqualTo("content of cpd.jar");
+    assertThat(new File(cacheDir, "_tmp/CA124VADFSDS_cpd.jar.part")).doesNotExist();
+  }
+
+  @Test
+  public void should_reject_file_with_invalid_hash() throws Exception {
+    File cacheDir = temp.newFolder();
+    when(connection.download(eq("/batch/cpd.jar"), any(File.class))).thenReturn("0123456789");
+
+    try {
+      new Jars.BatchFileDownloader(connection).downloadToCache(cacheDir, "cpd.jar", "CA124VADFSDS");
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(e).hasMessage("INVALID HASH: File cpd.jar was expected to have hash CA124VADFSDS but was downloaded with hash 0123456789");
+    }
+    assertThat(new File(cacheDir, "CA124VADFSDS")).doesNotExist();
+    assertThat(new File(cacheDir, "_tmp/CA124VADFSDS_cpd.jar.part")).doesNotExist();
+  }
+
+  @Test
+  public void should_keep_partial_file_to_resume_download() throws Exception {
+    File cacheDir = temp.newFolder();
+    File part = new File(cacheDir, "_tmp/CA124VADFSDS_cpd.jar.part");
+    when(connection.download(eq("/batch/cpd.jar"), any(File.class))).thenAnswer(new Answer<String>() {
+      @Override
+      public String answer(InvocationOnMock invocation) throws Throwable {
+        FileUtils.write((File) invocation.getArguments()[1], "content", true);
+        throw new IllegalStateException("Fail to download: cpd.jar");
+      }
+    });
+    Jars.BatchFileDownloader downloader = new Jars.BatchFileDownloader(connection);
+
+    try {
+      downloader.downloadToCache(cacheDir, "cpd.jar", "CA124VADFSDS");
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(FileUtils.readFileToString(part)).isEqualTo("content");
+    }
+
+    // next attempt continues to write the same file
+    try {
+      downloader.downloadToCache(cacheDir, "cpd.jar", "CA124VADFSDS");
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(FileUtils.readFileToString(part)).isEqualTo("contentcontent");
+    }
+  }
+
+  @Test
+  public void should_not_start_download_when_aborted() throws Exception {
+    File partial = temp.newFile("squid.jar");
+    Jars.BatchFileDownloader downloader = new Jars.BatchFileDownloader(connection);
+    downloader.abort();
+
+    try {
+      downloader.download("squid.jar", partial);
+      fail();
+    } catch (IOException e) {
+      assertThat(e).hasMessage("Download of squid.jar aborted");
+    }
+    verifyNoMoreInteractions(connection);
+  }
+
+  @Test
+  public void should_fail_when_download_completes_after_abort() throws Exception {
+    File toFile = temp.newFile("squid.jar");
+    final Jars.BatchFileDownloader downloader = new Jars.BatchFileDownloader(connection);
+    // simulates the failure of another download while squid.jar is being downloaded
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) {
+        downloader.abort();
+        return null;
+      }
+    }).when(connection).download("/batch/squid.jar", toFile);
+
+    try {
+      downloader.download("squid.jar", toFile);
+      fail();
+    } catch (IOException e) {
+      assertThat(e).hasMessage("Download of squid.jar aborted");
+    }
+  }
+
   @Test
   public void test_jar_downloader() throws Exception {
     Jars.BatchFileDownloader downloader = new Jars.BatchFileDownloader(connection);
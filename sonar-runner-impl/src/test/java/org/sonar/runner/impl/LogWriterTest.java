@@ -0,0 +1,134 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LogWriterTest {
+
+  String sep = System.getProperty("line.separator");
+
+  @Test
+  public void should_write_each_line_to_its_stream() {
+    LogWriter writer = new LogWriter(16);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    PrintStream outStream = new PrintStream(out);
+    PrintStream errStream = new PrintStream(err);
+
+    writer.write(new LogWriter.Entry(outStream, "INFO: ", null, "one", null), false);
+    writer.write(new LogWriter.Entry(errStream, "ERROR: ", "ctx", "two", new IllegalStateException("boom")), false);
+    writer.write(new LogWriter.Entry(outStream, "INFO: ", null, "three", null), false);
+    writer.flush();
+
+    assertThat(out.toString()).isEqualTo("INFO: one" + sep + "INFO: three" + sep);
+    assertThat(err.toString()).startsWith("[ctx] ERROR: two" + sep + "java.lang.IllegalStateException: boom");
+  }
+
+  @Test
+  public void should_drop_debug_lines_but_not_other_lines_when_queue_is_full() throws Exception {
+    LogWriter writer = new LogWriter(2);
+    BlockingStream blocked = new BlockingStream();
+    PrintStream stream = new PrintStream(blocked);
+
+    // the first line blocks the writer thread, the next two lines fill the queue
+    writer.write(new LogWriter.Entry(stream, "INFO: ", null, "1", null), false);
+    blocked.writing.await();
+    writer.write(new LogWriter.Entry(stream, "INFO: ", null, "2", null), false);
+    writer.write(new LogWriter.Entry(stream, "INFO: ", null, "3", null), false);
+    writer.write(new LogWriter.Entry(stream, "DEBUG: ", null, "dropped", null), true);
+    assertThat(writer.dropped()).isEqualTo(1L);
+
+    blocked.release.countDown();
+    // waits for free space
+    writer.write(new LogWriter.Entry(stream, "INFO: ", null, "4", null), false);
+    writer.flush();
+
+    assertThat(blocked.content.toString()).isEqualTo("INFO: 1" + sep + "INFO: 2" + sep + "INFO: 3" + sep + "INFO: 4" + sep);
+  }
+
+  @Test
+  public void flush_should_wait_for_own_lines_while_other_threads_log() throws Exception {
+    final LogWriter writer = new LogWriter(LogWriter.DEFAULT_CAPACITY);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    final PrintStream stream = new PrintStream(out);
+    final AtomicInteger missingLines = new AtomicInteger();
+    List<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 4; i++) {
+      final String name = "thread" + i;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          for (int line = 0; line < 300; line++) {
+            String message = name + "-" + line + ";";
+            writer.write(new LogWriter.Entry(stream, "", null, message, null), false);
+            writer.flush();
+            String written;
+            synchronized (out) {
+              written = out.toString();
+            }
+            if (!written.contains(message)) {
+              missingLines.incrementAndGet();
+            }
+          }
+        }
+      });
+    }
+    for (Thread thread : threads) {
+      thread.start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+
+    assertThat(missingLines.get()).isEqualTo(0);
+  }
+
+  private static class BlockingStream extends OutputStream {
+    final CountDownLatch writing = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final ByteArrayOutputStream content = new ByteArrayOutputStream();
+
+    @Override
+    public void write(int b) {
+      content.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      writing.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      content.write(b, off, len);
+    }
+  }
+}
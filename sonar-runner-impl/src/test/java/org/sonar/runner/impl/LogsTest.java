@@ -0,0 +1,123 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class LogsTest {
+
+  @After
+  public void tearDown() {
+    Logs.setDebugEnabled(false);
+    Logs.setDebugEnabledForCurrentThread(null);
+    Logs.setContextForCurrentThread(null);
+  }
+
+  @Test
+  public void should_replace_placeholders() {
+    assertThat(Logs.format("Download {} to {}", "a.jar", 3)).isEqualTo("Download a.jar to 3");
+    assertThat(Logs.format("no placeholder", "a")).isEqualTo("no placeholder");
+    assertThat(Logs.format("missing {} and {}", "a")).isEqualTo("missing a and {}");
+    assertThat(Logs.format("null {}", (Object) null)).isEqualTo("null null");
+  }
+
+  @Test
+  public void should_write_lines_asynchronously_to_current_system_out() {
+    PrintStream initialOut = System.out;
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    System.setOut(new PrintStream(output, true));
+    try {
+      Logs.setDebugEnabled(true);
+      Logs.info("first");
+      Logs.debug("second {}", 2);
+      Logs.setContextForCurrentThread("project1");
+      Logs.warn("third");
+      Logs.flush();
+    } finally {
+      System.setOut(initialOut);
+    }
+
+    String sep = System.getProperty("line.separator");
+    assertThat(output.toString()).isEqualTo("INFO: first" + sep + "DEBUG: second 2" + sep + "[project1] WARN: third" + sep);
+  }
+
+  @Test
+  public void should_not_format_disabled_debug_messages() {
+    Object arg = new Object() {
+      @Override
+      public String toString() {
+        throw new IllegalStateException("must not be called");
+      }
+    };
+    Logs.setDebugEnabled(false);
+    Logs.debug("value: {}", arg);
+    Logs.flush();
+  }
+
+  @Test
+  public void thread_value_should_override_global_value() {
+    Logs.setDebugEnabled(false);
+    assertThat(Logs.setDebugEnabledForCurrentThread(true)).isNull();
+    assertThat(Logs.isDebugEnabled()).isTrue();
+
+    assertThat(Logs.setDebugEnabledForCurrentThread(null)).isTrue();
+    assertThat(Logs.isDebugEnabled()).isFalse();
+  }
+
+  @Test
+  public void thread_value_should_not_leak_to_other_threads() throws Exception {
+    Logs.setDebugEnabledForCurrentThread(true);
+    final AtomicBoolean otherThreadDebug = new AtomicBoolean(true);
+    Thread other = new Thread() {
+      @Override
+      public void run() {
+        Logs.setDebugEnabledForCurrentThread(false);
+        otherThreadDebug.set(Logs.isDebugEnabled());
+      }
+    };
+    other.start();
+    other.join();
+
+    assertThat(otherThreadDebug.get()).isFalse();
+    assertThat(Logs.isDebugEnabled()).isTrue();
+  }
+
+  @Test
+  public void thread_value_should_be_inherited_by_child_threads() throws Exception {
+    Logs.setDebugEnabledForCurrentThread(true);
+    final AtomicBoolean childDebug = new AtomicBoolean(false);
+    Thread child = new Thread() {
+      @Override
+      public void run() {
+        childDebug.set(Logs.isDebugEnabled());
+      }
+    };
+    child.start();
+    child.join();
+
+    assertThat(childDebug.get()).isTrue();
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MaskRulesTest {
+
+  @Test
+  public void should_mask_everything_when_no_rules() {
+    MaskRules rules = new MaskRules(new String[0][]);
+
+    assertThat(rules.isUnmasked("org.sonar.Foo")).isFalse();
+    assertThat(rules.isUnmasked("")).isFalse();
+  }
+
+  @Test
+  public void should_match_prefixes() {
+    MaskRules rules = new MaskRules(new String[][] {{"UNMASK", "org.apache.ant."}, {"MASK", "org.sonar."}});
+
+    assertThat(rules.isUnmasked("org.apache.ant.Foo")).isTrue();
+    assertThat(rules.isUnmasked("org.apache.ant.project.Project")).isTrue();
+    assertThat(rules.isUnmasked("org.apache.ant")).isFalse();
+    assertThat(rules.isUnmasked("org.apache.maven.Foo")).isFalse();
+    assertThat(rules.isUnmasked("org.sonar.Foo")).isFalse();
+  }
+
+  @Test
+  public void first_matching_rule_wins() {
+    MaskRules rules = new MaskRules(new String[][] {
+      {"UNMASK", "org.sonar.runner.api."},
+      {"MASK", "org.sonar."},
+      {"UNMASK", "org.sonar.runner.batch.IsolatedLauncher"},
+      {"UNMASK", "org."}});
+
+    assertThat(rules.isUnmasked("org.sonar.runner.api.EmbeddedRunner")).isTrue();
+    // longer prefix, but declared after "org.sonar."
+    assertThat(rules.isUnmasked("org.sonar.runner.batch.IsolatedLauncher")).isFalse();
+    assertThat(rules.isUnmasked("org.sonar.Foo")).isFalse();
+    assertThat(rules.isUnmasked("org.apache.Foo")).isTrue();
+  }
+
+  @Test
+  public void first_declaration_of_same_prefix_wins() {
+    MaskRules rules = new MaskRules(new String[][] {{"MASK", "org.foo."}, {"UNMASK", "org.foo."}});
+
+    assertThat(rules.isUnmasked("org.foo.Bar")).isFalse();
+  }
+
+  @Test
+  public void empty_prefix_matches_everything() {
+    MaskRules rules = new MaskRules(new String[][] {{"MASK", "org.sonar."}, {"UNMASK", ""}});
+
+    assertThat(rules.isUnmasked("org.sonar.Foo")).isFalse();
+    assertThat(rules.isUnmasked("com.google.Foo")).isTrue();
+    assertThat(rules.isUnmasked("")).isTrue();
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class MetricsTest {
+
+  @Test
+  public void should_create_metrics_once() {
+    assertThat(Metrics.counter("test.once")).isSameAs(Metrics.counter("test.once"));
+    assertThat(Metrics.histogram("test.once")).isSameAs(Metrics.histogram("test.once"));
+  }
+
+  @Test
+  public void should_count_concurrently() throws Exception {
+    final Metrics.Counter counter = Metrics.counter("test.concurrent");
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call() {
+            for (int j = 0; j < 1000; j++) {
+              counter.increment();
+            }
+            return null;
+          }
+        }));
+      }
+      for (Future<Void> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    assertThat(counter.get()).isEqualTo(4000L);
+  }
+
+  @Test
+  public void should_compute_upper_bounds_of_percentiles() {
+    Metrics.Histogram histogram = new Metrics.Histogram();
+    assertThat(histogram.percentile(50)).isEqualTo(0L);
+
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i);
+    }
+
+    assertThat(histogram.count()).isEqualTo(100L);
+    assertThat(histogram.sum()).isEqualTo(5050L);
+    assertThat(histogram.max()).isEqualTo(100L);
+    // 50 is in the bucket [32, 63]
+    assertThat(histogram.percentile(50)).isEqualTo(63L);
+    // bounded by the max
+    assertThat(histogram.percentile(99)).isEqualTo(100L);
+  }
+
+  @Test
+  public void should_record_zero_and_negative_values_in_first_bucket() {
+    Metrics.Histogram histogram = new Metrics.Histogram();
+    histogram.record(0L);
+    histogram.record(-5L);
+    histogram.record(Long.MAX_VALUE);
+
+    assertThat(histogram.percentile(50)).isEqualTo(0L);
+    assertThat(histogram.percentile(100)).isEqualTo(Long.MAX_VALUE);
+  }
+
+  @Test
+  public void should_name_metrics_of_endpoints() {
+    assertThat(Metrics.ofEndpoint("http.bytes", "/batch/sonar-batch.jar")).isEqualTo("http.bytes{/batch}");
+    assertThat(Metrics.ofEndpoint("http.bytes", "/batch_bootstrap/index")).isEqualTo("http.bytes{/batch_bootstrap}");
+    assertThat(Metrics.ofEndpoint("http.bytes", "/api?q=1")).isEqualTo("http.bytes{/api}");
+  }
+
+  @Test
+  public void should_flatten_histograms_in_snapshot() {
+    Metrics.counter("test.snapshot.counter").add(3L);
+    Metrics.histogram("test.snapshot.histogram").record(7L);
+
+    Map<String, Long> snapshot = Metrics.snapshot();
+
+    assertThat(snapshot.get("test.snapshot.counter")).isEqualTo(3L);
+    assertThat(snapshot.get("test.snapshot.histogram.count")).isEqualTo(1L);
+    assertThat(snapshot.get("test.snapshot.histogram.max")).isEqualTo(7L);
+    assertThat(snapshot.get("test.snapshot.histogram.p99")).isEqualTo(7L);
+  }
+
+  @Test
+  public void should_expose_metrics_as_mxbean() throws Exception {
+    Metrics.counter("test.mbean").increment();
+    Metrics.registerMBean();
+    // registered once
+    Metrics.registerMBean();
+
+    TabularData metrics = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(new ObjectName(Metrics.OBJECT_NAME), "Metrics");
+
+    assertThat(metrics.get(new Object[] {"test.mbean"}).get("value")).isEqualTo(1L);
+  }
+}
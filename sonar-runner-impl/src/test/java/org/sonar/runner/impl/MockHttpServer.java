@@ -32,8 +32,12 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static javax.servlet.http.HttpServletResponse.SC_NOT_MODIFIED;
 import static javax.servlet.http.HttpServletResponse.SC_OK;
+import static javax.servlet.http.HttpServletResponse.SC_PARTIAL_CONTENT;
+import static javax.servlet.http.HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
 import static org.apache.commons.io.IOUtils.write;
 
 class MockHttpServer {
@@ -42,6 +46,12 @@ class MockHttpServer {
   private String requestBody;
   private String mockResponseData;
   private int mockResponseStatus = SC_OK;
+  private String mockResponseETag;
+  private String mockResponseLastModified;
+  private boolean acceptRanges = false;
+  private final AtomicInteger failures = new AtomicInteger();
+  private int failureStatus;
+  private final AtomicInteger requestCount = new AtomicInteger();
 
   public void start() throws Exception {
     // 0 is random available port
@@ -64,17 +74,65 @@ class MockHttpServer {
           throw new HttpException(404, "Not found");
         }
         Request baseRequest = request instanceof Request ? (Request) request : HttpConnection.getCurrentConnection().getRequest();
+        requestCount.incrementAndGet();
+        if (failures.getAndDecrement() > 0) {
+          response.setStatus(failureStatus);
+          baseRequest.setHandled(true);
+          return;
+        }
+        if (isNotModified(request)) {
+          response.setStatus(SC_NOT_MODIFIED);
+          baseRequest.setHandled(true);
+          return;
+        }
+        if (mockResponseETag != null) {
+          response.setHeader("ETag", mockResponseETag);
+        }
+        if (mockResponseLastModified != null) {
+          response.setHeader("Last-Modified", mockResponseLastModified);
+        }
         setResponseBody(getMockResponseData());
         setRequestBody(IOUtils.toString(baseRequest.getInputStream()));
+        String range = request.getHeader("Range");
+        if (acceptRanges && range != null && mockResponseStatus == SC_OK) {
+          writeRange(range, response);
+          baseRequest.setHandled(true);
+          return;
+        }
         response.setStatus(mockResponseStatus);
         response.setContentType("text/xml;charset=utf-8");
-        write(getResponseBody(), response.getOutputStream());
+        write(getResponseBody(), response.getOutputStream(), "UTF-8");
         baseRequest.setHandled(true);
       }
     };
     return handler;
   }
 
+  /**
+   * Supports only ranges "bytes=N-"
+   */
+  private void writeRange(String range, HttpServletResponse response) throws IOException {
+    byte[] body = getResponseBody().getBytes("UTF-8");
+    int offset = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+    if (offset >= body.length) {
+      response.setStatus(SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+      response.setHeader("Content-Range", "bytes */" + body.length);
+      return;
+    }
+    response.setStatus(SC_PARTIAL_CONTENT);
+    response.setHeader("Content-Range", "bytes " + offset + "-" + (body.length - 1) + "/" + body.length);
+    response.getOutputStream().write(body, offset, body.length - offset);
+  }
+
+  private boolean isNotModified(HttpServletRequest request) {
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      return ifNoneMatch.equals(mockResponseETag);
+    }
+    String ifModifiedSince = request.getHeader("If-Modified-Since");
+    return ifModifiedSince != null && ifModifiedSince.equals(mockResponseLastModified);
+  }
+
   public void stop() {
     try {
       if (server != null) {
@@ -109,6 +167,30 @@ class MockHttpServer {
     this.mockResponseStatus = status;
   }
 
+  public void setMockResponseETag(String etag) {
+    this.mockResponseETag = etag;
+  }
+
+  public void setMockResponseLastModified(String lastModified) {
+    this.mockResponseLastModified = lastModified;
+  }
+
+  /**
+   * The next requests are answered with the given status, then the mock response is returned again
+   */
+  public void failNextRequests(int count, int status) {
+    this.failureStatus = status;
+    this.failures.set(count);
+  }
+
+  public void setAcceptRanges(boolean acceptRanges) {
+    this.acceptRanges = acceptRanges;
+  }
+
+  public int getRequestCount() {
+    return requestCount.get();
+  }
+
   public String getMockResponseData() {
     return mockResponseData;
   }
@@ -44,6 +44,26 @@ public class MockHttpServerInterceptor extends ExternalResource {
     server.setMockResponseStatus(status);
   }
 
+  public void setMockResponseETag(String etag) {
+    server.setMockResponseETag(etag);
+  }
+
+  public void setMockResponseLastModified(String lastModified) {
+    server.setMockResponseLastModified(lastModified);
+  }
+
+  public void failNextRequests(int count, int status) {
+    server.failNextRequests(count, status);
+  }
+
+  public void setAcceptRanges(boolean acceptRanges) {
+    server.setAcceptRanges(acceptRanges);
+  }
+
+  public int requestCount() {
+    return server.getRequestCount();
+  }
+
   public String url() {
     return server.getUrl();
   }
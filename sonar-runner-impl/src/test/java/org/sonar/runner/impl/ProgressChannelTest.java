@@ -0,0 +1,85 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ProgressChannelTest {
+
+  @Test
+  public void should_convert_event_to_json() {
+    Map<String, Object> event = new LinkedHashMap<String, Object>();
+    event.put("type", "phase");
+    event.put("name", "a \"quoted\"\nname\\");
+    event.put("bytes", 42L);
+    event.put("success", true);
+    event.put("missing", null);
+
+    assertThat(ProgressChannel.toJson(event))
+      .isEqualTo("{\"type\":\"phase\",\"name\":\"a \\\"quoted\\\"\\nname\\\\\",\"bytes\":42,\"success\":true,\"missing\":null}");
+  }
+
+  @Test
+  public void should_escape_control_characters() {
+    Map<String, Object> event = new LinkedHashMap<String, Object>();
+    event.put("key", "\u0001\t");
+
+    assertThat(ProgressChannel.toJson(event)).isEqualTo("{\"key\":\"\\u0001\\t\"}");
+  }
+
+  @Test
+  public void should_not_connect_if_port_is_not_set() {
+    assertThat(ProgressChannel.connect(new Properties())).isNull();
+  }
+
+  @Test
+  public void should_send_token_then_events() throws Exception {
+    try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getByName(null))) {
+      Properties props = new Properties();
+      props.setProperty(InternalProperties.RUNNER_PROGRESS_PORT, String.valueOf(server.getLocalPort()));
+      props.setProperty(InternalProperties.RUNNER_PROGRESS_TOKEN, "secret");
+      ProgressChannel channel = ProgressChannel.connect(props);
+      assertThat(channel).isNotNull();
+
+      Map<String, Object> event = new LinkedHashMap<String, Object>();
+      event.put("type", "end");
+      channel.onEvent(event);
+      channel.close();
+
+      try (Socket socket = server.accept();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8))) {
+        assertThat(reader.readLine()).isEqualTo("secret");
+        assertThat(reader.readLine()).isEqualTo("{\"type\":\"end\"}");
+        assertThat(reader.readLine()).isNull();
+      }
+    }
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ProgressTest {
+
+  List<Map<String, Object>> events = new ArrayList<Map<String, Object>>();
+  Progress progress = new Progress().addListener(new Progress.Listener() {
+    @Override
+    public void onEvent(Map<String, Object> event) {
+      events.add(event);
+    }
+  });
+
+  @Test
+  public void should_emit_phase_with_memory() {
+    progress.phase(Progress.PHASE_DOWNLOAD);
+
+    assertThat(events).hasSize(2);
+    assertThat(events.get(0).get(Progress.TYPE)).isEqualTo(Progress.PHASE);
+    assertThat(events.get(0).get("name")).isEqualTo(Progress.PHASE_DOWNLOAD);
+    assertThat(events.get(0).get(Progress.TIME)).isNotNull();
+    assertThat(events.get(0).get(Progress.CPU_TIME)).isNotNull();
+    assertThat(events.get(0).get(Progress.ALLOCATED_BYTES)).isNotNull();
+    assertThat(events.get(1).get(Progress.TYPE)).isEqualTo(Progress.MEMORY);
+    assertThat((Long) events.get(1).get("heapUsed")).isGreaterThan(0L);
+    assertThat((Long) events.get(1).get("heapPeak")).isGreaterThan(0L);
+  }
+
+  @Test
+  public void should_emit_file() {
+    progress.file("sonar-batch.jar", false, 2048L, 15L);
+
+    Map<String, Object> file = events.get(0);
+    assertThat(file.get(Progress.TYPE)).isEqualTo(Progress.FILE);
+    assertThat(file.get("name")).isEqualTo("sonar-batch.jar");
+    assertThat(file.get("cached")).isEqualTo(false);
+    assertThat(file.get("bytes")).isEqualTo(2048L);
+  }
+
+  @Test
+  public void should_emit_download_and_end() {
+    progress.downloaded(3, 1024L, 10L);
+    progress.end(true);
+
+    Map<String, Object> download = events.get(0);
+    assertThat(download.get(Progress.TYPE)).isEqualTo(Progress.DOWNLOAD);
+    assertThat(download.get("files")).isEqualTo(3);
+    assertThat(download.get("bytes")).isEqualTo(1024L);
+    Map<String, Object> end = events.get(events.size() - 1);
+    assertThat(end.get(Progress.TYPE)).isEqualTo(Progress.END);
+    assertThat(end.get("success")).isEqualTo(true);
+    assertThat(end.get(Progress.CPU_TIME)).isNotNull();
+  }
+
+  @Test
+  public void should_ignore_failing_listener() {
+    Progress failing = new Progress().addListener(new Progress.Listener() {
+      @Override
+      public void onEvent(Map<String, Object> event) {
+        throw new IllegalStateException("boom");
+      }
+    });
+    failing.addListener(new Progress.Listener() {
+      @Override
+      public void onEvent(Map<String, Object> event) {
+        events.add(event);
+      }
+    });
+
+    failing.downloaded(1, 1L, 1L);
+
+    assertThat(events).hasSize(1);
+  }
+
+  @Test
+  public void should_dispatch_events_added_to_collection() {
+    progress.asCollection().add(Collections.<String, Object>singletonMap(Progress.TYPE, Progress.MODULE));
+
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0).get(Progress.TYPE)).isEqualTo(Progress.MODULE);
+    assertThat(events.get(0).get(Progress.TIME)).isNotNull();
+    assertThat(events.get(0).containsKey(Progress.CPU_TIME)).isFalse();
+  }
+
+  @Test
+  public void should_add_thread_counters_to_phases_added_to_collection() {
+    Map<String, Object> phase = new HashMap<String, Object>();
+    phase.put(Progress.TYPE, Progress.PHASE);
+    phase.put("name", Progress.PHASE_LOGGING);
+    progress.asCollection().add(phase);
+
+    assertThat(events.get(0).get("name")).isEqualTo(Progress.PHASE_LOGGING);
+    assertThat(events.get(0).get(Progress.CPU_TIME)).isNotNull();
+    assertThat(events.get(0).get(Progress.ALLOCATED_BYTES)).isNotNull();
+  }
+
+  @Test
+  public void should_serialize_to_json() {
+    Map<String, Object> fields = new LinkedHashMap<String, Object>();
+    fields.put("name", "a\"b");
+    fields.put("bytes", 12L);
+    assertThat(Progress.toJson(fields)).isEqualTo("{\"name\":\"a\\\"b\",\"bytes\":12}");
+  }
+
+  @Test
+  public void should_not_sample_memory_without_listeners() {
+    Progress silent = new Progress();
+    assertThat(silent.hasListeners()).isFalse();
+    silent.startMemorySampling(1L);
+    silent.end(false);
+  }
+}
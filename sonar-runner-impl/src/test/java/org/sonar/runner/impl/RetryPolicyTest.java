@@ -0,0 +1,164 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.fest.assertions.Fail.fail;
+
+public class RetryPolicyTest {
+
+  @Test
+  public void should_classify_retryable_errors() {
+    assertThat(RetryPolicy.isRetryable(new ConnectException())).isTrue();
+    assertThat(RetryPolicy.isRetryable(new SocketTimeoutException())).isTrue();
+    assertThat(RetryPolicy.isRetryable(new EOFException())).isTrue();
+    assertThat(RetryPolicy.isRetryable(new IllegalStateException(new ConnectException()))).isTrue();
+    assertThat(RetryPolicy.isRetryable(new HttpStatusException("", 503))).isTrue();
+    assertThat(RetryPolicy.isRetryable(new HttpStatusException("", 429))).isTrue();
+
+    assertThat(RetryPolicy.isRetryable(new HttpStatusException("", 404))).isFalse();
+    assertThat(RetryPolicy.isRetryable(new HttpStatusException("", 500))).isFalse();
+    assertThat(RetryPolicy.isRetryable(new UnknownHostException())).isFalse();
+    assertThat(RetryPolicy.isRetryable(new IllegalStateException())).isFalse();
+    assertThat(RetryPolicy.isRetryable(new CircuitBreaker.OpenException("localhost"))).isFalse();
+  }
+
+  @Test
+  public void backoff_should_be_exponential_with_jitter() {
+    RetryPolicy policy = new RetryPolicy(10, 100L, 1000L, 60000L);
+
+    for (int i = 0; i < 20; i++) {
+      assertThat(policy.backoff(1)).isGreaterThanOrEqualTo(50L).isLessThanOrEqualTo(100L);
+      assertThat(policy.backoff(2)).isGreaterThanOrEqualTo(100L).isLessThanOrEqualTo(200L);
+      assertThat(policy.backoff(3)).isGreaterThanOrEqualTo(200L).isLessThanOrEqualTo(400L);
+      assertThat(policy.backoff(10)).isGreaterThanOrEqualTo(500L).isLessThanOrEqualTo(1000L);
+      assertThat(policy.backoff(100)).isGreaterThanOrEqualTo(500L).isLessThanOrEqualTo(1000L);
+    }
+  }
+
+  @Test
+  public void should_retry_until_success() throws Exception {
+    RetryPolicy policy = new RetryPolicy(3, 1L, 1L, 60000L);
+    final AtomicInteger calls = new AtomicInteger();
+
+    String result = policy.execute("http://localhost", new CircuitBreaker("localhost", 0, 0L), new Callable<String>() {
+      @Override
+      public String call() throws Exception {
+        if (calls.incrementAndGet() < 3) {
+          throw new ConnectException();
+        }
+        return "ok";
+      }
+    });
+
+    assertThat(result).isEqualTo("ok");
+    assertThat(calls.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void should_not_retry_after_deadline() throws Exception {
+    RetryPolicy policy = new RetryPolicy(10, 1000L, 1000L, 100L);
+    final AtomicInteger calls = new AtomicInteger();
+
+    try {
+      policy.execute("http://localhost", new CircuitBreaker("localhost", 0, 0L), new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          calls.incrementAndGet();
+          throw new ConnectException();
+        }
+      });
+      fail();
+    } catch (ConnectException e) {
+      assertThat(calls.get()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void should_fail_fast_when_circuit_is_open() throws Exception {
+    RetryPolicy policy = new RetryPolicy(10, 1L, 1L, 60000L);
+    CircuitBreaker breaker = new CircuitBreaker("localhost", 2, 60000L);
+    final AtomicInteger calls = new AtomicInteger();
+
+    try {
+      policy.execute("http://localhost", breaker, new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+          calls.incrementAndGet();
+          throw new IOException(new ConnectException());
+        }
+      });
+      fail();
+    } catch (CircuitBreaker.OpenException e) {
+      assertThat(calls.get()).isEqualTo(2);
+    }
+  }
+
+  @Test
+  public void should_end_trial_when_request_throws_error() throws Exception {
+    RetryPolicy policy = new RetryPolicy(10, 1L, 1L, 60000L);
+    CircuitBreaker breaker = new CircuitBreaker("localhost", 1, 10L);
+    breaker.onFailure();
+    Thread.sleep(20L);
+
+    try {
+      policy.execute("http://localhost", breaker, new Callable<String>() {
+        @Override
+        public String call() {
+          throw new OutOfMemoryError();
+        }
+      });
+      fail();
+    } catch (OutOfMemoryError e) {
+      // expected
+    }
+
+    // not blocked by the trial
+    breaker.beforeRequest();
+  }
+
+  @Test
+  public void should_validate_properties() {
+    Properties props = new Properties();
+    assertThat(RetryPolicy.getLong(props, InternalProperties.RUNNER_RETRY_MAX_ATTEMPTS, 3L)).isEqualTo(3L);
+
+    props.setProperty(InternalProperties.RUNNER_RETRY_MAX_ATTEMPTS, "5");
+    assertThat(RetryPolicy.getLong(props, InternalProperties.RUNNER_RETRY_MAX_ATTEMPTS, 3L)).isEqualTo(5L);
+
+    props.setProperty(InternalProperties.RUNNER_RETRY_MAX_ATTEMPTS, "five");
+    try {
+      RetryPolicy.getLong(props, InternalProperties.RUNNER_RETRY_MAX_ATTEMPTS, 3L);
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e).hasMessage("Invalid value of sonarRunner.retry.maxAttempts: five");
+    }
+  }
+}
@@ -60,6 +60,21 @@ public class ServerConnectionTest {
     assertThat(response).isEqualTo("abcde");
   }
 
+  @Test
+  public void should_count_bytes_of_string_responses() throws Exception {
+    httpServer.setMockResponseData("\u00e9t\u00e9");
+    Properties props = new Properties();
+    props.setProperty("sonar.host.url", httpServer.url());
+    Metrics.Counter bytes = Metrics.counter(Metrics.ofEndpoint(Metrics.HTTP_BYTES, "/batch/bytes.txt"));
+    long initial = bytes.get();
+
+    ServerConnection connection = ServerConnection.create(props, cache);
+    assertThat(connection.downloadStringCache("/batch/bytes.txt")).isEqualTo("\u00e9t\u00e9");
+
+    // encoded in UTF-8
+    assertThat(bytes.get() - initial).isEqualTo(5L);
+  }
+
   @Test
   public void should_download_to_file() throws Exception {
     httpServer.setMockResponseData("abcde");
@@ -68,9 +83,10 @@ public class ServerConnectionTest {
 
     ServerConnection connection = ServerConnection.create(props, cache);
     File toFile = temp.newFile();
-    connection.download("/batch/index.txt", toFile);
+    String hash = connection.download("/batch/index.txt", toFile);
 
     assertThat(FileUtils.readFileToString(toFile)).isEqualTo("abcde");
+    assertThat(hash).isEqualTo("ab56b4d92b40713acc5af89985d4b786");
   }
   
   @Test
@@ -112,6 +128,166 @@ public class ServerConnectionTest {
     assertThat(str).isEqualTo("request2");
   }
 
+  @Test
+  public void should_revalidate_index_with_etag() throws Exception {
+    httpServer.setMockResponseData("abcde");
+    httpServer.setMockResponseETag("\"v1\"");
+    Properties props = new Properties();
+    props.setProperty("sonar.host.url", httpServer.url());
+    props.setProperty("sonar.userHome", temp.getRoot().getAbsolutePath());
+
+    ServerConnection connection = ServerConnection.create(props, cache);
+    assertThat(connection.downloadStringCache("/batch/index.txt")).isEqualTo("abcde");
+
+    // answered 304, so body is not transferred
+    httpServer.setMockResponseData("never transferred");
+    assertThat(connection.downloadStringCache("/batch/index.txt")).isEqualTo("abcde");
+    assertThat(httpServer.requestCount()).isEqualTo(2);
+
+    httpServer.setMockResponseETag("\"v2\"");
+    httpServer.setMockResponseData("fghij");
+    assertThat(connection.downloadStringCache("/batch/index.txt")).isEqualTo("fghij");
+  }
+
+  @Test
+  public void should_revalidate_index_with_last_modified() throws Exception {
+    httpServer.setMockResponseData("abcde");
+    httpServer.setMockResponseLastModified("Wed, 21 Oct 2015 07:28:00 GMT");
+    Properties props = new Properties();
+    props.setProperty("sonar.host.url", httpServer.url());
+    props.setProperty("sonar.userHome", temp.getRoot().getAbsolutePath());
+
+    ServerConnection connection = ServerConnection.create(props, cache);
+    assertThat(connection.downloadStringCache("/batch/index.txt")).isEqualTo("abcde");
+
+    httpServer.setMockResponseData("never transferred");
+    assertThat(connection.downloadStringCache("/batch/index.txt")).isEqualTo("abcde");
+  }
+
+  @Test
+  public void should_not_request_index_during_ttl() throws Exception {
+    httpServer.setMockResponseData("abcde");
+    Properties props = new Properties();
+    props.setProperty("sonar.host.url", httpServer.url());
+    props.setProperty("sonar.userHome", temp.getRoot().getAbsolutePath());
+    props.setProperty(InternalProperties.RUNNER_INDEX_TTL, "3600");
+
+    assertThat(ServerConnection.create(props, cache).downloadStringCache("/batch/index.txt")).isEqualTo("abcde");
+
+    httpServer.setMockResponseData("never requested");
+    assertThat(ServerConnection.create(props, cache).downloadStringCache("/batch/index.txt")).isEqualTo("abcde");
+    assertThat(httpServer.requestCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void should_resume_partial_download() throws Exception {
+    httpServer.setMockResponseData("abcde");
+    httpServer.setAcceptRanges(true);
+    Properties props = new Properties();
+    props.setProperty("sonar.host.url", httpServer.url());
+
+    ServerConnection connection = ServerConnection.create(props, cache);
+    File toFile = temp.newFile();
+    FileUtils.write(toFile, "ab");
+    String hash = connection.download("/batch/index.txt", toFile);
+
+    assertThat(FileUtils.readFileToString(toFile)).isEqualTo("abcde");
+    assertThat(hash).isEqualTo("ab56b4d92b40713acc5af89985d4b786");
+  }
+
+  @Test
+  public void should_download_again_if_ranges_are_not_supported() throws Exception {
+    httpServer.setMockResponseData("abcde");
+    Properties props = new Properties();
+    props.setProperty("sonar.host.url", httpServer.url());
+
+    ServerConnection connection = ServerConnection.create(props, cache);
+    File toFile = temp.newFile();
+    FileUtils.write(toFile, "ab");
+    String hash = connection.download("/batch/index.txt", toFile);
+
+    assertThat(FileUtils.readFileToString(toFile)).isEqualTo("abcde");
+    assertThat(hash).isEqualTo("ab56b4d92b40713acc5af89985d4b786");
+  }
+
+  @Test
+  public void should_not_download_again_complete_partial_file() throws Exception {
+    httpServer.setMockResponseData("abcde");
+    httpServer.setAcceptRanges(true);
+    Properties props = new Properties();
+    props.setProperty("sonar.host.url", httpServer.url());
+
+    ServerConnection connection = ServerConnection.create(props, cache);
+    File toFile = temp.newFile();
+    FileUtils.write(toFile, "abcde");
+
+    assertThat(connection.download("/batch/index.txt", toFile)).isEqualTo("ab56b4d92b40713acc5af89985d4b786");
+    assertThat(FileUtils.readFileToString(toFile)).isEqualTo("abcde");
+  }
+
+  @Test
+  public void should_restart_download_if_partial_file_is_longer_than_content() throws Exception {
+    httpServer.setMockResponseData("abcde");
+    httpServer.setAcceptRanges(true);
+    Properties props = new Properties();
+    props.setProperty("sonar.host.url", httpServer.url());
+
+    ServerConnection connection = ServerConnection.create(props, cache);
+    File toFile = temp.newFile();
+    FileUtils.write(toFile, "abcdefgh");
+
+    assertThat(connection.download("/batch/index.txt", toFile)).isEqualTo("ab56b4d92b40713acc5af89985d4b786");
+    assertThat(FileUtils.readFileToString(toFile)).isEqualTo("abcde");
+    assertThat(httpServer.requestCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_retry_on_transient_errors() throws Exception {
+    httpServer.setMockResponseData("abcde");
+    httpServer.failNextRequests(2, 503);
+    Properties props = new Properties();
+    props.setProperty("sonar.host.url", httpServer.url());
+    props.setProperty(InternalProperties.RUNNER_RETRY_INITIAL_BACKOFF, "1");
+
+    ServerConnection connection = ServerConnection.create(props, cache);
+
+    assertThat(connection.downloadStringCache("/batch/index.txt")).isEqualTo("abcde");
+    assertThat(httpServer.requestCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void should_not_retry_on_client_errors() throws Exception {
+    httpServer.failNextRequests(1, 404);
+    Properties props = new Properties();
+    props.setProperty("sonar.host.url", httpServer.url());
+    props.setProperty(InternalProperties.RUNNER_RETRY_INITIAL_BACKOFF, "1");
+
+    ServerConnection connection = ServerConnection.create(props, cache);
+    try {
+      connection.download("/batch/index.txt", temp.newFile());
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(httpServer.requestCount()).isEqualTo(1);
+    }
+  }
+
+  @Test
+  public void should_fail_after_max_attempts() throws Exception {
+    httpServer.failNextRequests(10, 502);
+    Properties props = new Properties();
+    props.setProperty("sonar.host.url", httpServer.url());
+    props.setProperty(InternalProperties.RUNNER_RETRY_INITIAL_BACKOFF, "1");
+    props.setProperty(InternalProperties.RUNNER_RETRY_MAX_ATTEMPTS, "4");
+
+    ServerConnection connection = ServerConnection.create(props, cache);
+    try {
+      connection.download("/batch/index.txt", temp.newFile());
+      fail();
+    } catch (IllegalStateException e) {
+      assertThat(httpServer.requestCount()).isEqualTo(4);
+    }
+  }
+
   // SONARPLUGINS-3061
   @Test
   public void should_support_trailing_slash() throws Exception {
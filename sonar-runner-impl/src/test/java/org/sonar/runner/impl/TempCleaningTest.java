@@ -61,4 +61,47 @@ public class TempCleaningTest {
     assertThat(youngBatch).exists();
     assertThat(doNotDelete).exists();
   }
+
+  @Test
+  public void should_clean_old_files_of_runner_temp_dir() throws Exception {
+    File dir = temp.newFolder();
+    File runnerDir = TempFiles.dir(dir);
+    File oldFile = new File(runnerDir, "sonar-project123.properties");
+    FileUtils.write(oldFile, "foo");
+    oldFile.setLastModified(System.currentTimeMillis() - 3 * TempCleaning.ONE_DAY_IN_MILLISECONDS);
+    File youngFile = new File(runnerDir, "sonar-project456.properties");
+    FileUtils.write(youngFile, "foo");
+
+    new TempCleaning(dir).clean();
+
+    assertThat(oldFile).doesNotExist();
+    assertThat(youngFile).exists();
+  }
+
+  @Test
+  public void should_search_legacy_files_only_once() throws Exception {
+    File dir = temp.newFolder();
+    new TempCleaning(dir).clean();
+    assertThat(new File(TempFiles.dir(dir), TempCleaning.LEGACY_CLEANING_MARKER)).exists();
+
+    File oldBatch = new File(dir, "sonar-runner-batch656.jar");
+    FileUtils.write(oldBatch, "foo");
+    oldBatch.setLastModified(System.currentTimeMillis() - 3 * TempCleaning.ONE_DAY_IN_MILLISECONDS);
+    new TempCleaning(dir).clean();
+
+    assertThat(oldBatch).exists();
+  }
+
+  @Test
+  public void should_clean_in_background() throws Exception {
+    File dir = temp.newFolder();
+    new TempCleaning(dir).cleanAsync();
+
+    File marker = new File(TempFiles.dir(dir), TempCleaning.LEGACY_CLEANING_MARKER);
+    long timeout = System.currentTimeMillis() + 10000;
+    while (!marker.exists() && System.currentTimeMillis() < timeout) {
+      Thread.sleep(10);
+    }
+    assertThat(marker).exists();
+  }
 }
@@ -0,0 +1,109 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class TempFilesTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  @Test
+  public void should_create_files_in_runner_dir() throws Exception {
+    File file = TempFiles.createTempFile("foo", ".txt");
+    try {
+      assertThat(file).exists();
+      assertThat(file.getParentFile()).isEqualTo(TempFiles.dir());
+      assertThat(file.getParentFile().getParentFile().getCanonicalFile())
+        .isEqualTo(new File(System.getProperty("java.io.tmpdir")).getCanonicalFile());
+      assertThat(file.getParentFile().getName()).startsWith(TempFiles.DIRNAME_PREFIX);
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void should_create_private_runner_dir() throws Exception {
+    assumeTrue(isPosix());
+    File systemTempDir = temp.newFolder();
+
+    File dir = TempFiles.secureDir(systemTempDir);
+
+    assertThat(dir).isEqualTo(TempFiles.dir(systemTempDir));
+    assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(dir.toPath()))).isEqualTo("rwx------");
+    assertThat(TempFiles.secureDir(systemTempDir)).isEqualTo(dir);
+  }
+
+  @Test
+  public void should_restrict_permissions_of_existing_runner_dir() throws Exception {
+    assumeTrue(isPosix());
+    File systemTempDir = temp.newFolder();
+    File existing = TempFiles.dir(systemTempDir);
+    Files.createDirectory(existing.toPath(), PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwxrwxrwx")));
+
+    File dir = TempFiles.secureDir(systemTempDir);
+
+    assertThat(dir).isEqualTo(existing);
+    assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(dir.toPath()))).isEqualTo("rwx------");
+  }
+
+  @Test
+  public void should_not_follow_symbolic_link() throws Exception {
+    assumeTrue(isPosix());
+    File systemTempDir = temp.newFolder();
+    File target = temp.newFolder();
+    File link = TempFiles.dir(systemTempDir);
+    Files.createSymbolicLink(link.toPath(), target.toPath());
+
+    File dir = TempFiles.secureDir(systemTempDir);
+
+    assertThat(dir).isNotEqualTo(link);
+    assertThat(dir.getParentFile()).isEqualTo(systemTempDir);
+    assertThat(dir.getName()).startsWith(TempFiles.DIRNAME_PREFIX);
+    assertThat(Files.isDirectory(dir.toPath(), LinkOption.NOFOLLOW_LINKS)).isTrue();
+    assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(dir.toPath()))).isEqualTo("rwx------");
+  }
+
+  @Test
+  public void should_not_use_file_as_runner_dir() throws Exception {
+    File systemTempDir = temp.newFolder();
+    File file = TempFiles.dir(systemTempDir);
+    assertThat(file.createNewFile()).isTrue();
+
+    File dir = TempFiles.secureDir(systemTempDir);
+
+    assertThat(dir).isNotEqualTo(file);
+    assertThat(dir).isDirectory();
+  }
+
+  private static boolean isPosix() {
+    return new File(".").toPath().getFileSystem().supportedFileAttributeViews().contains("posix");
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import org.junit.Test;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class ThreadMetricsTest {
+
+  @Test
+  public void should_measure_current_thread() {
+    long threadId = Thread.currentThread().getId();
+    long cpu = ThreadMetrics.cpuTimeNanos(threadId);
+    long allocated = ThreadMetrics.allocatedBytes(threadId);
+
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 10000; i++) {
+      sb.append(i);
+    }
+
+    assertThat(sb.length()).isGreaterThan(0);
+    assertThat(cpu).isGreaterThanOrEqualTo(ThreadMetrics.UNSUPPORTED);
+    assertThat(ThreadMetrics.cpuTimeNanos(threadId)).isGreaterThanOrEqualTo(cpu);
+    if (allocated != ThreadMetrics.UNSUPPORTED) {
+      assertThat(ThreadMetrics.allocatedBytes(threadId)).isGreaterThan(allocated);
+    }
+  }
+
+  @Test
+  public void should_not_support_unknown_thread() {
+    assertThat(ThreadMetrics.cpuTimeNanos(Long.MAX_VALUE)).isEqualTo(ThreadMetrics.UNSUPPORTED);
+    assertThat(ThreadMetrics.allocatedBytes(Long.MAX_VALUE)).isEqualTo(ThreadMetrics.UNSUPPORTED);
+  }
+
+  @Test
+  public void should_read_heap_peak_from_memory_pools() {
+    assertThat(ThreadMetrics.heapPeakBytes()).isGreaterThan(0L);
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * SonarQube Runner - Implementation
+ * Copyright (C) 2011 SonarSource
+ * dev@sonar.codehaus.org
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonar.runner.impl;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.fest.assertions.Assertions.assertThat;
+
+public class WorkDirFingerprintTest {
+
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  Properties props = new Properties();
+  List<File> jarFiles = Arrays.asList(new File("cache/abc/sonar-batch.jar"), new File("cache/def/guava.jar"));
+  File workDir;
+
+  @Before
+  public void setUp() throws Exception {
+    workDir = temp.newFolder();
+    props.setProperty("sonar.working.directory", workDir.getAbsolutePath());
+    props.setProperty("sonar.projectKey", "foo");
+    props.setProperty(InternalProperties.RUNNER_INCREMENTAL_WORK_DIR, "true");
+  }
+
+  @Test
+  public void should_be_enabled_on_scan_only() {
+    assertThat(WorkDirFingerprint.isEnabled(props)).isTrue();
+
+    props.setProperty("sonar.task", "views");
+    assertThat(WorkDirFingerprint.isEnabled(props)).isFalse();
+
+    props.setProperty("sonar.task", "scan");
+    props.setProperty(InternalProperties.RUNNER_INCREMENTAL_WORK_DIR, "false");
+    assertThat(WorkDirFingerprint.isEnabled(props)).isFalse();
+  }
+
+  @Test
+  public void should_keep_work_dir_when_fingerprint_is_unchanged() throws Exception {
+    File data = new File(workDir, "data.txt");
+    WorkDirFingerprint.check(props, jarFiles);
+    FileUtils.write(data, "foo");
+
+    props.setProperty("sonar.projectVersion", "2.0");
+    WorkDirFingerprint.check(props, jarFiles);
+
+    assertThat(data).exists();
+    assertThat(new File(workDir, WorkDirFingerprint.FILENAME)).exists();
+  }
+
+  @Test
+  public void should_clean_work_dir_when_server_version_changes() throws Exception {
+    File data = new File(workDir, "data.txt");
+    WorkDirFingerprint.check(props, jarFiles);
+    FileUtils.write(data, "foo");
+
+    WorkDirFingerprint.check(props, Arrays.asList(new File("cache/xyz/sonar-batch.jar"), new File("cache/def/guava.jar")));
+
+    assertThat(data).doesNotExist();
+    assertThat(new File(workDir, WorkDirFingerprint.FILENAME)).exists();
+  }
+
+  @Test
+  public void should_clean_work_dir_when_project_changes() throws Exception {
+    File data = new File(workDir, "data.txt");
+    WorkDirFingerprint.check(props, jarFiles);
+    FileUtils.write(data, "foo");
+
+    props.setProperty("sonar.projectKey", "bar");
+    WorkDirFingerprint.check(props, jarFiles);
+
+    assertThat(data).doesNotExist();
+  }
+
+  @Test
+  public void should_clean_work_dir_when_relevant_property_changes() throws Exception {
+    props.setProperty(InternalProperties.RUNNER_INCREMENTAL_WORK_DIR_PROPERTIES, "sonar.branch, sonar.custom");
+    String fingerprint = WorkDirFingerprint.compute(props, jarFiles);
+
+    props.setProperty("sonar.profile", "other");
+    assertThat(WorkDirFingerprint.compute(props, jarFiles)).isEqualTo(fingerprint);
+
+    props.setProperty("sonar.custom", "other");
+    assertThat(WorkDirFingerprint.compute(props, jarFiles)).isNotEqualTo(fingerprint);
+  }
+
+  @Test
+  public void should_clean_work_dir_without_fingerprint() throws Exception {
+    File data = new File(workDir, "data.txt");
+    FileUtils.write(data, "foo");
+
+    WorkDirFingerprint.check(props, jarFiles);
+
+    assertThat(data).doesNotExist();
+  }
+}